@@ -52,22 +52,26 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.fragment.app.FragmentManager;
 
-import com.github.mikephil.charting.data.Entry;
+import com.kyivaigroup.bluetoothsdpsensor.chart.Decimator;
+import com.kyivaigroup.bluetoothsdpsensor.record.LogLine;
 import com.kyivaigroup.bluetoothsdpsensor.record.RecordBMP;
 import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
 import com.kyivaigroup.bluetoothsdpsensor.record.RecordStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecorderStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingFormat;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingSaver;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingSnapshot;
+import com.kyivaigroup.bluetoothsdpsensor.stream.BatchPolicy;
+import com.kyivaigroup.bluetoothsdpsensor.stream.CaptureJournal;
+import com.kyivaigroup.bluetoothsdpsensor.stream.CommandWriter;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 /**
  * This fragment controls Bluetooth to communicate with other devices.
@@ -87,13 +91,19 @@ public class BluetoothChatFragment extends Fragment {
     private TextView mTextViewStatusQueueSize;
     private TextView mTextViewStatusReadSensor;
     private MenuItem mConnectMenu;
+    private MenuItem mRecordMenu;
+    private MenuItem mCaptureMenu;
+    private ActivityResultLauncher<String> mRequestRecordPermission;
+    private ActivityResultLauncher<String> mRequestCapturePermission;
     private SavedChartsFragment mSavedChartsFragment;
     private EditText mTagSave;
+    private Button mSaveButton;
+    private boolean mSaving = false;
 
     /**
      * Array adapter for the conversation thread
      */
-    private ArrayAdapter<String> mConversationArrayAdapter;
+    private ArrayAdapter<LogLine> mConversationArrayAdapter;
 
     /**
      * Local Bluetooth adapter
@@ -117,6 +127,11 @@ public class BluetoothChatFragment extends Fragment {
          */
         private String mConnectedDeviceName = null;
 
+        /**
+         * The connection was lost and is being made again
+         */
+        private boolean mReconnecting = false;
+
         public MessageHandler(Looper looper) {
             super(looper);
         }
@@ -136,16 +151,26 @@ public class BluetoothChatFragment extends Fragment {
                             long tick = System.currentTimeMillis();
                             String syncMessage = String.format(Locale.getDefault(),
                                     "/%s\n/%s %d\n%s\0", Constants.INFO, Constants.CLOCK_SYNC, tick, timestamp);
-                            BluetoothChatFragment.this.sendMessage(syncMessage);
+                            BluetoothChatFragment.this.sendMessage(syncMessage, CommandWriter.NORMAL);
 
                             mConnectMenu.setTitle(R.string.disconnect);
-                            mConversationArrayAdapter.clear();
-                            mLineChart.clear();
+                            if (!mReconnecting) {
+                                // a new session; after a reconnect, the chart goes on after the gap
+                                mConversationArrayAdapter.clear();
+                                mLineChart.clear();
+                            }
+                            mReconnecting = false;
                             break;
                         case BluetoothChatService.STATE_CONNECTING:
                             setStatus(R.string.title_connecting);
+                            mReconnecting = false;
+                            break;
+                        case BluetoothChatService.STATE_RECONNECTING:
+                            setStatus(R.string.title_reconnecting);
+                            mReconnecting = true;
                             break;
                         case BluetoothChatService.STATE_NONE:
+                            mReconnecting = false;
                             setStatus(R.string.title_not_connected);
                             if (mConnectMenu != null) {
                                 // null when the app is launching
@@ -158,11 +183,30 @@ public class BluetoothChatFragment extends Fragment {
                     byte[] writeBuf = (byte[]) msg.obj;
                     // construct a string from the buffer
                     String writeMessage = new String(writeBuf);
-                    mConversationArrayAdapter.add(writeMessage);
+                    mConversationArrayAdapter.add(new LogLine(writeMessage));
                     break;
                 case Constants.MESSAGE_READ:
-                    // construct a string from the valid bytes in the buffer
-                    onRecordsReceived((RecordCollection) msg.obj);
+                    RecordCollection collection = (RecordCollection) msg.obj;
+                    onRecordsReceived(collection);
+                    // the samples are not referenced after this point
+                    collection.samples.release();
+                    break;
+                case Constants.MESSAGE_SAVE_PROGRESS:
+                    if (mSaveButton != null) {
+                        onSaveProgress(msg.arg1, msg.arg2);
+                    }
+                    break;
+                case Constants.MESSAGE_SAVE_DONE:
+                    if (mSaveButton != null) {
+                        onSaveDone(msg.arg1 == 1, (String) msg.obj);
+                    }
+                    break;
+                case Constants.MESSAGE_RECORDER_STOPPED:
+                    if (null != activity) {
+                        RecorderStatus status = (RecorderStatus) msg.obj;
+                        Toast.makeText(activity, activity.getString(R.string.recorder_stopped, status.toString()),
+                                Toast.LENGTH_LONG).show();
+                    }
                     break;
                 case Constants.MESSAGE_DEVICE_NAME:
                     // save the connected device's name
@@ -208,9 +252,8 @@ public class BluetoothChatFragment extends Fragment {
         }
     }
 
-    private static class LogArrayAdapter extends ArrayAdapter<String> {
+    private static class LogArrayAdapter extends ArrayAdapter<LogLine> {
 
-        private final Pattern mLogPattern = Pattern.compile("[EIW] \\(\\d+\\)");
         private final Map<Character, Integer> mColorMap = new HashMap<>();
         private Integer mDefaultColor;
 
@@ -227,27 +270,23 @@ public class BluetoothChatFragment extends Fragment {
             if (mDefaultColor == null) {
                 mDefaultColor = textView.getCurrentTextColor();
             }
-            CharSequence text = textView.getText();
-            if (mLogPattern.matcher(text).find()) {
-                Integer color = mColorMap.get(text.charAt(0));
-                textView.setTextColor(color);
-            } else {
-                textView.setTextColor(mDefaultColor);
-            }
+            LogLine line = getItem(position);
+            Integer color = line != null ? mColorMap.get(line.level) : null;
+            textView.setTextColor(color != null ? color : mDefaultColor);
             return textView;
         }
     }
 
 
     private void saveChart() {
-        String tag = mTagSave.getText().toString();
-        mTagSave.setText("");
-        if (!tag.equals("")) {
-            tag = " " + tag;
+        if (mSaving) {
+            return;
         }
+        String tag = mTagSave.getText().toString().trim();
+        mTagSave.setText("");
 
-        List<Entry> entries = mLineChart.getChartEntries();
-        if (entries == null || entries.size() == 0) {
+        final RecordingSnapshot snapshot = mLineChart.snapshot(tag);
+        if (snapshot.length == 0) {
             // no entries in the chart
             Toast.makeText(getActivity(), "No data", Toast.LENGTH_SHORT).show();
             return;
@@ -257,21 +296,87 @@ public class BluetoothChatFragment extends Fragment {
         records.mkdirs();
 
         Locale locale = Locale.getDefault();
-        String pattern = String.format(locale, "yyyy.MM.dd HH:mm:ss'%s.txt'", tag);
-        String fileName = new SimpleDateFormat(pattern, locale).format(new Date());
-        File file = new File(records, fileName);
-
-        try {
-            FileOutputStream fos = new FileOutputStream(file);
-            PrintWriter pw = new PrintWriter(fos);
-            pw.println(mLineChart.getDescription().getText());
-            for (Entry entry : entries) {
-                pw.println(String.format(locale, "%.6f,%.4f", entry.getX(), entry.getY()));
+        String pattern = String.format(locale, "yyyy.MM.dd HH:mm:ss'%s%s'",
+                tag.isEmpty() ? "" : " " + tag, RecordingFormat.EXTENSION);
+        String fileName = new SimpleDateFormat(pattern, locale).format(new Date(snapshot.header.startTimeMillis));
+        final File file = new File(records, fileName);
+
+        mSaving = true;
+        mSaveButton.setEnabled(false);
+        final Handler handler = mHandler;
+        new Thread(() -> {
+            try {
+                RecordingSaver.save(snapshot, file, (written, total) ->
+                        handler.obtainMessage(Constants.MESSAGE_SAVE_PROGRESS, written, total).sendToTarget());
+                handler.obtainMessage(Constants.MESSAGE_SAVE_DONE, 1, -1, file.getName()).sendToTarget();
+            } catch (IOException e) {
+                e.printStackTrace();
+                handler.obtainMessage(Constants.MESSAGE_SAVE_DONE, 0, -1, e.getMessage()).sendToTarget();
             }
-            pw.close();
-            Toast.makeText(getActivity(), "Saved", Toast.LENGTH_SHORT).show();
-        } catch (IOException e) {
-            e.printStackTrace();
+        }, "ChartSaver").start();
+    }
+
+    private void onSaveProgress(int written, int total) {
+        mSaveButton.setText(getString(R.string.save_progress, (int) (100L * written / total)));
+    }
+
+    private void onSaveDone(boolean saved, String message) {
+        mSaving = false;
+        mSaveButton.setEnabled(true);
+        mSaveButton.setText(R.string.save_btn);
+        Activity activity = getActivity();
+        if (activity != null) {
+            Toast.makeText(activity, saved ? "Saved" : "Could not save the chart: " + message,
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Record every received sample to disk until stopped, in the background.
+     */
+    private void startRecording() {
+        File root = android.os.Environment.getExternalStorageDirectory();
+        File folder = new File(new File(root.getAbsolutePath(), Constants.SDP_RECORDS_FOLDER), Constants.RECORDER_FOLDER);
+        mChatService.startRecording(folder);
+        if (mRecordMenu != null) {
+            mRecordMenu.setChecked(true);
+        }
+    }
+
+    /**
+     * The final status is shown on {@link Constants#MESSAGE_RECORDER_STOPPED}.
+     */
+    private void stopRecording() {
+        mChatService.stopRecording();
+        if (mRecordMenu != null) {
+            mRecordMenu.setChecked(false);
+        }
+    }
+
+    /**
+     * Journal the raw received bytes until stopped, to reproduce a problem offline.
+     */
+    private void startCapture() {
+        File root = android.os.Environment.getExternalStorageDirectory();
+        File folder = new File(new File(root.getAbsolutePath(), Constants.SDP_RECORDS_FOLDER), Constants.CAPTURE_FOLDER);
+        folder.mkdirs();
+        String name = new SimpleDateFormat("yyyy.MM.dd HH:mm:ss", Locale.getDefault()).format(new Date());
+        mChatService.startCapture(new File(folder, name + CaptureJournal.EXTENSION));
+        if (mCaptureMenu != null) {
+            mCaptureMenu.setChecked(true);
+        }
+    }
+
+    private void stopCapture() {
+        CaptureJournal journal = mChatService.stopCapture();
+        if (mCaptureMenu != null) {
+            mCaptureMenu.setChecked(false);
+        }
+        if (journal != null) {
+            String status = String.format(Locale.getDefault(), "%d chunks, %d bytes lost",
+                    journal.getChunks(), journal.getLostBytes());
+            Toast.makeText(getActivity(), getString(R.string.capture_stopped, journal.getFile().getName(), status),
+                    Toast.LENGTH_LONG).show();
         }
     }
 
@@ -295,6 +400,21 @@ public class BluetoothChatFragment extends Fragment {
         }
 
         getParentFragmentManager().addOnBackStackChangedListener(new BackStackChanged());
+
+        mRequestRecordPermission = registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
+            if (isGranted && mChatService != null) {
+                startRecording();
+            } else {
+                Toast.makeText(getActivity(), "Could not start recording", Toast.LENGTH_SHORT).show();
+            }
+        });
+        mRequestCapturePermission = registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
+            if (isGranted && mChatService != null) {
+                startCapture();
+            } else {
+                Toast.makeText(getActivity(), "Could not start capturing", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
@@ -359,7 +479,7 @@ public class BluetoothChatFragment extends Fragment {
 
         mTagSave = view.findViewById(R.id.tag_save);
 
-        final Button saveGraphBtn = view.findViewById(R.id.save_btn);
+        mSaveButton = view.findViewById(R.id.save_btn);
         final ActivityResultLauncher<String> requestWriteExternal =
                 registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
                     if (isGranted) {
@@ -368,7 +488,7 @@ public class BluetoothChatFragment extends Fragment {
                         Toast.makeText(getActivity(), "Could not save the chart", Toast.LENGTH_SHORT).show();
                     }
                 });
-        saveGraphBtn.setOnClickListener(buttonView -> {
+        mSaveButton.setOnClickListener(buttonView -> {
             if (ContextCompat.checkSelfPermission(getActivity(), Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
                 saveChart();
             } else {
@@ -383,7 +503,8 @@ public class BluetoothChatFragment extends Fragment {
             // Send a message using content of the edit text widget
             String message = sendEditText.getText().toString();
             message = String.format(Locale.getDefault(), "/%s\0", message);
-            sendMessage(message);
+            // typed by the user: ahead of the periodic commands
+            sendMessage(message, CommandWriter.URGENT);
             sendEditText.setText("");
         } );
     }
@@ -407,8 +528,8 @@ public class BluetoothChatFragment extends Fragment {
             mTextViewStatusReadSensor.setText(activity.getString(R.string.status_read_sensor, status.readDurationMax));
         }
         if (collection.deviceInfo != null) {
-            mConversationArrayAdapter.add(activity.getString(R.string.record_id, collection.deviceInfo.recordId));
-            mConversationArrayAdapter.add(activity.getString(R.string.sdcard_free_mb, collection.deviceInfo.sdcardFreeMB));
+            mConversationArrayAdapter.add(new LogLine(activity.getString(R.string.record_id, collection.deviceInfo.recordId)));
+            mConversationArrayAdapter.add(new LogLine(activity.getString(R.string.sdcard_free_mb, collection.deviceInfo.sdcardFreeMB)));
         }
         if (collection.logs.length > 0) {
             mConversationArrayAdapter.addAll(collection.logs);
@@ -436,8 +557,9 @@ public class BluetoothChatFragment extends Fragment {
      * Sends a message.
      *
      * @param message A string of text to send.
+     * @param kind    The kind of the command for the {@link CommandWriter}
      */
-    private void sendMessage(String message) {
+    private void sendMessage(String message, int kind) {
         // Check that we're actually connected before trying anything
         if (mChatService.getState() != BluetoothChatService.STATE_CONNECTED) {
             Toast.makeText(getActivity(), R.string.not_connected, Toast.LENGTH_SHORT).show();
@@ -448,7 +570,7 @@ public class BluetoothChatFragment extends Fragment {
         if (message.length() > 0) {
             // Get the message bytes and tell the BluetoothChatService to write
             byte[] send = message.getBytes();
-            mChatService.write(send, true);
+            mChatService.write(send, kind, true);
         }
     }
 
@@ -536,10 +658,32 @@ public class BluetoothChatFragment extends Fragment {
         }
     }
 
+    private static BatchPolicy getBatchPolicy(int menuItemId) {
+        if (menuItemId == R.id.update_low_latency) {
+            return BatchPolicy.LOW_LATENCY;
+        }
+        if (menuItemId == R.id.update_bulk) {
+            return BatchPolicy.BULK;
+        }
+        return BatchPolicy.BALANCED;
+    }
+
+    private static Decimator.Mode getDecimation(int menuItemId) {
+        if (menuItemId == R.id.decimation_none) {
+            return Decimator.Mode.NONE;
+        }
+        if (menuItemId == R.id.decimation_lttb) {
+            return Decimator.Mode.LTTB;
+        }
+        return Decimator.Mode.M4;
+    }
+
     @Override
     public void onCreateOptionsMenu(@NonNull Menu menu, MenuInflater inflater) {
         inflater.inflate(R.menu.menu, menu);
         mConnectMenu = menu.findItem(R.id.connect_scan);
+        mRecordMenu = menu.findItem(R.id.record);
+        mCaptureMenu = menu.findItem(R.id.capture);
     }
 
     @Override
@@ -559,6 +703,55 @@ public class BluetoothChatFragment extends Fragment {
                 getParentFragmentManager().beginTransaction().replace(R.id.main_fragment, mSavedChartsFragment).addToBackStack(null).commit();
                 return true;
             }
+            case R.id.record: {
+                if (mChatService == null) {
+                    return true;
+                }
+                if (mChatService.isRecording()) {
+                    stopRecording();
+                } else if (ContextCompat.checkSelfPermission(getActivity(), Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
+                    startRecording();
+                } else {
+                    mRequestRecordPermission.launch(Manifest.permission.WRITE_EXTERNAL_STORAGE);
+                }
+                return true;
+            }
+            case R.id.capture: {
+                if (mChatService == null) {
+                    return true;
+                }
+                if (mChatService.isCapturing()) {
+                    stopCapture();
+                } else if (ContextCompat.checkSelfPermission(getActivity(), Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
+                    startCapture();
+                } else {
+                    mRequestCapturePermission.launch(Manifest.permission.WRITE_EXTERNAL_STORAGE);
+                }
+                return true;
+            }
+            case R.id.binary_mode: {
+                item.setChecked(!item.isChecked());
+                if (mChatService != null) {
+                    mChatService.setBinaryMode(item.isChecked());
+                }
+                return true;
+            }
+            case R.id.update_low_latency:
+            case R.id.update_balanced:
+            case R.id.update_bulk: {
+                item.setChecked(true);
+                if (mChatService != null) {
+                    mChatService.setBatchPolicy(getBatchPolicy(item.getItemId()));
+                }
+                return true;
+            }
+            case R.id.decimation_none:
+            case R.id.decimation_m4:
+            case R.id.decimation_lttb: {
+                item.setChecked(true);
+                mLineChart.setDecimation(getDecimation(item.getItemId()));
+                return true;
+            }
         }
         return false;
     }
@@ -17,50 +17,63 @@
 package com.kyivaigroup.bluetoothsdpsensor;
 
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
+import com.kyivaigroup.bluetoothsdpsensor.record.IngestStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.LinkStatus;
 import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
-import com.kyivaigroup.bluetoothsdpsensor.record.SerialParser;
-
+import com.kyivaigroup.bluetoothsdpsensor.record.RecorderStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.SyncReply;
+import com.kyivaigroup.bluetoothsdpsensor.record.WriterStatus;
+import com.kyivaigroup.bluetoothsdpsensor.stream.BatchPolicy;
+import com.kyivaigroup.bluetoothsdpsensor.stream.CaptureJournal;
+import com.kyivaigroup.bluetoothsdpsensor.stream.ClockSync;
+import com.kyivaigroup.bluetoothsdpsensor.stream.CommandWriter;
+import com.kyivaigroup.bluetoothsdpsensor.stream.DeviceLink;
+import com.kyivaigroup.bluetoothsdpsensor.stream.SampleRecorder;
+import com.kyivaigroup.bluetoothsdpsensor.stream.Transport;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Locale;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.UUID;
 
 /**
  * This class does all the work for setting up and managing Bluetooth
- * connections with other devices. It has a thread that listens for
- * incoming connections, a thread for connecting with a device, and a
- * thread for performing data transmissions when connected.
+ * connections with other devices. The connection is made, read and made
+ * again when lost by a {@link DeviceLink}; this class adds the commands to
+ * the device, the clock sync, the recorder and the journal, and reports
+ * to the UI.
+ * <p>
+ * The connection goes through a {@link Transport}: RFCOMM to the ESP32,
+ * or TCP and in-memory to a stand-in device.
  */
 public class BluetoothChatService {
     // Debugging
     private static final String TAG = BluetoothChatService.class.getSimpleName();
 
-    // UUID of the BT classic Serial Port Protocol (SPP)
-    private static final UUID UUID_SPP = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
-
     private static final long SYNC_CLOCK_PERIOD_MS = 10_000;
+    private static final long SYNC_PING_PERIOD_MS = 1000;
 
     // Member fields
     private final Handler mHandler;
-    private ConnectThread mConnectThread;
-    private ConnectedThread mConnectedThread;
+    private final DeviceLink mLink = new DeviceLink(new LinkListener(), BatchPolicy.BALANCED);
+    private volatile Connection mConnection;
     private Timer mSyncTimer;
-    private int mState;
-    private int mNewState;
+    private volatile SampleRecorder mRecorder;
+    private volatile CaptureJournal mJournal;
+    private boolean mBinaryMode;
 
     // Constants that indicate the current connection state
-    public static final int STATE_NONE = 0;       // we're doing nothing
-    public static final int STATE_CONNECTING = 1; // now initiating an outgoing connection
-    public static final int STATE_CONNECTED = 2;  // now connected to a remote device
+    public static final int STATE_NONE = DeviceLink.STATE_NONE;              // we're doing nothing
+    public static final int STATE_CONNECTING = DeviceLink.STATE_CONNECTING;  // now initiating an outgoing connection
+    public static final int STATE_CONNECTED = DeviceLink.STATE_CONNECTED;    // now connected to a remote device
+    public static final int STATE_RECONNECTING = DeviceLink.STATE_RECONNECTING;  // the connection was lost, making it again
 
     /**
      * Constructor. Prepares a new BluetoothChat session.
@@ -68,107 +81,70 @@ public class BluetoothChatService {
      * @param handler A Handler to send messages back to the UI Activity
      */
     public BluetoothChatService(Handler handler) {
-        mState = STATE_NONE;
-        mNewState = mState;
         mHandler = handler;
     }
 
     /**
      * Update UI title according to the current state of the chat connection
      */
-    private synchronized void updateUserInterfaceTitle() {
-        mState = getState();
-        mNewState = mState;
-
+    private void updateUserInterfaceTitle() {
         // Give the new state to the Handler so the UI Activity can update
-        mHandler.obtainMessage(Constants.MESSAGE_STATE_CHANGE, mNewState, -1).sendToTarget();
+        mHandler.obtainMessage(Constants.MESSAGE_STATE_CHANGE, getState(), -1).sendToTarget();
     }
 
     /**
      * Return the current connection state.
      */
-    public synchronized int getState() {
-        return mState;
+    public int getState() {
+        return mLink.getState();
     }
 
     /**
      * Start the chat service. Called by the Activity onResume()
      */
-    public synchronized void start() {
-        // Cancel any thread attempting to make a connection
-        if (mConnectThread != null) {
-            mConnectThread.cancel();
-            mConnectThread = null;
-        }
-
-        // Cancel any thread currently running a connection
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
-        }
-
-        // Update UI title
-        updateUserInterfaceTitle();
+    public void start() {
+        // Cancel any connection and any attempt to make one
+        mLink.disconnect();
     }
 
     /**
-     * Start the ConnectThread to initiate a connection to a remote device.
+     * Initiate a connection to a remote device.
      *
      * @param device The BluetoothDevice to connect
      */
-    public synchronized void connect(BluetoothDevice device) {
-        // Cancel any thread attempting to make a connection
-        if (mState == STATE_CONNECTING) {
-            if (mConnectThread != null) {
-                mConnectThread.cancel();
-                mConnectThread = null;
-            }
-        }
-
-        // Cancel any thread currently running a connection
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
-        }
-
-        // Start the thread to connect with the given device
-        mConnectThread = new ConnectThread(device);
-        mConnectThread.start();
-        // Update UI title
-        updateUserInterfaceTitle();
+    public void connect(BluetoothDevice device) {
+        connect(new RfcommTransport(device));
     }
 
     /**
-     * Start the ConnectedThread to begin managing a Bluetooth connection
+     * Start a new session: connect with a new timeline.
      *
-     * @param socket The BluetoothSocket on which the connection was made
-     * @param device The BluetoothDevice that has been connected
+     * @param transport The connection to a device, not connected yet
      */
-    public synchronized void connected(BluetoothSocket socket, BluetoothDevice device) {
-        // Cancel the thread that completed the connection
-        if (mConnectThread != null) {
-            mConnectThread.cancel();
-            mConnectThread = null;
-        }
+    public void connect(Transport transport) {
+        mLink.connect(transport);
+    }
 
-        // Cancel any thread currently running a connection
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
+    /**
+     * Start managing a connection: the commands and the clock sync.
+     */
+    private synchronized void connected(Transport transport, boolean resumed) {
+        mConnection = new Connection(transport);
+        if (resumed) {
+            Log.i(TAG, "Reconnected: " + mLink.getStatus());
         }
 
-        // Start the thread to manage the connection and perform transmissions
-        mConnectedThread = new ConnectedThread(socket);
-        mConnectedThread.start();
-
         // Send the name of the connected device back to the UI Activity
         Message msg = mHandler.obtainMessage(Constants.MESSAGE_DEVICE_NAME);
         Bundle bundle = new Bundle();
-        bundle.putString(Constants.DEVICE_NAME, device.getName());
+        bundle.putString(Constants.DEVICE_NAME, transport.getName());
         msg.setData(bundle);
         mHandler.sendMessage(msg);
-        // Update UI title
-        updateUserInterfaceTitle();
+
+        if (mBinaryMode) {
+            // the device may have restarted in the text mode meanwhile
+            sendBinaryMode(true);
+        }
 
         if (mSyncTimer != null) {
             mSyncTimer.cancel();
@@ -177,235 +153,376 @@ public class BluetoothChatService {
         mSyncTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
-                long tick = System.currentTimeMillis();
-                String syncMessage = String.format(Locale.getDefault(), "/%s %d\0", Constants.CLOCK_SYNC, tick);
-                byte[] send = syncMessage.getBytes();
-                write(send, false);
+                syncClock();
             }
         }, 1000, SYNC_CLOCK_PERIOD_MS);
+        mSyncTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                ping();
+            }
+        }, 500, SYNC_PING_PERIOD_MS);
     }
 
     /**
-     * Stop all threads
+     * The connection ended: stop writing to it.
      */
-    public synchronized void stop() {
-        if (mConnectThread != null) {
-            mConnectThread.cancel();
-            mConnectThread = null;
-        }
-
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
+    private synchronized void disconnected(Transport transport) {
+        final Connection connection = mConnection;
+        if (connection == null || connection.mmTransport != transport) {
+            return;
         }
-
+        mConnection = null;
         if (mSyncTimer != null) {
             mSyncTimer.cancel();
             mSyncTimer = null;
         }
+        connection.mmWriter.stop();
+        Log.i(TAG, "Commands: " + connection.mmWriter.getStatus());
+        Log.i(TAG, "Clock: " + connection.mmClockSync);
+    }
 
-        mState = STATE_NONE;
-        // Update UI title
-        updateUserInterfaceTitle();
+    /**
+     * Set the device clock to the host clock, unless the device answers the
+     * pings: then the round trips are measured instead, and the clock set
+     * with the first command of the connection is kept.
+     */
+    private synchronized void syncClock() {
+        if (mConnection == null || mConnection.mmClockSync.isLocked()) {
+            return;
+        }
+        long tick = System.currentTimeMillis();
+        String syncMessage = String.format(Locale.getDefault(), "/%s %d\0", Constants.CLOCK_SYNC, tick);
+        mConnection.write(syncMessage.getBytes(), CommandWriter.CLOCK_SYNC, false);
     }
 
     /**
-     * Write to the ConnectedThread in an synchronized manner
-     *
-     * @param out The bytes to write
-     * @see ConnectedThread#write(byte[], boolean)
+     * Send the next round-trip clock sync ping, if the device answers them.
      */
-    public synchronized void write(byte[] out, boolean notifyUI) {
-        if (mState != STATE_CONNECTED) {
+    private synchronized void ping() {
+        if (mConnection == null) {
             return;
         }
-        mConnectedThread.write(out, notifyUI);
+        ClockSync clockSync = mConnection.mmClockSync;
+        if (clockSync.shouldPing()) {
+            mConnection.write(clockSync.createPing(), CommandWriter.CLOCK_SYNC, false);
+        }
     }
 
-    private void connectionError(String msg) {
-        // Send a failure message back to the Activity
-        sendToastMessage(msg);
+    /**
+     * @return the reconnects and the gaps of the session
+     */
+    public LinkStatus getLinkStatus() {
+        return mLink.getStatus();
+    }
 
-        mState = STATE_NONE;
-        // Update UI title
-        updateUserInterfaceTitle();
+    /**
+     * Set how often the received records are sent to the UI.
+     */
+    public void setBatchPolicy(BatchPolicy batchPolicy) {
+        mLink.setBatchPolicy(batchPolicy);
+    }
 
-        // Start the service over to restart listening mode
-        BluetoothChatService.this.start();
+    /**
+     * Ask the device for binary sample frames in place of the text lines,
+     * now and after each reconnect, or back for text lines.
+     */
+    public synchronized void setBinaryMode(boolean binaryMode) {
+        mBinaryMode = binaryMode;
+        if (binaryMode) {
+            // decode the frames before asking for them
+            mLink.setBinaryMode(true);
+            sendBinaryMode(true);
+        } else {
+            sendBinaryMode(false);
+            mLink.setBinaryMode(false);
+        }
     }
 
-    private void sendToastMessage(String string) {
-        Message msg = mHandler.obtainMessage(Constants.MESSAGE_TOAST);
-        Bundle bundle = new Bundle();
-        bundle.putString(Constants.TOAST, string);
-        msg.setData(bundle);
-        mHandler.sendMessage(msg);
+    private void sendBinaryMode(boolean binaryMode) {
+        String command = String.format(Locale.US, "/%s %d\0", Constants.BINARY_MODE, binaryMode ? 1 : 0);
+        write(command.getBytes(), CommandWriter.NORMAL, true);
     }
 
     /**
-     * This thread runs while attempting to make an outgoing connection
-     * with a device. It runs straight through; the connection either
-     * succeeds or fails.
+     * Start writing every received sample to disk, whether the chart is shown or not.
+     *
+     * @param folder where to create the recording segments
      */
-    private class ConnectThread extends Thread {
-        private final BluetoothSocket mmSocket;
-        private final BluetoothDevice mmDevice;
-
-        public ConnectThread(BluetoothDevice device) {
-            mmDevice = device;
-            BluetoothSocket tmp = null;
+    public synchronized void startRecording(File folder) {
+        if (mRecorder != null) {
+            return;
+        }
+        mRecorder = new SampleRecorder(folder);
+        mRecorder.start();
+    }
 
-            // Get a BluetoothSocket for a connection with the
-            // given BluetoothDevice
+    /**
+     * Stop the recorder. Its final status is sent to the UI with
+     * {@link Constants#MESSAGE_RECORDER_STOPPED} once the last segment is closed.
+     *
+     * @return false if it wasn't recording
+     */
+    public synchronized boolean stopRecording() {
+        final SampleRecorder recorder = mRecorder;
+        if (recorder == null) {
+            return false;
+        }
+        recorder.stop();
+        mRecorder = null;
+        new Thread(() -> {
             try {
-                tmp = device.createInsecureRfcommSocketToServiceRecord(UUID_SPP);
-            } catch (IOException e) {
-                e.printStackTrace();
-                // Send a failure message back to the Activity
-                connectionError("Could not create a socket");
+                recorder.join();
+            } catch (InterruptedException e) {
+                return;
             }
-            mmSocket = tmp;
-            mState = STATE_CONNECTING;
+            RecorderStatus status = recorder.getStatus();
+            mHandler.obtainMessage(Constants.MESSAGE_RECORDER_STOPPED, status).sendToTarget();
+        }, SampleRecorder.class.getSimpleName() + "-stop").start();
+        return true;
+    }
+
+    public boolean isRecording() {
+        SampleRecorder recorder = mRecorder;
+        return recorder != null && recorder.isRunning();
+    }
+
+    /**
+     * Journal the raw received bytes, to replay them later with
+     * {@link com.kyivaigroup.bluetoothsdpsensor.stream.JournalReplay}.
+     *
+     * @param file the journal to create
+     */
+    public synchronized void startCapture(File file) {
+        if (mJournal != null) {
+            return;
+        }
+        mJournal = new CaptureJournal(file);
+        mJournal.start();
+    }
+
+    /**
+     * @return the stopped journal, or null if it wasn't capturing
+     */
+    public synchronized CaptureJournal stopCapture() {
+        CaptureJournal journal = mJournal;
+        if (journal != null) {
+            journal.stop();
+            mJournal = null;
         }
+        return journal;
+    }
 
-        public void run() {
-            setName(ConnectThread.class.getSimpleName());
+    public boolean isCapturing() {
+        CaptureJournal journal = mJournal;
+        return journal != null && journal.isRunning();
+    }
 
-            // Make a connection to the BluetoothSocket
-            try {
-                // This is a blocking call and will only return on a
-                // successful connection or an exception.
-                // mmSocket can be Null.
-                mmSocket.connect();
-            } catch (IOException | NullPointerException e) {
-                // Close the socket silently
-                try {
-                    mmSocket.close();
-                } catch (IOException e2) {
-                    e2.printStackTrace();
-                }
-                connectionError("Unable to connect device");
-                return;
-            }
+    /**
+     * Stop all threads
+     */
+    public void stop() {
+        mLink.disconnect();
 
-            // Reset the ConnectThread because we're done
-            synchronized (BluetoothChatService.this) {
-                mConnectThread = null;
+        synchronized (this) {
+            if (mSyncTimer != null) {
+                mSyncTimer.cancel();
+                mSyncTimer = null;
             }
+            stopRecording();
+            stopCapture();
+        }
+    }
 
-            // Start the connected thread
-            connected(mmSocket, mmDevice);
+    /**
+     * Queue the bytes to be written to the device. Never blocks on the connection.
+     *
+     * @param out  The bytes to write
+     * @param kind {@link CommandWriter#NORMAL}, {@link CommandWriter#URGENT}
+     *             or {@link CommandWriter#CLOCK_SYNC}
+     * @see Connection#write(byte[], int, boolean)
+     */
+    public synchronized void write(byte[] out, int kind, boolean notifyUI) {
+        if (mConnection == null) {
+            return;
         }
+        mConnection.write(out, kind, notifyUI);
+    }
 
-        public void cancel() {
-            try {
-                mmSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * @return the queue depth and the write latency of the commands, or null if not connected
+     */
+    public synchronized WriterStatus getWriterStatus() {
+        if (mConnection == null) {
+            return null;
         }
+        return mConnection.mmWriter.getStatus();
+    }
+
+    private void sendToastMessage(String string) {
+        Message msg = mHandler.obtainMessage(Constants.MESSAGE_TOAST);
+        Bundle bundle = new Bundle();
+        bundle.putString(Constants.TOAST, string);
+        msg.setData(bundle);
+        mHandler.sendMessage(msg);
     }
 
     /**
-     * This thread runs during a connection with a remote device.
-     * It handles all incoming and outgoing transmissions.
+     * The outgoing side of a connection with a remote device: the commands
+     * are written by a {@link CommandWriter} on its own thread, and the
+     * round trips of the clock sync are timed here.
      */
-    private class ConnectedThread extends Thread {
-        private final BluetoothSocket mmSocket;
-        private final InputStream mmInStream;
-        private final OutputStream mmOutStream;
-        private final SerialParser mmSerialParser = new SerialParser();
-        private int mBytesReceivedMax = 1000;  // omit printing small values
+    private class Connection {
+        private final Transport mmTransport;
+        private final CommandWriter mmWriter;
+        private final ClockSync mmClockSync = new ClockSync();
 
-        public ConnectedThread(BluetoothSocket socket) {
-            mmSocket = socket;
-            InputStream tmpIn = null;
+        Connection(Transport transport) {
+            mmTransport = transport;
             OutputStream tmpOut = null;
 
-            // Get the BluetoothSocket input and output streams
+            // Get the transport output stream
             try {
-                tmpIn = socket.getInputStream();
-                tmpOut = socket.getOutputStream();
-                mState = STATE_CONNECTED;
+                tmpOut = transport.getOutputStream();
             } catch (IOException e) {
-                e.printStackTrace();
-                cancel();
-                connectionError("IO sockets not created");
+                Log.e(TAG, "IO sockets not created", e);
             }
 
-            mmInStream = tmpIn;
-            mmOutStream = tmpOut;
-        }
-
-        public void run() {
-            byte[] buffer = new byte[16284];
-            int nbytes;
-
-            // Keep listening to the InputStream while connected
-            while (mState == STATE_CONNECTED) {
-                try {
-                    // Read from the InputStream
-                    nbytes = mmInStream.read(buffer);
-                    if (nbytes > mBytesReceivedMax) {
-                        mBytesReceivedMax = nbytes;
-                        Log.i(TAG, String.format("RX %d bytes", nbytes));
-                    }
-
-                    mmSerialParser.receive(buffer, nbytes);
-                    if (mmSerialParser.hasRecords()) {
-                        // Send the records to the UI Activity
-                        RecordCollection collection = mmSerialParser.consumeRecords();
-                        mHandler.obtainMessage(Constants.MESSAGE_READ, collection).sendToTarget();
-                    }
-
-                    sleep(100);
-                } catch (IOException e) {
-                    Log.e(TAG, "disconnected", e);
-                    connectionError("Device connection was lost");
-                    break;
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            mmWriter = new CommandWriter(tmpOut, (command, echo) -> {
+                mmClockSync.onWritten(command, System.nanoTime());
+                // Share the sent message back to the UI Activity
+                if (echo) {
+                    mHandler.obtainMessage(Constants.MESSAGE_WRITE, command).sendToTarget();
                 }
+            });
+            if (tmpOut != null) {
+                mmWriter.start();
             }
         }
 
         /**
-         * Write to the connected OutStream.
+         * Queue the bytes to be written to the connected OutStream.
          *
          * @param buffer The bytes to write
+         * @param kind The kind of the command for the {@link CommandWriter}
          * @param notifyUI Send the message back to the UI to be displayed in the sent messages
          */
-        public void write(byte[] buffer, boolean notifyUI) {
-            try {
-                mmOutStream.write(buffer);
+        public void write(byte[] buffer, int kind, boolean notifyUI) {
+            if (!mmWriter.send(buffer, kind, notifyUI)) {
+                Log.w(TAG, "Command dropped: " + mmWriter.getStatus());
+            }
+        }
+    }
 
-                // Share the sent message back to the UI Activity
-                if (notifyUI) {
-                    mHandler.obtainMessage(Constants.MESSAGE_WRITE, buffer).sendToTarget();
+    /**
+     * The incoming side: the records of the {@link DeviceLink} go to the
+     * recorder and the UI, the raw bytes to the journal.
+     */
+    private class LinkListener implements DeviceLink.Listener {
+        private int mBytesReceivedMax = 1000;  // omit printing small values
+        private long mOverflowChunks = 0;
+        private long mFramesCorrupted = 0;
+        private long mDroppedBatches = 0;
+
+        @Override
+        public void onStateChange() {
+            updateUserInterfaceTitle();
+        }
+
+        @Override
+        public void onConnected(Transport transport, boolean resumed) {
+            // the counters of the ingest status start over with the connection
+            mOverflowChunks = 0;
+            mFramesCorrupted = 0;
+            connected(transport, resumed);
+        }
+
+        @Override
+        public void onReceived(byte[] buffer, int length) {
+            if (length > mBytesReceivedMax) {
+                mBytesReceivedMax = length;
+                Log.i(TAG, String.format("RX %d bytes", length));
+            }
+            CaptureJournal journal = mJournal;
+            if (journal != null) {
+                journal.record(buffer, length);
+            }
+        }
+
+        @Override
+        public void onRecords(RecordCollection collection) {
+            onIngestStatus(collection.ingestStatus);
+            if (collection.gap != null) {
+                Log.i(TAG, "Resumed after a " + collection.gap + ": " + mLink.getStatus());
+            }
+            Connection connection = mConnection;
+            if (connection != null) {
+                for (SyncReply reply : collection.syncReplies) {
+                    connection.mmClockSync.onReply(reply);
                 }
-            } catch (IOException e) {
-                Log.e(TAG, "Exception during write", e);
             }
+            SampleRecorder recorder = mRecorder;
+            if (recorder != null && !recorder.offer(collection)) {
+                onRecorderBehind(recorder.getStatus());
+            }
+            // Send the records to the UI Activity
+            mHandler.obtainMessage(Constants.MESSAGE_READ, collection).sendToTarget();
         }
 
-        public void cancel() {
-            try {
-                mmSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        @Override
+        public void onDisconnected(Transport transport, IOException error) {
+            Log.e(TAG, "disconnected", error);
+            disconnected(transport);
+        }
+
+        @Override
+        public void onLost(long delayMs) {
+            Log.i(TAG, "Reconnecting in " + delayMs + " ms");
+            sendToastMessage("Device connection was lost, reconnecting");
+        }
+
+        @Override
+        public void onError(String message) {
+            Log.w(TAG, message + ": " + mLink.getStatus());
+            // Send a failure message back to the Activity
+            sendToastMessage(message);
+        }
+
+        private void onIngestStatus(IngestStatus status) {
+            if (status.overflowChunks > mOverflowChunks) {
+                mOverflowChunks = status.overflowChunks;
+                Log.w(TAG, "Received bytes dropped: " + status);
+            }
+            if (status.framesCorrupted > mFramesCorrupted) {
+                mFramesCorrupted = status.framesCorrupted;
+                Log.w(TAG, "Binary frames corrupted: " + status);
+            }
+        }
+
+        private void onRecorderBehind(RecorderStatus status) {
+            if (status.droppedBatches > mDroppedBatches) {
+                mDroppedBatches = status.droppedBatches;
+                Log.w(TAG, "Recorder dropped samples: " + status);
             }
         }
     }
 
+    /**
+     * The chart is hidden: close the connection, or stop making it again,
+     * unless it's recorded.
+     */
     public void onPause() {
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
+        if (isRecording() || isCapturing()) {
+            // keep the connection for the recorder
+            return;
+        }
+        if (getState() != STATE_NONE) {
+            mLink.disconnect();
+            sendToastMessage("Device connection was lost");
         }
     }
 
     public void onResume() {
-        if (mConnectedThread != null) {
-            mConnectedThread.start();
-        }
+        // the connection closed by onPause() is made again by the user
     }
 }
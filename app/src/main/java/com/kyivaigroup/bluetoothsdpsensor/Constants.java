@@ -27,6 +27,9 @@ public interface Constants {
     int MESSAGE_WRITE = 3;
     int MESSAGE_DEVICE_NAME = 4;
     int MESSAGE_TOAST = 5;
+    int MESSAGE_SAVE_PROGRESS = 6;
+    int MESSAGE_SAVE_DONE = 7;
+    int MESSAGE_RECORDER_STOPPED = 8;
 
     // Key names received from the BluetoothChatService Handler
     String DEVICE_NAME = "device_name";
@@ -37,8 +40,12 @@ public interface Constants {
     String RESTART = "restart";
     String FORMAT = "format";
     String CLOCK_SYNC = "clock";
+    String CLOCK_PING = "sync";  // "sync <seq>" is answered with "Y<seq> r<received us> t<sent us>"
+    String BINARY_MODE = "binary";  // "binary 1" switches samples to binary frames, "binary 0" back to text
 
     String SDP_RECORDS_FOLDER = "SDPSensorRecords";
+    String RECORDER_FOLDER = "Recorder";  // continuous recordings, inside SDP_RECORDS_FOLDER
+    String CAPTURE_FOLDER = "Capture";  // raw byte journals, inside SDP_RECORDS_FOLDER
 
     String ANSI_RESET = "\u001B[0m";
 }
@@ -0,0 +1,75 @@
+package com.kyivaigroup.bluetoothsdpsensor;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import com.kyivaigroup.bluetoothsdpsensor.stream.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * The {@link Transport} to the ESP32: Bluetooth classic Serial Port Profile.
+ */
+class RfcommTransport implements Transport {
+    // UUID of the BT classic Serial Port Protocol (SPP)
+    private static final UUID UUID_SPP = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    private final BluetoothDevice mDevice;
+    private BluetoothSocket mSocket;  // guarded by this
+    private boolean mClosed;          // guarded by this
+
+    RfcommTransport(BluetoothDevice device) {
+        mDevice = device;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        BluetoothSocket socket;
+        synchronized (this) {
+            if (mClosed) {
+                throw new IOException("Transport closed");
+            }
+            mSocket = mDevice.createInsecureRfcommSocketToServiceRecord(UUID_SPP);
+            socket = mSocket;
+        }
+        // This is a blocking call and will only return on a
+        // successful connection or an exception.
+        socket.connect();
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return mSocket != null && mSocket.isConnected();
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+        return mSocket.getInputStream();
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+        return mSocket.getOutputStream();
+    }
+
+    @Override
+    public String getName() {
+        return mDevice.getName();
+    }
+
+    @Override
+    public Transport reopen() {
+        return new RfcommTransport(mDevice);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mClosed = true;
+        if (mSocket != null) {
+            mSocket.close();
+        }
+    }
+}
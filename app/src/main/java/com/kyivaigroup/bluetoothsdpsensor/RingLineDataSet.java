@@ -0,0 +1,193 @@
+package com.kyivaigroup.bluetoothsdpsensor;
+
+import com.github.mikephil.charting.data.DataSet;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.kyivaigroup.bluetoothsdpsensor.chart.Decimator;
+import com.kyivaigroup.bluetoothsdpsensor.chart.PointSeries;
+import com.kyivaigroup.bluetoothsdpsensor.chart.SampleRing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A line data set backed by a {@link SampleRing} instead of a list of entries.
+ * <p>
+ * Points are appended in place and the min/max are kept up to date, so a
+ * chart refresh is just {@link #decimate(int)} and {@link #notifyDataSetChanged()}.
+ * The renderer sees the decimated points; the axis range covers all of them.
+ * The entries returned by {@link #getEntryForIndex(int)} are reused: they are
+ * valid only until the next few calls, which is how the renderer uses them.
+ */
+class RingLineDataSet extends LineDataSet {
+    private static final int FLYWEIGHTS = 4;  // the renderer holds up to 2 entries at once
+
+    private final SampleRing mRing;
+    private final Decimator mDecimator = new Decimator();
+    private Decimator.Mode mDecimation = Decimator.Mode.M4;
+    private PointSeries mPoints;  // the points to render
+    private final RingEntry[] mEntries = new RingEntry[FLYWEIGHTS];
+    private int mNextEntry = 0;
+
+    private static class RingEntry extends Entry {
+        int index;
+    }
+
+    RingLineDataSet(int capacity, String label) {
+        super(new ArrayList<>(), label);
+        mRing = new SampleRing(capacity);
+        mPoints = mRing;
+        for (int i = 0; i < FLYWEIGHTS; i++) {
+            mEntries[i] = new RingEntry();
+        }
+    }
+
+    SampleRing getRing() {
+        return mRing;
+    }
+
+    /**
+     * @param tick  the device time in us
+     * @param value the raw sensor value
+     */
+    public void append(long tick, short value) {
+        mRing.add(tick, value);
+    }
+
+    public void setDecimation(Decimator.Mode decimation) {
+        mDecimation = decimation;
+    }
+
+    /**
+     * Prepare the points to render.
+     *
+     * @param columns the width of the chart content in pixels
+     */
+    public void decimate(int columns) {
+        if (mDecimation == Decimator.Mode.NONE) {
+            mPoints = mRing;
+        } else {
+            mDecimator.decimate(mRing, columns, mDecimation);
+            mPoints = mDecimator;
+        }
+    }
+
+    @Override
+    public void calcMinMax() {
+        if (mRing == null) {
+            // called by the super constructor
+            return;
+        }
+        mXMin = mRing.getMinX();
+        mXMax = mRing.getMaxX();
+        mYMin = mRing.getMinY();
+        mYMax = mRing.getMaxY();
+    }
+
+    @Override
+    public void calcMinMaxY(float fromX, float toX) {
+        mYMin = Float.MAX_VALUE;
+        mYMax = -Float.MAX_VALUE;
+        final int from = mRing.indexOfX(fromX, PointSeries.ROUND_DOWN);
+        final int to = mRing.indexOfX(toX, PointSeries.ROUND_UP);
+        for (int i = Math.max(from, 0); i <= to; i++) {
+            final float y = mRing.getY(i);
+            mYMin = Math.min(mYMin, y);
+            mYMax = Math.max(mYMax, y);
+        }
+    }
+
+    @Override
+    public int getEntryCount() {
+        return mPoints.size();
+    }
+
+    @Override
+    public Entry getEntryForIndex(int index) {
+        if (index < 0 || index >= mPoints.size()) {
+            return null;
+        }
+        RingEntry entry = mEntries[mNextEntry];
+        mNextEntry = (mNextEntry + 1) % FLYWEIGHTS;
+        entry.index = index;
+        entry.setX(mPoints.getX(index));
+        entry.setY(mPoints.getY(index));
+        return entry;
+    }
+
+    @Override
+    public Entry getEntryForXValue(float xValue, float closestToY, DataSet.Rounding rounding) {
+        return getEntryForIndex(getEntryIndex(xValue, closestToY, rounding));
+    }
+
+    @Override
+    public Entry getEntryForXValue(float xValue, float closestToY) {
+        return getEntryForXValue(xValue, closestToY, DataSet.Rounding.CLOSEST);
+    }
+
+    @Override
+    public int getEntryIndex(float xValue, float closestToY, DataSet.Rounding rounding) {
+        switch (rounding) {
+            case UP:
+                return mPoints.indexOfX(xValue, PointSeries.ROUND_UP);
+            case DOWN:
+                return mPoints.indexOfX(xValue, PointSeries.ROUND_DOWN);
+            default:
+                return mPoints.indexOfX(xValue, PointSeries.ROUND_CLOSEST);
+        }
+    }
+
+    @Override
+    public int getEntryIndex(Entry e) {
+        return e instanceof RingEntry ? ((RingEntry) e).index : -1;
+    }
+
+    @Override
+    public List<Entry> getEntriesForXValue(float xValue) {
+        List<Entry> entries = new ArrayList<>();
+        final int index = mPoints.indexOfX(xValue, PointSeries.ROUND_CLOSEST);
+        if (index >= 0 && mPoints.getX(index) == xValue) {
+            entries.add(new Entry(xValue, mPoints.getY(index)));
+        }
+        return entries;
+    }
+
+    /**
+     * Append a point in seconds and physical units, as LineData.addEntry() does.
+     * The ring holds raw samples: the point is converted back with the current
+     * scale, {@link #append(long, short)} is exact.
+     */
+    @Override
+    public boolean addEntry(Entry e) {
+        final int value = Math.round(e.getY() / mRing.getScaleY());
+        append(Math.round(e.getX() * 1e6), (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value)));
+        return true;
+    }
+
+    @Override
+    public void addEntryOrdered(Entry e) {
+        addEntry(e);
+    }
+
+    @Override
+    public boolean removeEntry(Entry e) {
+        // only the oldest points are evicted, by appending
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        mRing.clear();
+        mPoints = mRing;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public DataSet<Entry> copy() {
+        List<Entry> entries = new ArrayList<>(mRing.size());
+        for (int i = 0; i < mRing.size(); i++) {
+            entries.add(new Entry(mRing.getX(i), mRing.getY(i)));
+        }
+        return new LineDataSet(entries, getLabel());
+    }
+}
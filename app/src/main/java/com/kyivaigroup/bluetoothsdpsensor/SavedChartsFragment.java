@@ -6,6 +6,8 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,16 +29,20 @@ import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.interfaces.datasets.ILineDataSet;
 
-import java.io.BufferedReader;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingFormat;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingLoader;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingSummary;
+
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 
-class ChartDataAdapter extends ArrayAdapter<LineDataLabeled> {
+class ChartDataAdapter extends ArrayAdapter<RecordingSummary> {
 
-    ChartDataAdapter(Context context, List<LineDataLabeled> objects) {
+    ChartDataAdapter(Context context, List<RecordingSummary> objects) {
         super(context, 0, objects);
     }
 
@@ -44,7 +50,7 @@ class ChartDataAdapter extends ArrayAdapter<LineDataLabeled> {
     @NonNull
     @Override
     public View getView(int position, View convertView, @NonNull ViewGroup parent) {
-        LineDataLabeled data = getItem(position);
+        LineDataLabeled data = toLineData(getItem(position));
         LineChart chart;
 
         if (convertView == null) {
@@ -69,6 +75,20 @@ class ChartDataAdapter extends ArrayAdapter<LineDataLabeled> {
 
         return convertView;
     }
+
+    /**
+     * Show the preview track of a recording; the recording itself is not read.
+     */
+    private static LineDataLabeled toLineData(RecordingSummary summary) {
+        List<Entry> chartEntries = new ArrayList<>(summary.previewX.length);
+        for (int i = 0; i < summary.previewX.length; i++) {
+            chartEntries.add(new Entry(summary.previewX[i], summary.previewY[i]));
+        }
+        String label = summary.fileName.replace(RecordingFormat.EXTENSION, "");
+        String descriptionText = String.format(Locale.getDefault(), "%s, %.1f s, mean %.2f Pa",
+                summary.description, summary.durationUs / 1e6, summary.mean);
+        return new LineDataLabeled(new LineDataSet(chartEntries, label), descriptionText);
+    }
 }
 
 
@@ -83,7 +103,12 @@ class LineDataLabeled extends LineData {
 
 public class SavedChartsFragment extends Fragment {
 
+    private static final Comparator<RecordingSummary> BY_FILE_NAME = (a, b) -> a.fileName.compareTo(b.fileName);
+
+    private final List<RecordingSummary> mSummaries = new ArrayList<>();  // the adapter items
     private ChartDataAdapter mAdapter;
+    private RecordingLoader mLoader;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -92,7 +117,7 @@ public class SavedChartsFragment extends Fragment {
         final ActivityResultLauncher<String> requestReadExternal =
                 registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
                     if (isGranted) {
-                        mAdapter.addAll(loadCharts());
+                        loadCharts();
                     } else {
                         getParentFragmentManager().popBackStack();
                     }
@@ -108,41 +133,65 @@ public class SavedChartsFragment extends Fragment {
         return inflater.inflate(R.layout.saved_charts, container, false);
     }
 
-    private List<LineDataLabeled> loadCharts() {
-        List<LineDataLabeled> charts = new ArrayList<>();
-        File root = Environment.getExternalStorageDirectory();
-        final File folder = new File(root.getAbsolutePath(), Constants.SDP_RECORDS_FOLDER);
-        File[] files = folder.listFiles();
-        if (!folder.exists() || files == null) {
-            return charts;
+    /**
+     * Load the summaries of the recordings in the records folder in the background.
+     * Each one is shown as soon as it is loaded.
+     */
+    private void loadCharts() {
+        if (mLoader == null) {
+            File root = Environment.getExternalStorageDirectory();
+            final File folder = new File(root.getAbsolutePath(), Constants.SDP_RECORDS_FOLDER);
+            if (!folder.exists()) {
+                return;
+            }
+            mLoader = new RecordingLoader(folder);
         }
-        for (File file : files) {
-            List<Entry> chartEntries = new ArrayList<>();
-            String descriptionText = "";
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                descriptionText = br.readLine();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] xy = line.split(",");
-                    float time = Float.parseFloat(xy[0]);
-                    float dp = Float.parseFloat(xy[1]);
-                    chartEntries.add(new Entry(time, dp));
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+        mLoader.load(new RecordingLoader.Listener() {
+            @Override
+            public void onLoaded(RecordingSummary summary) {
+                mHandler.post(() -> showChart(summary));
+            }
+
+            @Override
+            public void onFinished() {
+                // the charts are shown one by one
             }
-            LineDataSet dataset = new LineDataSet(chartEntries, file.getName().replace(".txt", ""));
-            charts.add(new LineDataLabeled(dataset, descriptionText));
+        });
+    }
+
+    /**
+     * Show a summary in its place in the list, sorted by file name, or replace
+     * the one shown for the same file.
+     */
+    private void showChart(RecordingSummary summary) {
+        final int index = Collections.binarySearch(mSummaries, summary, BY_FILE_NAME);
+        if (index >= 0) {
+            mSummaries.set(index, summary);
+        } else {
+            mSummaries.add(-index - 1, summary);
         }
-        return charts;
+        mAdapter.notifyDataSetChanged();
     }
 
     @Override
     public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
         ListView listView = view.findViewById(R.id.charts_list);
-        List<LineDataLabeled> charts = loadCharts();
-        mAdapter = new ChartDataAdapter(getContext(), charts);
+        mSummaries.clear();
+        mAdapter = new ChartDataAdapter(getContext(), mSummaries);
         listView.setAdapter(mAdapter);
+        if (ContextCompat.checkSelfPermission(getActivity(), Manifest.permission.READ_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED) {
+            // otherwise, the charts are loaded once the permission is granted
+            loadCharts();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mLoader != null) {
+            mLoader.shutdown();
+        }
+        mHandler.removeCallbacksAndMessages(null);
     }
 
 }
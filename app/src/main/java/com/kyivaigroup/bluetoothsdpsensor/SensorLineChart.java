@@ -1,34 +1,43 @@
 package com.kyivaigroup.bluetoothsdpsensor;
 
 import android.content.Context;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.Description;
-import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.components.LimitLine;
+import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.data.LineData;
-import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.listener.ChartTouchListener;
 import com.github.mikephil.charting.listener.OnChartGestureListener;
+import com.kyivaigroup.bluetoothsdpsensor.chart.Decimator;
+import com.kyivaigroup.bluetoothsdpsensor.chart.SampleRing;
+import com.kyivaigroup.bluetoothsdpsensor.record.Gap;
 import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
-import com.kyivaigroup.bluetoothsdpsensor.record.RecordSDP;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingHeader;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingSnapshot;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
 import com.kyivaigroup.bluetoothsdpsensor.record.SensorInfo;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class SensorLineChart extends LineChart implements OnChartGestureListener {
     private static final long UPDATE_PERIOD_MS = 2000;
     private static final String CHART_LABEL = "Differential pressure, Pa";
+    private static final int WINDOW_SIZE = 1 << 13;  // ~4 s of samples at 2080 Hz
+    private static final int MAX_GAP_MARKS = 8;
 
-    private final List<Entry> mChartEntries = new ArrayList<>();
-    private List<Entry> mChartEntriesSaved;
-    private int mPressureScale = 60;  // default pressure scale for SDP31
+    private final RingLineDataSet mDataSet = new RingLineDataSet(WINDOW_SIZE, CHART_LABEL);
+    private SensorInfo mSensorInfo = new SensorInfo(31, 500, 60);  // default SDP31
+    private int mRecordId = RecordingHeader.RECORD_ID_UNKNOWN;
+    private int mPressureScale = mSensorInfo.pressureScale;
     private State mState = State.CLEARED;
     private long mLastUpdate = 0;
-    private long mTimeShift = 0;
+    private long mLastSampleMillis;  // when the last sample of the window was received
 
     public enum State {
         CLEARED,   // waiting for sensory data
@@ -53,7 +62,8 @@ public class SensorLineChart extends LineChart implements OnChartGestureListener
 
     public synchronized void clear() {
         super.clear();
-        mChartEntries.clear();
+        mDataSet.clear();
+        getXAxis().removeAllLimitLines();
         mLastUpdate = System.currentTimeMillis();
         mState = State.CLEARED;
     }
@@ -70,25 +80,24 @@ public class SensorLineChart extends LineChart implements OnChartGestureListener
         Paint paint = getPaint(LineChart.PAINT_INFO);
         paint.setColor(appColor);
         setOnChartGestureListener(this);
+        mDataSet.getRing().setScaleY(1f / mPressureScale);
     }
 
     /**
-     * Adjust estimated time shift with the device clock.
-     * @param clockTick absolute time since device boot in us
+     * Mark the gap left by a lost connection on the time axis.
      */
-    private void syncClock(long clockTick) {
-        if (clockTick == mTimeShift) {
-            // the clocks are synchronized
-            return;
-        }
-        final float delay = (clockTick - mTimeShift) / 1e6f;  // in seconds
-        if (mState != State.INACTIVE) {
-            // apply delay adjustment if not paused
-            for (Entry entry : mChartEntries) {
-                entry.setX(entry.getX() + delay);
-            }
+    private void markGap(Gap gap) {
+        LimitLine line = new LimitLine((float) (gap.startUs / 1e6),
+                String.format(Locale.getDefault(), "gap %.1f s", gap.durationUs / 1e6));
+        line.setLineColor(Color.GRAY);
+        line.enableDashedLine(10f, 10f, 0f);
+        XAxis xAxis = getXAxis();
+        xAxis.addLimitLine(line);
+        List<LimitLine> lines = xAxis.getLimitLines();
+        if (lines.size() > MAX_GAP_MARKS) {
+            // scrolled out long ago
+            xAxis.removeLimitLine(lines.get(0));
         }
-        mTimeShift = clockTick;
     }
 
     private void rescaleY(int prScale) {
@@ -96,10 +105,7 @@ public class SensorLineChart extends LineChart implements OnChartGestureListener
             return;
         }
         // apply new scaling factor even if paused
-        final float rescale = ((float) mPressureScale) / prScale;
-        for (Entry entry : mChartEntries) {
-            entry.setY(entry.getY() * rescale);
-        }
+        mDataSet.getRing().setScaleY(1f / prScale);
         mPressureScale = prScale;
     }
 
@@ -110,32 +116,66 @@ public class SensorLineChart extends LineChart implements OnChartGestureListener
             description.setText(sensorInfo.toString());
             setDescription(description);
             rescaleY(sensorInfo.pressureScale);
+            mSensorInfo = sensorInfo;
+            mRecordId = collection.deviceInfo.recordId;
         }
-        for (RecordSDP record : collection.recordsSDP) {
-            if (mState != State.INACTIVE) {
-                Entry entry = new Entry((record.time + mTimeShift) / 1e6f, record.diffPressureRaw / (float) mPressureScale);
-                mChartEntries.add(entry);
+        final SampleBatch samples = collection.samples;
+        if (mState != State.INACTIVE) {
+            if (collection.gap != null) {
+                markGap(collection.gap);
             }
-            mTimeShift += record.time;
-            if (record.clockTick != 0) {
-                syncClock(record.clockTick);
+            for (int i = 0; i < samples.length; i++) {
+                mDataSet.append(samples.time[i], samples.diffPressureRaw[i]);
+            }
+            if (samples.length > 0) {
+                mLastSampleMillis = System.currentTimeMillis();
             }
         }
         long tick = System.currentTimeMillis();
         if ((mState != State.INACTIVE) && (tick > mLastUpdate + UPDATE_PERIOD_MS)) {
             // either CLEARED or ACTIVE state
-            LineDataSet dataset = new LineDataSet(new ArrayList<>(mChartEntries), CHART_LABEL);
-            LineData data = new LineData(dataset);
-            setData(data);
+            mDataSet.decimate((int) getViewPortHandler().contentWidth());
+            mDataSet.notifyDataSetChanged();
+            if (getData() == null) {
+                // cleared
+                setData(new LineData(mDataSet));
+            } else {
+                getData().notifyDataChanged();
+                notifyDataSetChanged();
+            }
             invalidate();
             mLastUpdate = tick;
-            mChartEntries.clear();
             mState = State.ACTIVE;
         }
     }
 
-    public synchronized List<Entry> getChartEntries() {
-        return mChartEntriesSaved;
+    /**
+     * Set how the samples are reduced to the width of the chart before rendering.
+     */
+    public synchronized void setDecimation(Decimator.Mode decimation) {
+        mDataSet.setDecimation(decimation);
+    }
+
+    /**
+     * Copy the samples of the chart window, raw as received, to be saved
+     * while the chart keeps receiving.
+     *
+     * @param tag the user tag of the recording
+     */
+    public synchronized RecordingSnapshot snapshot(String tag) {
+        final SampleRing ring = mDataSet.getRing();
+        final int length = ring.size();
+        final long[] ticks = new long[length];
+        final short[] values = new short[length];
+        for (int i = 0; i < length; i++) {
+            ticks[i] = ring.getTick(i);
+            values[i] = ring.getValue(i);
+        }
+        // the window ends with the last received sample, not when saved: the chart may be paused
+        final long spanMillis = length > 0 ? (ticks[length - 1] - ticks[0]) / 1000 : 0;
+        final long startTime = (length > 0 ? mLastSampleMillis : System.currentTimeMillis()) - spanMillis;
+        RecordingHeader header = new RecordingHeader(mSensorInfo, mRecordId, startTime, tag);
+        return new RecordingSnapshot(header, ticks, values, length);
     }
 
     public synchronized void pause() {
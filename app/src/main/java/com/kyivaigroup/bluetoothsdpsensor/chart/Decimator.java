@@ -0,0 +1,189 @@
+package com.kyivaigroup.bluetoothsdpsensor.chart;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a series to a number of points bounded by the width of the view
+ * so that rendering costs the same whatever the sample rate and the window.
+ * <ul>
+ *     <li>{@link Mode#M4} keeps the first, min, max and last point of each
+ *     pixel column: the drawn polyline is pixel-identical to the full
+ *     resolution one, spikes included. At most 4 points per column.</li>
+ *     <li>{@link Mode#LTTB} (Largest-Triangle-Three-Buckets) keeps the point
+ *     of each bucket that forms the largest triangle with its neighbours.
+ *     2 points per column, visually close but not exact.</li>
+ * </ul>
+ * The decimated points are kept in preallocated arrays and read as a
+ * {@link PointSeries}; nothing is allocated unless the view gets wider.
+ */
+public class Decimator extends PointSeries {
+
+    public enum Mode {
+        NONE,
+        M4,
+        LTTB
+    }
+
+    private static final int LTTB_POINTS_PER_COLUMN = 2;
+
+    private float[] mX = new float[0];
+    private float[] mY = new float[0];
+    private int mSize = 0;
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public float getX(int index) {
+        return mX[index];
+    }
+
+    @Override
+    public float getY(int index) {
+        return mY[index];
+    }
+
+    /**
+     * @param series  the full resolution series
+     * @param columns the width of the view in pixels
+     * @param mode    {@link Mode#M4} or {@link Mode#LTTB}; {@link Mode#NONE} copies the series
+     * @return the number of decimated points
+     */
+    public int decimate(PointSeries series, int columns, Mode mode) {
+        columns = Math.max(columns, 1);
+        switch (mode) {
+            case M4:
+                ensureCapacity(4 * columns);
+                decimateM4(series, columns);
+                break;
+            case LTTB:
+                ensureCapacity(LTTB_POINTS_PER_COLUMN * columns);
+                decimateLTTB(series, LTTB_POINTS_PER_COLUMN * columns);
+                break;
+            default:
+                ensureCapacity(series.size());
+                copy(series, 0, series.size());
+                break;
+        }
+        return mSize;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (mX.length < capacity) {
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+        }
+    }
+
+    private void copy(PointSeries series, int from, int to) {
+        mSize = 0;
+        for (int i = from; i < to; i++) {
+            append(series, i);
+        }
+    }
+
+    private void append(PointSeries series, int index) {
+        mX[mSize] = series.getX(index);
+        mY[mSize] = series.getY(index);
+        mSize++;
+    }
+
+    private void decimateM4(PointSeries series, int columns) {
+        final int size = series.size();
+        if (size <= 4 * columns) {
+            copy(series, 0, size);
+            return;
+        }
+        mSize = 0;
+        final float xMin = series.getX(0);
+        final float xRange = series.getX(size - 1) - xMin;
+        final float columnsPerX = xRange > 0 ? columns / xRange : 0;
+        int column = -1;
+        int first = 0, last = 0, min = 0, max = 0;
+        for (int i = 0; i < size; i++) {
+            final int c = Math.min((int) ((series.getX(i) - xMin) * columnsPerX), columns - 1);
+            if (c != column) {
+                if (column >= 0) {
+                    appendColumn(series, first, min, max, last);
+                }
+                column = c;
+                first = last = min = max = i;
+                continue;
+            }
+            last = i;
+            final float y = series.getY(i);
+            if (y < series.getY(min)) {
+                min = i;
+            }
+            if (y > series.getY(max)) {
+                max = i;
+            }
+        }
+        appendColumn(series, first, min, max, last);
+    }
+
+    /**
+     * Append the distinct points of a column in the original order.
+     */
+    private void appendColumn(PointSeries series, int first, int min, int max, int last) {
+        append(series, first);
+        final int low = Math.min(min, max);
+        final int high = Math.max(min, max);
+        if (low != first && low != last) {
+            append(series, low);
+        }
+        if (high != low && high != last) {
+            append(series, high);
+        }
+        if (last != first) {
+            append(series, last);
+        }
+    }
+
+    private void decimateLTTB(PointSeries series, int threshold) {
+        final int size = series.size();
+        if (size <= threshold || threshold < 3) {
+            copy(series, 0, size);
+            return;
+        }
+        mSize = 0;
+        // the first and the last points are always kept
+        append(series, 0);
+        final double bucketSize = (double) (size - 2) / (threshold - 2);
+        int selected = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // the average of the next bucket is the third vertex of the triangle
+            final int nextFrom = (int) ((bucket + 1) * bucketSize) + 1;
+            final int nextTo = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+            float avgX = 0, avgY = 0;
+            for (int i = nextFrom; i < nextTo; i++) {
+                avgX += series.getX(i);
+                avgY += series.getY(i);
+            }
+            final int nextCount = nextTo - nextFrom;
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            final int from = (int) (bucket * bucketSize) + 1;
+            final int to = (int) ((bucket + 1) * bucketSize) + 1;
+            final float ax = series.getX(selected);
+            final float ay = series.getY(selected);
+            float maxArea = -1;
+            int maxIndex = from;
+            for (int i = from; i < to; i++) {
+                // twice the triangle area; the factor doesn't matter
+                final float area = Math.abs((ax - avgX) * (series.getY(i) - ay)
+                        - (ax - series.getX(i)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            append(series, maxIndex);
+            selected = maxIndex;
+        }
+        append(series, size - 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.kyivaigroup.bluetoothsdpsensor.chart;
+
+/**
+ * A read-only sequence of (x, y) points with x in ascending order.
+ */
+public abstract class PointSeries {
+    public static final int ROUND_DOWN = -1;
+    public static final int ROUND_CLOSEST = 0;
+    public static final int ROUND_UP = 1;
+
+    public abstract int size();
+
+    /**
+     * @param index the point index, 0 is the first point
+     */
+    public abstract float getX(int index);
+
+    /**
+     * @param index the point index, 0 is the first point
+     */
+    public abstract float getY(int index);
+
+    /**
+     * @param x        the x to look up
+     * @param rounding {@link #ROUND_DOWN}, {@link #ROUND_CLOSEST} or {@link #ROUND_UP}
+     * @return the index of the point with x closest to the given one, or -1 if empty
+     */
+    public int indexOfX(float x, int rounding) {
+        final int size = size();
+        if (size == 0) {
+            return -1;
+        }
+        // the first index with getX(index) >= x
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getX(mid) < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < size && getX(low) == x) {
+            return low;
+        }
+        switch (rounding) {
+            case ROUND_UP:
+                return Math.min(low, size - 1);
+            case ROUND_DOWN:
+                return Math.max(low - 1, 0);
+            default:
+                if (low == 0) {
+                    return 0;
+                }
+                if (low == size) {
+                    return size - 1;
+                }
+                return x - getX(low - 1) <= getX(low) - x ? low - 1 : low;
+        }
+    }
+}
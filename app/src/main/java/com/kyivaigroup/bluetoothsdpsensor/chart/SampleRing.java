@@ -0,0 +1,184 @@
+package com.kyivaigroup.bluetoothsdpsensor.chart;
+
+/**
+ * A fixed-capacity ring of raw sensor samples: device time ticks in
+ * microseconds, in ascending order, and raw int16 values.
+ * <p>
+ * Points are read in seconds and physical units: x = tick / 1e6 and
+ * y = value * scale. The conversion is applied on read, so changing the
+ * {@link #setScaleY(float) scale} is O(1) whatever the number of buffered
+ * samples.
+ * <p>
+ * Appending a point to a full ring evicts the oldest one. The min and max
+ * of the values are maintained incrementally with monotonic queues, so
+ * appending is O(1) amortized and nothing is allocated after the construction.
+ */
+public class SampleRing extends PointSeries {
+    private final long[] mTicks;
+    private final short[] mValues;
+    private final int mMask;
+    private long mFirst;  // the sequence number of the oldest point
+    private long mEnd;    // the sequence number of the next point
+    private float mScaleY = 1;
+
+    // Sequence numbers of the points that can still become the min or max
+    private final MonotonicQueue mMinQueue;
+    private final MonotonicQueue mMaxQueue;
+
+    /**
+     * @param capacity the max number of points, a power of two
+     */
+    public SampleRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mTicks = new long[capacity];
+        mValues = new short[capacity];
+        mMask = capacity - 1;
+        mMinQueue = new MonotonicQueue(capacity, false);
+        mMaxQueue = new MonotonicQueue(capacity, true);
+    }
+
+    public int capacity() {
+        return mTicks.length;
+    }
+
+    @Override
+    public int size() {
+        return (int) (mEnd - mFirst);
+    }
+
+    /**
+     * Remove all the points. The scale is kept.
+     */
+    public void clear() {
+        mFirst = mEnd;
+        mMinQueue.clear();
+        mMaxQueue.clear();
+    }
+
+    /**
+     * @param tick  the device time in us
+     * @param value the raw sensor value
+     */
+    public void add(long tick, short value) {
+        if (size() == mTicks.length) {
+            mFirst++;
+            mMinQueue.evictBefore(mFirst);
+            mMaxQueue.evictBefore(mFirst);
+        }
+        final int slot = (int) mEnd & mMask;
+        mTicks[slot] = tick;
+        mValues[slot] = value;
+        mMinQueue.push(mEnd);
+        mMaxQueue.push(mEnd);
+        mEnd++;
+    }
+
+    /**
+     * @param index the point index, 0 is the oldest point
+     * @return the time in seconds
+     */
+    @Override
+    public float getX(int index) {
+        return (float) (getTick(index) / 1e6);
+    }
+
+    /**
+     * @param index the point index, 0 is the oldest point
+     * @return the time in us
+     */
+    public long getTick(int index) {
+        return mTicks[(int) (mFirst + index) & mMask];
+    }
+
+    /**
+     * @param index the point index, 0 is the oldest point
+     * @return the raw value
+     */
+    public short getValue(int index) {
+        return mValues[(int) (mFirst + index) & mMask];
+    }
+
+    /**
+     * @param index the point index, 0 is the oldest point
+     * @return the scaled value
+     */
+    @Override
+    public float getY(int index) {
+        return mValues[(int) (mFirst + index) & mMask] * mScaleY;
+    }
+
+    public float getMinX() {
+        return size() > 0 ? getX(0) : 0;
+    }
+
+    public float getMaxX() {
+        return size() > 0 ? getX(size() - 1) : 0;
+    }
+
+    public float getMinY() {
+        return mMinQueue.isEmpty() ? 0 : mValues[(int) mMinQueue.peek() & mMask] * mScaleY;
+    }
+
+    public float getMaxY() {
+        return mMaxQueue.isEmpty() ? 0 : mValues[(int) mMaxQueue.peek() & mMask] * mScaleY;
+    }
+
+    /**
+     * @param scale the positive factor of y; the order of y is preserved
+     */
+    public void setScaleY(float scale) {
+        mScaleY = scale;
+    }
+
+    public float getScaleY() {
+        return mScaleY;
+    }
+
+    /**
+     * A deque of sequence numbers whose values are monotonic:
+     * increasing for the min queue, decreasing for the max queue.
+     */
+    private class MonotonicQueue {
+        private final long[] mSeq;
+        private final boolean mMax;
+        private int mHead;
+        private int mTail;
+
+        MonotonicQueue(int capacity, boolean max) {
+            mSeq = new long[capacity];
+            mMax = max;
+        }
+
+        boolean isEmpty() {
+            return mHead == mTail;
+        }
+
+        long peek() {
+            return mSeq[mHead & mMask];
+        }
+
+        void clear() {
+            mHead = mTail;
+        }
+
+        void push(long seq) {
+            final short y = mValues[(int) seq & mMask];
+            while (mTail != mHead) {
+                final short last = mValues[(int) mSeq[(mTail - 1) & mMask] & mMask];
+                if (mMax ? last > y : last < y) {
+                    break;
+                }
+                mTail--;
+            }
+            mSeq[mTail++ & mMask] = seq;
+        }
+
+        void evictBefore(long first) {
+            while (mHead != mTail && mSeq[mHead & mMask] < first) {
+                mHead++;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.util.zip.CRC32;
+
+/**
+ * Decodes binary sample frames, sent by the firmware in the binary mode
+ * (see {@link com.kyivaigroup.bluetoothsdpsensor.Constants#BINARY_MODE}).
+ * <p>
+ * Once the {@link SerialParser} is in the binary mode, a frame starts
+ * where a text line would start:
+ * <pre>
+ *   0xA5        frame start
+ *   u16 LE      payload length N
+ *   N bytes     payload:
+ *                 varint  sample count
+ *                 varint  clock tick of the first sample, us since boot
+ *                 count x {varint time to prev sample in us, int16 LE diff pressure raw}
+ *   u32 LE      CRC-32 of the payload
+ * </pre>
+ * Varints are unsigned LEB128. Frames with a wrong CRC or a malformed
+ * payload are dropped.
+ */
+public class BinaryFrameDecoder {
+    public static final byte FRAME_START = (byte) 0xA5;
+    public static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_LENGTH = 1;
+    private static final int STATE_PAYLOAD = 2;
+    private static final int STATE_CRC = 3;
+
+    private final byte[] mPayload = new byte[MAX_PAYLOAD_SIZE];
+    private final CRC32 mCrc = new CRC32();
+    private int mState = STATE_IDLE;
+    private int mLength;
+    private int mPosition;
+    private long mFrameCrc;
+
+    // read from other threads for the status
+    private volatile long mFramesDecoded;
+    private volatile long mFramesCorrupted;
+
+    /**
+     * @return true if a frame is being received
+     */
+    public boolean isReceiving() {
+        return mState != STATE_IDLE;
+    }
+
+    /**
+     * Begin a new frame. The {@link #FRAME_START} byte has been consumed.
+     */
+    public void start() {
+        mState = STATE_LENGTH;
+        mLength = 0;
+        mPosition = 0;
+        mFrameCrc = 0;
+    }
+
+    /**
+     * Consume the frame bytes, up to the end of the frame.
+     *
+     * @param data    the received bytes
+     * @param offset  the first byte to consume
+     * @param size    the end of the received bytes
+     * @param samples the batch to append the decoded samples to
+     * @return the index of the first byte after the consumed ones
+     */
+    public int receive(byte[] data, int offset, int size, SampleBatch samples) {
+        int i = offset;
+        while (i < size && mState != STATE_IDLE) {
+            switch (mState) {
+                case STATE_LENGTH:
+                    mLength |= (data[i++] & 0xFF) << (8 * mPosition);
+                    if (++mPosition == 2) {
+                        mPosition = 0;
+                        mState = mLength > 0 ? STATE_PAYLOAD : STATE_IDLE;
+                        if (mLength == 0) {
+                            mFramesCorrupted++;
+                        }
+                    }
+                    break;
+                case STATE_PAYLOAD: {
+                    final int count = Math.min(size - i, mLength - mPosition);
+                    System.arraycopy(data, i, mPayload, mPosition, count);
+                    i += count;
+                    mPosition += count;
+                    if (mPosition == mLength) {
+                        mPosition = 0;
+                        mState = STATE_CRC;
+                    }
+                    break;
+                }
+                case STATE_CRC:
+                    mFrameCrc |= (data[i++] & 0xFFL) << (8 * mPosition);
+                    if (++mPosition == 4) {
+                        mState = STATE_IDLE;
+                        onFrame(samples);
+                    }
+                    break;
+            }
+        }
+        return i;
+    }
+
+    public long getFramesDecoded() {
+        return mFramesDecoded;
+    }
+
+    public long getFramesCorrupted() {
+        return mFramesCorrupted;
+    }
+
+    private void onFrame(SampleBatch samples) {
+        mCrc.reset();
+        mCrc.update(mPayload, 0, mLength);
+        if (mCrc.getValue() == mFrameCrc && decodePayload(samples)) {
+            mFramesDecoded++;
+        } else {
+            mFramesCorrupted++;
+        }
+    }
+
+    private boolean decodePayload(SampleBatch samples) {
+        final int batchLength = samples.length;
+        mPosition = 0;
+        final long count = readVarint();
+        final long clockTick = readVarint();
+        for (long k = 0; k < count && clockTick >= 0; k++) {
+            final long time = readVarint();
+            if (time < 0 || mPosition + 2 > mLength) {
+                break;
+            }
+            final short diffPressure = (short) ((mPayload[mPosition] & 0xFF) | (mPayload[mPosition + 1] << 8));
+            mPosition += 2;
+            samples.add(diffPressure, time);
+            if (k == 0) {
+                samples.setLastClockTick(clockTick);
+            }
+        }
+        if (count < 0 || samples.length - batchLength != count || mPosition != mLength) {
+            // roll back the samples of this frame
+            samples.length = batchLength;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the next varint of the payload or -1 if it's malformed
+     */
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 63 && mPosition < mLength; shift += 7) {
+            final byte item = mPayload[mPosition++];
+            value |= (long) (item & 0x7F) << shift;
+            if (item >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,66 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.util.zip.CRC32;
+
+/**
+ * Encodes samples into the frames read by {@link BinaryFrameDecoder}.
+ */
+public class BinaryFrameEncoder {
+    private static final int FRAME_OVERHEAD = 1 + 2 + 4;
+    private static final int MAX_VARINT_SIZE = 10;  // 64 bits, 7 per byte
+
+    private final CRC32 mCrc = new CRC32();
+
+    /**
+     * @param count the number of samples in a frame
+     * @return the max size of the encoded frame
+     */
+    public static int maxFrameSize(int count) {
+        return FRAME_OVERHEAD + 2 * MAX_VARINT_SIZE + count * (MAX_VARINT_SIZE + 2);
+    }
+
+    /**
+     * Encode samples {@code [from, to)} of a batch as one frame.
+     *
+     * @param samples   the samples to encode
+     * @param from      the first sample
+     * @param to        the end of the samples
+     * @param clockTick the clock tick of the first sample, us since boot
+     * @param out       the output buffer of at least {@link #maxFrameSize(int)} bytes
+     * @param offset    the offset in the output buffer
+     * @return the frame size
+     */
+    public int encode(SampleBatch samples, int from, int to, long clockTick, byte[] out, int offset) {
+        final int payloadStart = offset + 3;
+        int position = writeVarint(to - from, out, payloadStart);
+        position = writeVarint(clockTick, out, position);
+        for (int i = from; i < to; i++) {
+            position = writeVarint(samples.timeDelta[i], out, position);
+            out[position++] = (byte) samples.diffPressureRaw[i];
+            out[position++] = (byte) (samples.diffPressureRaw[i] >> 8);
+        }
+        final int length = position - payloadStart;
+        if (length > BinaryFrameDecoder.MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Too many samples in a frame: " + (to - from));
+        }
+        out[offset] = BinaryFrameDecoder.FRAME_START;
+        out[offset + 1] = (byte) length;
+        out[offset + 2] = (byte) (length >> 8);
+        mCrc.reset();
+        mCrc.update(out, payloadStart, length);
+        final long crc = mCrc.getValue();
+        for (int k = 0; k < 4; k++) {
+            out[position++] = (byte) (crc >> (8 * k));
+        }
+        return position - offset;
+    }
+
+    private static int writeVarint(long value, byte[] out, int position) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
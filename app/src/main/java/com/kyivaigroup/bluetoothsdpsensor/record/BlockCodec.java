@@ -0,0 +1,128 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses a block of samples for {@link RecordingFormat#VERSION_COMPRESSED}.
+ * <p>
+ * The sample period is nearly constant and the diff pressure changes
+ * little from one sample to the next, so each sample is stored as two
+ * small numbers:
+ * <ul>
+ *     <li>the delta of delta of the tick: 0 or +-1 us most of the time;</li>
+ *     <li>the delta of the raw value.</li>
+ * </ul>
+ * Both are zigzag encoded, so that small negative numbers are small too,
+ * and written as varints: 7 bits per byte, the high bit set on all the
+ * bytes but the last. A typical sample takes 2 bytes instead of 6.
+ * The deltas start from the first tick of the block and from 0, so each
+ * block is decoded on its own.
+ */
+public final class BlockCodec {
+    /**
+     * The largest encoded size of a sample: a 64-bit and a 17-bit varint.
+     */
+    public static final int MAX_SAMPLE_SIZE = 10 + 3;
+
+    private BlockCodec() {
+    }
+
+    /**
+     * @param ticks     the sample times in us
+     * @param values    the raw values
+     * @param count     the number of samples
+     * @param out       receives the encoded bytes, {@code count * MAX_SAMPLE_SIZE} at most
+     * @param offset    the position of the first encoded byte
+     * @return the number of bytes written to the output
+     */
+    public static int encode(long[] ticks, short[] values, int count, byte[] out, int offset) {
+        int pos = offset;
+        long prevTick = count > 0 ? ticks[0] : 0;
+        long prevDelta = 0;
+        int prevValue = 0;
+        for (int i = 0; i < count; i++) {
+            final long delta = ticks[i] - prevTick;
+            pos = putVarint(out, pos, zigzag(delta - prevDelta));
+            prevTick = ticks[i];
+            prevDelta = delta;
+
+            final int value = values[i];
+            pos = putVarint(out, pos, zigzag(value - prevValue));
+            prevValue = value;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * @param in        the encoded bytes
+     * @param position  the position of the first encoded byte
+     * @param end       the position after the last encoded byte
+     * @param count     the number of samples to decode
+     * @param firstTick the time of the first sample in us
+     * @param ticks     receives the sample times in us
+     * @param values    receives the raw values
+     * @throws IOException if the samples don't end exactly at the end
+     */
+    public static void decode(ByteBuffer in, int position, int end, int count, long firstTick,
+                              long[] ticks, short[] values) throws IOException {
+        int pos = position;
+        long tick = firstTick;
+        long delta = 0;
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            // an inlined varint: the position and the value can't be returned together
+            long bits = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos == end || shift > 63) {
+                    throw corrupted(i);
+                }
+                b = in.get(pos++);
+                bits |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            delta += unzigzag(bits);
+            tick += delta;
+            ticks[i] = tick;
+
+            bits = 0;
+            shift = 0;
+            do {
+                if (pos == end || shift > 63) {
+                    throw corrupted(i);
+                }
+                b = in.get(pos++);
+                bits |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += (int) unzigzag(bits);
+            values[i] = (short) value;
+        }
+        if (pos != end) {
+            throw new IOException("Corrupted block: " + (end - pos) + " bytes after " + count + " samples");
+        }
+    }
+
+    private static IOException corrupted(int sample) {
+        return new IOException("Corrupted block: sample " + sample + " is cut or too long");
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static int putVarint(byte[] out, int pos, long n) {
+        while ((n & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out[pos++] = (byte) n;
+        return pos;
+    }
+}
@@ -0,0 +1,62 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffers the bytes in a direct buffer and writes them to a channel in large chunks.
+ */
+public class ChannelOutputStream extends OutputStream {
+    private final WritableByteChannel mChannel;
+    private final ByteBuffer mBuffer;
+
+    public ChannelOutputStream(WritableByteChannel channel, int bufferSize) {
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!mBuffer.hasRemaining()) {
+            drain();
+        }
+        mBuffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!mBuffer.hasRemaining()) {
+                drain();
+            }
+            final int n = Math.min(len, mBuffer.remaining());
+            mBuffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void drain() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            mChannel.close();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * A hole in the samples left by a lost connection, on the {@link Timeline}.
+ */
+public class Gap {
+    public final long startUs;     // the time of the last sample before the gap
+    public final long durationUs;  // to the first sample after the gap
+
+    public Gap(long startUs, long durationUs) {
+        this.startUs = startUs;
+        this.durationUs = durationUs;
+    }
+
+    public long getEndUs() {
+        return startUs + durationUs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.getDefault(), "gap of %.3f s at %.3f s", durationUs / 1e6, startUs / 1e6);
+    }
+}
@@ -0,0 +1,45 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * The state of the receiving side of the connection, as opposed to the
+ * device {@link RecordStatus}.
+ */
+public class IngestStatus {
+    public final int ringOccupancy;     // bytes waiting to be parsed
+    public final int ringMaxOccupancy;
+    public final int ringCapacity;
+    public final long overflowChunks;   // socket reads dropped because the ring was full
+    public final long overflowBytes;
+    public final int batchSamples;      // the number of samples in this batch
+    public final long batchAgeUs;       // how long the oldest sample waited to be dispatched
+    public final long framesDecoded;    // binary frames, in total
+    public final long framesCorrupted;  // binary frames dropped: a wrong CRC or length
+
+    public IngestStatus(int ringOccupancy, int ringMaxOccupancy, int ringCapacity,
+                        long overflowChunks, long overflowBytes,
+                        int batchSamples, long batchAgeUs,
+                        long framesDecoded, long framesCorrupted) {
+        this.ringOccupancy = ringOccupancy;
+        this.ringMaxOccupancy = ringMaxOccupancy;
+        this.ringCapacity = ringCapacity;
+        this.overflowChunks = overflowChunks;
+        this.overflowBytes = overflowBytes;
+        this.batchSamples = batchSamples;
+        this.batchAgeUs = batchAgeUs;
+        this.framesDecoded = framesDecoded;
+        this.framesCorrupted = framesCorrupted;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.getDefault(),
+                "ring %d/%d bytes (max %d), overflow %d chunks %d bytes, batch %d samples %d us, frames %d (corrupted %d)",
+                ringOccupancy, ringCapacity, ringMaxOccupancy, overflowChunks, overflowBytes,
+                batchSamples, batchAgeUs, framesDecoded, framesCorrupted);
+    }
+}
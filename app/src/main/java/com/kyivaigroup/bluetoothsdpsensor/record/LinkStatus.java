@@ -0,0 +1,41 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * The outages of the connection in a session: how long it took to
+ * reconnect and the gaps left in the samples.
+ */
+public class LinkStatus {
+    public final int reconnects;
+    public final int failedAttempts;    // connection attempts that failed, in total
+    public final long lastReconnectMs;  // from the loss of the connection to the next one
+    public final long maxReconnectMs;
+    public final int gaps;
+    public final long lastGapUs;        // in the samples, on the timeline
+    public final long maxGapUs;
+    public final long totalGapUs;
+
+    public LinkStatus(int reconnects, int failedAttempts, long lastReconnectMs, long maxReconnectMs,
+                      int gaps, long lastGapUs, long maxGapUs, long totalGapUs) {
+        this.reconnects = reconnects;
+        this.failedAttempts = failedAttempts;
+        this.lastReconnectMs = lastReconnectMs;
+        this.maxReconnectMs = maxReconnectMs;
+        this.gaps = gaps;
+        this.lastGapUs = lastGapUs;
+        this.maxGapUs = maxGapUs;
+        this.totalGapUs = totalGapUs;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.getDefault(),
+                "reconnects %d (failed attempts %d), reconnect %d ms (max %d ms), gaps %d, gap %.3f s (max %.3f s, total %.3f s)",
+                reconnects, failedAttempts, lastReconnectMs, maxReconnectMs,
+                gaps, lastGapUs / 1e6, maxGapUs / 1e6, totalGapUs / 1e6);
+    }
+}
@@ -0,0 +1,126 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the device log text into messages as the chars arrive.
+ * <p>
+ * ESP-IDF colors a log message as {@code ESC[0;3Xm<level> (<time>) <tag>: <text>ESC[0m}.
+ * The color codes are stripped, the reset code ends the message. Any other
+ * escape sequence is kept as is.
+ */
+public class LogDecoder {
+    public static final LogLine[] NO_LINES = new LogLine[0];
+
+    private static final char ESC = '\u001B';
+    private static final int MAX_SEQUENCE_LENGTH = 8;
+
+    private static final int STATE_TEXT = 0;
+    private static final int STATE_ESCAPE = 1;    // got ESC
+    private static final int STATE_SEQUENCE = 2;  // got ESC[, collecting the parameters
+
+    private final StringBuilder mText = new StringBuilder();
+    private final StringBuilder mSequence = new StringBuilder(MAX_SEQUENCE_LENGTH);
+    private final List<LogLine> mLines = new ArrayList<>();
+    private int mState = STATE_TEXT;
+
+    public void append(char item) {
+        switch (mState) {
+            case STATE_TEXT:
+                if (item == ESC) {
+                    mState = STATE_ESCAPE;
+                } else {
+                    mText.append(item);
+                }
+                break;
+            case STATE_ESCAPE:
+                if (item == '[') {
+                    mSequence.setLength(0);
+                    mState = STATE_SEQUENCE;
+                } else {
+                    mState = STATE_TEXT;
+                    mText.append(ESC);
+                    append(item);
+                }
+                break;
+            case STATE_SEQUENCE:
+                if (item >= '@' && item <= '~') {
+                    // the final byte of the sequence
+                    mState = STATE_TEXT;
+                    onSequence(item);
+                } else if (mSequence.length() < MAX_SEQUENCE_LENGTH) {
+                    mSequence.append(item);
+                } else {
+                    // not a sequence we know
+                    mState = STATE_TEXT;
+                    mText.append(ESC).append('[').append(mSequence);
+                    append(item);
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the messages completed since the previous call
+     */
+    public LogLine[] consumeLines() {
+        if (mLines.isEmpty()) {
+            return NO_LINES;
+        }
+        LogLine[] lines = mLines.toArray(new LogLine[0]);
+        mLines.clear();
+        return lines;
+    }
+
+    private void onSequence(char command) {
+        if (command == 'm' && isReset()) {
+            emitLine();
+        } else if (command != 'm' || !isColor()) {
+            mText.append(ESC).append('[').append(mSequence).append(command);
+        }
+    }
+
+    private boolean isReset() {
+        return mSequence.length() == 1 && mSequence.charAt(0) == '0';
+    }
+
+    /**
+     * @return true for "0;3<digit>"
+     */
+    private boolean isColor() {
+        return mSequence.length() == 4
+                && mSequence.charAt(0) == '0'
+                && mSequence.charAt(1) == ';'
+                && mSequence.charAt(2) == '3'
+                && mSequence.charAt(3) >= '0' && mSequence.charAt(3) <= '9';
+    }
+
+    private void emitLine() {
+        if (mText.length() > 0) {
+            mLines.add(new LogLine(getLevel(mText), mText.toString()));
+            mText.setLength(0);
+        }
+    }
+
+    /**
+     * @return the level of a message that starts with "<E|W|I> (<digits>)"
+     */
+    private static char getLevel(CharSequence text) {
+        final char level = text.charAt(0);
+        if (level != 'E' && level != 'W' && level != 'I') {
+            return LogLine.LEVEL_NONE;
+        }
+        if (text.length() < 5 || text.charAt(1) != ' ' || text.charAt(2) != '(') {
+            return LogLine.LEVEL_NONE;
+        }
+        int i = 3;
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        if (i == 3 || i == text.length() || text.charAt(i) != ')') {
+            return LogLine.LEVEL_NONE;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,28 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A log message of the device or a line shown in the conversation view.
+ */
+public class LogLine {
+    public static final char LEVEL_NONE = 0;
+
+    public final char level;  // 'E', 'W', 'I' for ESP-IDF log messages; LEVEL_NONE otherwise
+    public final String text;
+
+    public LogLine(char level, String text) {
+        this.level = level;
+        this.text = text;
+    }
+
+    public LogLine(String text) {
+        this(LEVEL_NONE, text);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,206 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Random access to the samples of a recording file mapped into memory.
+ * <p>
+ * Nothing but the header is decoded when the file is opened: a sample is
+ * decoded from the mapping when it's read, and the pages of the file are
+ * loaded by the OS on first access. The mapping is released when the
+ * object is garbage collected.
+ * <p>
+ * A compressed block is decoded as a whole into a cache of one block, so
+ * reading the samples in order decodes each block once. A corrupted block
+ * is only found when it's decoded: the getters then throw an
+ * IllegalStateException caused by the IOException. Not thread-safe.
+ */
+public class MappedRecording {
+    private static final int OFFSETS_POSITION = RecordingFormat.BLOCK_HEADER_SIZE;
+    private static final int VALUES_POSITION = OFFSETS_POSITION + 4 * RecordingFormat.BLOCK_SAMPLES;
+
+    private final RecordingHeader mHeader;
+    private final ByteBuffer mData;  // the blocks
+    private final int mSize;
+    private final int[] mBlockFirst;  // the first sample index of each block; null if all blocks are full
+
+    // Compressed recordings only
+    private final boolean mCompressed;
+    private int[] mBlockPosition;
+    private final long[] mCachedTicks;
+    private final short[] mCachedValues;
+    private int mCachedBlock = -1;
+
+    public MappedRecording(File file) throws IOException {
+        final MappedByteBuffer map;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // the mapping stays valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (map.capacity() < RecordingFormat.PREAMBLE_SIZE) {
+            throw new IOException("Not a recording: " + file);
+        }
+        final int headerEnd = RecordingFormat.PREAMBLE_SIZE + (map.getShort(6) & 0xFFFF);
+        if (map.capacity() < headerEnd) {
+            throw new IOException("Truncated header: " + file);
+        }
+        final byte[] header = new byte[headerEnd];
+        map.get(header);
+        mHeader = RecordingHeader.decode(new DataInputStream(new ByteArrayInputStream(header)));
+
+        map.position(headerEnd);
+        mData = map.slice();
+        mCompressed = mHeader.version == RecordingFormat.VERSION_COMPRESSED;
+        if (mCompressed) {
+            mCachedTicks = new long[RecordingFormat.BLOCK_SAMPLES];
+            mCachedValues = new short[RecordingFormat.BLOCK_SAMPLES];
+        } else {
+            mCachedTicks = null;
+            mCachedValues = null;
+        }
+        final int blocks = mCompressed ? scanCompressedBlocks(file)
+                : mData.capacity() / RecordingFormat.BLOCK_SIZE;
+        int size = 0;
+        int[] blockFirst = null;
+        for (int block = 0; block < blocks; block++) {
+            final int count = mData.getInt(positionOf(block));
+            if (count < 0 || count > RecordingFormat.BLOCK_SAMPLES) {
+                throw new IOException("Corrupted block " + block + ": " + file);
+            }
+            if (count < RecordingFormat.BLOCK_SAMPLES && block < blocks - 1 && blockFirst == null) {
+                // a partial block in the middle: look the blocks up by the sample index
+                blockFirst = new int[blocks];
+                for (int i = 0; i < block; i++) {
+                    blockFirst[i] = i * RecordingFormat.BLOCK_SAMPLES;
+                }
+            }
+            if (blockFirst != null) {
+                blockFirst[block] = size;
+            }
+            size += count;
+        }
+        mSize = size;
+        mBlockFirst = blockFirst;
+    }
+
+    /**
+     * Find the compressed blocks by skipping them. A truncated last block is ignored.
+     *
+     * @return the number of blocks
+     */
+    private int scanCompressedBlocks(File file) throws IOException {
+        final int headerSize = RecordingFormat.COMPRESSED_BLOCK_HEADER_SIZE;
+        int[] positions = new int[16];
+        int blocks = 0;
+        int position = 0;
+        while (position + headerSize <= mData.capacity()) {
+            final int size = mData.getInt(position + 4);
+            if (size < 0 || size > RecordingFormat.MAX_COMPRESSED_SIZE) {
+                throw new IOException("Corrupted block " + blocks + ": " + file);
+            }
+            if (position + headerSize + size > mData.capacity()) {
+                break;
+            }
+            if (blocks == positions.length) {
+                positions = Arrays.copyOf(positions, 2 * blocks);
+            }
+            positions[blocks++] = position;
+            position += headerSize + size;
+        }
+        mBlockPosition = positions;
+        return blocks;
+    }
+
+    public RecordingHeader getHeader() {
+        return mHeader;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the time of the sample in us
+     * @throws IllegalStateException caused by an {@link IOException} if its block is corrupted
+     */
+    public long getTick(int index) {
+        final int block = blockOf(index);
+        final int i = index - firstOf(block);
+        if (mCompressed) {
+            decode(block);
+            return mCachedTicks[i];
+        }
+        final int base = block * RecordingFormat.BLOCK_SIZE;
+        return mData.getLong(base + 4) + mData.getInt(base + OFFSETS_POSITION + 4 * i);
+    }
+
+    /**
+     * @return the raw value of the sample
+     * @throws IllegalStateException caused by an {@link IOException} if its block is corrupted
+     */
+    public short getValue(int index) {
+        final int block = blockOf(index);
+        final int i = index - firstOf(block);
+        if (mCompressed) {
+            decode(block);
+            return mCachedValues[i];
+        }
+        return mData.getShort(block * RecordingFormat.BLOCK_SIZE + VALUES_POSITION + 2 * i);
+    }
+
+    private void decode(int block) {
+        if (block == mCachedBlock) {
+            return;
+        }
+        final int base = mBlockPosition[block];
+        final int position = base + RecordingFormat.COMPRESSED_BLOCK_HEADER_SIZE;
+        try {
+            // the size was checked against the mapping by the scan
+            BlockCodec.decode(mData, position, position + mData.getInt(base + 4),
+                    mData.getInt(base), mData.getLong(base + 8), mCachedTicks, mCachedValues);
+        } catch (IOException e) {
+            // the samples are read through PointSeries, which can't throw a checked exception
+            mCachedBlock = -1;
+            throw new IllegalStateException(e);
+        }
+        mCachedBlock = block;
+    }
+
+    private int positionOf(int block) {
+        return mCompressed ? mBlockPosition[block] : block * RecordingFormat.BLOCK_SIZE;
+    }
+
+    private int firstOf(int block) {
+        return mBlockFirst == null ? block * RecordingFormat.BLOCK_SAMPLES : mBlockFirst[block];
+    }
+
+    private int blockOf(int index) {
+        if (mBlockFirst == null) {
+            return index / RecordingFormat.BLOCK_SAMPLES;
+        }
+        // the last block starting at or before the index
+        int low = 0;
+        int high = mBlockFirst.length - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (mBlockFirst[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
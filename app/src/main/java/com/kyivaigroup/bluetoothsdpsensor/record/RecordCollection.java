@@ -4,18 +4,22 @@ import java.util.List;
 
 public class RecordCollection {
 
-    public final RecordSDP[] recordsSDP;
+    public final SampleBatch samples;
     public final RecordBMP recordBMP;
     public final RecordStatus status;
     public DeviceInfo deviceInfo;
-    public final String[] logs;
+    public IngestStatus ingestStatus;
+    public SyncReply[] syncReplies = SyncReply.NO_REPLIES;
+    public Gap gap;  // before these samples, after a reconnect; null if none
+    public final LogLine[] logs;
 
-    public RecordCollection(List<RecordSDP> recordsSDP, List<RecordBMP> recordBMP,
-                            List<RecordStatus> statuses, String[] logs) {
-        this.recordsSDP = recordsSDP.toArray(new RecordSDP[0]);
+    public RecordCollection(SampleBatch samples, List<RecordBMP> recordBMP,
+                            List<RecordStatus> statuses, LogLine[] logs) {
+        this.samples = samples;
         this.recordBMP = recordBMP.size() > 0 ? recordBMP.get(recordBMP.size() - 1) : null;
         this.status = statuses.size() > 0 ? statuses.get(statuses.size() - 1) : null;
         this.logs = logs;
         this.deviceInfo = null;
+        this.ingestStatus = null;
     }
 }
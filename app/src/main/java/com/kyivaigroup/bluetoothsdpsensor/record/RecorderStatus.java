@@ -0,0 +1,44 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * The state of the capture-to-disk recorder.
+ */
+public class RecorderStatus {
+    public final int segments;             // the number of files opened so far
+    public final long samplesWritten;
+    public final long bytesWritten;
+    public final long writeBytesPerSecond;  // bytes written per second spent writing
+    public final long droppedBatches;       // batches lost because the recorder fell behind
+    public final long droppedSamples;
+    public final int queuedBatches;
+    public final String error;              // the last write error, or null
+
+    public RecorderStatus(int segments, long samplesWritten, long bytesWritten, long writeBytesPerSecond,
+                          long droppedBatches, long droppedSamples, int queuedBatches, String error) {
+        this.segments = segments;
+        this.samplesWritten = samplesWritten;
+        this.bytesWritten = bytesWritten;
+        this.writeBytesPerSecond = writeBytesPerSecond;
+        this.droppedBatches = droppedBatches;
+        this.droppedSamples = droppedSamples;
+        this.queuedBatches = queuedBatches;
+        this.error = error;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String text = String.format(Locale.getDefault(),
+                "%d samples in %d files, %d KB at %d KB/s, dropped %d batches %d samples",
+                samplesWritten, segments, bytesWritten >> 10, writeBytesPerSecond >> 10,
+                droppedBatches, droppedSamples);
+        if (error != null) {
+            text += ", " + error;
+        }
+        return text;
+    }
+}
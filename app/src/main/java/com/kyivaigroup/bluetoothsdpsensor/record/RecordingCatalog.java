@@ -0,0 +1,239 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import com.kyivaigroup.bluetoothsdpsensor.Constants;
+import com.kyivaigroup.bluetoothsdpsensor.chart.Decimator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index of the recordings of a folder, persisted in the folder itself.
+ * The continuous recordings of the {@link Constants#RECORDER_FOLDER} subfolder
+ * are listed too, named by their path relative to the folder.
+ * <p>
+ * {@link #update()} summarizes only the recordings added or changed since
+ * the last update, identified by their size and modification time, so the
+ * list of recordings is shown from the index alone.
+ */
+public class RecordingCatalog {
+    public static final String FILE_NAME = ".catalog";
+
+    private static final int MAGIC = ('S' << 24) | ('D' << 16) | ('P' << 8) | 'C';
+    private static final int VERSION = 2;  // 2: the description has the record id and the tag
+    private static final int PREVIEW_COLUMNS = 128;  // LTTB keeps 2 points per column
+
+    private final File mFolder;
+    private final Map<String, RecordingSummary> mSummaries = new HashMap<>();
+    private boolean mChanged;
+
+    public RecordingCatalog(File folder) {
+        mFolder = folder;
+    }
+
+    /**
+     * Read the index file. A missing or unreadable index is rebuilt by the next update.
+     */
+    public void load() {
+        mSummaries.clear();
+        mChanged = false;
+        File file = new File(mFolder, FILE_NAME);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                RecordingSummary summary = RecordingSummary.read(in);
+                mSummaries.put(summary.fileName, summary);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            mSummaries.clear();
+        }
+    }
+
+    /**
+     * Summarize the new and changed recordings, forget the deleted ones and
+     * save the index if anything changed. The recordings are summarized one
+     * after another; {@link RecordingLoader} does the same in parallel.
+     *
+     * @return true if the index has changed
+     */
+    public boolean update() throws IOException {
+        for (File file : refresh(new ArrayList<>())) {
+            try {
+                put(summarize(file, nameOf(file)));
+            } catch (IOException | RuntimeException e) {
+                // a corrupted recording is not listed
+                e.printStackTrace();
+                remove(nameOf(file));
+            }
+        }
+        return saveIfChanged();
+    }
+
+    /**
+     * Forget the deleted recordings and find the ones to summarize.
+     *
+     * @param upToDate receives the summaries that are still valid
+     * @return the new and changed recordings
+     */
+    List<File> refresh(List<RecordingSummary> upToDate) {
+        Map<String, File> recordings = new HashMap<>();
+        listRecordings(mFolder, "", recordings);
+        listRecordings(new File(mFolder, Constants.RECORDER_FOLDER), Constants.RECORDER_FOLDER + "/", recordings);
+        if (mSummaries.keySet().retainAll(recordings.keySet())) {
+            mChanged = true;
+        }
+        List<File> stale = new ArrayList<>();
+        for (Map.Entry<String, File> entry : recordings.entrySet()) {
+            final File file = entry.getValue();
+            RecordingSummary summary = mSummaries.get(entry.getKey());
+            if (summary != null && summary.fileSize == file.length()
+                    && summary.lastModified == file.lastModified()) {
+                upToDate.add(summary);
+            } else {
+                stale.add(file);
+            }
+        }
+        return stale;
+    }
+
+    private static void listRecordings(File folder, String prefix, Map<String, File> recordings) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(RecordingFormat.EXTENSION)) {
+                recordings.put(prefix + file.getName(), file);
+            }
+        }
+    }
+
+    /**
+     * @return the name of a recording returned by {@link #refresh(List)} in the index
+     */
+    String nameOf(File file) {
+        File parent = file.getParentFile();
+        return parent == null || parent.equals(mFolder) ? file.getName() : parent.getName() + "/" + file.getName();
+    }
+
+    void put(RecordingSummary summary) {
+        mSummaries.put(summary.fileName, summary);
+        mChanged = true;
+    }
+
+    void remove(String fileName) {
+        if (mSummaries.remove(fileName) != null) {
+            mChanged = true;
+        }
+    }
+
+    /**
+     * @return true if the index had changed since it was loaded or saved
+     */
+    boolean saveIfChanged() throws IOException {
+        if (!mChanged) {
+            return false;
+        }
+        save();
+        mChanged = false;
+        return true;
+    }
+
+    /**
+     * @return the summaries sorted by the file name, which starts with the date
+     */
+    public List<RecordingSummary> getSummaries() {
+        List<RecordingSummary> summaries = new ArrayList<>(mSummaries.values());
+        Collections.sort(summaries, (a, b) -> a.fileName.compareTo(b.fileName));
+        return summaries;
+    }
+
+    /**
+     * @param fileName the name of the summary, see {@link #nameOf(File)}
+     */
+    public static RecordingSummary summarize(File file, String fileName) throws IOException {
+        // the size and time are taken before reading, a later change is seen by the next update
+        final long fileSize = file.length();
+        final long lastModified = file.lastModified();
+        MappedRecording recording = new MappedRecording(file);
+        try {
+            return summarize(recording, fileName, fileSize, lastModified);
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) {
+                // a corrupted block
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static RecordingSummary summarize(MappedRecording recording, String fileName,
+                                              long fileSize, long lastModified) {
+        RecordingSeries series = new RecordingSeries(recording);
+        final int size = recording.size();
+        float min = 0, max = 0;
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            final float y = series.getY(i);
+            if (i == 0 || y < min) {
+                min = y;
+            }
+            if (i == 0 || y > max) {
+                max = y;
+            }
+            sum += y;
+        }
+        final float mean = size > 0 ? (float) (sum / size) : 0;
+        final long duration = size > 0 ? recording.getTick(size - 1) - recording.getTick(0) : 0;
+
+        Decimator decimator = new Decimator();
+        final int previewSize = decimator.decimate(series, PREVIEW_COLUMNS, Decimator.Mode.LTTB);
+        final float[] previewX = new float[previewSize];
+        final float[] previewY = new float[previewSize];
+        for (int i = 0; i < previewSize; i++) {
+            previewX[i] = decimator.getX(i);
+            previewY[i] = decimator.getY(i);
+        }
+        String description = recording.getHeader().toString();
+        return new RecordingSummary(fileName, fileSize, lastModified, description,
+                size, duration, min, max, mean, previewX, previewY);
+    }
+
+    private void save() throws IOException {
+        File file = new File(mFolder, FILE_NAME);
+        File temp = new File(mFolder, FILE_NAME + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(mSummaries.size());
+                for (RecordingSummary summary : mSummaries.values()) {
+                    summary.write(out);
+                }
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+}
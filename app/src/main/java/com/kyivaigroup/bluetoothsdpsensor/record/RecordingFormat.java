@@ -0,0 +1,49 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+/**
+ * The layout of a binary recording file, big-endian:
+ * <pre>
+ *   magic       "SDPR"
+ *   version     u16, {@link #VERSION_RAW} or {@link #VERSION_COMPRESSED}
+ *   header size u16, the number of header bytes that follow
+ *   header      model number i32, range Pa i32, pressure scale i32,
+ *               record id i32, start time ms i64, tag (modified UTF-8)
+ *   blocks
+ * </pre>
+ * Each block holds up to {@link #BLOCK_SAMPLES} samples. The raw blocks
+ * have a fixed size, the last one is padded with zeros:
+ * <pre>
+ *   count       i32
+ *   first tick  i64, the time of the first sample in us
+ *   offsets     i32[BLOCK_SAMPLES], the time of each sample from the first tick in us
+ *   values      i16[BLOCK_SAMPLES], the raw diff pressure
+ * </pre>
+ * Fixed-size blocks make the n-th block start at a known offset.
+ * The compressed blocks are encoded by {@link BlockCodec}; their size is
+ * stored so that the blocks can be skipped without decoding:
+ * <pre>
+ *   count       i32
+ *   size        i32, the number of encoded bytes
+ *   first tick  i64, the time of the first sample in us
+ *   samples     u8[size]
+ * </pre>
+ * The diff pressure in Pa is value / pressure scale.
+ */
+public final class RecordingFormat {
+    public static final String EXTENSION = ".sdpr";
+
+    static final int MAGIC = ('S' << 24) | ('D' << 16) | ('P' << 8) | 'R';
+    static final int VERSION_RAW = 1;
+    static final int VERSION_COMPRESSED = 2;
+    static final int VERSION = VERSION_COMPRESSED;  // the latest version
+    static final int PREAMBLE_SIZE = 4 + 2 + 2;
+
+    public static final int BLOCK_SAMPLES = 1024;
+    static final int BLOCK_HEADER_SIZE = 4 + 8;
+    public static final int BLOCK_SIZE = BLOCK_HEADER_SIZE + BLOCK_SAMPLES * (4 + 2);
+    static final int COMPRESSED_BLOCK_HEADER_SIZE = 4 + 4 + 8;
+    static final int MAX_COMPRESSED_SIZE = BLOCK_SAMPLES * BlockCodec.MAX_SAMPLE_SIZE;
+
+    private RecordingFormat() {
+    }
+}
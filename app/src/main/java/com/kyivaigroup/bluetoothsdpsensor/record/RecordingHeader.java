@@ -0,0 +1,98 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The description of a recording that precedes the samples.
+ */
+public class RecordingHeader {
+    public static final int RECORD_ID_UNKNOWN = -1;
+    static final int VERSION_NONE = 0;  // not read from a file
+
+    public final SensorInfo sensorInfo;
+    public final int recordId;
+    public final long startTimeMillis;  // wall clock time of the first sample
+    public final String tag;
+    final int version;  // the file format version it was read with; the writer chooses its own
+
+    public RecordingHeader(SensorInfo sensorInfo, int recordId, long startTimeMillis, String tag) {
+        this(sensorInfo, recordId, startTimeMillis, tag, VERSION_NONE);
+    }
+
+    RecordingHeader(SensorInfo sensorInfo, int recordId, long startTimeMillis, String tag, int version) {
+        this.sensorInfo = sensorInfo;
+        this.recordId = recordId;
+        this.startTimeMillis = startTimeMillis;
+        this.tag = tag;
+        this.version = version;
+    }
+
+    /**
+     * @param version the file format version
+     * @return the encoded header, including the magic and the version
+     */
+    byte[] encode(int version) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(sensorInfo.modelNum);
+        out.writeInt(sensorInfo.rangePa);
+        out.writeInt(sensorInfo.pressureScale);
+        out.writeInt(recordId);
+        out.writeLong(startTimeMillis);
+        out.writeUTF(tag);
+        out.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(RecordingFormat.PREAMBLE_SIZE + header.size());
+        out = new DataOutputStream(bytes);
+        out.writeInt(RecordingFormat.MAGIC);
+        out.writeShort(version);
+        out.writeShort(header.size());
+        header.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the header. The fields after the known ones are skipped by the
+     * header size, so that fields can be appended to the header. A version
+     * newer than {@link RecordingFormat#VERSION} is rejected: its blocks
+     * may not be readable.
+     */
+    static RecordingHeader decode(DataInputStream in) throws IOException {
+        if (in.readInt() != RecordingFormat.MAGIC) {
+            throw new IOException("Not a recording");
+        }
+        final int version = in.readUnsignedShort();
+        if (version > RecordingFormat.VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+        final byte[] header = new byte[in.readUnsignedShort()];
+        in.readFully(header);
+        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(header));
+        SensorInfo sensorInfo = new SensorInfo(fields.readInt(), fields.readInt(), fields.readInt());
+        final int recordId = fields.readInt();
+        final long startTime = fields.readLong();
+        final String tag = fields.readUTF();
+        return new RecordingHeader(sensorInfo, recordId, startTime, tag, version);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String text = sensorInfo.toString();
+        if (recordId != RECORD_ID_UNKNOWN) {
+            text += String.format(Locale.getDefault(), " #%d", recordId);
+        }
+        if (!tag.isEmpty()) {
+            text += " " + tag;
+        }
+        return text;
+    }
+}
@@ -0,0 +1,208 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the summaries of the recordings of a folder on a fixed pool of
+ * worker threads.
+ * <p>
+ * The summaries still valid in the {@link RecordingCatalog} are delivered
+ * first; the new and changed recordings are then summarized in parallel and
+ * delivered one by one as they finish, and so are the legacy text charts,
+ * each converted by {@link TextRecordingConverter} on its own worker. A
+ * recording requested again while it is being converted or summarized is
+ * not read twice: the second load waits for the same result. The index is
+ * saved once a load is complete.
+ */
+public class RecordingLoader {
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    public interface Listener {
+        /**
+         * Called from a worker thread for each recording of the folder.
+         */
+        void onLoaded(RecordingSummary summary);
+
+        /**
+         * Called from a worker thread once all the recordings are delivered.
+         */
+        void onFinished();
+    }
+
+    private final File mFolder;
+    private final RecordingCatalog mCatalog;
+    private final ExecutorService mExecutor;
+    private final Object mLock = new Object();
+
+    // guarded by mLock
+    private boolean mCatalogLoaded;
+    private final Map<String, List<Batch>> mPending = new HashMap<>();
+
+    /**
+     * @param folder  the recordings folder
+     * @param threads the number of recordings summarized at once
+     */
+    public RecordingLoader(File folder, int threads) {
+        mFolder = folder;
+        mCatalog = new RecordingCatalog(folder);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new WorkerFactory());
+        // the pool is idle once the list is shown
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+    }
+
+    public RecordingLoader(File folder) {
+        this(folder, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Load all the recordings of the folder in the background.
+     */
+    public void load(Listener listener) {
+        mExecutor.execute(() -> loadFolder(listener));
+    }
+
+    /**
+     * Cancel the loads in progress; the listeners are not called anymore.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private void loadFolder(Listener listener) {
+        List<RecordingSummary> upToDate = new ArrayList<>();
+        List<File> summarize = new ArrayList<>();
+        List<File> convert = new ArrayList<>();
+        final Batch batch = new Batch(listener);
+        synchronized (mLock) {
+            if (!mCatalogLoaded) {
+                mCatalog.load();
+                mCatalogLoaded = true;
+            }
+            for (File file : mCatalog.refresh(upToDate)) {
+                if (addPending(file, batch)) {
+                    summarize.add(file);
+                }
+            }
+            for (File textFile : TextRecordingConverter.listUnconverted(mFolder)) {
+                // pending under the name of its recording, not converted twice
+                if (addPending(TextRecordingConverter.binaryFileOf(textFile), batch)) {
+                    convert.add(textFile);
+                }
+            }
+        }
+        for (RecordingSummary summary : upToDate) {
+            listener.onLoaded(summary);
+        }
+        for (File file : summarize) {
+            mExecutor.execute(() -> summarize(file, null));
+        }
+        for (File textFile : convert) {
+            mExecutor.execute(() -> summarize(TextRecordingConverter.binaryFileOf(textFile), textFile));
+        }
+        // the counter started at 1 for the up to date summaries
+        batch.done(null);
+    }
+
+    /**
+     * @return true if the recording is not pending yet and must be summarized
+     */
+    private boolean addPending(File file, Batch batch) {
+        final String name = mCatalog.nameOf(file);
+        List<Batch> waiting = mPending.get(name);
+        final boolean added = waiting == null;
+        if (added) {
+            waiting = new ArrayList<>();
+            mPending.put(name, waiting);
+        }
+        // an already pending recording is delivered by the load in progress
+        waiting.add(batch);
+        batch.mRemaining.incrementAndGet();
+        return added;
+    }
+
+    /**
+     * @param textFile the legacy chart to convert into the file first, or null
+     */
+    private void summarize(File file, File textFile) {
+        final String name = mCatalog.nameOf(file);
+        RecordingSummary summary = null;
+        try {
+            if (textFile != null) {
+                TextRecordingConverter.convert(textFile, file);
+            }
+            summary = RecordingCatalog.summarize(file, name);
+        } catch (IOException | RuntimeException e) {
+            // a corrupted recording is not listed; its waiters must be released all the same
+            e.printStackTrace();
+        }
+        List<Batch> waiting;
+        synchronized (mLock) {
+            if (summary != null) {
+                mCatalog.put(summary);
+            } else {
+                mCatalog.remove(name);
+            }
+            waiting = mPending.remove(name);
+        }
+        for (Batch batch : waiting) {
+            batch.done(summary);
+        }
+    }
+
+    private void save() {
+        synchronized (mLock) {
+            try {
+                mCatalog.saveIfChanged();
+            } catch (IOException e) {
+                // the summaries are still valid, only the index file is stale
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * The recordings of one {@link #load(Listener)} call still to be delivered.
+     */
+    private class Batch {
+        private final Listener mListener;
+        private final AtomicInteger mRemaining = new AtomicInteger(1);
+
+        Batch(Listener listener) {
+            mListener = listener;
+        }
+
+        void done(RecordingSummary summary) {
+            if (summary != null) {
+                mListener.onLoaded(summary);
+            }
+            if (mRemaining.decrementAndGet() == 0) {
+                save();
+                mListener.onFinished();
+            }
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, RecordingLoader.class.getSimpleName() + "-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the samples written by {@link RecordingWriter} block by block.
+ */
+public class RecordingReader implements Closeable {
+    private static final int OFFSETS_POSITION = RecordingFormat.BLOCK_HEADER_SIZE;
+    private static final int VALUES_POSITION = OFFSETS_POSITION + 4 * RecordingFormat.BLOCK_SAMPLES;
+
+    private final DataInputStream mIn;
+    private final RecordingHeader mHeader;
+    private final boolean mCompressed;
+    private final byte[] mBlock;
+    private final ByteBuffer mBuffer;
+
+    /**
+     * A block of decoded samples, reused between the reads.
+     */
+    public static class Block {
+        public final long[] ticks = new long[RecordingFormat.BLOCK_SAMPLES];  // in us
+        public final short[] values = new short[RecordingFormat.BLOCK_SAMPLES];
+        public int length;
+    }
+
+    /**
+     * @param in the stream to read from; it's closed with the reader
+     */
+    public RecordingReader(InputStream in) throws IOException {
+        mIn = new DataInputStream(in);
+        mHeader = RecordingHeader.decode(mIn);
+        mCompressed = mHeader.version == RecordingFormat.VERSION_COMPRESSED;
+        mBlock = new byte[mCompressed
+                ? RecordingFormat.COMPRESSED_BLOCK_HEADER_SIZE + RecordingFormat.MAX_COMPRESSED_SIZE
+                : RecordingFormat.BLOCK_SIZE];
+        mBuffer = ByteBuffer.wrap(mBlock);
+    }
+
+    public RecordingHeader getHeader() {
+        return mHeader;
+    }
+
+    /**
+     * @param block the block to fill
+     * @return false at the end of the recording
+     */
+    public boolean read(Block block) throws IOException {
+        try {
+            mIn.readFully(mBlock, 0, 1);
+        } catch (EOFException e) {
+            return false;
+        }
+        if (mCompressed) {
+            readCompressed(block);
+            return true;
+        }
+        mIn.readFully(mBlock, 1, mBlock.length - 1);
+        final int count = readCount();
+        final long firstTick = mBuffer.getLong(4);
+        for (int i = 0; i < count; i++) {
+            block.ticks[i] = firstTick + mBuffer.getInt(OFFSETS_POSITION + 4 * i);
+            block.values[i] = mBuffer.getShort(VALUES_POSITION + 2 * i);
+        }
+        block.length = count;
+        return true;
+    }
+
+    private void readCompressed(Block block) throws IOException {
+        final int headerSize = RecordingFormat.COMPRESSED_BLOCK_HEADER_SIZE;
+        mIn.readFully(mBlock, 1, headerSize - 1);
+        final int count = readCount();
+        final int size = mBuffer.getInt(4);
+        if (size < 0 || size > RecordingFormat.MAX_COMPRESSED_SIZE) {
+            throw new IOException("Corrupted block of " + size + " bytes");
+        }
+        mIn.readFully(mBlock, headerSize, size);
+        BlockCodec.decode(mBuffer, headerSize, headerSize + size, count, mBuffer.getLong(8),
+                block.ticks, block.values);
+        block.length = count;
+    }
+
+    private int readCount() throws IOException {
+        final int count = mBuffer.getInt(0);
+        if (count < 0 || count > RecordingFormat.BLOCK_SAMPLES) {
+            throw new IOException("Corrupted block of " + count + " samples");
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Saves a {@link RecordingSnapshot} atomically: the samples go to a hidden
+ * temporary file in the same folder, which is synced and then renamed, so
+ * the destination either doesn't exist or is complete.
+ */
+public class RecordingSaver {
+    private static final int BUFFER_SIZE = 1 << 18;
+    private static final int PROGRESS_SAMPLES = 16 * RecordingFormat.BLOCK_SAMPLES;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    public interface Listener {
+        /**
+         * Called from the saving thread.
+         *
+         * @param written the number of samples written so far
+         * @param total   the number of samples to write
+         */
+        void onProgress(int written, int total);
+    }
+
+    /**
+     * Blocks until the file is written; call it off the main thread.
+     */
+    public static void save(RecordingSnapshot snapshot, File file, Listener listener) throws IOException {
+        File temp = new File(file.getParentFile(), "." + file.getName() + TEMP_SUFFIX);
+        try {
+            write(snapshot, temp, listener);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    private static void write(RecordingSnapshot snapshot, File temp, Listener listener) throws IOException {
+        FileChannel channel = new FileOutputStream(temp).getChannel();
+        try (ChannelOutputStream out = new ChannelOutputStream(channel, BUFFER_SIZE);
+             RecordingWriter writer = new RecordingWriter(out, snapshot.header, true)) {
+            for (int i = 0; i < snapshot.length; i++) {
+                writer.write(snapshot.ticks[i], snapshot.values[i]);
+                if ((i + 1) % PROGRESS_SAMPLES == 0) {
+                    listener.onProgress(i + 1, snapshot.length);
+                }
+            }
+            writer.flush();
+            // the data must be on disk before the rename makes it visible
+            channel.force(true);
+        }
+        listener.onProgress(snapshot.length, snapshot.length);
+    }
+}
@@ -0,0 +1,31 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import com.kyivaigroup.bluetoothsdpsensor.chart.PointSeries;
+
+/**
+ * The samples of a mapped recording in seconds and Pa, decoded on access.
+ */
+public class RecordingSeries extends PointSeries {
+    private final MappedRecording mRecording;
+    private final float mScale;
+
+    public RecordingSeries(MappedRecording recording) {
+        mRecording = recording;
+        mScale = 1f / recording.getHeader().sensorInfo.pressureScale;
+    }
+
+    @Override
+    public int size() {
+        return mRecording.size();
+    }
+
+    @Override
+    public float getX(int index) {
+        return (float) (mRecording.getTick(index) / 1e6);
+    }
+
+    @Override
+    public float getY(int index) {
+        return mRecording.getValue(index) * mScale;
+    }
+}
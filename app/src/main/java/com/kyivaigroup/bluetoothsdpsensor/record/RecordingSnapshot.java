@@ -0,0 +1,18 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+/**
+ * A copy of samples to be saved, detached from the chart that keeps receiving.
+ */
+public class RecordingSnapshot {
+    public final RecordingHeader header;
+    public final long[] ticks;  // in us
+    public final short[] values;
+    public final int length;
+
+    public RecordingSnapshot(RecordingHeader header, long[] ticks, short[] values, int length) {
+        this.header = header;
+        this.ticks = ticks;
+        this.values = values;
+        this.length = length;
+    }
+}
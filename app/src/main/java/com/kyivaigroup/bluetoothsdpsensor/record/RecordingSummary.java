@@ -0,0 +1,77 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * What is shown of a recording without reading it: the statistics of the
+ * samples and a decimated preview track.
+ */
+public class RecordingSummary {
+    public final String fileName;
+    public final long fileSize;
+    public final long lastModified;  // to detect the changed files
+    public final String description;
+    public final int sampleCount;
+    public final long durationUs;
+    public final float min;  // diff pressure in Pa
+    public final float max;
+    public final float mean;
+    public final float[] previewX;  // time in seconds
+    public final float[] previewY;  // diff pressure in Pa
+
+    public RecordingSummary(String fileName, long fileSize, long lastModified, String description,
+                            int sampleCount, long durationUs, float min, float max, float mean,
+                            float[] previewX, float[] previewY) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.description = description;
+        this.sampleCount = sampleCount;
+        this.durationUs = durationUs;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.previewX = previewX;
+        this.previewY = previewY;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(fileName);
+        out.writeLong(fileSize);
+        out.writeLong(lastModified);
+        out.writeUTF(description);
+        out.writeInt(sampleCount);
+        out.writeLong(durationUs);
+        out.writeFloat(min);
+        out.writeFloat(max);
+        out.writeFloat(mean);
+        out.writeShort(previewX.length);
+        for (int i = 0; i < previewX.length; i++) {
+            out.writeFloat(previewX[i]);
+            out.writeFloat(previewY[i]);
+        }
+    }
+
+    static RecordingSummary read(DataInputStream in) throws IOException {
+        final String fileName = in.readUTF();
+        final long fileSize = in.readLong();
+        final long lastModified = in.readLong();
+        final String description = in.readUTF();
+        final int sampleCount = in.readInt();
+        final long durationUs = in.readLong();
+        final float min = in.readFloat();
+        final float max = in.readFloat();
+        final float mean = in.readFloat();
+        final int previewSize = in.readUnsignedShort();
+        final float[] previewX = new float[previewSize];
+        final float[] previewY = new float[previewSize];
+        for (int i = 0; i < previewSize; i++) {
+            previewX[i] = in.readFloat();
+            previewY[i] = in.readFloat();
+        }
+        return new RecordingSummary(fileName, fileSize, lastModified, description,
+                sampleCount, durationUs, min, max, mean, previewX, previewY);
+    }
+}
@@ -0,0 +1,148 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes samples in the {@link RecordingFormat}, raw or compressed.
+ * Samples are accumulated into a block and the stream sees only whole blocks.
+ */
+public class RecordingWriter implements Closeable {
+    private static final int OFFSETS_POSITION = RecordingFormat.BLOCK_HEADER_SIZE;
+    private static final int VALUES_POSITION = OFFSETS_POSITION + 4 * RecordingFormat.BLOCK_SAMPLES;
+
+    private final OutputStream mOut;
+    private final boolean mCompressed;
+    private final byte[] mBlock;
+    private final ByteBuffer mBuffer;
+    private final long[] mTicks;     // the pending samples of a compressed block
+    private final short[] mValues;
+    private int mCount = 0;
+    private long mFirstTick;
+    private long mSampleCount = 0;
+    private long mBytesWritten;
+
+    /**
+     * @param out        the stream to write to; it's closed with the writer
+     * @param header     the recording description
+     * @param compressed write {@link BlockCodec} blocks instead of the fixed-size ones
+     */
+    public RecordingWriter(OutputStream out, RecordingHeader header, boolean compressed) throws IOException {
+        mOut = out;
+        mCompressed = compressed;
+        if (compressed) {
+            mBlock = new byte[RecordingFormat.COMPRESSED_BLOCK_HEADER_SIZE + RecordingFormat.MAX_COMPRESSED_SIZE];
+            mTicks = new long[RecordingFormat.BLOCK_SAMPLES];
+            mValues = new short[RecordingFormat.BLOCK_SAMPLES];
+        } else {
+            mBlock = new byte[RecordingFormat.BLOCK_SIZE];
+            mTicks = null;
+            mValues = null;
+        }
+        mBuffer = ByteBuffer.wrap(mBlock);
+        final byte[] headerBytes = header.encode(compressed
+                ? RecordingFormat.VERSION_COMPRESSED : RecordingFormat.VERSION_RAW);
+        mOut.write(headerBytes);
+        mBytesWritten = headerBytes.length;
+    }
+
+    /**
+     * Write the fixed-size raw blocks.
+     */
+    public RecordingWriter(OutputStream out, RecordingHeader header) throws IOException {
+        this(out, header, false);
+    }
+
+    /**
+     * @param tick  the time of the sample in us
+     * @param value the raw diff pressure
+     */
+    public void write(long tick, short value) throws IOException {
+        if (mCount > 0) {
+            final long offset = tick - mFirstTick;
+            if (offset > Integer.MAX_VALUE || offset < Integer.MIN_VALUE) {
+                // a gap too long for the block
+                writeBlock();
+            }
+        }
+        if (mCount == 0) {
+            mFirstTick = tick;
+        }
+        if (mCompressed) {
+            mTicks[mCount] = tick;
+            mValues[mCount] = value;
+        } else {
+            mBuffer.putInt(OFFSETS_POSITION + 4 * mCount, (int) (tick - mFirstTick));
+            mBuffer.putShort(VALUES_POSITION + 2 * mCount, value);
+        }
+        mCount++;
+        mSampleCount++;
+        if (mCount == RecordingFormat.BLOCK_SAMPLES) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * @return the number of samples written so far
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * @return the number of bytes passed to the stream so far
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    private void writeBlock() throws IOException {
+        if (mCompressed) {
+            writeCompressedBlock();
+            return;
+        }
+        mBuffer.putInt(0, mCount);
+        mBuffer.putLong(4, mFirstTick);
+        if (mCount < RecordingFormat.BLOCK_SAMPLES) {
+            Arrays.fill(mBlock, OFFSETS_POSITION + 4 * mCount, VALUES_POSITION, (byte) 0);
+            Arrays.fill(mBlock, VALUES_POSITION + 2 * mCount, mBlock.length, (byte) 0);
+        }
+        mOut.write(mBlock);
+        mBytesWritten += mBlock.length;
+        mCount = 0;
+    }
+
+    private void writeCompressedBlock() throws IOException {
+        final int size = BlockCodec.encode(mTicks, mValues, mCount, mBlock,
+                RecordingFormat.COMPRESSED_BLOCK_HEADER_SIZE);
+        mBuffer.putInt(0, mCount);
+        mBuffer.putInt(4, size);
+        mBuffer.putLong(8, mFirstTick);
+        final int length = RecordingFormat.COMPRESSED_BLOCK_HEADER_SIZE + size;
+        mOut.write(mBlock, 0, length);
+        mBytesWritten += length;
+        mCount = 0;
+    }
+
+    /**
+     * Write the pending block, if any, and flush the stream.
+     */
+    public void flush() throws IOException {
+        if (mCount > 0) {
+            writeBlock();
+        }
+        mOut.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mOut.close();
+        }
+    }
+}
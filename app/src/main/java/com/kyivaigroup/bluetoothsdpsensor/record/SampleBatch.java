@@ -0,0 +1,80 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Differential pressure samples stored column-wise. The i-th sample is
+ * {@code diffPressureRaw[i], timeDelta[i], clockTick[i]} for i < length,
+ * and {@code time[i]} once a {@link Timeline} is applied.
+ * <p>
+ * Batches are obtained from a {@link SampleBatchPool} and must be released
+ * by the last consumer to be reused.
+ */
+public class SampleBatch {
+    public short[] diffPressureRaw;
+    public long[] timeDelta;  // time to prev sample in us
+    public long[] clockTick;  // absolute time since boot in us; 0 if unknown
+    public long[] time;       // the timeline in us, monotonic; set by Timeline
+    public int length;
+
+    private final SampleBatchPool mPool;
+    private final AtomicInteger mRefCount = new AtomicInteger();
+
+    SampleBatch(SampleBatchPool pool, int capacity) {
+        mPool = pool;
+        diffPressureRaw = new short[capacity];
+        timeDelta = new long[capacity];
+        clockTick = new long[capacity];
+        time = new long[capacity];
+    }
+
+    public int capacity() {
+        return diffPressureRaw.length;
+    }
+
+    public void add(short diffPressure, long time) {
+        if (length == diffPressureRaw.length) {
+            final int capacity = length * 2;
+            diffPressureRaw = Arrays.copyOf(diffPressureRaw, capacity);
+            timeDelta = Arrays.copyOf(timeDelta, capacity);
+            clockTick = Arrays.copyOf(clockTick, capacity);
+            this.time = Arrays.copyOf(this.time, capacity);
+        }
+        diffPressureRaw[length] = diffPressure;
+        timeDelta[length] = time;
+        clockTick[length] = 0;
+        length++;
+    }
+
+    /**
+     * Set the absolute clock of the last sample, if any.
+     */
+    public void setLastClockTick(long clock) {
+        if (length > 0) {
+            clockTick[length - 1] = clock;
+        }
+    }
+
+    /**
+     * Keep the batch alive for one more consumer that will call {@link #release()}.
+     */
+    public void retain() {
+        mRefCount.incrementAndGet();
+    }
+
+    /**
+     * Return the batch to its pool once every consumer released it.
+     * The batch must not be accessed afterwards.
+     */
+    public void release() {
+        if (mRefCount.decrementAndGet() == 0) {
+            length = 0;
+            mPool.recycle(this);
+        }
+    }
+
+    void acquired() {
+        mRefCount.set(1);
+    }
+}
@@ -0,0 +1,43 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.util.ArrayDeque;
+
+/**
+ * A thread-safe pool of {@link SampleBatch}: batches are filled by the
+ * parser thread and released by the UI thread.
+ */
+public class SampleBatchPool {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int MAX_POOLED = 16;
+
+    private final ArrayDeque<SampleBatch> mBatches = new ArrayDeque<>();
+    private final int mCapacity;
+
+    public SampleBatchPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SampleBatchPool(int capacity) {
+        mCapacity = capacity;
+    }
+
+    public SampleBatch acquire() {
+        SampleBatch batch;
+        synchronized (mBatches) {
+            batch = mBatches.pollLast();
+        }
+        if (batch == null) {
+            batch = new SampleBatch(this, mCapacity);
+        }
+        batch.acquired();
+        return batch;
+    }
+
+    void recycle(SampleBatch batch) {
+        synchronized (mBatches) {
+            if (mBatches.size() < MAX_POOLED) {
+                mBatches.addLast(batch);
+            }
+        }
+    }
+}
@@ -1,95 +1,342 @@
 package com.kyivaigroup.bluetoothsdpsensor.record;
 
-import com.kyivaigroup.bluetoothsdpsensor.Constants;
-
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 public class SerialParser {
-    private final StringBuilder mCommand = new StringBuilder();
-    private final StringBuilder mLog = new StringBuilder();
+    /*
+     * Line formats. Each format is matched byte by byte while the line arrives:
+     *   - FORMAT_DIGITS    one or more decimal digits, stored as a field
+     *   - FORMAT_DIGIT     exactly one decimal digit, stored as a field
+     *   - FORMAT_SIGN      optional '-' of the following digits field
+     *   - any other char   literal that must match exactly
+     */
+    private static final char FORMAT_DIGITS = '#';
+    private static final char FORMAT_DIGIT = '%';
+    private static final char FORMAT_SIGN = '?';
+
+    private static final char[] FORMAT_SDP = "D?#t#".toCharArray();
+    private static final char[] FORMAT_BMP = "P#T#.%H#.%".toCharArray();
+    private static final char[] FORMAT_STATUS = "S# m# r#".toCharArray();
+    private static final char[] FORMAT_INFO = "I# r# s# i# m#".toCharArray();
+    private static final char[] FORMAT_CLOCK = "C#".toCharArray();
+    private static final char[] FORMAT_SYNC = "Y# r# t#".toCharArray();
+
+    private static final int MAX_FIELDS = 5;
+
+    // Line states
+    private static final int LINE_EMPTY = 0;      // nothing received yet
+    private static final int LINE_RECORD = 1;     // matching one of the formats above
+    private static final int LINE_LOG = 2;        // anything else is a log message
+    private static final int LINE_MALFORMED = 3;  // a record line that can't match anymore
+
+    private final LogDecoder mLogDecoder = new LogDecoder();
 
-    private final List<RecordSDP> mRecordsSDP = new ArrayList<>();
+    private final BinaryFrameDecoder mFrameDecoder = new BinaryFrameDecoder();
+    private final SampleBatchPool mBatchPool = new SampleBatchPool();
+    private SampleBatch mSamples = mBatchPool.acquire();
     private final List<RecordBMP> mRecordsBMP = new ArrayList<>();
     private final List<RecordStatus> mRecordsStatus = new ArrayList<>();
+    private final List<SyncReply> mSyncReplies = new ArrayList<>();
+    private long mReceiveNanos;
     private DeviceInfo mDeviceInfo;
+    private volatile boolean mBinaryMode;
 
-    private final static Pattern patternSDP = Pattern.compile("D(-?\\d+)t(\\d+)");
-    private final static Pattern patternBMP = Pattern.compile("P(\\d+)T(\\d+\\.\\d)H(\\d+\\.\\d)");
-    private final static Pattern patternStatus = Pattern.compile("S(\\d+) m(\\d+) r(\\d+)");
-    private final static Pattern patternInfo = Pattern.compile("I(\\d+) r(\\d+) s(\\d+) i(\\d+) m(\\d+)");
-    private final static Pattern patternClock = Pattern.compile("C(\\d+)");
-    private final static Pattern patternLog = Pattern.compile("\\u001B\\[0m");
+    // The state of the line being received
+    private int mLineState = LINE_EMPTY;
+    private char[] mFormat;
+    private int mFormatPos;
+    private final long[] mFields = new long[MAX_FIELDS];
+    private int mFieldCount;
+    private int mFieldDigits;
+    private boolean mNegative;
+    private boolean mOverflow;
+    private final StringBuilder mBmpLine = new StringBuilder();  // the text of a P line
+
+    /**
+     * @param receiveNanos when the bytes were received, System.nanoTime(),
+     *                     to time the clock sync replies
+     */
+    public void receive(byte[] data, int size, long receiveNanos) {
+        mReceiveNanos = receiveNanos;
+        receive(data, size);
+    }
+
+    /**
+     * Decode the binary frames, once the device was asked for them with
+     * {@link com.kyivaigroup.bluetoothsdpsensor.Constants#BINARY_MODE}.
+     * In the text mode, a {@link BinaryFrameDecoder#FRAME_START} byte is
+     * taken for a char of a log line. Can be called from any thread.
+     */
+    public void setBinaryMode(boolean binaryMode) {
+        mBinaryMode = binaryMode;
+    }
 
     public void receive(byte[] data, int size) {
-        for (int i = 0; i < size; i++) {
-            char item = (char) data[i];
+        final boolean binaryMode = mBinaryMode;
+        int i = 0;
+        while (i < size) {
+            if (mFrameDecoder.isReceiving()) {
+                i = mFrameDecoder.receive(data, i, size, mSamples);
+                continue;
+            }
+            if (binaryMode && data[i] == BinaryFrameDecoder.FRAME_START && mLineState == LINE_EMPTY) {
+                // binary frames are sent in place of text lines
+                mFrameDecoder.start();
+                i++;
+                continue;
+            }
+            char item = (char) data[i++];
             switch (item) {
                 case '\r':
                     // ignore \r
                     break;
                 case '\n':
                     process();
-                    mCommand.setLength(0);
+                    mLineState = LINE_EMPTY;
                     break;
                 default:
-                    mCommand.append(item);
+                    consume(item);
                     break;
             }
         }
     }
 
+    public BinaryFrameDecoder getFrameDecoder() {
+        return mFrameDecoder;
+    }
+
     public boolean hasRecords() {
-        return mRecordsSDP.size() > 0;
+        return mSamples.length > 0;
+    }
+
+    /**
+     * @return the number of samples to be consumed
+     */
+    public int getSampleCount() {
+        return mSamples.length;
     }
 
     public RecordCollection consumeRecords() {
-        String logStr = mLog.toString().replaceAll("\\u001B\\[0;3\\dm", "");
-        String[] logs = patternLog.split(logStr);
-        mLog.setLength(0);
-        if (!logStr.endsWith(Constants.ANSI_RESET)) {
-            mLog.append(logs[logs.length - 1]);
-            logs = Arrays.copyOf(logs, logs.length - 1);
-        }
-        RecordCollection collection = new RecordCollection(mRecordsSDP, mRecordsBMP, mRecordsStatus, logs);
+        LogLine[] logs = mLogDecoder.consumeLines();
+        // the collection takes the ownership of the batch
+        RecordCollection collection = new RecordCollection(mSamples, mRecordsBMP, mRecordsStatus, logs);
+        mSamples = mBatchPool.acquire();
         if (mDeviceInfo != null) {
             collection.deviceInfo = mDeviceInfo;
             mDeviceInfo = null;  // obtain the info only once
         }
-        mRecordsSDP.clear();
+        if (!mSyncReplies.isEmpty()) {
+            collection.syncReplies = mSyncReplies.toArray(new SyncReply[0]);
+            mSyncReplies.clear();
+        }
         mRecordsBMP.clear();
         mRecordsStatus.clear();
         return collection;
     }
 
+    private void consume(char item) {
+        switch (mLineState) {
+            case LINE_EMPTY:
+                startLine(item);
+                break;
+            case LINE_RECORD:
+                if (mFormat == FORMAT_BMP) {
+                    // kept for the fields too large to be parsed digit by digit
+                    mBmpLine.append(item);
+                }
+                match(item);
+                break;
+            case LINE_LOG:
+                mLogDecoder.append(item);
+                break;
+            case LINE_MALFORMED:
+                // skip until the end of the line
+                break;
+        }
+    }
+
+    private void startLine(char item) {
+        switch (item) {
+            case 'D':
+                mFormat = FORMAT_SDP;
+                break;
+            case 'P':
+                mFormat = FORMAT_BMP;
+                mBmpLine.setLength(0);
+                break;
+            case 'S':
+                mFormat = FORMAT_STATUS;
+                break;
+            case 'C':
+                mFormat = FORMAT_CLOCK;
+                break;
+            case 'I':
+                mFormat = FORMAT_INFO;
+                break;
+            case 'Y':
+                mFormat = FORMAT_SYNC;
+                break;
+            default:
+                // log lines are not separated: messages end with Constants.ANSI_RESET
+                mLineState = LINE_LOG;
+                mLogDecoder.append(item);
+                return;
+        }
+        mLineState = LINE_RECORD;
+        mFormatPos = 1;
+        mFieldCount = 0;
+        mFieldDigits = 0;
+        mNegative = false;
+        mOverflow = false;
+    }
+
+    /**
+     * Match the next char of a record line against the current format.
+     */
+    private void match(char item) {
+        while (mFormatPos < mFormat.length) {
+            char expected = mFormat[mFormatPos];
+            switch (expected) {
+                case FORMAT_SIGN:
+                    mFormatPos++;
+                    if (item == '-') {
+                        mNegative = true;
+                        return;
+                    }
+                    // no sign; match the item against the digits field
+                    break;
+                case FORMAT_DIGITS:
+                    if (isDigit(item)) {
+                        appendDigit(item);
+                        return;
+                    }
+                    if (mFieldDigits == 0) {
+                        mLineState = LINE_MALFORMED;
+                        return;
+                    }
+                    endField();
+                    // the field is over; match the item against the next literal
+                    break;
+                case FORMAT_DIGIT:
+                    if (isDigit(item)) {
+                        appendDigit(item);
+                        endField();
+                    } else {
+                        mLineState = LINE_MALFORMED;
+                    }
+                    return;
+                default:
+                    if (item == expected) {
+                        mFormatPos++;
+                    } else {
+                        mLineState = LINE_MALFORMED;
+                    }
+                    return;
+            }
+        }
+        // trailing chars after a complete record
+        mLineState = LINE_MALFORMED;
+    }
+
+    private static boolean isDigit(char item) {
+        return item >= '0' && item <= '9';
+    }
+
+    private void appendDigit(char item) {
+        final int digit = item - '0';
+        final long value = mFields[mFieldCount];
+        if (mFieldDigits == 0) {
+            mFields[mFieldCount] = digit;
+        } else if (value > (Long.MAX_VALUE - digit) / 10) {
+            mOverflow = true;
+        } else {
+            mFields[mFieldCount] = value * 10 + digit;
+        }
+        mFieldDigits++;
+    }
+
+    private void endField() {
+        mFieldCount++;
+        mFieldDigits = 0;
+        mFormatPos++;
+    }
+
+    /**
+     * @return true if the whole format has been matched
+     */
+    private boolean isLineComplete() {
+        if (mLineState != LINE_RECORD || mOverflow && mFormat != FORMAT_BMP) {
+            // only the floats of a P line can take a field too large for a long
+            return false;
+        }
+        if (mFormatPos == mFormat.length - 1 && mFormat[mFormatPos] == FORMAT_DIGITS && mFieldDigits > 0) {
+            // the last field is terminated by the end of the line
+            endField();
+        }
+        return mFormatPos == mFormat.length;
+    }
+
+    private static boolean isInt(long value) {
+        return value <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return true if "intPart.fraction" can be parsed with {@link #parseTenths(long, long)}
+     */
+    private static boolean isSmallTenths(long intPart) {
+        // then intPart * 10 + fraction < 2^24
+        return intPart < (1 << 24) / 10;
+    }
+
+    /**
+     * @return the float closest to "intPart.fraction", same as Float.parseFloat()
+     */
+    private static float parseTenths(long intPart, long fraction) {
+        // both operands are exact floats: the division is correctly rounded
+        return (intPart * 10 + fraction) / 10f;
+    }
+
+    /**
+     * Parse a P line with Float.parseFloat(), for the fields too large for
+     * {@link #parseTenths(long, long)}. Rare: the line is matched already.
+     */
+    private void processBmpText() {
+        final String line = mBmpLine.toString();
+        final int temperature = line.indexOf('T');
+        final int humidity = line.indexOf('H');
+        mRecordsBMP.add(new RecordBMP(
+                Float.parseFloat(line.substring(0, temperature)),
+                Float.parseFloat(line.substring(temperature + 1, humidity)),
+                Float.parseFloat(line.substring(humidity + 1))));
+    }
+
     private void process() {
-        if (mCommand.length() == 0) {
+        if (!isLineComplete()) {
             return;
         }
-        switch (mCommand.charAt(0)) {
+        final long[] fields = mFields;
+        switch (mFormat[0]) {
             case 'D': {
                 // Diff pressure, time: D<int16>t<int64>
-                Matcher matcher = patternSDP.matcher(mCommand);
-                if (matcher.matches()) {
-                    short dp = Short.parseShort(matcher.group(1));
-                    long time = Long.parseLong(matcher.group(2));
-                    mRecordsSDP.add(new RecordSDP(dp, time));
+                long dp = mNegative ? -fields[0] : fields[0];
+                if (dp >= Short.MIN_VALUE && dp <= Short.MAX_VALUE) {
+                    mSamples.add((short) dp, fields[1]);
                 }
                 break;
             }
             case 'P': {
                 // Atm. pressure, temperature, humidity: P<float>T<float>H<float>
-                Matcher matcher = patternBMP.matcher(mCommand);
-                if (matcher.matches()) {
-                    float pressure = Float.parseFloat(matcher.group(1));
-                    float temperature = Float.parseFloat(matcher.group(2));
-                    float humidity = Float.parseFloat(matcher.group(3));
-                    mRecordsBMP.add(new RecordBMP(pressure, temperature, humidity));
+                if (mOverflow || !isSmallTenths(fields[1]) || !isSmallTenths(fields[3])) {
+                    processBmpText();
+                    break;
                 }
+                // a long to float conversion is correctly rounded, as Float.parseFloat()
+                float pressure = (float) fields[0];
+                float temperature = parseTenths(fields[1], fields[2]);
+                float humidity = parseTenths(fields[3], fields[4]);
+                mRecordsBMP.add(new RecordBMP(pressure, temperature, humidity));
                 break;
             }
             case 'S': {
@@ -99,45 +346,30 @@ public class SerialParser {
                  *   - m<int> max queue size
                  *   - r<long> max read duration
                  */
-                Matcher matcher = patternStatus.matcher(mCommand);
-                if (matcher.matches()) {
-                    mRecordsStatus.add(new RecordStatus(
-                            Integer.parseInt(matcher.group(1)),
-                            Integer.parseInt(matcher.group(2)),
-                            Long.parseLong(matcher.group(3))
-                    ));
+                if (isInt(fields[0]) && isInt(fields[1])) {
+                    mRecordsStatus.add(new RecordStatus((int) fields[0], (int) fields[1], fields[2]));
                 }
                 break;
             }
             case 'C': {
                 // Clock: C<clock_time:long>
-                Matcher mather = patternClock.matcher(mCommand);
-                if (mather.matches()) {
-                    long clock = Long.parseLong(mather.group(1));
-                    if (mRecordsSDP.size() > 0) {
-                        RecordSDP currRecord = mRecordsSDP.get(mRecordsSDP.size() - 1);
-                        currRecord.setClockTick(clock);
-                    }
-                }
+                mSamples.setLastClockTick(fields[0]);
                 break;
             }
             case 'I': {
                 // Sensor info: I<model_number:int> r<range_pa:int> s<pressure_scale:int> i<record_id:int> m<memory_free:long>
-                Matcher matcher = patternInfo.matcher(mCommand);
-                if (matcher.matches()) {
-                    int modelNum = Integer.parseInt(matcher.group(1));
-                    int rangePa = Integer.parseInt(matcher.group(2));
-                    int pressureScale = Integer.parseInt(matcher.group(3));
-                    int recordId = Integer.parseInt(matcher.group(4));
-                    long sdcardFree = Long.parseLong(matcher.group(5)) / (1 << 20);
-                    SensorInfo sensorInfo = new SensorInfo(modelNum, rangePa, pressureScale);
-                    mDeviceInfo = new DeviceInfo(sensorInfo, recordId, sdcardFree);
-                    break;
+                if (isInt(fields[0]) && isInt(fields[1]) && isInt(fields[2]) && isInt(fields[3])) {
+                    long sdcardFree = fields[4] / (1 << 20);
+                    SensorInfo sensorInfo = new SensorInfo((int) fields[0], (int) fields[1], (int) fields[2]);
+                    mDeviceInfo = new DeviceInfo(sensorInfo, (int) fields[3], sdcardFree);
                 }
                 break;
             }
-            default: {
-                mLog.append(mCommand);
+            case 'Y': {
+                // Clock sync reply: Y<ping_seq:int> r<ping_received:long> t<reply_sent:long>
+                if (isInt(fields[0])) {
+                    mSyncReplies.add(new SyncReply((int) fields[0], fields[1], fields[2], mReceiveNanos));
+                }
                 break;
             }
         }
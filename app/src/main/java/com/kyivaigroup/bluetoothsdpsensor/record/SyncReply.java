@@ -0,0 +1,22 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+/**
+ * The reply of the device to a clock sync ping: the device clock when the
+ * ping was received and when the reply was sent, and the host clock when
+ * the reply was received.
+ */
+public class SyncReply {
+    public static final SyncReply[] NO_REPLIES = new SyncReply[0];
+
+    public final int sequence;           // the number of the ping
+    public final long deviceReceiveUs;   // us since device boot
+    public final long deviceSendUs;
+    public final long hostReceiveNanos;  // System.nanoTime()
+
+    public SyncReply(int sequence, long deviceReceiveUs, long deviceSendUs, long hostReceiveNanos) {
+        this.sequence = sequence;
+        this.deviceReceiveUs = deviceReceiveUs;
+        this.deviceSendUs = deviceSendUs;
+        this.hostReceiveNanos = hostReceiveNanos;
+    }
+}
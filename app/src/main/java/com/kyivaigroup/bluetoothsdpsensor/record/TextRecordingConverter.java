@@ -0,0 +1,160 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts the legacy text charts into the {@link RecordingFormat}.
+ * <p>
+ * A text chart is named "yyyy.MM.dd HH:mm:ss[ tag].txt". Its first line is
+ * the sensor description, "SDP31 500Pa", followed by "time,pressure" lines
+ * in seconds and Pa. The numbers were formatted with the default locale,
+ * so the decimal separator may be a comma too.
+ */
+public class TextRecordingConverter {
+    public static final String EXTENSION = ".txt";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String DATE_PATTERN = "yyyy.MM.dd HH:mm:ss";
+    private static final Pattern DESCRIPTION = Pattern.compile("SDP(\\d+) (\\d+)Pa");
+    private static final int DEFAULT_MODEL = 31;
+    private static final int DEFAULT_RANGE_PA = 500;
+
+    /**
+     * @return the pressure scale of a sensor with the given range, as in the datasheet
+     */
+    static int pressureScale(int rangePa) {
+        switch (rangePa) {
+            case 125:
+                return 240;
+            case 1500:
+                return 20;
+            default:
+                return 60;
+        }
+    }
+
+    /**
+     * Convert the text charts of a folder that have no binary recording yet,
+     * one after another; {@link RecordingLoader} does the same in parallel.
+     * The text files are kept.
+     */
+    public static void convertFolder(File folder) {
+        for (File file : listUnconverted(folder)) {
+            try {
+                convert(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the text charts of a folder that have no binary recording yet
+     */
+    public static List<File> listUnconverted(File folder) {
+        List<File> unconverted = new ArrayList<>();
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return unconverted;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(EXTENSION) && !binaryFileOf(file).exists()) {
+                unconverted.add(file);
+            }
+        }
+        return unconverted;
+    }
+
+    /**
+     * @return the binary recording of a text chart, next to it
+     */
+    public static File binaryFileOf(File textFile) {
+        String name = textFile.getName();
+        if (name.endsWith(EXTENSION)) {
+            name = name.substring(0, name.length() - EXTENSION.length());
+        }
+        return new File(textFile.getParentFile(), name + RecordingFormat.EXTENSION);
+    }
+
+    /**
+     * @param textFile the legacy chart
+     * @return the binary recording written next to the text file
+     */
+    public static File convert(File textFile) throws IOException {
+        File binaryFile = binaryFileOf(textFile);
+        convert(textFile, binaryFile);
+        return binaryFile;
+    }
+
+    /**
+     * The recording is written to a hidden temporary file, renamed once complete,
+     * so the binary file is never seen half written.
+     */
+    public static void convert(File textFile, File binaryFile) throws IOException {
+        File temp = new File(binaryFile.getParentFile(), "." + binaryFile.getName() + TEMP_SUFFIX);
+        try {
+            write(textFile, temp);
+            if (!temp.renameTo(binaryFile)) {
+                throw new IOException("Could not rename " + temp + " to " + binaryFile);
+            }
+        } catch (IOException e) {
+            // don't leave a truncated recording
+            temp.delete();
+            throw e;
+        }
+    }
+
+    private static void write(File textFile, File binaryFile) throws IOException {
+        try (TextRecordingParser parser = new TextRecordingParser(new FileInputStream(textFile))) {
+            SensorInfo sensorInfo = parseSensorInfo(parser.getDescription());
+            RecordingHeader header = parseHeader(textFile.getName(), sensorInfo);
+            try (RecordingWriter writer = new RecordingWriter(
+                    new BufferedOutputStream(new FileOutputStream(binaryFile)), header, true)) {
+                RecordingReader.Block block = new RecordingReader.Block();
+                while (parser.read(block, sensorInfo.pressureScale)) {
+                    for (int i = 0; i < block.length; i++) {
+                        writer.write(block.ticks[i], block.values[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    static SensorInfo parseSensorInfo(String description) {
+        Matcher matcher = DESCRIPTION.matcher(description);
+        if (!matcher.find()) {
+            return new SensorInfo(DEFAULT_MODEL, DEFAULT_RANGE_PA, pressureScale(DEFAULT_RANGE_PA));
+        }
+        final int model = Integer.parseInt(matcher.group(1));
+        final int rangePa = Integer.parseInt(matcher.group(2));
+        return new SensorInfo(model, rangePa, pressureScale(rangePa));
+    }
+
+    private static RecordingHeader parseHeader(String fileName, SensorInfo sensorInfo) {
+        String name = fileName.endsWith(EXTENSION)
+                ? fileName.substring(0, fileName.length() - EXTENSION.length()) : fileName;
+        long startTime = 0;
+        String tag = name;
+        if (name.length() >= DATE_PATTERN.length()) {
+            try {
+                SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN, Locale.US);
+                startTime = format.parse(name.substring(0, DATE_PATTERN.length())).getTime();
+                tag = name.substring(DATE_PATTERN.length()).trim();
+            } catch (ParseException e) {
+                // not a date: the whole name is the tag
+            }
+        }
+        return new RecordingHeader(sensorInfo, RecordingHeader.RECORD_ID_UNKNOWN, startTime, tag);
+    }
+}
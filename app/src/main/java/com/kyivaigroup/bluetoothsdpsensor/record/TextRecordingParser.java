@@ -0,0 +1,258 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streams the samples of a legacy text chart, see {@link TextRecordingConverter}.
+ * <p>
+ * The bytes are scanned in place: a "time,pressure" line of plain decimals
+ * is parsed without creating a string. Any other line, such as an exponent
+ * or spaces around the numbers, takes the slow path of {@link String#split(String)}
+ * and {@link Double#parseDouble(String)}. Both paths give the same samples.
+ */
+public class TextRecordingParser implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // A decimal of at most 15 digits is an exact double, and so is 10^k up to 10^22:
+    // their quotient is correctly rounded, the same double as Double.parseDouble() gives.
+    private static final int MAX_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = new double[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // The result of a line
+    private static final int LINE_SAMPLE = 0;
+    private static final int LINE_SKIPPED = 1;
+    private static final int LINE_COMPLEX = 2;  // not plain decimals: parse it as a string
+
+    private final InputStream mIn;
+    private byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mPos;
+    private int mLimit;
+    private boolean mEof;
+    private final String mDescription;
+
+    // The line being parsed
+    private final int[] mCommas = new int[3];
+    private long mTick;
+    private short mValue;
+
+    /**
+     * Reads the description line.
+     *
+     * @param in the text chart; it's closed with the parser
+     */
+    public TextRecordingParser(InputStream in) throws IOException {
+        mIn = in;
+        final int end = nextLine();
+        // the charts were written with the default charset
+        mDescription = end >= 0 ? new String(mBuffer, mPos, end - mPos) : "";
+        skipLine(end);
+    }
+
+    /**
+     * @return the first line, such as "SDP31 500Pa"
+     */
+    public String getDescription() {
+        return mDescription;
+    }
+
+    /**
+     * @param block         the block to fill
+     * @param pressureScale the raw value of 1 Pa
+     * @return false at the end of the chart
+     */
+    public boolean read(RecordingReader.Block block, int pressureScale) throws IOException {
+        block.length = 0;
+        int end;
+        while (block.length < block.ticks.length && (end = nextLine()) >= 0) {
+            int result = parseLine(mBuffer, mPos, end, pressureScale);
+            if (result == LINE_COMPLEX) {
+                result = parseLine(new String(mBuffer, mPos, end - mPos), pressureScale);
+            }
+            if (result == LINE_SAMPLE) {
+                block.ticks[block.length] = mTick;
+                block.values[block.length] = mValue;
+                block.length++;
+            }
+            skipLine(end);
+        }
+        return block.length > 0;
+    }
+
+    /**
+     * @return the end of the next line in the buffer, from mPos; -1 at the end of the input
+     */
+    private int nextLine() throws IOException {
+        int i = mPos;
+        while (true) {
+            for (; i < mLimit; i++) {
+                final byte b = mBuffer[i];
+                if (b == '\n' || b == '\r') {
+                    return i;
+                }
+            }
+            if (mEof) {
+                return mLimit > mPos ? mLimit : -1;
+            }
+            i -= mPos;
+            fill();
+            i += mPos;
+        }
+    }
+
+    private void skipLine(int end) {
+        mPos = end < mLimit ? end + 1 : end;
+    }
+
+    /**
+     * Move the pending bytes to the start of the buffer and read more.
+     */
+    private void fill() throws IOException {
+        final int pending = mLimit - mPos;
+        if (pending == mBuffer.length) {
+            // a very long line
+            mBuffer = Arrays.copyOf(mBuffer, 2 * mBuffer.length);
+        } else {
+            System.arraycopy(mBuffer, mPos, mBuffer, 0, pending);
+        }
+        mPos = 0;
+        mLimit = pending;
+        final int n = mIn.read(mBuffer, mLimit, mBuffer.length - mLimit);
+        if (n < 0) {
+            mEof = true;
+        } else {
+            mLimit += n;
+        }
+    }
+
+    /**
+     * The fast path: "time,pressure" or, with a decimal comma, "time,fraction,pressure,fraction".
+     */
+    private int parseLine(byte[] line, int start, int end, int pressureScale) {
+        if (start == end) {
+            // the \n of \r\n
+            return LINE_SKIPPED;
+        }
+        int commas = 0;
+        final int[] comma = mCommas;
+        for (int i = start; i < end; i++) {
+            if (line[i] == ',') {
+                if (commas == comma.length) {
+                    return LINE_COMPLEX;
+                }
+                comma[commas++] = i;
+            }
+        }
+        final double time, pressure;
+        if (commas == 1) {
+            time = parseDecimal(line, start, comma[0]);
+            pressure = parseDecimal(line, comma[0] + 1, end);
+        } else if (commas == 3) {
+            time = parseDecimal(line, start, comma[0], comma[0] + 1, comma[1]);
+            pressure = parseDecimal(line, comma[1] + 1, comma[2], comma[2] + 1, end);
+        } else {
+            return LINE_COMPLEX;
+        }
+        if (Double.isNaN(time) || Double.isNaN(pressure)) {
+            return LINE_COMPLEX;
+        }
+        return toSample(time, pressure, pressureScale);
+    }
+
+    /**
+     * @return the value of "[-]digits[.digits]", NaN if it's anything else
+     */
+    private static double parseDecimal(byte[] line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == '.') {
+                return parseDecimal(line, start, i, i + 1, end);
+            }
+        }
+        return parseDecimal(line, start, end, end, end);
+    }
+
+    /**
+     * @return the value of "[-]integer.fraction", or of "[-]integer" if the fraction
+     * starts at the end of the integer; NaN if it's not plain digits
+     */
+    private static double parseDecimal(byte[] line, int intStart, int intEnd, int fracStart, int fracEnd) {
+        final boolean negative = intStart < intEnd && line[intStart] == '-';
+        if (negative) {
+            intStart++;
+        }
+        if (intStart == intEnd || intEnd - intStart + fracEnd - fracStart > MAX_DIGITS) {
+            return Double.NaN;
+        }
+        if (fracStart == fracEnd && fracStart != intEnd) {
+            // a separator without fraction digits, "5."
+            return Double.NaN;
+        }
+        long mantissa = 0;
+        for (int i = intStart; i < intEnd; i++) {
+            final int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.NaN;
+            }
+            mantissa = mantissa * 10 + digit;
+        }
+        for (int i = fracStart; i < fracEnd; i++) {
+            final int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.NaN;
+            }
+            mantissa = mantissa * 10 + digit;
+        }
+        final double value = mantissa / POWERS_OF_TEN[fracEnd - fracStart];
+        return negative ? -value : value;
+    }
+
+    /**
+     * The slow path, any line the legacy code accepted.
+     */
+    private int parseLine(String line, int pressureScale) {
+        final String[] fields = line.split(",");
+        final String time, pressure;
+        if (fields.length == 2) {
+            time = fields[0];
+            pressure = fields[1];
+        } else if (fields.length == 4) {
+            // a comma is the decimal separator too
+            time = fields[0] + '.' + fields[1];
+            pressure = fields[2] + '.' + fields[3];
+        } else {
+            return LINE_SKIPPED;
+        }
+        try {
+            return toSample(Double.parseDouble(time.trim()), Double.parseDouble(pressure.trim()), pressureScale);
+        } catch (NumberFormatException e) {
+            // skip a malformed line
+            return LINE_SKIPPED;
+        }
+    }
+
+    private int toSample(double time, double pressure, int pressureScale) {
+        // the text keeps 6 decimals of a second and 4 decimals of a Pa,
+        // finer than 1 us and than 1 / 240 Pa of a raw sensor value
+        final long value = Math.round(pressure * pressureScale);
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            return LINE_SKIPPED;
+        }
+        mTick = Math.round(time * 1e6);
+        mValue = (short) value;
+        return LINE_SAMPLE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
@@ -0,0 +1,282 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+/**
+ * Gives every parsed sample an absolute, monotonic timestamp in us:
+ * {@link SampleBatch#time}. Streaming and O(1) per sample.
+ * <p>
+ * The samples carry the time to the previous one, and a few carry the device
+ * clock (a C line). The time between two clock ticks is the sum of the deltas
+ * times a rate, the device clock us per delta us: the smallest ratio of the
+ * first tick intervals, then a least-squares fit through the origin over the
+ * recent intervals that lost no samples, off by less than half a sample
+ * period. At each tick the timeline is steered to the clock:
+ * <ul>
+ *     <li>a small error is corrected at once if the clock is ahead, samples
+ *     were lost, or slewed in if it's behind: the timestamps never go back;</li>
+ *     <li>a large error, confirmed by the next tick, is a step: forward if
+ *     samples were lost, a gap as long as they were; backward if the device
+ *     restarted, then the timeline goes on from where it was and the new
+ *     clock is offset by an epoch;</li>
+ *     <li>a tick that the next one doesn't confirm, a garbled line, is ignored.</li>
+ * </ul>
+ * Before the first tick, the timeline is the sum of the deltas. A lost and
+ * made again connection leaves a {@link Gap}: see {@link #markGap(long)}.
+ * Not thread-safe: used by one pipeline thread at a time.
+ */
+public class Timeline {
+    private static final double DECAY = 0.99;            // per tick interval, ~100 intervals in the fit
+    private static final double MAX_RATE_ERROR = 5e-3;   // of the first tick intervals, from nominal
+    private static final int BOOTSTRAP_INTERVALS = 16;
+    private static final double MAX_RATE = 1.01;
+    private static final double MIN_RATE = 0.99;
+    private static final double STEP_THRESHOLD_US = 5000;
+    private static final double MAX_SLEW = 0.01;         // us per us, backwards
+
+    private long mDeltaSum;  // us, never reset
+    private long mLastTime = Long.MIN_VALUE;
+
+    // the rate: sum of the clock increments over the sum of the delta increments
+    private double mClockSpan;
+    private double mDeltaSpan;
+    private double mRate = 1;  // nominal until fitted
+    private int mFitted;       // tick intervals
+
+    // the last accepted tick and the unconfirmed one
+    private boolean mHasTick;
+    private long mTickDelta;
+    private long mTickClock;
+    private int mTickSamples;  // since the last accepted tick
+    private boolean mHasCandidate;
+    private long mCandidateDelta;
+    private long mCandidateClock;
+    private double mEpoch;  // the timeline minus the device clock
+
+    // the mapping of the delta sum to the timeline: a line from the anchor,
+    // flatter while slewing
+    private double mAnchorDelta;
+    private double mAnchorTime;
+    private double mSlew;
+    private double mSlewEnd;  // delta sum
+    private long mSteps;
+    private long mRejected;
+    private long mRestarts;
+
+    // the gap of a lost connection: the time before it, and the gap once the next sample is timed
+    private boolean mGapPending;
+    private long mGapStart;
+    private Gap mGap;
+
+    /**
+     * Fill the timestamps of the batch.
+     */
+    public void apply(SampleBatch samples) {
+        for (int i = 0; i < samples.length; i++) {
+            mDeltaSum += samples.timeDelta[i];
+            mTickSamples++;
+            if (samples.clockTick[i] != 0) {
+                onTick(samples.clockTick[i]);
+            }
+            long time = Math.round(map(mDeltaSum));
+            if (time < mLastTime) {
+                time = mLastTime;
+            }
+            samples.time[i] = time;
+            mLastTime = time;
+            if (mGapPending) {
+                mGap = new Gap(mGapStart, time - mGapStart);
+                mGapPending = false;
+            }
+        }
+    }
+
+    /**
+     * The connection was lost and made again: the samples to come follow a
+     * gap. The first clock tick after it is trusted as is, the device clock
+     * kept running; until then, the gap is the one measured by the host.
+     *
+     * @param hostGapUs from the last bytes received to the new connection
+     */
+    public void markGap(long hostGapUs) {
+        if (mLastTime == Long.MIN_VALUE) {
+            // nothing before the gap
+            return;
+        }
+        mAnchorTime = map(mDeltaSum) + hostGapUs;
+        mAnchorDelta = mDeltaSum;
+        mSlew = 0;
+        mSlewEnd = mDeltaSum;
+        mHasTick = false;
+        mHasCandidate = false;
+        mGapPending = true;
+        mGapStart = mLastTime;
+    }
+
+    /**
+     * @return the gap before the samples of the last {@link #apply(SampleBatch)}
+     * once, or null
+     */
+    public Gap takeGap() {
+        Gap gap = mGap;
+        mGap = null;
+        return gap;
+    }
+
+    /**
+     * @return the device clock us per the delta us
+     */
+    public double getRate() {
+        return mRate;
+    }
+
+    /**
+     * @return the number of forward steps: lost samples
+     */
+    public long getSteps() {
+        return mSteps;
+    }
+
+    /**
+     * @return the number of device restarts
+     */
+    public long getRestarts() {
+        return mRestarts;
+    }
+
+    /**
+     * @return the number of clock ticks ignored as garbled
+     */
+    public long getRejected() {
+        return mRejected;
+    }
+
+    private void onTick(long clock) {
+        if (!mHasTick) {
+            accept(clock);
+            step(clock);
+            return;
+        }
+        if (isConsistent(mTickDelta, mTickClock, clock)) {
+            // the time so far stays as mapped with the former rate
+            final double current = map(mDeltaSum);
+            fitRate(clock);
+            accept(clock);
+            steer(clock, current);
+            if (mHasCandidate) {
+                mRejected++;
+                mHasCandidate = false;
+            }
+            return;
+        }
+        if (mHasCandidate && isConsistent(mCandidateDelta, mCandidateClock, clock)) {
+            // the jump is real
+            accept(clock);
+            count(step(clock));
+            mHasCandidate = false;
+            return;
+        }
+        if (mHasCandidate) {
+            mRejected++;
+        }
+        mHasCandidate = true;
+        mCandidateDelta = mDeltaSum;
+        mCandidateClock = clock;
+    }
+
+    private boolean isConsistent(long fromDelta, long fromClock, long clock) {
+        final double expected = fromClock + mRate * (mDeltaSum - fromDelta);
+        return Math.abs(clock - expected) <= STEP_THRESHOLD_US;
+    }
+
+    private void fitRate(long clock) {
+        final double deltaSpan = mDeltaSum - mTickDelta;
+        final double clockSpan = clock - mTickClock;
+        if (deltaSpan <= 0) {
+            return;
+        }
+        if (mFitted < BOOTSTRAP_INTERVALS) {
+            // a lost sample only makes the ratio larger: start from the smallest
+            final double ratio = clockSpan / deltaSpan;
+            if (Math.abs(ratio - 1) <= MAX_RATE_ERROR) {
+                mRate = mFitted == 0 ? ratio : Math.min(mRate, ratio);
+                mFitted++;
+            }
+            return;
+        }
+        // a lost sample adds a sample period to the clock span
+        final double residual = clockSpan - mRate * deltaSpan;
+        if (Math.abs(residual) > deltaSpan / mTickSamples / 2) {
+            return;
+        }
+        mClockSpan = mClockSpan * DECAY + clockSpan;
+        mDeltaSpan = mDeltaSpan * DECAY + deltaSpan;
+        mRate = Math.max(MIN_RATE, Math.min(MAX_RATE, mClockSpan / mDeltaSpan));
+        mFitted++;
+    }
+
+    private void accept(long clock) {
+        mHasTick = true;
+        mTickDelta = mDeltaSum;
+        mTickClock = clock;
+        mTickSamples = 0;
+    }
+
+    /**
+     * Jump to the clock. Back before the last timestamp, keep on from the
+     * current time instead.
+     *
+     * @return true if jumped forward
+     */
+    private boolean step(long clock) {
+        final double current = map(mDeltaSum);
+        double target = mEpoch + clock;
+        final boolean forward = target >= mLastTime;
+        if (!forward) {
+            mEpoch += current - target;
+            target = current;
+        }
+        mAnchorDelta = mDeltaSum;
+        mAnchorTime = target;
+        mSlew = 0;
+        mSlewEnd = mDeltaSum;
+        return forward;
+    }
+
+    private void count(boolean forward) {
+        if (forward) {
+            mSteps++;
+        } else {
+            mRestarts++;
+        }
+    }
+
+    /**
+     * Steer the timeline to the clock from now on: catch up at once, the time
+     * ahead is lost samples, or slow down until the clock catches up.
+     */
+    private void steer(long clock, double current) {
+        final double error = mEpoch + clock - current;
+        mAnchorDelta = mDeltaSum;
+        if (error > STEP_THRESHOLD_US || error < -STEP_THRESHOLD_US) {
+            // the rate changed a lot since the last tick
+            mAnchorTime = current;
+            mSlewEnd = mDeltaSum;
+            count(step(clock));
+        } else if (error >= 0) {
+            mAnchorTime = current + error;
+            mSlew = 0;
+            mSlewEnd = mDeltaSum;
+        } else {
+            mAnchorTime = current;
+            mSlew = -MAX_SLEW;
+            mSlewEnd = mDeltaSum - error / (MAX_SLEW * mRate);
+        }
+    }
+
+    private double map(double deltaSum) {
+        if (deltaSum <= mSlewEnd) {
+            return mAnchorTime + (deltaSum - mAnchorDelta) * mRate * (1 + mSlew);
+        }
+        return mAnchorTime + (mSlewEnd - mAnchorDelta) * mRate * (1 + mSlew)
+                + (deltaSum - mSlewEnd) * mRate;
+    }
+}
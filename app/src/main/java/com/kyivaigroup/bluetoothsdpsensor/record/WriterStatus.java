@@ -0,0 +1,43 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * The state of the sending side of the connection: the commands to the device.
+ */
+public class WriterStatus {
+    public final int queued;             // commands waiting to be written
+    public final int maxQueued;
+    public final long written;
+    public final long dropped;           // commands lost because the queue was full
+    public final long coalesced;         // clock syncs replaced by a newer one
+    public final long lastLatencyUs;     // from the send to the end of the write
+    public final long maxLatencyUs;
+    public final String error;           // the last write error, or null
+
+    public WriterStatus(int queued, int maxQueued, long written, long dropped, long coalesced,
+                        long lastLatencyUs, long maxLatencyUs, String error) {
+        this.queued = queued;
+        this.maxQueued = maxQueued;
+        this.written = written;
+        this.dropped = dropped;
+        this.coalesced = coalesced;
+        this.lastLatencyUs = lastLatencyUs;
+        this.maxLatencyUs = maxLatencyUs;
+        this.error = error;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String text = String.format(Locale.getDefault(),
+                "queue %d (max %d), written %d, dropped %d, coalesced %d, latency %d us (max %d us)",
+                queued, maxQueued, written, dropped, coalesced, lastLatencyUs, maxLatencyUs);
+        if (error != null) {
+            text += ", " + error;
+        }
+        return text;
+    }
+}
@@ -0,0 +1,49 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the parsed records are flushed to the UI: when the oldest
+ * pending sample is {@code targetLatencyMs} old or when {@code maxSamples}
+ * samples are pending, whichever comes first.
+ */
+public class BatchPolicy {
+    /**
+     * Live monitoring: the chart lags ~20 ms behind the sensor.
+     */
+    public static final BatchPolicy LOW_LATENCY = new BatchPolicy(20, 256);
+
+    /**
+     * The default: ~10 UI updates per second.
+     */
+    public static final BatchPolicy BALANCED = new BatchPolicy(100, 2048);
+
+    /**
+     * Battery-friendly: the UI thread wakes up about once per second.
+     */
+    public static final BatchPolicy BULK = new BatchPolicy(1000, 16384);
+
+    public final long targetLatencyNanos;
+    public final int maxSamples;
+
+    public BatchPolicy(long targetLatencyMs, int maxSamples) {
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        this.maxSamples = maxSamples;
+    }
+
+    /**
+     * @param samples  the number of pending samples
+     * @param ageNanos the age of the oldest pending sample
+     */
+    public boolean shouldFlush(int samples, long ageNanos) {
+        return samples >= maxSamples || ageNanos >= targetLatencyNanos;
+    }
+
+    /**
+     * @param ageNanos the age of the oldest pending sample
+     * @return how long to wait for more samples before flushing
+     */
+    public long remainingNanos(long ageNanos) {
+        return Math.max(targetLatencyNanos - ageNanos, 0);
+    }
+}
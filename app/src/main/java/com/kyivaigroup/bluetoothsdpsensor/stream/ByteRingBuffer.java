@@ -0,0 +1,139 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free single-producer single-consumer ring buffer of bytes.
+ * <p>
+ * The producer thread calls {@link #offer(byte[], int, int)}, the consumer
+ * thread calls {@link #poll(byte[], int, int)} and {@link #await(long)}.
+ * A chunk that doesn't fit is dropped as a whole and counted as an overflow.
+ */
+public class ByteRingBuffer {
+    private final byte[] mBuffer;
+    private final int mMask;
+
+    // Monotonic positions: the producer owns the head, the consumer owns the tail
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+    private volatile Thread mWaitingConsumer;
+
+    // Written by the producer only
+    private volatile int mMaxOccupancy;
+    private volatile long mOverflowChunks;
+    private volatile long mOverflowBytes;
+
+    /**
+     * @param capacity the buffer size, a power of two
+     */
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mBuffer = new byte[capacity];
+        mMask = capacity - 1;
+    }
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * @return the number of bytes available to the consumer
+     */
+    public int size() {
+        return (int) (mHead.get() - mTail.get());
+    }
+
+    public int getMaxOccupancy() {
+        return mMaxOccupancy;
+    }
+
+    public long getOverflowChunks() {
+        return mOverflowChunks;
+    }
+
+    public long getOverflowBytes() {
+        return mOverflowBytes;
+    }
+
+    /**
+     * Producer: append a chunk of bytes.
+     *
+     * @return false if the chunk didn't fit and was dropped
+     */
+    public boolean offer(byte[] src, int offset, int length) {
+        final long head = mHead.get();
+        final int occupancy = (int) (head - mTail.get());
+        if (length > mBuffer.length - occupancy) {
+            mOverflowChunks++;
+            mOverflowBytes += length;
+            return false;
+        }
+        final int start = (int) head & mMask;
+        final int first = Math.min(length, mBuffer.length - start);
+        System.arraycopy(src, offset, mBuffer, start, first);
+        System.arraycopy(src, offset + first, mBuffer, 0, length - first);
+        // a volatile write, ordered before reading the waiting consumer
+        mHead.set(head + length);
+        if (occupancy + length > mMaxOccupancy) {
+            mMaxOccupancy = occupancy + length;
+        }
+        final Thread consumer = mWaitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Consumer: take up to {@code length} bytes.
+     *
+     * @return the number of bytes copied to {@code dst}
+     */
+    public int poll(byte[] dst, int offset, int length) {
+        final long tail = mTail.get();
+        final int count = Math.min(length, (int) (mHead.get() - tail));
+        if (count == 0) {
+            return 0;
+        }
+        final int start = (int) tail & mMask;
+        final int first = Math.min(count, mBuffer.length - start);
+        System.arraycopy(mBuffer, start, dst, offset, first);
+        System.arraycopy(mBuffer, 0, dst, offset + first, count - first);
+        mTail.lazySet(tail + count);
+        return count;
+    }
+
+    /**
+     * Consumer: block until there are bytes to poll, the timeout elapses or
+     * the thread is interrupted.
+     *
+     * @return true if there are bytes to poll
+     */
+    public boolean await(long timeoutNanos) {
+        if (size() > 0) {
+            return true;
+        }
+        mWaitingConsumer = Thread.currentThread();
+        try {
+            if (size() == 0) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            mWaitingConsumer = null;
+        }
+        return size() > 0;
+    }
+
+    /**
+     * Wake up the consumer blocked in {@link #await(long)}.
+     */
+    public void wakeUp() {
+        final Thread consumer = mWaitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
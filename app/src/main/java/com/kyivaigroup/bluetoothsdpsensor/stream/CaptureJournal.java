@@ -0,0 +1,209 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of the raw bytes received from the device, as
+ * they were read from the socket: each chunk is stored with its arrival
+ * time, so that {@link JournalReplay} can feed the same chunks at the same
+ * pace to the parser.
+ * <p>
+ * The file starts with the magic "SDPJ", the version u16 and the wall
+ * clock time of the start in ms i64, big-endian. Then come the records:
+ * <pre>
+ *   time delta  varint, in us since the previous record
+ *   length      varint, the number of bytes
+ *   bytes       u8[length]
+ * </pre>
+ * A record of length 0 marks the chunks dropped because the journal fell
+ * behind: it's followed by the number of lost bytes, varint. A record
+ * truncated by a crash is ignored by the {@link JournalReader}.
+ * <p>
+ * {@link #record(byte[], int)} only copies the chunk into a ring buffer;
+ * the file is written on the journal thread, so the socket is read without delays.
+ */
+public class CaptureJournal {
+    public static final String EXTENSION = ".sdpj";
+
+    static final int MAGIC = ('S' << 24) | ('D' << 16) | ('P' << 8) | 'J';
+    static final int VERSION = 1;
+    static final int MAX_RECORD_HEADER = 10 + 5;
+
+    private static final int RING_CAPACITY = 1 << 20;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final long IDLE_WAIT_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final File mFile;
+    private final ByteRingBuffer mRing;
+    private final WriterThread mThread = new WriterThread();
+    private volatile boolean mRunning;
+    private volatile String mError;
+
+    // The socket reading thread only
+    private byte[] mRecord = new byte[MAX_RECORD_HEADER + CHUNK_SIZE];
+    private long mLastRecordNanos;
+    private long mLostBytes;  // not journaled yet
+    private volatile long mLostBytesTotal;
+    private volatile long mChunks;
+
+    /**
+     * @param file the journal to create
+     */
+    public CaptureJournal(File file) {
+        this(file, RING_CAPACITY);
+    }
+
+    /**
+     * @param ringCapacity the bytes the journal may fall behind by, a power of 2
+     */
+    CaptureJournal(File file, int ringCapacity) {
+        mFile = file;
+        mRing = new ByteRingBuffer(ringCapacity);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public void start() {
+        mRunning = true;
+        mLastRecordNanos = System.nanoTime();
+        mThread.start();
+    }
+
+    /**
+     * Stop accepting chunks. The pending ones are written and the file is closed
+     * on the journal thread.
+     */
+    public void stop() {
+        mRunning = false;
+        mRing.wakeUp();
+    }
+
+    /**
+     * Wait until the journal thread has closed the file after {@link #stop()}.
+     */
+    public void awaitTermination() throws InterruptedException {
+        mThread.join();
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @return the error that stopped the journal, null if none
+     */
+    public String getError() {
+        return mError;
+    }
+
+    /**
+     * Journal a received chunk. Called from the socket reading thread.
+     *
+     * @param data the received bytes; can be reused after the call
+     * @param size the number of received bytes
+     */
+    public void record(byte[] data, int size) {
+        if (!mRunning) {
+            return;
+        }
+        // the time of a dropped record is carried over to the next one
+        long delta = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mLastRecordNanos);
+        if (mLostBytes > 0) {
+            int length = putHeader(delta, 0);
+            length = putVarint(mRecord, length, mLostBytes);
+            if (!mRing.offer(mRecord, 0, length)) {
+                mLostBytes += size;
+                mLostBytesTotal += size;
+                return;
+            }
+            mLostBytes = 0;
+            advance(delta);
+            delta = 0;
+        }
+        if (mRecord.length < MAX_RECORD_HEADER + size) {
+            mRecord = new byte[MAX_RECORD_HEADER + size];
+        }
+        final int header = putHeader(delta, size);
+        System.arraycopy(data, 0, mRecord, header, size);
+        if (mRing.offer(mRecord, 0, header + size)) {
+            mChunks++;
+            advance(delta);
+        } else {
+            mLostBytes += size;
+            mLostBytesTotal += size;
+        }
+    }
+
+    /**
+     * @return the number of chunks journaled so far
+     */
+    public long getChunks() {
+        return mChunks;
+    }
+
+    /**
+     * @return the number of bytes dropped because the journal was behind
+     */
+    public long getLostBytes() {
+        return mLostBytesTotal;
+    }
+
+    private int putHeader(long delta, int length) {
+        final int pos = putVarint(mRecord, 0, delta);
+        return putVarint(mRecord, pos, length);
+    }
+
+    /**
+     * Move the time base to a record in the ring.
+     */
+    private void advance(long delta) {
+        // the remainder is carried over to the next record, so the times don't drift
+        mLastRecordNanos += TimeUnit.MICROSECONDS.toNanos(delta);
+    }
+
+    static int putVarint(byte[] out, int pos, long n) {
+        while ((n & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out[pos++] = (byte) n;
+        return pos;
+    }
+
+    private class WriterThread extends Thread {
+
+        @Override
+        public void run() {
+            setName(CaptureJournal.class.getSimpleName());
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            try (OutputStream out = new FileOutputStream(mFile)) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeShort(VERSION);
+                header.writeLong(System.currentTimeMillis());
+                while (true) {
+                    final boolean running = mRunning;
+                    final int nbytes = mRing.poll(chunk, 0, chunk.length);
+                    if (nbytes > 0) {
+                        out.write(chunk, 0, nbytes);
+                    } else if (running) {
+                        mRing.await(IDLE_WAIT_NS);
+                    } else {
+                        // stopped and drained
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                mError = e.getMessage();
+                mRunning = false;
+            }
+        }
+    }
+}
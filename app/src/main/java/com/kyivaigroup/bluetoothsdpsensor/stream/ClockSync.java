@@ -0,0 +1,311 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.Constants;
+import com.kyivaigroup.bluetoothsdpsensor.record.SyncReply;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Estimates the device clock against the host clock from NTP-style round
+ * trips. The host writes a numbered ping at t1, the device receives it at t2
+ * and replies at t3, the host receives the reply at t4. Each round trip gives
+ * <pre>
+ *   offset = ((t2 - t1) + (t3 - t4)) / 2   the device clock minus the host clock
+ *   delay  = (t4 - t1) - (t3 - t2)         the time spent on the link
+ * </pre>
+ * The offset is exact on a symmetric link, and a slow round trip leaves room
+ * for asymmetry. So, as the clock filter of NTP, only the fastest round trip
+ * of each block of round trips is kept, and the offset and the drift are a
+ * least-squares line through the fastest of the kept ones.
+ * <p>
+ * {@link #toHostMicros(long)} maps the device clock to the host clock without
+ * jumps: a new estimate is slewed in at a bounded rate, unless it's too far
+ * off. Thread-safe: the pings are written, the replies parsed and the mapping
+ * used on different threads.
+ * <p>
+ * The app only logs the estimate of each connection, for diagnostics: the
+ * samples are timed by the device ticks alone, see Timeline, which are
+ * already continuous; once locked, the periodic clock set command is no
+ * longer sent. The mapping is measured by ClockSyncAccuracy of the
+ * benchmark module.
+ */
+public class ClockSync {
+    private static final int BLOCK = 4;                 // round trips, the fastest one is kept
+    private static final int WINDOW = 64;               // kept round trips, ~4 min at 1 Hz
+    private static final int PENDING = 8;               // pings waiting for a reply
+    private static final int MIN_ROUND_TRIPS = 4;       // to lock
+    private static final int MAX_UNANSWERED = 5;        // pings before giving up on an old firmware
+    private static final double BEST_FRACTION = 0.5;    // the fastest kept round trips used in the fit
+    private static final int MIN_FIT = 3;
+    private static final double MIN_DRIFT_SPAN_US = 30e6;  // to fit the drift
+    private static final double MAX_DRIFT = 1e-3;
+    private static final double MAX_SLEW = 500e-6;      // us per us, as ntpd
+    private static final double STEP_THRESHOLD_US = 128_000;
+
+    // the pings written or to be written, by sequence number modulo PENDING
+    private final int[] mPendingSequence = new int[PENDING];
+    private final byte[][] mPendingPing = new byte[PENDING][];
+    private final long[] mPendingWrittenNanos = new long[PENDING];
+    private int mNextSequence;
+    private long mPingsWritten;
+    private long mReplies;
+
+    // the fastest round trip of the current block, host clock in us
+    private int mBlockCount;
+    private double mBlockHost;
+    private double mBlockOffset;
+    private double mBlockDelay;
+
+    // the window of the kept round trips, and the block one past the end
+    private final double[] mHost = new double[WINDOW + 1];
+    private final double[] mOffset = new double[WINDOW + 1];
+    private final double[] mDelay = new double[WINDOW + 1];
+    private final Integer[] mOrder = new Integer[WINDOW + 1];
+    private int mCount;
+    private int mHead;
+    private int mRoundTrips;  // since the reset
+    private long mLastDeviceUs = Long.MIN_VALUE;
+    private double mLastHost;
+
+    // the fit: offset(host) = mFitOffset + mDrift * (host - mFitHost)
+    private double mFitOffset;
+    private double mFitHost;
+    private double mDrift;
+    private double mMinDelay;
+
+    // the mapping: a line from the anchor, steeper while slewing
+    private boolean mLocked;
+    private double mAnchorDevice;
+    private double mAnchorHost;
+    private double mRate;      // host us per device us
+    private double mSlew;      // added to the rate until mSlewEnd
+    private double mSlewEnd;   // device us
+    private long mSteps;
+
+    /**
+     * @return false if the device never answered the pings: an old firmware
+     */
+    public synchronized boolean shouldPing() {
+        return mReplies > 0 || mPingsWritten < MAX_UNANSWERED;
+    }
+
+    /**
+     * @return the next ping command, to be written with {@link CommandWriter#CLOCK_SYNC}
+     */
+    public synchronized byte[] createPing() {
+        final int sequence = mNextSequence++;
+        final int slot = sequence % PENDING;
+        final String command = String.format(Locale.US, "/%s %d\0", Constants.CLOCK_PING, sequence);
+        final byte[] ping = command.getBytes();
+        mPendingSequence[slot] = sequence;
+        mPendingPing[slot] = ping;
+        mPendingWrittenNanos[slot] = 0;
+        return ping;
+    }
+
+    /**
+     * Called from the writer thread after each command is written.
+     *
+     * @param command      the command written, a ping or not
+     * @param writtenNanos System.nanoTime() after the write
+     */
+    public synchronized void onWritten(byte[] command, long writtenNanos) {
+        for (int slot = 0; slot < PENDING; slot++) {
+            if (mPendingPing[slot] == command) {
+                mPendingWrittenNanos[slot] = writtenNanos;
+                mPingsWritten++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called from the pipeline thread for each parsed reply.
+     */
+    public synchronized void onReply(SyncReply reply) {
+        final int slot = reply.sequence % PENDING;
+        if (mPendingPing[slot] == null || mPendingSequence[slot] != reply.sequence
+                || mPendingWrittenNanos[slot] == 0) {
+            // unknown, coalesced or too old
+            return;
+        }
+        final double t1 = mPendingWrittenNanos[slot] / 1000.0;
+        final double t4 = reply.hostReceiveNanos / 1000.0;
+        mPendingPing[slot] = null;
+        mReplies++;
+        final double t2 = reply.deviceReceiveUs;
+        final double t3 = reply.deviceSendUs;
+        final double delay = (t4 - t1) - (t3 - t2);
+        if (t3 < t2 || delay < 0) {
+            return;
+        }
+        if (reply.deviceReceiveUs < mLastDeviceUs) {
+            // the device restarted: its clock started over
+            reset();
+        }
+        mLastDeviceUs = reply.deviceSendUs;
+
+        if (mBlockCount == 0 || delay < mBlockDelay) {
+            mBlockHost = (t1 + t4) / 2;
+            mBlockOffset = ((t2 - t1) + (t3 - t4)) / 2;
+            mBlockDelay = delay;
+        }
+        if (++mBlockCount == BLOCK) {
+            mHost[mHead] = mBlockHost;
+            mOffset[mHead] = mBlockOffset;
+            mDelay[mHead] = mBlockDelay;
+            mHead = (mHead + 1) % WINDOW;
+            mCount = Math.min(mCount + 1, WINDOW);
+            mBlockCount = 0;
+        }
+        mLastHost = (t1 + t4) / 2;
+        if (++mRoundTrips >= MIN_ROUND_TRIPS) {
+            fit();
+            adjust(t3);
+        }
+    }
+
+    public synchronized boolean isLocked() {
+        return mLocked;
+    }
+
+    /**
+     * Map the device clock to the host clock. Monotonic and continuous
+     * across the updates of the estimate.
+     *
+     * @param deviceUs the device clock, us since boot
+     * @return the host clock, System.nanoTime() in us
+     * @throws IllegalStateException if not {@link #isLocked()} yet
+     */
+    public synchronized long toHostMicros(long deviceUs) {
+        if (!mLocked) {
+            throw new IllegalStateException("Clock not synchronized");
+        }
+        return Math.round(map(deviceUs));
+    }
+
+    /**
+     * @return the device clock minus the host clock, us, at the last round trip
+     */
+    public synchronized double getOffsetMicros() {
+        return mFitOffset + mDrift * (mLastHost - mFitHost);
+    }
+
+    /**
+     * @return how much faster the device clock runs, ppm
+     */
+    public synchronized double getDriftPpm() {
+        return mDrift * 1e6;
+    }
+
+    /**
+     * @return the fastest round trip of the window, us
+     */
+    public synchronized double getMinDelayMicros() {
+        return mMinDelay;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!mLocked) {
+            return String.format(Locale.US, "not locked, %d of %d pings answered", mReplies, mPingsWritten);
+        }
+        return String.format(Locale.US, "offset %.0f us, drift %.1f ppm, min delay %.0f us, %d of %d pings answered, %d steps",
+                getOffsetMicros(), getDriftPpm(), mMinDelay, mReplies, mPingsWritten, mSteps);
+    }
+
+    private void reset() {
+        mBlockCount = 0;
+        mCount = 0;
+        mHead = 0;
+        mRoundTrips = 0;
+        mDrift = 0;
+        mLocked = false;
+    }
+
+    /**
+     * Fit a line through the fastest round trips of the window and of the current block.
+     */
+    private void fit() {
+        int count = mCount;
+        if (mBlockCount > 0) {
+            mHost[WINDOW] = mBlockHost;
+            mOffset[WINDOW] = mBlockOffset;
+            mDelay[WINDOW] = mBlockDelay;
+            mOrder[count++] = WINDOW;
+        }
+        for (int i = 0; i < mCount; i++) {
+            mOrder[i] = i;
+        }
+        Arrays.sort(mOrder, 0, count, (a, b) -> Double.compare(mDelay[a], mDelay[b]));
+        final int n = Math.min(count, Math.max(MIN_FIT, (int) Math.ceil(count * BEST_FRACTION)));
+        mMinDelay = mDelay[mOrder[0]];
+
+        double hostMean = 0, offsetMean = 0, hostMin = Double.MAX_VALUE, hostMax = -Double.MAX_VALUE;
+        for (int k = 0; k < n; k++) {
+            final int i = mOrder[k];
+            hostMean += mHost[i];
+            offsetMean += mOffset[i];
+            hostMin = Math.min(hostMin, mHost[i]);
+            hostMax = Math.max(hostMax, mHost[i]);
+        }
+        hostMean /= n;
+        offsetMean /= n;
+
+        if (hostMax - hostMin >= MIN_DRIFT_SPAN_US) {
+            double sxy = 0, sxx = 0;
+            for (int k = 0; k < n; k++) {
+                final int i = mOrder[k];
+                final double dx = mHost[i] - hostMean;
+                sxy += dx * (mOffset[i] - offsetMean);
+                sxx += dx * dx;
+            }
+            mDrift = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, sxy / sxx));
+        }
+        // else too short to tell the drift from the jitter: keep the last one
+        mFitHost = hostMean;
+        mFitOffset = offsetMean;
+    }
+
+    /**
+     * Steer the mapping to the new fit, from the device time given on.
+     */
+    private void adjust(double deviceUs) {
+        // device = host + offset(host), solved for the host
+        final double target = (deviceUs - mFitOffset + mDrift * mFitHost) / (1 + mDrift);
+        final double rate = 1 / (1 + mDrift);
+        if (!mLocked) {
+            step(deviceUs, target, rate);
+            mLocked = true;
+            return;
+        }
+        final double current = map(deviceUs);
+        final double error = target - current;
+        if (Math.abs(error) > STEP_THRESHOLD_US) {
+            step(deviceUs, target, rate);
+            mSteps++;
+            return;
+        }
+        mAnchorDevice = deviceUs;
+        mAnchorHost = current;
+        mRate = rate;
+        mSlew = Math.signum(error) * MAX_SLEW;
+        mSlewEnd = deviceUs + Math.abs(error) / MAX_SLEW;
+    }
+
+    private void step(double deviceUs, double hostUs, double rate) {
+        mAnchorDevice = deviceUs;
+        mAnchorHost = hostUs;
+        mRate = rate;
+        mSlew = 0;
+        mSlewEnd = deviceUs;
+    }
+
+    private double map(double deviceUs) {
+        if (deviceUs <= mSlewEnd) {
+            return mAnchorHost + (deviceUs - mAnchorDevice) * (mRate + mSlew);
+        }
+        return mAnchorHost + (mSlewEnd - mAnchorDevice) * (mRate + mSlew) + (deviceUs - mSlewEnd) * mRate;
+    }
+}
@@ -0,0 +1,184 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.WriterStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the commands to the device on its own thread, so that a stalled
+ * link never blocks the callers.
+ * <p>
+ * {@link #send(byte[], int, boolean)} never blocks: if the queue is full, the
+ * command is dropped and counted. {@link #URGENT} commands are written before
+ * the queued ones. A {@link #CLOCK_SYNC} command replaces the queued clock
+ * sync with the same name (the text up to the first space), in its place:
+ * an outdated time is never sent.
+ */
+public class CommandWriter {
+    public static final int NORMAL = 0;
+    public static final int URGENT = 1;
+    public static final int CLOCK_SYNC = 2;
+
+    private static final int QUEUE_CAPACITY = 32;  // commands
+
+    public interface Listener {
+        /**
+         * Called from the writer thread once a command is written.
+         *
+         * @param command the bytes written
+         * @param echo    as given to {@link #send(byte[], int, boolean)}
+         */
+        void onWritten(byte[] command, boolean echo);
+    }
+
+    private static class Command {
+        byte[] data;
+        boolean echo;
+        long sendNanos;
+        String name;  // of a clock sync, null otherwise
+    }
+
+    private final OutputStream mOut;
+    private final Listener mListener;
+    private final WriterThread mThread = new WriterThread();
+
+    // guarded by this
+    private final ArrayDeque<Command> mQueue = new ArrayDeque<>();
+    private final ArrayDeque<Command> mUrgent = new ArrayDeque<>();
+    private boolean mRunning;
+    private int mMaxQueued;
+    private long mDropped;
+    private long mCoalesced;
+
+    // Statistics, written by the writer thread
+    private volatile long mWritten;
+    private volatile long mLastLatencyNanos;
+    private volatile long mMaxLatencyNanos;
+    private volatile String mError;
+
+    public CommandWriter(OutputStream out, Listener listener) {
+        mOut = out;
+        mListener = listener;
+    }
+
+    public synchronized void start() {
+        mRunning = true;
+        mThread.start();
+    }
+
+    /**
+     * Stop writing. The queued commands are dropped: the connection is closing.
+     */
+    public synchronized void stop() {
+        mRunning = false;
+        notifyAll();
+    }
+
+    /**
+     * Queue a command to be written. Can be called from any thread.
+     *
+     * @param command the bytes to write
+     * @param kind    {@link #NORMAL}, {@link #URGENT} or {@link #CLOCK_SYNC}
+     * @param echo    passed back to the listener once written
+     * @return false if the queue is full and the command is dropped
+     */
+    public synchronized boolean send(byte[] command, int kind, boolean echo) {
+        final String name = kind == CLOCK_SYNC ? getName(command) : null;
+        if (name != null) {
+            for (Command queued : mQueue) {
+                if (name.equals(queued.name)) {
+                    queued.data = command;
+                    queued.echo = echo;
+                    queued.sendNanos = System.nanoTime();
+                    mCoalesced++;
+                    return true;
+                }
+            }
+        }
+        final int queued = mQueue.size() + mUrgent.size();
+        if (!mRunning || queued == QUEUE_CAPACITY) {
+            mDropped++;
+            return false;
+        }
+        Command item = new Command();
+        item.data = command;
+        item.echo = echo;
+        item.sendNanos = System.nanoTime();
+        item.name = name;
+        if (kind == URGENT) {
+            mUrgent.addLast(item);
+        } else {
+            mQueue.addLast(item);
+        }
+        mMaxQueued = Math.max(mMaxQueued, queued + 1);
+        notifyAll();
+        return true;
+    }
+
+    public synchronized WriterStatus getStatus() {
+        return new WriterStatus(mQueue.size() + mUrgent.size(), mMaxQueued, mWritten, mDropped, mCoalesced,
+                TimeUnit.NANOSECONDS.toMicros(mLastLatencyNanos),
+                TimeUnit.NANOSECONDS.toMicros(mMaxLatencyNanos), mError);
+    }
+
+    /**
+     * @return the next command, or null once stopped
+     */
+    private synchronized Command take() {
+        while (mRunning && mQueue.isEmpty() && mUrgent.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        if (!mRunning) {
+            return null;
+        }
+        return mUrgent.isEmpty() ? mQueue.pollFirst() : mUrgent.pollFirst();
+    }
+
+    /**
+     * @return the command up to the first space or the end
+     */
+    private static String getName(byte[] command) {
+        int end = 0;
+        while (end < command.length && command[end] != ' ' && command[end] != '\0' && command[end] != '\n') {
+            end++;
+        }
+        char[] name = new char[end];
+        for (int i = 0; i < end; i++) {
+            name[i] = (char) command[i];
+        }
+        return new String(name);
+    }
+
+    private class WriterThread extends Thread {
+
+        @Override
+        public void run() {
+            setName(CommandWriter.class.getSimpleName());
+            Command item;
+            while ((item = take()) != null) {
+                try {
+                    mOut.write(item.data);
+                    mOut.flush();
+                } catch (IOException e) {
+                    // the reading side notices the lost connection
+                    mError = e.getMessage();
+                    continue;
+                }
+                final long latency = System.nanoTime() - item.sendNanos;
+                mLastLatencyNanos = latency;
+                if (latency > mMaxLatencyNanos) {
+                    mMaxLatencyNanos = latency;
+                }
+                mWritten++;
+                mListener.onWritten(item.data, item.echo);
+            }
+        }
+    }
+}
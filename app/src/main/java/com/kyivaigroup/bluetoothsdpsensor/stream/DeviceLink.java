@@ -0,0 +1,353 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.LinkStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.Timeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A session with the device: connects a {@link Transport}, reads it into an
+ * {@link IngestPipeline} and makes the lost connection again with the
+ * backoff of a {@link Reconnector}. The samples of all the connections of a
+ * session go on on the same {@link Timeline}, after a gap.
+ * <p>
+ * Each attempt runs on a connect thread and each connection on a read
+ * thread. The {@link Listener} is called from them, never with the link
+ * locked, so it can call back into the link.
+ */
+public class DeviceLink {
+    public static final int STATE_NONE = 0;
+    public static final int STATE_CONNECTING = 1;
+    public static final int STATE_CONNECTED = 2;
+    public static final int STATE_RECONNECTING = 3;
+
+    private static final int BUFFER_SIZE = 16284;
+
+    public interface Listener {
+        /**
+         * The state changed, see {@link #getState()}.
+         */
+        void onStateChange();
+
+        /**
+         * A connection was made. Called before its bytes are read and
+         * followed by {@link #onDisconnected(Transport, IOException)}.
+         *
+         * @param resumed made again after a loss: the samples follow a gap
+         */
+        void onConnected(Transport transport, boolean resumed);
+
+        /**
+         * Called from the read thread with the bytes before they are parsed.
+         */
+        void onReceived(byte[] buffer, int length);
+
+        /**
+         * Called from the pipeline thread.
+         */
+        void onRecords(RecordCollection collection);
+
+        /**
+         * The connection ended and its records were delivered.
+         *
+         * @param error why the read ended
+         */
+        void onDisconnected(Transport transport, IOException error);
+
+        /**
+         * The connection was lost: the next attempt is in the given delay.
+         */
+        void onLost(long delayMs);
+
+        /**
+         * The connection couldn't be made or the reconnect was given up:
+         * the session is over.
+         */
+        void onError(String message);
+    }
+
+    private final Listener mListener;
+    private BatchPolicy mBatchPolicy;
+    private boolean mBinaryMode;
+    private Timeline mTimeline = new Timeline();
+    private Reconnector mReconnector = new Reconnector();
+    private Transport mTransport;  // the last one tried
+    private ConnectThread mConnectThread;
+    private ReadThread mReadThread;
+    private Timer mReconnectTimer;
+    private long mLastReceiveNanos;  // of the lost connection
+    private int mState = STATE_NONE;
+
+    public DeviceLink(Listener listener, BatchPolicy batchPolicy) {
+        mListener = listener;
+        mBatchPolicy = batchPolicy;
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * @return the reconnects and the gaps of the session
+     */
+    public synchronized LinkStatus getStatus() {
+        return mReconnector.getStatus();
+    }
+
+    /**
+     * Set how often the received records are dispatched.
+     */
+    public synchronized void setBatchPolicy(BatchPolicy batchPolicy) {
+        mBatchPolicy = batchPolicy;
+        if (mReadThread != null) {
+            mReadThread.mmPipeline.setBatchPolicy(batchPolicy);
+        }
+    }
+
+    /**
+     * Decode the binary frames of the device, see {@link IngestPipeline#setBinaryMode(boolean)}.
+     * Turning it off takes effect with the next connection: the frames sent
+     * before the device switched back to text are still decoded.
+     */
+    public synchronized void setBinaryMode(boolean binaryMode) {
+        mBinaryMode = binaryMode;
+        if (binaryMode && mReadThread != null) {
+            mReadThread.mmPipeline.setBinaryMode(true);
+        }
+    }
+
+    /**
+     * Start a new session, with a new timeline, on the given transport.
+     * The current session is closed.
+     *
+     * @param transport the connection to a device, not connected yet
+     */
+    public void connect(Transport transport) {
+        synchronized (this) {
+            close();
+            mTimeline = new Timeline();
+            mReconnector = new Reconnector();
+            mTransport = transport;
+            mState = STATE_CONNECTING;
+            mConnectThread = new ConnectThread(transport, false);
+            mConnectThread.start();
+        }
+        mListener.onStateChange();
+    }
+
+    /**
+     * Close the connection, or stop reconnecting, without an error.
+     */
+    public void disconnect() {
+        synchronized (this) {
+            close();
+            mState = STATE_NONE;
+        }
+        mListener.onStateChange();
+    }
+
+    private void close() {
+        if (mConnectThread != null) {
+            mConnectThread.cancel();
+            mConnectThread = null;
+        }
+        if (mReadThread != null) {
+            mReadThread.cancel();
+            mReadThread = null;
+        }
+        cancelReconnect();
+    }
+
+    /**
+     * Make the lost connection again, unless the session was closed meanwhile.
+     */
+    private synchronized void reconnect() {
+        if (mState != STATE_RECONNECTING || mConnectThread != null) {
+            return;
+        }
+        mTransport = mTransport.reopen();
+        mConnectThread = new ConnectThread(mTransport, true);
+        mConnectThread.start();
+    }
+
+    private void scheduleReconnect(long delayMs) {
+        cancelReconnect();
+        mReconnectTimer = new Timer(true);
+        mReconnectTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                reconnect();
+            }
+        }, delayMs);
+    }
+
+    private void cancelReconnect() {
+        if (mReconnectTimer != null) {
+            mReconnectTimer.cancel();
+            mReconnectTimer = null;
+        }
+    }
+
+    private void connected(ConnectThread thread) {
+        final boolean resumed;
+        final ReadThread reader;
+        synchronized (this) {
+            if (thread != mConnectThread) {
+                // closed meanwhile
+                closeQuietly(thread.mmTransport);
+                return;
+            }
+            mConnectThread = null;
+            resumed = mReconnector.isDown();
+            mReconnector.onConnected();
+            if (resumed) {
+                // the samples to come follow a gap
+                mTimeline.markGap(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mLastReceiveNanos));
+            }
+            reader = new ReadThread(thread.mmTransport);
+            mReadThread = reader;
+            mState = STATE_CONNECTED;
+        }
+        mListener.onConnected(thread.mmTransport, resumed);
+        mListener.onStateChange();
+        reader.start();
+    }
+
+    private void connectFailed(ConnectThread thread) {
+        synchronized (this) {
+            if (thread != mConnectThread) {
+                return;
+            }
+            mConnectThread = null;
+            if (thread.mmReconnect) {
+                final long delayMs = mReconnector.onAttemptFailed();
+                if (delayMs >= 0) {
+                    scheduleReconnect(delayMs);
+                    return;
+                }
+            }
+            mState = STATE_NONE;
+        }
+        mListener.onStateChange();
+        mListener.onError(thread.mmReconnect ? "Unable to reconnect device" : "Unable to connect device");
+    }
+
+    /**
+     * The connection was lost, not closed by {@link #disconnect()}: make it again.
+     */
+    private void connectionLost(ReadThread thread) {
+        final long delayMs;
+        synchronized (this) {
+            if (thread != mReadThread) {
+                // closed meanwhile
+                return;
+            }
+            mReadThread = null;
+            mLastReceiveNanos = thread.mmLastReceiveNanos;
+            delayMs = mReconnector.onLost();
+            mState = STATE_RECONNECTING;
+            scheduleReconnect(delayMs);
+        }
+        mListener.onLost(delayMs);
+        mListener.onStateChange();
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs while attempting to make a connection: it either succeeds or fails.
+     */
+    private class ConnectThread extends Thread {
+        private final Transport mmTransport;
+        private final boolean mmReconnect;
+
+        ConnectThread(Transport transport, boolean reconnect) {
+            mmTransport = transport;
+            mmReconnect = reconnect;
+        }
+
+        @Override
+        public void run() {
+            setName(ConnectThread.class.getSimpleName());
+            try {
+                mmTransport.connect();
+            } catch (IOException e) {
+                closeQuietly(mmTransport);
+                connectFailed(this);
+                return;
+            }
+            connected(this);
+        }
+
+        void cancel() {
+            closeQuietly(mmTransport);
+        }
+    }
+
+    /**
+     * Runs during a connection: the received bytes are handed over to an
+     * {@link IngestPipeline} that parses them on its own thread, so the
+     * transport is read without delays.
+     */
+    private class ReadThread extends Thread {
+        private final Transport mmTransport;
+        private final IngestPipeline mmPipeline;
+        private volatile long mmLastReceiveNanos = System.nanoTime();
+
+        ReadThread(Transport transport) {
+            mmTransport = transport;
+            final Reconnector reconnector = mReconnector;
+            mmPipeline = new IngestPipeline(collection -> {
+                if (collection.gap != null) {
+                    reconnector.onGap(collection.gap);
+                }
+                mListener.onRecords(collection);
+            }, mBatchPolicy, mTimeline);
+            mmPipeline.setBinaryMode(mBinaryMode);
+        }
+
+        @Override
+        public void run() {
+            setName(ReadThread.class.getSimpleName());
+            byte[] buffer = new byte[BUFFER_SIZE];
+            IOException error;
+            mmPipeline.start();
+            try {
+                final InputStream input = mmTransport.getInputStream();
+                int nbytes;
+                while ((nbytes = input.read(buffer)) >= 0) {
+                    mmLastReceiveNanos = System.nanoTime();
+                    mListener.onReceived(buffer, nbytes);
+                    mmPipeline.receive(buffer, nbytes);
+                }
+                error = new IOException("End of stream");
+            } catch (IOException e) {
+                error = e;
+            }
+            mmPipeline.stop();
+            try {
+                // the timeline is handed over to the next connection
+                mmPipeline.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mListener.onDisconnected(mmTransport, error);
+            connectionLost(this);
+        }
+
+        void cancel() {
+            closeQuietly(mmTransport);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.BinaryFrameDecoder;
+import com.kyivaigroup.bluetoothsdpsensor.record.IngestStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.SerialParser;
+import com.kyivaigroup.bluetoothsdpsensor.record.Timeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The second stage of the receiving side of a connection.
+ * <p>
+ * The thread that reads the socket pushes the received chunks with
+ * {@link #receive(byte[], int)} into a preallocated ring buffer and goes
+ * back to reading. The pipeline thread drains the ring, parses the bytes,
+ * timestamps the samples with a {@link Timeline} and dispatches the records
+ * to the {@link Listener} as soon as the {@link BatchPolicy} says so.
+ */
+public class IngestPipeline {
+    private static final int RING_CAPACITY = 1 << 18;  // ~20 s of text samples at 2080 Hz
+    private static final int CHUNK_SIZE = 16284;
+    private static final long IDLE_WAIT_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    public interface Listener {
+        /**
+         * Called from the pipeline thread.
+         *
+         * @param collection the records parsed since the previous call
+         */
+        void onRecords(RecordCollection collection);
+    }
+
+    private final ByteRingBuffer mRing = new ByteRingBuffer(RING_CAPACITY);
+    private final SerialParser mSerialParser = new SerialParser();
+    private final Timeline mTimeline;
+    private final Listener mListener;
+    private final ParserThread mParserThread = new ParserThread();
+    private volatile BatchPolicy mBatchPolicy;
+    private volatile boolean mRunning;
+
+    public IngestPipeline(Listener listener, BatchPolicy batchPolicy) {
+        this(listener, batchPolicy, new Timeline());
+    }
+
+    /**
+     * @param timeline the timeline of the samples, shared by the pipelines of the
+     *                 connections of a session, one after another
+     */
+    public IngestPipeline(Listener listener, BatchPolicy batchPolicy, Timeline timeline) {
+        mListener = listener;
+        mBatchPolicy = batchPolicy;
+        mTimeline = timeline;
+    }
+
+    public void setBatchPolicy(BatchPolicy batchPolicy) {
+        mBatchPolicy = batchPolicy;
+        mRing.wakeUp();
+    }
+
+    /**
+     * @see SerialParser#setBinaryMode(boolean)
+     */
+    public void setBinaryMode(boolean binaryMode) {
+        mSerialParser.setBinaryMode(binaryMode);
+    }
+
+    public void start() {
+        mRunning = true;
+        mParserThread.start();
+    }
+
+    /**
+     * Stop the pipeline thread. The bytes left in the ring are parsed and the
+     * pending samples dispatched before it ends.
+     */
+    public void stop() {
+        mRunning = false;
+        mRing.wakeUp();
+    }
+
+    /**
+     * Wait for the pipeline thread to end after {@link #stop()}: the records
+     * are all dispatched and the timeline is free for the next pipeline.
+     */
+    public void join() throws InterruptedException {
+        if (mParserThread.isAlive()) {
+            mParserThread.join();
+        }
+    }
+
+    /**
+     * Called from the socket reading thread.
+     *
+     * @param data the received bytes; can be reused after the call
+     * @param size the number of received bytes
+     * @return false if the ring was full and the bytes are dropped
+     */
+    public boolean receive(byte[] data, int size) {
+        return mRing.offer(data, 0, size);
+    }
+
+    /**
+     * Called from the thread that calls {@link #receive(byte[], int)}.
+     *
+     * @return true if a chunk of the given size won't be dropped
+     */
+    public boolean hasRoom(int size) {
+        return mRing.capacity() - mRing.size() >= size;
+    }
+
+    public IngestStatus getStatus() {
+        return getStatus(0, 0);
+    }
+
+    private IngestStatus getStatus(int batchSamples, long batchAgeNanos) {
+        final BinaryFrameDecoder frames = mSerialParser.getFrameDecoder();
+        return new IngestStatus(mRing.size(), mRing.getMaxOccupancy(), mRing.capacity(),
+                mRing.getOverflowChunks(), mRing.getOverflowBytes(),
+                batchSamples, TimeUnit.NANOSECONDS.toMicros(batchAgeNanos),
+                frames.getFramesDecoded(), frames.getFramesCorrupted());
+    }
+
+    private class ParserThread extends Thread {
+
+        @Override
+        public void run() {
+            setName(IngestPipeline.class.getSimpleName());
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            long firstSampleTime = 0;  // when the oldest pending sample was parsed
+            while (mRunning) {
+                final int nbytes = mRing.poll(chunk, 0, chunk.length);
+                if (nbytes > 0) {
+                    mSerialParser.receive(chunk, nbytes, System.nanoTime());
+                }
+                final long now = System.nanoTime();
+                final BatchPolicy policy = mBatchPolicy;
+                final int samples = mSerialParser.getSampleCount();
+                if (samples == 0) {
+                    if (nbytes == 0) {
+                        mRing.await(IDLE_WAIT_NS);
+                    }
+                    continue;
+                }
+                if (firstSampleTime == 0) {
+                    firstSampleTime = now;
+                }
+                final long age = now - firstSampleTime;
+                if (policy.shouldFlush(samples, age)) {
+                    flush(samples, age);
+                    firstSampleTime = 0;
+                } else if (nbytes == 0) {
+                    // block until more bytes arrive or the batch is due
+                    mRing.await(policy.remainingNanos(age));
+                }
+            }
+            // stopped: the samples received so far are dispatched, whatever the policy
+            int nbytes;
+            while ((nbytes = mRing.poll(chunk, 0, chunk.length)) > 0) {
+                mSerialParser.receive(chunk, nbytes, System.nanoTime());
+            }
+            final int samples = mSerialParser.getSampleCount();
+            if (samples > 0) {
+                flush(samples, firstSampleTime == 0 ? 0 : System.nanoTime() - firstSampleTime);
+            }
+        }
+
+        private void flush(int samples, long age) {
+            RecordCollection collection = mSerialParser.consumeRecords();
+            mTimeline.apply(collection.samples);
+            collection.gap = mTimeline.takeGap();
+            collection.ingestStatus = getStatus(samples, age);
+            mListener.onRecords(collection);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the chunks of a {@link CaptureJournal} one by one.
+ */
+public class JournalReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataInputStream mIn;
+    private final long mStartTimeMillis;
+    private byte[] mData = new byte[BUFFER_SIZE];
+    private int mLength;
+    private long mTimeMicros;
+    private long mLostBytes;
+
+    public JournalReader(File file) throws IOException {
+        mIn = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            if (mIn.readInt() != CaptureJournal.MAGIC) {
+                throw new IOException("Not a capture journal: " + file);
+            }
+            final int version = mIn.readUnsignedShort();
+            if (version > CaptureJournal.VERSION) {
+                throw new IOException("Unsupported journal version " + version);
+            }
+            mStartTimeMillis = mIn.readLong();
+        } catch (IOException e) {
+            mIn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the wall clock time of the start of the capture in ms
+     */
+    public long getStartTimeMillis() {
+        return mStartTimeMillis;
+    }
+
+    /**
+     * Read the next chunk. A record truncated at the end of the file is ignored.
+     *
+     * @return false at the end of the journal
+     */
+    public boolean next() throws IOException {
+        try {
+            while (true) {
+                mTimeMicros += readVarint();
+                final long length = readVarint();
+                if (length == 0) {
+                    mLostBytes += readVarint();
+                    continue;
+                }
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Corrupted chunk of " + length + " bytes");
+                }
+                if (mData.length < length) {
+                    mData = new byte[(int) length];
+                }
+                mIn.readFully(mData, 0, (int) length);
+                mLength = (int) length;
+                return true;
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the bytes of the chunk, valid until the next call
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return the arrival time of the chunk in us since the start of the capture
+     */
+    public long getTimeMicros() {
+        return mTimeMicros;
+    }
+
+    /**
+     * @return the number of bytes lost by the capture so far
+     */
+    public long getLostBytes() {
+        return mLostBytes;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = mIn.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted varint");
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
@@ -0,0 +1,70 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a {@link CaptureJournal} to an {@link IngestPipeline} chunk by chunk,
+ * in place of the socket: the parser sees the same chunks in the same order.
+ * <p>
+ * The chunks are fed at their original pace times the speed, or as fast as
+ * the pipeline takes them with {@link #MAX_SPEED}. Unlike the socket, the
+ * replay waits for room in the pipeline instead of dropping a chunk, so
+ * replaying a journal always gives the same records.
+ */
+public class JournalReplay {
+    public static final double MAX_SPEED = 0;
+
+    private static final long BACKOFF_NS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final File mFile;
+    private final double mSpeed;
+    private volatile boolean mCancelled;
+
+    /**
+     * @param file  the journal
+     * @param speed 1 for real time, 2 for twice as fast, or {@link #MAX_SPEED}
+     */
+    public JournalReplay(File file, double speed) {
+        mFile = file;
+        mSpeed = speed;
+    }
+
+    /**
+     * Blocks until the whole journal is fed or the replay is cancelled.
+     * The pipeline should be started; it's not stopped.
+     *
+     * @return the number of bytes fed
+     */
+    public long replay(IngestPipeline pipeline) throws IOException {
+        long bytes = 0;
+        try (JournalReader reader = new JournalReader(mFile)) {
+            final long start = System.nanoTime();
+            while (!mCancelled && reader.next()) {
+                if (mSpeed > 0) {
+                    final long due = start + (long) (TimeUnit.MICROSECONDS.toNanos(reader.getTimeMicros()) / mSpeed);
+                    long wait;
+                    while (!mCancelled && (wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                final int length = reader.getLength();
+                while (!mCancelled && !pipeline.hasRoom(length)) {
+                    LockSupport.parkNanos(BACKOFF_NS);
+                }
+                pipeline.receive(reader.getData(), length);
+                bytes += length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Stop the replay in progress. Can be called from any thread.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+}
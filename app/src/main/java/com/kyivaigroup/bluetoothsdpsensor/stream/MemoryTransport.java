@@ -0,0 +1,203 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link Transport} to a device in the same process: what the device side
+ * writes to {@link #getDeviceOutputStream()} is read from {@link #getInputStream()}
+ * and the other way round. Unlike the piped streams of the JDK, the ends
+ * don't depend on the threads that use them.
+ */
+public class MemoryTransport implements Transport {
+    private static final int PIPE_CAPACITY = 1 << 16;
+
+    private final String mName;
+    private final Pipe mFromDevice = new Pipe(PIPE_CAPACITY);
+    private final Pipe mToDevice = new Pipe(PIPE_CAPACITY);
+    private volatile boolean mConnected;
+
+    public MemoryTransport(String name) {
+        mName = name;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (mFromDevice.isClosed()) {
+            throw new IOException("Transport closed");
+        }
+        mConnected = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnected && !mFromDevice.isClosed();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return mFromDevice.mInput;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return mToDevice.mOutput;
+    }
+
+    /**
+     * @return the stream of the device side to send the bytes to the app
+     */
+    public OutputStream getDeviceOutputStream() {
+        return mFromDevice.mOutput;
+    }
+
+    /**
+     * @return the stream of the device side to receive the commands of the app
+     */
+    public InputStream getDeviceInputStream() {
+        return mToDevice.mInput;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return a new pair of pipes: the device side has to be attached to it again
+     */
+    @Override
+    public Transport reopen() {
+        return new MemoryTransport(mName);
+    }
+
+    /**
+     * Close both directions: the pending reads see the end of the stream.
+     */
+    @Override
+    public void close() {
+        mConnected = false;
+        mFromDevice.close();
+        mToDevice.close();
+    }
+
+    /**
+     * A bounded blocking byte queue with a stream at each end.
+     */
+    private static class Pipe {
+        private final byte[] mBuffer;
+        private int mHead;   // the next byte to read
+        private int mSize;
+        private boolean mClosed;
+
+        final InputStream mInput = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return Pipe.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                synchronized (Pipe.this) {
+                    return mSize;
+                }
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        final OutputStream mOutput = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Pipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                Pipe.this.close();
+            }
+        };
+
+        Pipe(int capacity) {
+            mBuffer = new byte[capacity];
+        }
+
+        synchronized boolean isClosed() {
+            return mClosed;
+        }
+
+        synchronized void close() {
+            mClosed = true;
+            notifyAll();
+        }
+
+        /**
+         * Blocks until at least one byte is available, like a socket.
+         */
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (mSize == 0) {
+                if (mClosed) {
+                    return -1;
+                }
+                await();
+            }
+            final int n = Math.min(len, mSize);
+            final int first = Math.min(n, mBuffer.length - mHead);
+            System.arraycopy(mBuffer, mHead, b, off, first);
+            System.arraycopy(mBuffer, 0, b, off + first, n - first);
+            mHead = (mHead + n) % mBuffer.length;
+            mSize -= n;
+            notifyAll();
+            return n;
+        }
+
+        /**
+         * Blocks until all the bytes are queued.
+         */
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                while (mSize == mBuffer.length && !mClosed) {
+                    await();
+                }
+                if (mClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                final int tail = (mHead + mSize) % mBuffer.length;
+                final int n = Math.min(len, Math.min(mBuffer.length - mSize, mBuffer.length - tail));
+                System.arraycopy(b, off, mBuffer, tail, n);
+                mSize += n;
+                off += n;
+                len -= n;
+                notifyAll();
+            }
+        }
+
+        private void await() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
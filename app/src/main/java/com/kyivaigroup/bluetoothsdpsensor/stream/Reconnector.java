@@ -0,0 +1,111 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.Gap;
+import com.kyivaigroup.bluetoothsdpsensor.record.LinkStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when to retry a lost connection and records the outages of a
+ * session.
+ * <p>
+ * The attempts are delayed by an exponential backoff, from
+ * {@link #INITIAL_DELAY_MS} doubled up to {@link #MAX_DELAY_MS}, and given up
+ * after {@link #MAX_ATTEMPTS}. The backoff starts over only once a connection
+ * lasted {@link #STABLE_MS}: a device that accepts and drops the connections
+ * at once is not hammered. Thread-safe.
+ */
+public class Reconnector {
+    public static final long INITIAL_DELAY_MS = 500;
+    public static final long MAX_DELAY_MS = 30_000;
+    public static final int MAX_ATTEMPTS = 20;  // ~8 min
+    public static final long STABLE_MS = 10_000;
+
+    private int mAttempt;          // since the backoff started over
+    private long mLostNanos;       // when the connection was lost, if down
+    private long mConnectedNanos;  // when the connection was made
+    private boolean mDown;
+
+    private int mReconnects;
+    private int mFailedAttempts;
+    private long mLastReconnectMs;
+    private long mMaxReconnectMs;
+    private int mGaps;
+    private long mLastGapUs;
+    private long mMaxGapUs;
+    private long mTotalGapUs;
+
+    /**
+     * The connection was lost.
+     *
+     * @return the delay before the first attempt to reconnect, ms
+     */
+    public synchronized long onLost() {
+        final long now = System.nanoTime();
+        if (!mDown) {
+            mDown = true;
+            mLostNanos = now;
+        }
+        if (now - mConnectedNanos >= TimeUnit.MILLISECONDS.toNanos(STABLE_MS)) {
+            mAttempt = 0;
+        }
+        return getDelay();
+    }
+
+    /**
+     * An attempt to reconnect failed.
+     *
+     * @return the delay before the next attempt, ms, or -1 to give up
+     */
+    public synchronized long onAttemptFailed() {
+        mFailedAttempts++;
+        if (++mAttempt >= MAX_ATTEMPTS) {
+            mDown = false;
+            return -1;
+        }
+        return getDelay();
+    }
+
+    /**
+     * The connection was made, the first one or again.
+     */
+    public synchronized void onConnected() {
+        final long now = System.nanoTime();
+        mConnectedNanos = now;
+        if (!mDown) {
+            return;
+        }
+        mDown = false;
+        mAttempt++;
+        mReconnects++;
+        mLastReconnectMs = TimeUnit.NANOSECONDS.toMillis(now - mLostNanos);
+        mMaxReconnectMs = Math.max(mMaxReconnectMs, mLastReconnectMs);
+    }
+
+    /**
+     * @return true from the loss of the connection until it's made again or given up
+     */
+    public synchronized boolean isDown() {
+        return mDown;
+    }
+
+    /**
+     * Record the gap in the samples left by an outage.
+     */
+    public synchronized void onGap(Gap gap) {
+        mGaps++;
+        mLastGapUs = gap.durationUs;
+        mMaxGapUs = Math.max(mMaxGapUs, gap.durationUs);
+        mTotalGapUs += gap.durationUs;
+    }
+
+    public synchronized LinkStatus getStatus() {
+        return new LinkStatus(mReconnects, mFailedAttempts, mLastReconnectMs, mMaxReconnectMs,
+                mGaps, mLastGapUs, mMaxGapUs, mTotalGapUs);
+    }
+
+    private long getDelay() {
+        // 2^6 * 500 ms is past the max already
+        return Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << Math.min(mAttempt, 6));
+    }
+}
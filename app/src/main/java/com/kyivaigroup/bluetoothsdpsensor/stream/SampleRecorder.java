@@ -0,0 +1,258 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecorderStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingFormat;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingHeader;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingWriter;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+import com.kyivaigroup.bluetoothsdpsensor.record.SensorInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams every parsed sample to disk on its own thread, independently
+ * of the chart.
+ * <p>
+ * The pipeline thread hands the batches over with {@link #offer(RecordCollection)},
+ * which never blocks: if the recorder falls behind and its queue is full,
+ * the batch is dropped and counted. The samples are written as
+ * {@link RecordingFormat} files, a new segment is started when the current
+ * one grows too large or too old.
+ */
+public class SampleRecorder {
+    private static final int QUEUE_CAPACITY = 64;  // batches
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long POLL_TIMEOUT_MS = 1000;
+    private static final String DATE_PATTERN = "yyyy.MM.dd HH:mm:ss";
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;  // ~1.5 hours at 2080 Hz
+    public static final long DEFAULT_SEGMENT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final File mFolder;
+    private final long mMaxSegmentBytes;
+    private final long mMaxSegmentMillis;
+    private final BlockingQueue<RecordCollection> mQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final RecorderThread mThread = new RecorderThread();
+    private volatile boolean mRunning;
+
+    // Statistics, written by the recorder thread unless noted
+    private volatile int mSegments;
+    private volatile long mSamplesWritten;
+    private volatile long mBytesWritten;
+    private volatile long mWriteNanos;
+    private volatile String mError;
+    private long mDroppedBatches;  // guarded by this
+    private long mDroppedSamples;  // guarded by this
+
+    /**
+     * @param folder           where to create the segments
+     * @param maxSegmentBytes  the size of a segment to start the next one
+     * @param maxSegmentMillis the duration of a segment to start the next one
+     */
+    public SampleRecorder(File folder, long maxSegmentBytes, long maxSegmentMillis) {
+        mFolder = folder;
+        mMaxSegmentBytes = maxSegmentBytes;
+        mMaxSegmentMillis = maxSegmentMillis;
+    }
+
+    public SampleRecorder(File folder) {
+        this(folder, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_MILLIS);
+    }
+
+    public void start() {
+        mRunning = true;
+        mThread.start();
+    }
+
+    /**
+     * Stop accepting batches. The queued ones are written and the last segment is closed
+     * on the recorder thread.
+     */
+    public void stop() {
+        synchronized (this) {
+            // no batch is queued after the final drain of the recorder thread
+            mRunning = false;
+        }
+        mThread.interrupt();
+    }
+
+    /**
+     * Wait for the recorder thread to end after {@link #stop()}: the last segment is closed.
+     */
+    public void join() throws InterruptedException {
+        if (mThread.isAlive()) {
+            mThread.join();
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * Queue the samples of a collection to be written. Called from the pipeline thread.
+     *
+     * @return false if the recorder is behind and the samples are dropped
+     */
+    public synchronized boolean offer(RecordCollection collection) {
+        if (!mRunning) {
+            return false;
+        }
+        collection.samples.retain();
+        if (mQueue.offer(collection)) {
+            return true;
+        }
+        mDroppedBatches++;
+        mDroppedSamples += collection.samples.length;
+        collection.samples.release();
+        return false;
+    }
+
+    public RecorderStatus getStatus() {
+        final long bytes = mBytesWritten;
+        final long nanos = mWriteNanos;
+        final long throughput = nanos > 0 ? bytes * TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+        synchronized (this) {
+            return new RecorderStatus(mSegments, mSamplesWritten, bytes, throughput,
+                    mDroppedBatches, mDroppedSamples, mQueue.size(), mError);
+        }
+    }
+
+    private class RecorderThread extends Thread {
+        private SensorInfo mSensorInfo = new SensorInfo(31, 500, 60);  // default SDP31
+        private int mRecordId = RecordingHeader.RECORD_ID_UNKNOWN;
+        private RecordingWriter mWriter;
+        private long mSegmentStart;
+        private long mSegmentBytes;  // the bytes of the closed segments
+
+        @Override
+        public void run() {
+            setName(SampleRecorder.class.getSimpleName());
+            try {
+                while (mRunning) {
+                    RecordCollection collection;
+                    try {
+                        collection = mQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        // stopped
+                        continue;
+                    }
+                    if (collection != null) {
+                        write(collection);
+                    }
+                    rotateIfDue();
+                }
+                RecordCollection collection;
+                while ((collection = mQueue.poll()) != null) {
+                    write(collection);
+                }
+                closeSegment();
+            } catch (IOException e) {
+                mError = e.getMessage();
+                synchronized (SampleRecorder.this) {
+                    mRunning = false;
+                }
+                closeQuietly();
+                drop();
+            }
+        }
+
+        private void write(RecordCollection collection) throws IOException {
+            final SampleBatch samples = collection.samples;
+            try {
+                if (collection.deviceInfo != null) {
+                    final SensorInfo sensorInfo = collection.deviceInfo.sensorInfo;
+                    if (sensorInfo.pressureScale != mSensorInfo.pressureScale) {
+                        // the raw values of a segment share the same scale
+                        closeSegment();
+                    }
+                    mSensorInfo = sensorInfo;
+                    mRecordId = collection.deviceInfo.recordId;
+                }
+                if (samples.length == 0) {
+                    return;
+                }
+                if (mWriter == null) {
+                    openSegment();
+                }
+                final long start = System.nanoTime();
+                for (int i = 0; i < samples.length; i++) {
+                    mWriter.write(samples.time[i], samples.diffPressureRaw[i]);
+                }
+                mWriteNanos += System.nanoTime() - start;
+                mSamplesWritten += samples.length;
+                mBytesWritten = mSegmentBytes + mWriter.getBytesWritten();
+            } finally {
+                samples.release();
+            }
+        }
+
+        private void rotateIfDue() throws IOException {
+            if (mWriter == null) {
+                return;
+            }
+            if (mWriter.getBytesWritten() >= mMaxSegmentBytes
+                    || System.currentTimeMillis() - mSegmentStart >= mMaxSegmentMillis) {
+                closeSegment();
+            }
+        }
+
+        private void openSegment() throws IOException {
+            mFolder.mkdirs();
+            mSegmentStart = System.currentTimeMillis();
+            final String tag = String.format(Locale.US, "segment %d", mSegments + 1);
+            final String name = new SimpleDateFormat(DATE_PATTERN, Locale.getDefault()).format(new Date(mSegmentStart));
+            File file = new File(mFolder, name + " " + tag + RecordingFormat.EXTENSION);
+            RecordingHeader header = new RecordingHeader(mSensorInfo, mRecordId, mSegmentStart, tag);
+            mWriter = new RecordingWriter(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE), header);
+            mSegments++;
+        }
+
+        private void closeSegment() throws IOException {
+            if (mWriter == null) {
+                return;
+            }
+            final long start = System.nanoTime();
+            mWriter.close();
+            mWriteNanos += System.nanoTime() - start;
+            mSegmentBytes += mWriter.getBytesWritten();
+            mBytesWritten = mSegmentBytes;
+            mWriter = null;
+        }
+
+        private void closeQuietly() {
+            if (mWriter != null) {
+                try {
+                    mWriter.close();
+                } catch (IOException e) {
+                    // already failed
+                }
+                mWriter = null;
+            }
+        }
+
+        /**
+         * Release the batches queued after a write error.
+         */
+        private void drop() {
+            RecordCollection collection;
+            while ((collection = mQueue.poll()) != null) {
+                synchronized (SampleRecorder.this) {
+                    mDroppedBatches++;
+                    mDroppedSamples += collection.samples.length;
+                }
+                collection.samples.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * A {@link Transport} over TCP, to a device simulator or a serial-to-TCP bridge.
+ */
+public class TcpTransport implements Transport {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final String mHost;
+    private final int mPort;
+    private final Socket mSocket = new Socket();
+
+    public TcpTransport(String host, int port) {
+        mHost = host;
+        mPort = port;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        // the sensor lines are small: send the commands without delay
+        mSocket.setTcpNoDelay(true);
+        mSocket.connect(new InetSocketAddress(mHost, mPort), CONNECT_TIMEOUT_MS);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mSocket.isConnected() && !mSocket.isClosed();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return mSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return mSocket.getOutputStream();
+    }
+
+    @Override
+    public String getName() {
+        return mHost + ":" + mPort;
+    }
+
+    @Override
+    public Transport reopen() {
+        return new TcpTransport(mHost, mPort);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+    }
+}
@@ -0,0 +1,39 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A byte stream connection to the device: Bluetooth RFCOMM on the phone,
+ * TCP or in-memory to run the same pipeline against a stand-in device.
+ * <p>
+ * {@link #connect()} is called once from the connecting thread; the streams
+ * are valid once it returns. {@link #close()} can be called from any
+ * thread, at any time, and unblocks the pending connect and reads. A closed
+ * transport is not connected again: {@link #reopen()} gives a new one.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Blocks until the connection is made or fails.
+     */
+    void connect() throws IOException;
+
+    boolean isConnected();
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * @return the name of the device to show
+     */
+    String getName();
+
+    /**
+     * @return a new transport to the same device, not connected yet, to reconnect
+     */
+    Transport reopen();
+}
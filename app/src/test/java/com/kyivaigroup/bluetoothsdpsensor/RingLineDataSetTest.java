@@ -0,0 +1,150 @@
+package com.kyivaigroup.bluetoothsdpsensor;
+
+import com.github.mikephil.charting.data.DataSet;
+import com.github.mikephil.charting.data.Entry;
+import com.kyivaigroup.bluetoothsdpsensor.chart.Decimator;
+import com.kyivaigroup.bluetoothsdpsensor.chart.SampleRing;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RingLineDataSet} reads its {@link SampleRing} the way the chart renderer does.
+ */
+public class RingLineDataSetTest {
+    private static final int CAPACITY = 1024;
+
+    @Test
+    public void minMaxFollowTheRing() {
+        RingLineDataSet dataSet = new RingLineDataSet(CAPACITY, "test");
+        dataSet.getRing().setScaleY(0.5f);
+        append(dataSet, CAPACITY + 100);
+        dataSet.notifyDataSetChanged();
+
+        // the oldest 100 points are evicted
+        final SampleRing ring = dataSet.getRing();
+        assertEquals(ring.getX(0), dataSet.getXMin(), 0);
+        assertEquals(ring.getX(CAPACITY - 1), dataSet.getXMax(), 0);
+        assertEquals(ring.getMinY(), dataSet.getYMin(), 0);
+        assertEquals(ring.getMaxY(), dataSet.getYMax(), 0);
+        assertEquals(CAPACITY, dataSet.getEntryCount());
+    }
+
+    @Test
+    public void minMaxYInTheVisibleRange() {
+        RingLineDataSet dataSet = new RingLineDataSet(CAPACITY, "test");
+        for (int i = 0; i < 100; i++) {
+            dataSet.append(i * 1000L, (short) (i == 10 ? -500 : i == 90 ? 500 : i));
+        }
+        dataSet.calcMinMaxY(0.020f, 0.080f);
+        assertEquals(20, dataSet.getYMin(), 0);
+        assertEquals(80, dataSet.getYMax(), 0);
+        dataSet.calcMinMaxY(0, 1);
+        assertEquals(-500, dataSet.getYMin(), 0);
+        assertEquals(500, dataSet.getYMax(), 0);
+    }
+
+    @Test
+    public void entriesAreReusedButDistinct() {
+        RingLineDataSet dataSet = new RingLineDataSet(CAPACITY, "test");
+        append(dataSet, 10);
+        Entry first = dataSet.getEntryForIndex(3);
+        Entry second = dataSet.getEntryForIndex(4);
+        assertNotSame(first, second);
+        assertEquals(dataSet.getRing().getX(3), first.getX(), 0);
+        assertEquals(dataSet.getRing().getY(3), first.getY(), 0);
+        assertEquals(3, dataSet.getEntryIndex(first));
+        assertEquals(4, dataSet.getEntryIndex(second));
+        assertEquals(-1, dataSet.getEntryIndex(new Entry(first.getX(), first.getY())));
+        assertNull(dataSet.getEntryForIndex(-1));
+        assertNull(dataSet.getEntryForIndex(10));
+    }
+
+    @Test
+    public void entryIndexRounding() {
+        RingLineDataSet dataSet = new RingLineDataSet(CAPACITY, "test");
+        for (int i = 0; i < 10; i++) {
+            dataSet.append(i * 10_000L, (short) i);
+        }
+        final float x = 0.034f;
+        assertEquals(3, dataSet.getEntryIndex(x, 0, DataSet.Rounding.DOWN));
+        assertEquals(4, dataSet.getEntryIndex(x, 0, DataSet.Rounding.UP));
+        assertEquals(3, dataSet.getEntryIndex(x, 0, DataSet.Rounding.CLOSEST));
+        assertEquals(3, dataSet.getEntryForXValue(x, 0).getY(), 0);
+        assertEquals(0, dataSet.getEntriesForXValue(x).size());
+
+        List<Entry> entries = dataSet.getEntriesForXValue(dataSet.getRing().getX(5));
+        assertEquals(1, entries.size());
+        assertEquals(5, entries.get(0).getY(), 0);
+    }
+
+    @Test
+    public void decimatedPointsKeepTheFullRange() {
+        RingLineDataSet dataSet = new RingLineDataSet(CAPACITY, "test");
+        append(dataSet, CAPACITY);
+        dataSet.notifyDataSetChanged();
+
+        dataSet.setDecimation(Decimator.Mode.M4);
+        dataSet.decimate(10);
+        assertTrue(dataSet.getEntryCount() <= 40);
+        // the extremes are drawn
+        float yMin = Float.MAX_VALUE;
+        float yMax = -Float.MAX_VALUE;
+        for (int i = 0; i < dataSet.getEntryCount(); i++) {
+            yMin = Math.min(yMin, dataSet.getEntryForIndex(i).getY());
+            yMax = Math.max(yMax, dataSet.getEntryForIndex(i).getY());
+        }
+        assertEquals(dataSet.getYMin(), yMin, 0);
+        assertEquals(dataSet.getYMax(), yMax, 0);
+        assertEquals(dataSet.getRing().getX(CAPACITY - 1),
+                dataSet.getEntryForIndex(dataSet.getEntryCount() - 1).getX(), 0);
+
+        dataSet.setDecimation(Decimator.Mode.NONE);
+        dataSet.decimate(10);
+        assertEquals(CAPACITY, dataSet.getEntryCount());
+    }
+
+    @Test
+    public void addEntryIsConvertedToRaw() {
+        RingLineDataSet dataSet = new RingLineDataSet(CAPACITY, "test");
+        dataSet.getRing().setScaleY(0.25f);
+        dataSet.addEntry(new Entry(1.5f, 10f));
+        dataSet.addEntry(new Entry(2f, 1e6f));
+        dataSet.addEntry(new Entry(3f, -1e6f));
+
+        final SampleRing ring = dataSet.getRing();
+        assertEquals(3, ring.size());
+        assertEquals(1_500_000, ring.getTick(0));
+        assertEquals(40, ring.getValue(0));
+        assertEquals(Short.MAX_VALUE, ring.getValue(1));
+        assertEquals(Short.MIN_VALUE, ring.getValue(2));
+    }
+
+    @Test
+    public void clearAndCopy() {
+        RingLineDataSet dataSet = new RingLineDataSet(CAPACITY, "test");
+        append(dataSet, 10);
+        DataSet<Entry> copy = dataSet.copy();
+        assertEquals(10, copy.getEntryCount());
+        assertEquals("test", copy.getLabel());
+        assertEquals(dataSet.getRing().getY(9), copy.getEntryForIndex(9).getY(), 0);
+
+        dataSet.setDecimation(Decimator.Mode.M4);
+        dataSet.decimate(1);
+        dataSet.clear();
+        assertEquals(0, dataSet.getEntryCount());
+        assertEquals(10, copy.getEntryCount());
+    }
+
+    private static void append(RingLineDataSet dataSet, int samples) {
+        for (int i = 0; i < samples; i++) {
+            dataSet.append(i * 1000L, (short) ((i * 7919) % 2001 - 1000));
+        }
+    }
+}
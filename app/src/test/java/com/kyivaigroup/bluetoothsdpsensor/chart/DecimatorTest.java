@@ -0,0 +1,116 @@
+package com.kyivaigroup.bluetoothsdpsensor.chart;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecimatorTest {
+    private static final int COLUMNS = 100;
+
+    @Test
+    public void m4KeepsTheExtremesOfEachColumn() {
+        Points series = noise(1 << 14, new Random(1));
+        Decimator decimator = new Decimator();
+        final int size = decimator.decimate(series, COLUMNS, Decimator.Mode.M4);
+        assertTrue(size <= 4 * COLUMNS);
+        assertIncreasing(decimator);
+
+        float[][] expected = columnExtremes(series, series);
+        float[][] actual = columnExtremes(series, decimator);
+        assertTrue(Arrays.equals(expected[0], actual[0]));
+        assertTrue(Arrays.equals(expected[1], actual[1]));
+        assertEquals(series.getX(0), decimator.getX(0), 0);
+        assertEquals(series.getX(series.size() - 1), decimator.getX(size - 1), 0);
+    }
+
+    @Test
+    public void lttbKeepsTheEnds() {
+        Points series = noise(1 << 14, new Random(2));
+        Decimator decimator = new Decimator();
+        final int size = decimator.decimate(series, COLUMNS, Decimator.Mode.LTTB);
+        assertEquals(2 * COLUMNS, size);
+        assertIncreasing(decimator);
+        assertEquals(series.getX(0), decimator.getX(0), 0);
+        assertEquals(series.getX(series.size() - 1), decimator.getX(size - 1), 0);
+        for (int i = 0; i < size; i++) {
+            // a point of the series
+            final int index = series.indexOfX(decimator.getX(i), PointSeries.ROUND_CLOSEST);
+            assertEquals(series.getY(index), decimator.getY(i), 0);
+        }
+    }
+
+    @Test
+    public void shortSeriesIsCopied() {
+        Points series = noise(2 * COLUMNS, new Random(3));
+        for (Decimator.Mode mode : Decimator.Mode.values()) {
+            Decimator decimator = new Decimator();
+            assertEquals(series.size(), decimator.decimate(series, COLUMNS, mode));
+            for (int i = 0; i < series.size(); i++) {
+                assertEquals(series.getX(i), decimator.getX(i), 0);
+                assertEquals(series.getY(i), decimator.getY(i), 0);
+            }
+        }
+    }
+
+    private static Points noise(int size, Random random) {
+        Points points = new Points(size);
+        for (int i = 0; i < size; i++) {
+            points.x[i] = i / 2080f;
+            points.y[i] = (float) (12 * Math.sin(i / 416.0) + random.nextGaussian());
+        }
+        return points;
+    }
+
+    /**
+     * @return the min and the max y of each pixel column, binned as the decimator does
+     */
+    private static float[][] columnExtremes(PointSeries full, PointSeries points) {
+        final float xMin = full.getX(0);
+        final float columnsPerX = COLUMNS / (full.getX(full.size() - 1) - xMin);
+        float[] min = new float[COLUMNS];
+        float[] max = new float[COLUMNS];
+        Arrays.fill(min, Float.MAX_VALUE);
+        Arrays.fill(max, -Float.MAX_VALUE);
+        for (int i = 0; i < points.size(); i++) {
+            final int c = Math.min((int) ((points.getX(i) - xMin) * columnsPerX), COLUMNS - 1);
+            min[c] = Math.min(min[c], points.getY(i));
+            max[c] = Math.max(max[c], points.getY(i));
+        }
+        return new float[][]{min, max};
+    }
+
+    private static void assertIncreasing(PointSeries points) {
+        for (int i = 1; i < points.size(); i++) {
+            assertTrue(points.getX(i) > points.getX(i - 1));
+        }
+    }
+
+    private static class Points extends PointSeries {
+        final float[] x;
+        final float[] y;
+
+        Points(int size) {
+            x = new float[size];
+            y = new float[size];
+        }
+
+        @Override
+        public int size() {
+            return x.length;
+        }
+
+        @Override
+        public float getX(int index) {
+            return x[index];
+        }
+
+        @Override
+        public float getY(int index) {
+            return y[index];
+        }
+    }
+}
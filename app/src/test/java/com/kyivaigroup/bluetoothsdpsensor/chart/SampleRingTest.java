@@ -0,0 +1,101 @@
+package com.kyivaigroup.bluetoothsdpsensor.chart;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SampleRing} against a brute-force model.
+ */
+public class SampleRingTest {
+
+    @Test
+    public void matchesTheModel() {
+        Random random = new Random(3);
+        for (int capacity : new int[]{1, 2, 8, 64}) {
+            SampleRing ring = new SampleRing(capacity);
+            ArrayDeque<long[]> model = new ArrayDeque<>();  // tick, value
+            float scale = 1;
+            long tick = 0;
+            for (int step = 0; step < 20000; step++) {
+                final int op = random.nextInt(100);
+                if (op == 0) {
+                    ring.clear();
+                    model.clear();
+                } else if (op == 1) {
+                    scale = 0.01f + random.nextFloat();
+                    ring.setScaleY(scale);
+                } else {
+                    tick += random.nextInt(1000);
+                    final short value = (short) (random.nextInt(3) == 0 ? random.nextInt(5) : random.nextInt());
+                    ring.add(tick, value);
+                    model.addLast(new long[]{tick, value});
+                    if (model.size() > capacity) {
+                        model.removeFirst();
+                    }
+                }
+                assertRing(model, scale, ring);
+            }
+        }
+    }
+
+    @Test
+    public void indexOfX() {
+        Random random = new Random(5);
+        SampleRing ring = new SampleRing(64);
+        List<Float> xs = new ArrayList<>();
+        long tick = 0;
+        for (int i = 0; i < 100; i++) {
+            tick += 1 + random.nextInt(1000);
+            ring.add(tick, (short) 0);
+            xs.add((float) (tick / 1e6));
+        }
+        xs = xs.subList(xs.size() - ring.size(), xs.size());
+        for (int k = 0; k < 1000; k++) {
+            final float x = xs.get(0) + (xs.get(xs.size() - 1) - xs.get(0)) * (1.2f * random.nextFloat() - 0.1f);
+            float closest = Float.MAX_VALUE;
+            for (float point : xs) {
+                closest = Math.min(closest, Math.abs(point - x));
+            }
+            final int index = ring.indexOfX(x, PointSeries.ROUND_CLOSEST);
+            assertEquals(closest, Math.abs(ring.getX(index) - x), 0);
+            final int down = ring.indexOfX(x, PointSeries.ROUND_DOWN);
+            if (x >= xs.get(0)) {
+                assertTrue(ring.getX(down) <= x);
+            }
+            final int up = ring.indexOfX(x, PointSeries.ROUND_UP);
+            if (x <= xs.get(xs.size() - 1)) {
+                assertTrue(ring.getX(up) >= x);
+            }
+        }
+    }
+
+    private static void assertRing(ArrayDeque<long[]> model, float scale, SampleRing ring) {
+        assertEquals(model.size(), ring.size());
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        int i = 0;
+        for (long[] point : model) {
+            final float y = point[1] * scale;
+            assertEquals(point[0], ring.getTick(i));
+            assertEquals((float) (point[0] / 1e6), ring.getX(i), 0);
+            assertEquals((short) point[1], ring.getValue(i));
+            assertEquals(y, ring.getY(i), 0);
+            min = Math.min(min, y);
+            max = Math.max(max, y);
+            i++;
+        }
+        if (!model.isEmpty()) {
+            assertEquals(min, ring.getMinY(), 0);
+            assertEquals(max, ring.getMaxY(), 0);
+            assertEquals((float) (model.getFirst()[0] / 1e6), ring.getMinX(), 0);
+            assertEquals((float) (model.getLast()[0] / 1e6), ring.getMaxX(), 0);
+        }
+    }
+}
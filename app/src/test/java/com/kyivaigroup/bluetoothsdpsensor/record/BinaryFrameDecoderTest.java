@@ -0,0 +1,221 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import com.kyivaigroup.bluetoothsdpsensor.stream.BatchPolicy;
+import com.kyivaigroup.bluetoothsdpsensor.stream.IngestPipeline;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link BinaryFrameEncoder} to {@link SerialParser} round trips on synthetic frames.
+ */
+public class BinaryFrameDecoderTest {
+    private final SampleBatchPool mPool = new SampleBatchPool();
+    private final BinaryFrameEncoder mEncoder = new BinaryFrameEncoder();
+    private final Random mRandom = new Random(3);
+
+    @Test
+    public void roundTrip() {
+        SampleBatch samples = randomSamples(300);
+        SerialParser parser = binaryParser();
+        byte[] frame = encode(samples, 1_700_000_000_000L);
+        parser.receive(frame, frame.length);
+
+        SampleBatch decoded = parser.consumeRecords().samples;
+        assertSamples(samples, decoded);
+        assertEquals(1_700_000_000_000L, decoded.clockTick[0]);
+        for (int i = 1; i < decoded.length; i++) {
+            assertEquals(0, decoded.clockTick[i]);
+        }
+        assertEquals(1, parser.getFrameDecoder().getFramesDecoded());
+        assertEquals(0, parser.getFrameDecoder().getFramesCorrupted());
+    }
+
+    @Test
+    public void splitFramesAndText() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        SampleBatch expected = mPool.acquire();
+        for (int f = 0; f < 10; f++) {
+            SampleBatch samples = randomSamples(1 + mRandom.nextInt(300));
+            byte[] frame = encode(samples, 1000 + f);
+            stream.write(frame, 0, frame.length);
+            for (int i = 0; i < samples.length; i++) {
+                expected.add(samples.diffPressureRaw[i], samples.timeDelta[i]);
+            }
+            final short value = (short) (mRandom.nextInt(2000) - 1000);
+            writeText(stream, "D" + value + "t480\n");
+            expected.add(value, 480);
+        }
+
+        // the frames arrive in pieces, as they do from the socket
+        byte[] bytes = stream.toByteArray();
+        SerialParser parser = binaryParser();
+        for (int offset = 0; offset < bytes.length; ) {
+            final int size = Math.min(bytes.length - offset, 1 + mRandom.nextInt(50));
+            parser.receive(Arrays.copyOfRange(bytes, offset, offset + size), size);
+            offset += size;
+        }
+
+        assertSamples(expected, parser.consumeRecords().samples);
+        assertEquals(10, parser.getFrameDecoder().getFramesDecoded());
+    }
+
+    @Test
+    public void badCrc() {
+        byte[] frame = encode(randomSamples(50), 1000);
+        frame[frame.length - 1] ^= 1;
+        SerialParser parser = binaryParser();
+        parser.receive(frame, frame.length);
+        byte[] text = "D12t480\n".getBytes(StandardCharsets.US_ASCII);
+        parser.receive(text, text.length);
+
+        SampleBatch decoded = parser.consumeRecords().samples;
+        assertEquals(1, decoded.length);
+        assertEquals(12, decoded.diffPressureRaw[0]);
+        assertEquals(0, parser.getFrameDecoder().getFramesDecoded());
+        assertEquals(1, parser.getFrameDecoder().getFramesCorrupted());
+    }
+
+    @Test
+    public void zeroLengthFollowedByText() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(new byte[]{BinaryFrameDecoder.FRAME_START, 0, 0}, 0, 3);
+        writeText(stream, "D12t480\n");
+        SerialParser parser = binaryParser();
+        parser.receive(stream.toByteArray(), stream.size());
+
+        SampleBatch decoded = parser.consumeRecords().samples;
+        assertEquals(1, decoded.length);
+        assertEquals(12, decoded.diffPressureRaw[0]);
+        assertEquals(1, parser.getFrameDecoder().getFramesCorrupted());
+    }
+
+    @Test
+    public void shortLengthFollowedByText() {
+        SampleBatch samples = mPool.acquire();
+        for (int i = 0; i < 20; i++) {
+            samples.add((short) i, 480);
+        }
+        byte[] frame = encode(samples, 1000);
+        // the frame ends 3 bytes later than the length says: they are taken for a text line
+        frame[1] -= 3;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(frame, 0, frame.length);
+        writeText(stream, "\nD-7t480\n");
+        SerialParser parser = binaryParser();
+        parser.receive(stream.toByteArray(), stream.size());
+
+        SampleBatch decoded = parser.consumeRecords().samples;
+        assertEquals(1, decoded.length);
+        assertEquals(-7, decoded.diffPressureRaw[0]);
+        assertEquals(480, decoded.timeDelta[0]);
+        assertEquals(0, parser.getFrameDecoder().getFramesDecoded());
+        assertEquals(1, parser.getFrameDecoder().getFramesCorrupted());
+    }
+
+    @Test
+    public void negativeDeltaFitsMaxFrameSize() {
+        SampleBatch samples = mPool.acquire();
+        for (int i = 0; i < 100; i++) {
+            samples.add(Short.MIN_VALUE, -1);
+        }
+        byte[] frame = new byte[BinaryFrameEncoder.maxFrameSize(samples.length)];
+        final int size = mEncoder.encode(samples, 0, samples.length, -1, frame, 0);
+        // a sign-extended negative varint takes 10 bytes
+        assertEquals(7 + 1 + 10 + samples.length * (10 + 2), size);
+        assertTrue(size <= frame.length);
+
+        // the firmware never sends it: the frame is malformed
+        SerialParser parser = binaryParser();
+        parser.receive(frame, size);
+        assertEquals(0, parser.consumeRecords().samples.length);
+        assertEquals(1, parser.getFrameDecoder().getFramesCorrupted());
+    }
+
+    @Test
+    public void corruptedFramesInIngestStatus() throws InterruptedException {
+        byte[] bad = encode(randomSamples(10), 1000);
+        bad[5] ^= 1;
+        byte[] good = encode(randomSamples(10), 2000);
+        byte[] bytes = Arrays.copyOf(bad, bad.length + good.length);
+        System.arraycopy(good, 0, bytes, bad.length, good.length);
+
+        final BlockingQueue<IngestStatus> statuses = new ArrayBlockingQueue<>(16);
+        IngestPipeline pipeline = new IngestPipeline(collection -> {
+            statuses.add(collection.ingestStatus);
+            collection.samples.release();
+        }, BatchPolicy.LOW_LATENCY);
+        pipeline.setBinaryMode(true);
+        pipeline.start();
+        pipeline.receive(bytes, bytes.length);
+        IngestStatus status = statuses.poll(5, TimeUnit.SECONDS);
+        pipeline.stop();
+        pipeline.join();
+
+        assertNotNull(status);
+        assertEquals(1, status.framesDecoded);
+        assertEquals(1, status.framesCorrupted);
+    }
+
+    @Test
+    public void frameStartIsTextInTextMode() {
+        // a line of the text mode starting with 0xA5, followed by 0xFFFF as a length
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(new byte[]{BinaryFrameDecoder.FRAME_START, (byte) 0xFF, (byte) 0xFF, '\n'}, 0, 4);
+        writeText(stream, "D12t480\n");
+        SerialParser parser = new SerialParser();
+        parser.receive(stream.toByteArray(), stream.size());
+
+        SampleBatch decoded = parser.consumeRecords().samples;
+        assertEquals(1, decoded.length);
+        assertEquals(12, decoded.diffPressureRaw[0]);
+        assertEquals(0, parser.getFrameDecoder().getFramesCorrupted());
+        assertFalse(parser.getFrameDecoder().isReceiving());
+    }
+
+    private static SerialParser binaryParser() {
+        SerialParser parser = new SerialParser();
+        parser.setBinaryMode(true);
+        return parser;
+    }
+
+    private SampleBatch randomSamples(int count) {
+        SampleBatch samples = mPool.acquire();
+        for (int i = 0; i < count; i++) {
+            final long delta = mRandom.nextInt(3) == 0 ? Long.MAX_VALUE - mRandom.nextInt(1000) : mRandom.nextInt(1000);
+            samples.add((short) mRandom.nextInt(), delta);
+        }
+        return samples;
+    }
+
+    private byte[] encode(SampleBatch samples, long clockTick) {
+        byte[] frame = new byte[BinaryFrameEncoder.maxFrameSize(samples.length)];
+        final int size = mEncoder.encode(samples, 0, samples.length, clockTick, frame, 0);
+        return Arrays.copyOf(frame, size);
+    }
+
+    private static void writeText(ByteArrayOutputStream stream, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        stream.write(bytes, 0, bytes.length);
+    }
+
+    private static void assertSamples(SampleBatch expected, SampleBatch actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected.diffPressureRaw[i], actual.diffPressureRaw[i]);
+            assertEquals(expected.timeDelta[i], actual.timeDelta[i]);
+        }
+    }
+}
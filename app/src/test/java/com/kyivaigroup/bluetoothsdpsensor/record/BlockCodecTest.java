@@ -0,0 +1,131 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link BlockCodec} round trips, and corrupted blocks reported as IOException.
+ */
+public class BlockCodecTest {
+    private static final int SAMPLES = RecordingFormat.BLOCK_SAMPLES;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Random mRandom = new Random(1);
+    private final long[] mTicks = new long[SAMPLES];
+    private final short[] mValues = new short[SAMPLES];
+    private final byte[] mEncoded = new byte[SAMPLES * BlockCodec.MAX_SAMPLE_SIZE];
+
+    @Test
+    public void roundTrip() throws IOException {
+        for (int k = 0; k < 100; k++) {
+            long tick = mRandom.nextLong();
+            for (int i = 0; i < SAMPLES; i++) {
+                switch (mRandom.nextInt(4)) {
+                    case 0:
+                        // the largest deltas of delta
+                        tick += mRandom.nextBoolean() ? Long.MAX_VALUE : Long.MIN_VALUE;
+                        mValues[i] = mRandom.nextBoolean() ? Short.MAX_VALUE : Short.MIN_VALUE;
+                        break;
+                    default:
+                        tick += 480 + mRandom.nextInt(3);
+                        mValues[i] = (short) mRandom.nextInt();
+                        break;
+                }
+                mTicks[i] = tick;
+            }
+            final int size = BlockCodec.encode(mTicks, mValues, SAMPLES, mEncoded, 3);
+            assertTrue(size <= SAMPLES * BlockCodec.MAX_SAMPLE_SIZE - 3);
+
+            long[] ticks = new long[SAMPLES];
+            short[] values = new short[SAMPLES];
+            BlockCodec.decode(ByteBuffer.wrap(mEncoded), 3, 3 + size, SAMPLES, mTicks[0], ticks, values);
+            assertArrayEquals(mTicks, ticks);
+            assertArrayEquals(mValues, values);
+        }
+    }
+
+    @Test
+    public void wrongSizeIsCorrupted() {
+        for (int i = 0; i < SAMPLES; i++) {
+            mTicks[i] = i * 480L;
+            mValues[i] = (short) mRandom.nextInt();
+        }
+        final int size = BlockCodec.encode(mTicks, mValues, SAMPLES, mEncoded, 0);
+        ByteBuffer in = ByteBuffer.wrap(mEncoded);
+        for (int end = 0; end < mEncoded.length; end++) {
+            if (end != size) {
+                assertCorrupted(in, end, SAMPLES);
+            }
+        }
+        // the whole buffer is made of samples too long
+        Arrays.fill(mEncoded, (byte) -1);
+        assertCorrupted(in, mEncoded.length, SAMPLES);
+        assertCorrupted(in, mEncoded.length, 1);
+    }
+
+    @Test
+    public void corruptedFileBlock() throws IOException {
+        File file = mFolder.newFile();
+        try (RecordingWriter writer = new RecordingWriter(new FileOutputStream(file),
+                new RecordingHeader(new SensorInfo(31, 500, 60), 1, 0, ""), true)) {
+            for (int i = 0; i < 3 * SAMPLES; i++) {
+                writer.write(i * 480L, (short) mRandom.nextInt());
+            }
+        }
+        // the last byte of the last block continues the varint past the block
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write(0x80);
+        }
+
+        try (RecordingReader reader = new RecordingReader(new FileInputStream(file))) {
+            RecordingReader.Block block = new RecordingReader.Block();
+            assertTrue(reader.read(block));
+            assertTrue(reader.read(block));
+            reader.read(block);
+            fail("A corrupted block was read");
+        } catch (IOException e) {
+            // expected
+        }
+
+        MappedRecording recording = new MappedRecording(file);
+        recording.getValue(0);
+        try {
+            recording.getValue(3 * SAMPLES - 1);
+            fail("A corrupted block was decoded");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        try {
+            RecordingCatalog.summarize(file, file.getName());
+            fail("A corrupted recording was summarized");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertCorrupted(ByteBuffer in, int end, int count) {
+        try {
+            BlockCodec.decode(in, 0, end, count, 0, new long[count], new short[count]);
+            fail("Decoded up to " + end);
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
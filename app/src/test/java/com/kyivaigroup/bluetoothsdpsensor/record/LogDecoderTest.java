@@ -0,0 +1,102 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link LogDecoder} on ESP-IDF log text, fed char by char as it arrives.
+ */
+public class LogDecoderTest {
+    private static final String ESC = "\u001B";
+    private static final String RESET = ESC + "[0m";
+
+    @Test
+    public void colorsAreStrippedAndResetEndsTheMessage() {
+        LogDecoder decoder = new LogDecoder();
+        append(decoder, ESC + "[0;32mI (120) app: started" + RESET + ESC + "[0;33mW (130) app: low" + RESET);
+        LogLine[] lines = decoder.consumeLines();
+        assertEquals(2, lines.length);
+        assertEquals("I (120) app: started", lines[0].text);
+        assertEquals("W (130) app: low", lines[1].text);
+        assertArrayEquals(LogDecoder.NO_LINES, decoder.consumeLines());
+    }
+
+    @Test
+    public void escapesSplitAcrossChunks() {
+        final String text = ESC + "[0;31mE (5) app: failed" + RESET + ESC + "[0;32mI (6) app: ok" + RESET;
+        for (int split = 0; split <= text.length(); split++) {
+            LogDecoder decoder = new LogDecoder();
+            append(decoder, text.substring(0, split));
+            LogLine[] first = decoder.consumeLines();
+            append(decoder, text.substring(split));
+            LogLine[] second = decoder.consumeLines();
+
+            assertEquals("split at " + split, 2, first.length + second.length);
+            LogLine last = second.length > 0 ? second[second.length - 1] : first[first.length - 1];
+            assertEquals("split at " + split, "I (6) app: ok", last.text);
+            LogLine firstLine = first.length > 0 ? first[0] : second[0];
+            assertEquals("split at " + split, "E (5) app: failed", firstLine.text);
+        }
+    }
+
+    @Test
+    public void unfinishedMessageIsKept() {
+        LogDecoder decoder = new LogDecoder();
+        append(decoder, ESC + "[0;32mI (1) app: par");
+        assertEquals(0, decoder.consumeLines().length);
+        append(decoder, "tial" + RESET);
+        assertEquals("I (1) app: partial", decoder.consumeLines()[0].text);
+    }
+
+    @Test
+    public void unknownSequencesAreKept() {
+        LogDecoder decoder = new LogDecoder();
+        append(decoder, "a" + ESC + "[2Kb" + ESC + "[1;31mc" + ESC + "xd" + RESET);
+        assertEquals("a" + ESC + "[2Kb" + ESC + "[1;31mc" + ESC + "xd", decoder.consumeLines()[0].text);
+    }
+
+    @Test
+    public void overlongSequenceIsText() {
+        LogDecoder decoder = new LogDecoder();
+        append(decoder, ESC + "[123456789;1mtext" + RESET);
+        assertEquals(ESC + "[12345678" + "9;1mtext", decoder.consumeLines()[0].text);
+    }
+
+    @Test
+    public void emptyMessagesAreSkipped() {
+        LogDecoder decoder = new LogDecoder();
+        append(decoder, RESET + ESC + "[0;32m" + RESET + "x" + RESET);
+        LogLine[] lines = decoder.consumeLines();
+        assertEquals(1, lines.length);
+        assertEquals("x", lines[0].text);
+    }
+
+    @Test
+    public void levels() {
+        assertEquals('E', level("E (12) tag: text"));
+        assertEquals('W', level("W (0) tag: text"));
+        assertEquals('I', level("I (123456) tag: text"));
+        assertEquals(LogLine.LEVEL_NONE, level("D (12) tag: text"));
+        assertEquals(LogLine.LEVEL_NONE, level("E () tag: text"));
+        assertEquals(LogLine.LEVEL_NONE, level("E (12 tag: text"));
+        assertEquals(LogLine.LEVEL_NONE, level("E(12) tag: text"));
+        assertEquals(LogLine.LEVEL_NONE, level("E (1a) tag"));
+        assertEquals(LogLine.LEVEL_NONE, level("E (12"));
+        assertEquals(LogLine.LEVEL_NONE, level("Error"));
+        assertEquals(LogLine.LEVEL_NONE, level("E"));
+    }
+
+    private static char level(String message) {
+        LogDecoder decoder = new LogDecoder();
+        append(decoder, ESC + "[0;31m" + message + RESET);
+        return decoder.consumeLines()[0].level;
+    }
+
+    private static void append(LogDecoder decoder, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            decoder.append(text.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link MappedRecording} random access to raw and compressed recordings.
+ */
+public class MappedRecordingTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Random mRandom = new Random(2);
+
+    @Test
+    public void randomAccess() throws IOException {
+        for (boolean compressed : new boolean[]{false, true}) {
+            for (int k = 0; k < 50; k++) {
+                final int n = mRandom.nextInt(6000);
+                final boolean gaps = mRandom.nextBoolean();
+                final boolean flushes = mRandom.nextBoolean();
+                long[] ticks = new long[n];
+                short[] values = new short[n];
+                File file = mFolder.newFile();
+                try (RecordingWriter writer = new RecordingWriter(new FileOutputStream(file), header(), compressed)) {
+                    long tick = 0;
+                    for (int i = 0; i < n; i++) {
+                        tick += gaps && mRandom.nextInt(500) == 0 ? 5_000_000_000L : mRandom.nextInt(900);
+                        ticks[i] = tick;
+                        values[i] = (short) mRandom.nextInt();
+                        writer.write(tick, values[i]);
+                        if (flushes && mRandom.nextInt(300) == 0) {
+                            // a partial block in the middle
+                            writer.flush();
+                        }
+                    }
+                }
+
+                MappedRecording recording = new MappedRecording(file);
+                assertEquals(240, recording.getHeader().sensorInfo.pressureScale);
+                assertEquals(compressed ? RecordingFormat.VERSION_COMPRESSED : RecordingFormat.VERSION_RAW,
+                        recording.getHeader().version);
+                assertEquals(n, recording.size());
+                for (int j = 0; j < n; j++) {
+                    final int i = mRandom.nextInt(n);
+                    assertEquals(ticks[i], recording.getTick(i));
+                    assertEquals(values[i], recording.getValue(i));
+                }
+                RecordingWriterTest.assertSamples(ticks, values, recording);
+            }
+        }
+    }
+
+    @Test
+    public void truncatedLastBlockIsIgnored() throws IOException {
+        for (boolean compressed : new boolean[]{false, true}) {
+            final int n = 3 * RecordingFormat.BLOCK_SAMPLES;
+            long[] ticks = new long[n];
+            short[] values = new short[n];
+            File file = mFolder.newFile();
+            try (RecordingWriter writer = new RecordingWriter(new FileOutputStream(file), header(), compressed)) {
+                for (int i = 0; i < n; i++) {
+                    ticks[i] = i * 480L;
+                    values[i] = (short) mRandom.nextInt();
+                    writer.write(ticks[i], values[i]);
+                }
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 5);
+            }
+
+            final int kept = 2 * RecordingFormat.BLOCK_SAMPLES;
+            RecordingWriterTest.assertSamples(Arrays.copyOf(ticks, kept), Arrays.copyOf(values, kept),
+                    new MappedRecording(file));
+        }
+    }
+
+    private static RecordingHeader header() {
+        return new RecordingHeader(new SensorInfo(31, 125, 240), 1, 2, "t");
+    }
+}
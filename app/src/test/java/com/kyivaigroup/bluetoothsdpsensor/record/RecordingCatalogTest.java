@@ -0,0 +1,163 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import com.kyivaigroup.bluetoothsdpsensor.Constants;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RecordingCatalog} updates of a records folder.
+ */
+public class RecordingCatalogTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void listsTheRecorderFolder() throws IOException {
+        File recorder = mFolder.newFolder(Constants.RECORDER_FOLDER);
+        write(new File(mFolder.getRoot(), "chart.sdpr"), 100);
+        File segment = write(new File(recorder, "segment 1.sdpr"), 200);
+        write(new File(recorder, "notes.txt"), 0);
+
+        RecordingCatalog catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        assertTrue(catalog.update());
+        List<RecordingSummary> summaries = catalog.getSummaries();
+        assertEquals(2, summaries.size());
+        assertEquals(Constants.RECORDER_FOLDER + "/segment 1.sdpr", summaries.get(0).fileName);
+        assertEquals(200, summaries.get(0).sampleCount);
+        assertEquals("chart.sdpr", summaries.get(1).fileName);
+
+        // read from the index
+        catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        assertFalse(catalog.update());
+        assertEquals(2, catalog.getSummaries().size());
+
+        assertTrue(segment.delete());
+        assertTrue(catalog.update());
+        assertEquals(1, catalog.getSummaries().size());
+        assertEquals("chart.sdpr", catalog.getSummaries().get(0).fileName);
+    }
+
+    @Test
+    public void changedRecordingsAreSummarizedAgain() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            write(new File(mFolder.getRoot(), "rec" + i + ".sdpr"), 1000 + 500 * i);
+        }
+        RecordingCatalog catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        assertTrue(catalog.update());
+
+        File changed = write(new File(mFolder.getRoot(), "rec1.sdpr"), 77);
+        // the size alone may not change on a coarse file system clock
+        assertTrue(changed.setLastModified(changed.lastModified() + 2000));
+        assertTrue(new File(mFolder.getRoot(), "rec2.sdpr").delete());
+        catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        List<RecordingSummary> upToDate = new ArrayList<>();
+        List<File> stale = catalog.refresh(upToDate);
+        assertEquals(1, stale.size());
+        assertEquals(changed, stale.get(0));
+        assertEquals(3, upToDate.size());
+        assertTrue(catalog.update());
+
+        List<RecordingSummary> summaries = catalog.getSummaries();
+        assertEquals(4, summaries.size());
+        RecordingSummary summary = summaries.get(1);
+        assertEquals("rec1.sdpr", summary.fileName);
+        assertEquals(77, summary.sampleCount);
+        assertEquals(changed.length(), summary.fileSize);
+        assertEquals(76 * 480, summary.durationUs);
+    }
+
+    @Test
+    public void summaryStatistics() throws IOException {
+        File file = write(new File(mFolder.getRoot(), "a.sdpr"), 5000);
+        RecordingSummary summary = RecordingCatalog.summarize(file, "a.sdpr");
+        MappedRecording recording = new MappedRecording(file);
+        RecordingSeries series = new RecordingSeries(recording);
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        double sum = 0;
+        for (int i = 0; i < series.size(); i++) {
+            min = Math.min(min, series.getY(i));
+            max = Math.max(max, series.getY(i));
+            sum += series.getY(i);
+        }
+        assertEquals(5000, summary.sampleCount);
+        assertEquals(min, summary.min, 0);
+        assertEquals(max, summary.max, 0);
+        assertEquals(sum / series.size(), summary.mean, 1e-4);
+        assertEquals(summary.previewX.length, summary.previewY.length);
+        assertTrue(summary.previewX.length <= series.size());
+        assertEquals(series.getX(0), summary.previewX[0], 0);
+        assertEquals(series.getX(series.size() - 1), summary.previewX[summary.previewX.length - 1], 0);
+    }
+
+    @Test
+    public void descriptionHasTheRecordIdAndTheTag() throws IOException {
+        File file = write(new File(mFolder.getRoot(), "a.sdpr"), 10,
+                new RecordingHeader(new SensorInfo(31, 500, 60), 12, 0, "wind tunnel"));
+        assertEquals("SDP31 500Pa #12 wind tunnel", RecordingCatalog.summarize(file, "a.sdpr").description);
+        write(file, 10, new RecordingHeader(new SensorInfo(31, 500, 60), RecordingHeader.RECORD_ID_UNKNOWN, 0, ""));
+        assertEquals("SDP31 500Pa", RecordingCatalog.summarize(file, "a.sdpr").description);
+    }
+
+    @Test
+    public void corruptedIndexIsRebuilt() throws IOException {
+        write(new File(mFolder.getRoot(), "a.sdpr"), 100);
+        RecordingCatalog catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        assertTrue(catalog.update());
+        File index = new File(mFolder.getRoot(), RecordingCatalog.FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+
+        catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        assertTrue(catalog.getSummaries().isEmpty());
+        assertTrue(catalog.update());
+        assertEquals(1, catalog.getSummaries().size());
+        assertEquals(100, catalog.getSummaries().get(0).sampleCount);
+    }
+
+    @Test
+    public void corruptedRecordingIsNotListed() throws IOException {
+        write(new File(mFolder.getRoot(), "a.sdpr"), 100);
+        try (FileOutputStream out = new FileOutputStream(new File(mFolder.getRoot(), "b.sdpr"))) {
+            out.write(new byte[]{'n', 'o', 'p', 'e', 0, 0, 0, 0, 0, 0});
+        }
+        RecordingCatalog catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        assertTrue(catalog.update());
+        assertEquals(1, catalog.getSummaries().size());
+        assertEquals("a.sdpr", catalog.getSummaries().get(0).fileName);
+    }
+
+    static File write(File file, int samples) throws IOException {
+        return write(file, samples, new RecordingHeader(new SensorInfo(31, 500, 60), 1, 0, ""));
+    }
+
+    private static File write(File file, int samples, RecordingHeader header) throws IOException {
+        try (RecordingWriter writer = new RecordingWriter(new FileOutputStream(file), header)) {
+            for (int i = 0; i < samples; i++) {
+                writer.write(i * 480L, (short) ((i * 37) % 1000 - 500));
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,180 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RecordingLoader} delivers every recording once per load and always finishes.
+ */
+public class RecordingLoaderTest {
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private RecordingLoader mLoader;
+
+    @After
+    public void shutdown() {
+        if (mLoader != null) {
+            mLoader.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentLoads() throws IOException, InterruptedException {
+        for (int i = 0; i < 8; i++) {
+            RecordingCatalogTest.write(new File(mFolder.getRoot(), "f" + i + ".sdpr"), 100_000);
+        }
+        writeText(new File(mFolder.getRoot(), "2021.03.04 05:06:07 text.txt"), 1000);
+        mLoader = new RecordingLoader(mFolder.getRoot(), 4);
+
+        Set<String> expected = names(9);
+        for (int k = 0; k < 2; k++) {
+            // the second time from the catalog
+            Load first = new Load();
+            Load second = new Load();
+            mLoader.load(first);
+            mLoader.load(second);
+            assertEquals(expected, first.await());
+            assertEquals(expected, second.await());
+        }
+        assertEquals(1000, summaryOf("2021.03.04 05:06:07 text.sdpr").sampleCount);
+        assertTrue(new File(mFolder.getRoot(), RecordingCatalog.FILE_NAME).exists());
+        for (String name : mFolder.getRoot().list()) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void existingRecordingsFirst() throws IOException, InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            RecordingCatalogTest.write(new File(mFolder.getRoot(), "f" + i + ".sdpr"), 1000);
+        }
+        for (int i = 0; i < 4; i++) {
+            writeText(new File(mFolder.getRoot(), "2021.03.04 05:06:0" + i + " text.txt"), 1000);
+        }
+        // one worker: the recordings are delivered in the order they are submitted
+        mLoader = new RecordingLoader(mFolder.getRoot(), 1);
+
+        Load load = new Load();
+        mLoader.load(load);
+        assertEquals(8, load.await().size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(load.mOrder.get(i), i >= 4, load.mOrder.get(i).endsWith(" text.sdpr"));
+        }
+    }
+
+    @Test
+    public void corruptedRecordingsFinish() throws IOException, InterruptedException {
+        RecordingCatalogTest.write(new File(mFolder.getRoot(), "f0.sdpr"), 1000);
+        try (FileOutputStream out = new FileOutputStream(new File(mFolder.getRoot(), "header.sdpr"))) {
+            out.write(new byte[]{1, 2, 3});
+        }
+        // a valid block header followed by a varint that never ends
+        File blocks = new File(mFolder.getRoot(), "blocks.sdpr");
+        try (RecordingWriter writer = new RecordingWriter(new FileOutputStream(blocks),
+                new RecordingHeader(new SensorInfo(31, 500, 60), 1, 0, ""), true)) {
+            for (int i = 0; i < 100; i++) {
+                writer.write(i * 480L, (short) i);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(blocks, "rw")) {
+            final long data = raf.length() - 10;
+            raf.seek(data);
+            raf.write(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, -1});
+        }
+        mLoader = new RecordingLoader(mFolder.getRoot(), 2);
+
+        Load load = new Load();
+        mLoader.load(load);
+        assertEquals(names(1), load.await());
+
+        RecordingCatalog catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        assertEquals(1, catalog.getSummaries().size());
+    }
+
+    private RecordingSummary summaryOf(String fileName) {
+        RecordingCatalog catalog = new RecordingCatalog(mFolder.getRoot());
+        catalog.load();
+        for (RecordingSummary summary : catalog.getSummaries()) {
+            if (summary.fileName.equals(fileName)) {
+                return summary;
+            }
+        }
+        throw new AssertionError(fileName + " is not in the catalog");
+    }
+
+    private static Set<String> names(int recordings) {
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < Math.min(recordings, 8); i++) {
+            names.add("f" + i + ".sdpr");
+        }
+        if (recordings > 8) {
+            names.add("2021.03.04 05:06:07 text.sdpr");
+        }
+        return names;
+    }
+
+    private static void writeText(File file, int samples) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.println("SDP31 500Pa");
+            for (int i = 0; i < samples; i++) {
+                writer.println(String.format(Locale.US, "%.6f,%.4f", i * 480 / 1e6f, (i % 100) / 60f));
+            }
+        }
+    }
+
+    private static class Load implements RecordingLoader.Listener {
+        private final Map<String, Integer> mLoaded = new ConcurrentHashMap<>();
+        private final List<String> mOrder = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+
+        @Override
+        public void onLoaded(RecordingSummary summary) {
+            mLoaded.merge(summary.fileName, 1, Integer::sum);
+            mOrder.add(summary.fileName);
+        }
+
+        @Override
+        public void onFinished() {
+            mFinished.countDown();
+        }
+
+        /**
+         * @return the names of the recordings, each delivered once
+         */
+        Set<String> await() throws InterruptedException {
+            assertTrue("The load has not finished", mFinished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            for (Map.Entry<String, Integer> entry : mLoaded.entrySet()) {
+                assertEquals(entry.getKey(), 1, (int) entry.getValue());
+            }
+            return mLoaded.keySet();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link RecordingSaver} writes complete files or none.
+ */
+public class RecordingSaverTest {
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void savedSnapshotIsRead() throws IOException {
+        final int n = 100_000;
+        RecordingSnapshot snapshot = snapshot(n);
+        File file = new File(mFolder.getRoot(), "a.sdpr");
+        List<Integer> progress = new ArrayList<>();
+        RecordingSaver.save(snapshot, file, (written, total) -> {
+            assertEquals(n, total);
+            progress.add(written);
+        });
+
+        assertTrue(progress.size() > 1);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+        assertEquals(n, (int) progress.get(progress.size() - 1));
+        assertArrayEquals(new String[]{"a.sdpr"}, mFolder.getRoot().list());
+
+        try (RecordingReader reader = new RecordingReader(new FileInputStream(file))) {
+            RecordingWriterTest.assertHeader(snapshot.header, reader.getHeader());
+            assertEquals(RecordingFormat.VERSION, reader.getHeader().version);
+            RecordingWriterTest.assertSamples(snapshot.ticks, snapshot.values, reader);
+        }
+        RecordingWriterTest.assertSamples(snapshot.ticks, snapshot.values, new MappedRecording(file));
+    }
+
+    @Test
+    public void failedSaveLeavesNoFile() throws IOException {
+        RecordingSnapshot snapshot = snapshot(1000);
+        File missing = new File(new File(mFolder.getRoot(), "missing"), "b.sdpr");
+        try {
+            RecordingSaver.save(snapshot, missing, (written, total) -> {
+            });
+            fail("Saved into a missing folder");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(missing.exists());
+
+        // the rename fails
+        File folder = mFolder.newFolder("c.sdpr");
+        try {
+            RecordingSaver.save(snapshot, folder, (written, total) -> {
+            });
+            fail("Saved over a folder");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(folder.isDirectory());
+        assertArrayEquals(new String[]{"c.sdpr"}, mFolder.getRoot().list());
+    }
+
+    private static RecordingSnapshot snapshot(int n) {
+        Random random = new Random(1);
+        long[] ticks = new long[n];
+        short[] values = new short[n];
+        for (int i = 0; i < n; i++) {
+            ticks[i] = i * 480L + random.nextInt(3);
+            values[i] = (short) random.nextInt();
+        }
+        return new RecordingSnapshot(new RecordingHeader(new SensorInfo(31, 500, 60), 3, 0, "x"), ticks, values, n);
+    }
+}
@@ -0,0 +1,210 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link RecordingWriter} to {@link RecordingReader} and {@link MappedRecording}
+ * round trips: no precision is lost.
+ */
+public class RecordingWriterTest {
+    private static final SensorInfo SENSOR_INFO = new SensorInfo(31, 500, 60);
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Random mRandom = new Random(5);
+
+    @Test
+    public void roundTrip() throws IOException {
+        for (int n : new int[]{0, 1, RecordingFormat.BLOCK_SAMPLES, 5000}) {
+            long[] ticks = randomTicks(n);
+            short[] values = randomValues(n);
+            RecordingHeader header = new RecordingHeader(SENSOR_INFO, 7, 1_600_000_000_000L, "tag \u00fc");
+            File file = write(header, ticks, values);
+
+            try (RecordingReader reader = new RecordingReader(new FileInputStream(file))) {
+                assertHeader(header, reader.getHeader());
+                assertEquals(RecordingFormat.VERSION_RAW, reader.getHeader().version);
+                assertSamples(ticks, values, reader);
+            }
+            MappedRecording recording = new MappedRecording(file);
+            assertHeader(header, recording.getHeader());
+            assertSamples(ticks, values, recording);
+        }
+    }
+
+    @Test
+    public void createdHeaderHasNoVersion() {
+        RecordingHeader header = new RecordingHeader(SENSOR_INFO, RecordingHeader.RECORD_ID_UNKNOWN, 0, "");
+        assertEquals(RecordingHeader.VERSION_NONE, header.version);
+    }
+
+    @Test
+    public void appendedHeaderFieldsAreSkipped() throws IOException {
+        RecordingHeader header = new RecordingHeader(SENSOR_INFO, 3, 0, "x");
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        try (RecordingWriter writer = new RecordingWriter(recording, header)) {
+            writer.write(1000, (short) -5);
+        }
+        final byte[] bytes = recording.toByteArray();
+        final int headerSize = ((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF);
+        final int headerEnd = RecordingFormat.PREAMBLE_SIZE + headerSize;
+
+        // the same recording with a field appended to the header
+        ByteArrayOutputStream extended = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(extended);
+        out.write(bytes, 0, 6);
+        out.writeShort(headerSize + 8);
+        out.write(bytes, RecordingFormat.PREAMBLE_SIZE, headerSize);
+        out.writeLong(42);
+        out.write(bytes, headerEnd, bytes.length - headerEnd);
+
+        try (RecordingReader reader = new RecordingReader(new ByteArrayInputStream(extended.toByteArray()))) {
+            assertHeader(header, reader.getHeader());
+            assertSamples(new long[]{1000}, new short[]{-5}, reader);
+        }
+    }
+
+    @Test
+    public void newerVersionIsRejected() throws IOException {
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        new RecordingWriter(recording, new RecordingHeader(SENSOR_INFO, 3, 0, "x")).close();
+        final byte[] bytes = recording.toByteArray();
+        bytes[5] = RecordingFormat.VERSION + 1;
+        try {
+            new RecordingReader(new ByteArrayInputStream(bytes));
+            fail("A newer version was read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void legacyTextLosesNoPrecision() throws IOException {
+        for (Locale locale : new Locale[]{Locale.US, Locale.GERMANY}) {
+            for (int range : new int[]{125, 500, 1500}) {
+                final int scale = TextRecordingConverter.pressureScale(range);
+                final int n = 5000;
+                long[] ticks = new long[n];
+                short[] values = new short[n];
+                File text = new File(mFolder.getRoot(), "2021.03.04 05:06:07 my tag.txt");
+                try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                        new FileOutputStream(text), StandardCharsets.UTF_8))) {
+                    writer.println(String.format(Locale.US, "SDP3%d %dPa", range / 500, range));
+                    long tick = 0;
+                    for (int i = 0; i < n; i++) {
+                        tick += 480 + mRandom.nextInt(3);
+                        ticks[i] = tick;
+                        values[i] = (short) mRandom.nextInt();
+                        // as the chart used to save them
+                        writer.println(String.format(locale, "%.6f,%.4f", tick / 1e6f, values[i] / (float) scale));
+                    }
+                }
+
+                File binary = TextRecordingConverter.convert(text);
+                try (RecordingReader reader = new RecordingReader(new FileInputStream(binary))) {
+                    assertEquals(scale, reader.getHeader().sensorInfo.pressureScale);
+                    assertEquals("my tag", reader.getHeader().tag);
+                    assertSamples(roundToPrintedMicros(ticks), values, reader);
+                }
+            }
+        }
+    }
+
+    private File write(RecordingHeader header, long[] ticks, short[] values) throws IOException {
+        File file = mFolder.newFile();
+        try (RecordingWriter writer = new RecordingWriter(new FileOutputStream(file), header)) {
+            for (int i = 0; i < ticks.length; i++) {
+                writer.write(ticks[i], values[i]);
+            }
+            assertEquals(ticks.length, writer.getSampleCount());
+        }
+        return file;
+    }
+
+    /**
+     * @return ticks with gaps beyond the 32-bit offsets of a block, back and forth
+     */
+    private long[] randomTicks(int n) {
+        long[] ticks = new long[n];
+        long tick = mRandom.nextLong() >> 20;
+        for (int i = 0; i < n; i++) {
+            final int kind = mRandom.nextInt(100);
+            if (kind == 0) {
+                tick += mRandom.nextBoolean() ? 3_000_000_000L : -3_000_000_000L;
+            } else {
+                tick += mRandom.nextInt(1000);
+            }
+            ticks[i] = tick;
+        }
+        return ticks;
+    }
+
+    private short[] randomValues(int n) {
+        short[] values = new short[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i % 100 == 0 ? (i % 200 == 0 ? Short.MIN_VALUE : Short.MAX_VALUE) : (short) mRandom.nextInt();
+        }
+        return values;
+    }
+
+    /**
+     * @return the ticks as printed with "%.6f" seconds, the way the legacy charts lost them
+     */
+    private static long[] roundToPrintedMicros(long[] ticks) {
+        long[] rounded = new long[ticks.length];
+        for (int i = 0; i < ticks.length; i++) {
+            rounded[i] = Math.round(Double.parseDouble(String.format(Locale.US, "%.6f", ticks[i] / 1e6f)) * 1e6);
+        }
+        return rounded;
+    }
+
+    static void assertHeader(RecordingHeader expected, RecordingHeader actual) {
+        assertEquals(expected.sensorInfo.modelNum, actual.sensorInfo.modelNum);
+        assertEquals(expected.sensorInfo.rangePa, actual.sensorInfo.rangePa);
+        assertEquals(expected.sensorInfo.pressureScale, actual.sensorInfo.pressureScale);
+        assertEquals(expected.recordId, actual.recordId);
+        assertEquals(expected.startTimeMillis, actual.startTimeMillis);
+        assertEquals(expected.tag, actual.tag);
+    }
+
+    static void assertSamples(long[] ticks, short[] values, RecordingReader reader) throws IOException {
+        RecordingReader.Block block = new RecordingReader.Block();
+        int j = 0;
+        while (reader.read(block)) {
+            for (int i = 0; i < block.length; i++, j++) {
+                assertEquals(ticks[j], block.ticks[i]);
+                assertEquals(values[j], block.values[i]);
+            }
+        }
+        assertEquals(ticks.length, j);
+        assertFalse(reader.read(block));
+    }
+
+    static void assertSamples(long[] ticks, short[] values, MappedRecording recording) {
+        assertEquals(ticks.length, recording.size());
+        for (int i = 0; i < ticks.length; i++) {
+            assertEquals(ticks[i], recording.getTick(i));
+            assertEquals(values[i], recording.getValue(i));
+        }
+    }
+}
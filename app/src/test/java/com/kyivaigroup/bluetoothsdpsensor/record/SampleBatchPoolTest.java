@@ -0,0 +1,97 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * {@link SampleBatch} goes back to its {@link SampleBatchPool} once every consumer released it.
+ */
+public class SampleBatchPoolTest {
+    private final SampleBatchPool mPool = new SampleBatchPool(4);
+
+    @Test
+    public void releasedBatchIsReused() {
+        SampleBatch batch = mPool.acquire();
+        batch.add((short) 1, 480);
+        batch.release();
+
+        SampleBatch reused = mPool.acquire();
+        assertSame(batch, reused);
+        assertEquals(0, reused.length);
+    }
+
+    @Test
+    public void retainedBatchIsKeptUntilTheLastRelease() {
+        SampleBatch batch = mPool.acquire();
+        batch.add((short) 7, 480);
+        batch.retain();
+        batch.retain();
+
+        batch.release();
+        batch.release();
+        // one consumer left: not recycled
+        assertEquals(1, batch.length);
+        assertNotSame(batch, mPool.acquire());
+
+        batch.release();
+        assertEquals(0, batch.length);
+        assertSame(batch, mPool.acquire());
+    }
+
+    @Test
+    public void acquiredBatchIsOwnedOnce() {
+        SampleBatch batch = mPool.acquire();
+        batch.retain();
+        batch.release();
+        batch.release();
+
+        // reacquired with a single owner again, whatever the count was before
+        SampleBatch reused = mPool.acquire();
+        assertSame(batch, reused);
+        reused.release();
+        assertSame(batch, mPool.acquire());
+    }
+
+    @Test
+    public void poolIsBounded() {
+        Map<SampleBatch, Boolean> batches = new IdentityHashMap<>();
+        for (int i = 0; i < 40; i++) {
+            batches.put(mPool.acquire(), true);
+        }
+        for (SampleBatch batch : batches.keySet()) {
+            batch.release();
+        }
+        Map<SampleBatch, Boolean> reused = new IdentityHashMap<>();
+        for (int i = 0; i < 40; i++) {
+            SampleBatch batch = mPool.acquire();
+            if (batches.containsKey(batch)) {
+                reused.put(batch, true);
+            }
+        }
+        // the others are left to the garbage collector
+        assertEquals(16, reused.size());
+    }
+
+    @Test
+    public void addGrowsTheColumns() {
+        SampleBatch batch = mPool.acquire();
+        assertEquals(4, batch.capacity());
+        for (int i = 0; i < 10; i++) {
+            batch.add((short) i, 100 + i);
+            batch.setLastClockTick(1000 + i);
+        }
+        assertEquals(10, batch.length);
+        assertEquals(16, batch.capacity());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, batch.diffPressureRaw[i]);
+            assertEquals(100 + i, batch.timeDelta[i]);
+            assertEquals(1000 + i, batch.clockTick[i]);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link SerialParser} against the regular expressions it replaced, with the
+ * bytes split at every offset.
+ */
+public class SerialParserTest {
+    private static final String ESC = "\u001B";
+
+    private static final String INPUT = ""
+            + "D12t480\n"
+            + "D-32768t480\r\n"
+            + "D32767t9223372036854775807\n"
+            + "C1700000000\n"
+            + "D-0t0\n"
+            + ESC + "[0;32mI (123) app: started" + ESC + "[0m"
+            + ESC + "[0;31mE (124) app: multi\nline" + ESC + "[0m\n"
+            + "P101325T21.5H45.0\n"
+            + "P101325T1677720.9H1677721.0\n"
+            + "P16777217T16777217.3H0.1\n"
+            // the last P line is the one in the collection
+            + "P99999999999999999999T99999999999999999999.9H123456789012345678901.5\n"
+            + "S3 m64 r1200\n"
+            + "S2147483647 m0 r9223372036854775807\n"
+            + "I31 r500 s60 i7 m1048576000\n"
+            + "C1700000480\n"
+            + "plain text " + ESC + "[2K kept" + ESC + "[0m" + ESC + "[0m"
+            + "\n"
+            // malformed: dropped by both
+            + "Dabc\n"
+            + "D12t\n"
+            + "D-t5\n"
+            + "D12t480x\n"
+            + "P12T1H2\n"
+            + "P12T1.23H2.0\n"
+            + "S1 m2\n"
+            + "C\n"
+            + "I1 r2 s3 i4\n"
+            // out of range: the regex path threw, both drop them now
+            + "D40000t480\n"
+            + "D1t99999999999999999999\n"
+            + "S2147483648 m0 r0\n"
+            + "I31 r500 s60 i7 m99999999999999999999\n"
+            + "C99999999999999999999\n"
+            + "D7t480\n"
+            + "W (200) tail: not ended";
+
+    @Test
+    public void sameAsRegexAtEverySplit() {
+        final byte[] bytes = INPUT.getBytes(StandardCharsets.US_ASCII);
+        RegexParser reference = new RegexParser();
+        reference.receive(bytes, bytes.length);
+        final String expected = reference.consume();
+
+        for (int split = 0; split <= bytes.length; split++) {
+            SerialParser parser = new SerialParser();
+            final byte[] first = Arrays.copyOfRange(bytes, 0, split);
+            final byte[] second = Arrays.copyOfRange(bytes, split, bytes.length);
+            parser.receive(first, first.length);
+            parser.receive(second, second.length);
+            assertEquals("split at " + split, expected, describe(parser.consumeRecords()));
+        }
+    }
+
+    @Test
+    public void floatsSameAsParseFloat() {
+        Random random = new Random(5);
+        for (int k = 0; k < 20000; k++) {
+            final String line = "P" + digits(random) + "T" + digits(random) + "." + random.nextInt(10)
+                    + "H" + digits(random) + "." + random.nextInt(10) + "\n";
+            final byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+            RegexParser reference = new RegexParser();
+            reference.receive(bytes, bytes.length);
+            SerialParser parser = new SerialParser();
+            parser.receive(bytes, bytes.length);
+            assertEquals(line, reference.consume(), describe(parser.consumeRecords()));
+        }
+    }
+
+    /**
+     * @return up to 25 digits, more often around the 2^24 and 2^63 limits of the fast path
+     */
+    private static String digits(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return Long.toString(random.nextInt(1 << 25));
+            case 1:
+                return Long.toString((1 << 24) / 10 + random.nextInt(2000) - 1000);
+            case 2:
+                return Long.toString(random.nextLong() & Long.MAX_VALUE);
+            default: {
+                StringBuilder digits = new StringBuilder();
+                final int length = 1 + random.nextInt(25);
+                for (int i = 0; i < length; i++) {
+                    digits.append(random.nextInt(10));
+                }
+                return digits.toString();
+            }
+        }
+    }
+
+    private static String describe(RecordCollection collection) {
+        List<String> logs = new ArrayList<>();
+        for (LogLine line : collection.logs) {
+            logs.add(line.text);
+        }
+        final RecordBMP bmp = collection.recordBMP;
+        final RecordStatus status = collection.status;
+        final SampleBatch samples = collection.samples;
+        List<String> sdp = new ArrayList<>();
+        for (int i = 0; i < samples.length; i++) {
+            sdp.add(samples.diffPressureRaw[i] + " " + samples.timeDelta[i] + " " + samples.clockTick[i]);
+        }
+        return describe(sdp, bmp == null ? null : describe(bmp.pressure, bmp.temperature, bmp.humidity),
+                status == null ? null : status.messagesCurr + " " + status.messagesMax + " " + status.readDurationMax,
+                describe(collection.deviceInfo), logs);
+    }
+
+    private static String describe(DeviceInfo info) {
+        if (info == null) {
+            return null;
+        }
+        return info.sensorInfo.modelNum + " " + info.sensorInfo.rangePa + " " + info.sensorInfo.pressureScale
+                + " " + info.recordId + " " + info.sdcardFreeMB;
+    }
+
+    private static String describe(float pressure, float temperature, float humidity) {
+        // the exact floats
+        return Float.floatToIntBits(pressure) + " " + Float.floatToIntBits(temperature)
+                + " " + Float.floatToIntBits(humidity);
+    }
+
+    /**
+     * @param bmp    the last P line of the collection
+     * @param status the last S line
+     */
+    private static String describe(List<String> sdp, String bmp, String status,
+                                   String deviceInfo, List<String> logs) {
+        return "D " + sdp + "\nP " + bmp + "\nS " + status + "\nI " + deviceInfo + "\nlog " + logs;
+    }
+
+    /**
+     * The line parser before the state machine. A field out of range for its
+     * type threw NumberFormatException out of receive(): the line is dropped here.
+     */
+    private static class RegexParser {
+        private static final Pattern PATTERN_SDP = Pattern.compile("D(-?\\d+)t(\\d+)");
+        private static final Pattern PATTERN_BMP = Pattern.compile("P(\\d+)T(\\d+\\.\\d)H(\\d+\\.\\d)");
+        private static final Pattern PATTERN_STATUS = Pattern.compile("S(\\d+) m(\\d+) r(\\d+)");
+        private static final Pattern PATTERN_INFO = Pattern.compile("I(\\d+) r(\\d+) s(\\d+) i(\\d+) m(\\d+)");
+        private static final Pattern PATTERN_CLOCK = Pattern.compile("C(\\d+)");
+        private static final Pattern PATTERN_LOG = Pattern.compile("\\u001B\\[0m");
+
+        private final StringBuilder mCommand = new StringBuilder();
+        private final StringBuilder mLog = new StringBuilder();
+        private final List<String> mSdp = new ArrayList<>();
+        private final List<Long> mClockTicks = new ArrayList<>();
+        private final List<String> mBmp = new ArrayList<>();
+        private final List<String> mStatus = new ArrayList<>();
+        private String mDeviceInfo;
+
+        void receive(byte[] data, int size) {
+            for (int i = 0; i < size; i++) {
+                char item = (char) data[i];
+                switch (item) {
+                    case '\r':
+                        break;
+                    case '\n':
+                        try {
+                            process();
+                        } catch (NumberFormatException e) {
+                            // dropped
+                        }
+                        mCommand.setLength(0);
+                        break;
+                    default:
+                        mCommand.append(item);
+                        break;
+                }
+            }
+        }
+
+        String consume() {
+            String logStr = mLog.toString().replaceAll("\\u001B\\[0;3\\dm", "");
+            String[] split = PATTERN_LOG.split(logStr);
+            if (!logStr.endsWith(ESC + "[0m")) {
+                split = Arrays.copyOf(split, split.length - 1);
+            }
+            List<String> logs = new ArrayList<>();
+            for (String log : split) {
+                if (!log.isEmpty()) {
+                    logs.add(log);
+                }
+            }
+            List<String> sdp = new ArrayList<>();
+            for (int i = 0; i < mSdp.size(); i++) {
+                sdp.add(mSdp.get(i) + " " + mClockTicks.get(i));
+            }
+            return describe(sdp, last(mBmp), last(mStatus), mDeviceInfo, logs);
+        }
+
+        private static String last(List<String> records) {
+            return records.isEmpty() ? null : records.get(records.size() - 1);
+        }
+
+        private void process() {
+            if (mCommand.length() == 0) {
+                return;
+            }
+            switch (mCommand.charAt(0)) {
+                case 'D': {
+                    Matcher matcher = PATTERN_SDP.matcher(mCommand);
+                    if (matcher.matches()) {
+                        short dp = Short.parseShort(matcher.group(1));
+                        long time = Long.parseLong(matcher.group(2));
+                        mSdp.add(dp + " " + time);
+                        mClockTicks.add(0L);
+                    }
+                    break;
+                }
+                case 'P': {
+                    Matcher matcher = PATTERN_BMP.matcher(mCommand);
+                    if (matcher.matches()) {
+                        mBmp.add(describe(Float.parseFloat(matcher.group(1)),
+                                Float.parseFloat(matcher.group(2)), Float.parseFloat(matcher.group(3))));
+                    }
+                    break;
+                }
+                case 'S': {
+                    Matcher matcher = PATTERN_STATUS.matcher(mCommand);
+                    if (matcher.matches()) {
+                        mStatus.add(Integer.parseInt(matcher.group(1)) + " " + Integer.parseInt(matcher.group(2))
+                                + " " + Long.parseLong(matcher.group(3)));
+                    }
+                    break;
+                }
+                case 'C': {
+                    Matcher matcher = PATTERN_CLOCK.matcher(mCommand);
+                    if (matcher.matches()) {
+                        long clock = Long.parseLong(matcher.group(1));
+                        if (!mClockTicks.isEmpty()) {
+                            mClockTicks.set(mClockTicks.size() - 1, clock);
+                        }
+                    }
+                    break;
+                }
+                case 'I': {
+                    Matcher matcher = PATTERN_INFO.matcher(mCommand);
+                    if (matcher.matches()) {
+                        mDeviceInfo = Integer.parseInt(matcher.group(1)) + " " + Integer.parseInt(matcher.group(2))
+                                + " " + Integer.parseInt(matcher.group(3)) + " " + Integer.parseInt(matcher.group(4))
+                                + " " + Long.parseLong(matcher.group(5)) / (1 << 20);
+                    }
+                    break;
+                }
+                default:
+                    mLog.append(mCommand);
+                    break;
+            }
+        }
+    }
+}
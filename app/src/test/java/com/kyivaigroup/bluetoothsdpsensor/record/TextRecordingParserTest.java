@@ -0,0 +1,121 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link TextRecordingParser} against the String.split parser it replaced.
+ */
+public class TextRecordingParserTest {
+    private static final String DESCRIPTION = "SDP31 500Pa";
+    private static final String[] ODD_LINES = {"", " 1.5,2", "1.5 ,2", "1e-3,2", "-,1", "5.,3", ".5,3",
+            "1,,2,3", "1,2,", "1,2,,", "1,2,3", "abc", "1.2.3,4", "NaN,1", "1,2,3,4,5", "0x10,1",
+            "-0.0,-0.0", "+1.5,2", "1.5,-600", "99999999999999999,1", "1.5,2d", "1,5,-0,25", "\u0661,2"};
+
+    private final Random mRandom = new Random(5);
+
+    @Test
+    public void matchesTheSplitParser() throws IOException {
+        for (int trial = 0; trial < 300; trial++) {
+            final int scale = new int[]{20, 60, 240}[trial % 3];
+            final String newLine = trial % 4 == 0 ? "\r\n" : trial % 4 == 1 ? "\r" : "\n";
+            final String text = randomChart(newLine);
+            List<long[]> expected = splitParser(text, scale);
+
+            final int chunk = 1 + mRandom.nextInt(100);
+            InputStream in = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    // the lines are split across the reads
+                    return super.read(b, off, Math.min(len, chunk));
+                }
+            };
+            try (TextRecordingParser parser = new TextRecordingParser(in)) {
+                assertEquals(DESCRIPTION, parser.getDescription());
+                RecordingReader.Block block = new RecordingReader.Block();
+                int j = 0;
+                while (parser.read(block, scale)) {
+                    for (int i = 0; i < block.length; i++, j++) {
+                        assertEquals(expected.get(j)[0], block.ticks[i]);
+                        assertEquals(expected.get(j)[1], block.values[i]);
+                    }
+                }
+                assertEquals(expected.size(), j);
+            }
+        }
+    }
+
+    private String randomChart(String newLine) {
+        StringBuilder text = new StringBuilder(DESCRIPTION).append(newLine);
+        final int lines = 2000;
+        for (int i = 0; i < lines; i++) {
+            if (mRandom.nextInt(20) == 0) {
+                text.append(ODD_LINES[mRandom.nextInt(ODD_LINES.length)]).append(newLine);
+                continue;
+            }
+            final double time = mRandom.nextDouble() * Math.pow(10, mRandom.nextInt(8)) * (mRandom.nextInt(10) == 0 ? -1 : 1);
+            double pressure = (mRandom.nextDouble() - 0.5) * Math.pow(10, mRandom.nextInt(5));
+            String line;
+            if (mRandom.nextInt(50) == 0) {
+                // a value rounded half way
+                pressure = (mRandom.nextInt(4000) * 5 + 2500) / 100000.0 * (mRandom.nextBoolean() ? 1 : -1);
+                line = String.format(Locale.US, "%.6f,%.4f", time, pressure);
+            } else if (mRandom.nextBoolean()) {
+                line = String.format(Locale.US, "%." + mRandom.nextInt(9) + "f,%." + mRandom.nextInt(9) + "f", time, pressure);
+            } else {
+                line = String.format(Locale.GERMANY, "%.6f,%.4f", time, pressure);
+            }
+            text.append(line);
+            if (i < lines - 1 || mRandom.nextBoolean()) {
+                text.append(newLine);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the tick and the raw value of each sample, as the legacy chart loader parsed them
+     */
+    private static List<long[]> splitParser(String text, int scale) throws IOException {
+        List<long[]> samples = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        reader.readLine();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(",");
+            String time, pressure;
+            if (fields.length == 2) {
+                time = fields[0];
+                pressure = fields[1];
+            } else if (fields.length == 4) {
+                // a comma decimal separator
+                time = fields[0] + '.' + fields[1];
+                pressure = fields[2] + '.' + fields[3];
+            } else {
+                continue;
+            }
+            try {
+                final long tick = Math.round(Double.parseDouble(time.trim()) * 1e6);
+                final long value = Math.round(Double.parseDouble(pressure.trim()) * scale);
+                if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                    samples.add(new long[]{tick, value});
+                }
+            } catch (NumberFormatException e) {
+                // skipped
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,164 @@
+package com.kyivaigroup.bluetoothsdpsensor.record;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link Timeline} against a simulated device: the deltas are measured on a
+ * clock off by a drift, a few samples are lost and a few clock lines garbled.
+ */
+public class TimelineTest {
+    private static final double PERIOD_US = 480.77;  // 2080 Hz
+    private static final int BATCH_SAMPLES = 200;
+    private static final int TICK_SAMPLES = 100;     // a clock line per
+
+    private final Random mRandom = new Random(1);
+    private final SampleBatchPool mPool = new SampleBatchPool();
+    private final Timeline mTimeline = new Timeline();
+
+    private double mPpm;
+    private double mLoss;
+    private double mGarble;
+    private double mClock = 5e6;       // the device clock, us
+    private double mDeltaClock = 5e6;  // the clock of the deltas, off by the drift
+    private long mLastDeltaClock = 5_000_000;
+    private long mLastTime = Long.MIN_VALUE;
+
+    // the error of the timestamps from the device clock, once aligned
+    private double mOffset = Double.NaN;
+    private double mSquares;
+    private double mMaxError;
+    private int mCount;
+
+    @Test
+    public void followsTheDeviceClock() {
+        mPpm = -60;
+        mLoss = 0.001;
+        mGarble = 0.05;
+        // the first intervals fit the rate
+        run(20);
+        mOffset = Double.NaN;
+        run(1000);
+
+        assertEquals(1 / (1 + mPpm * 1e-6), mTimeline.getRate(), 1e-6);
+        assertTrue("rms " + rms(), rms() < 200);
+        assertTrue("max " + mMaxError, mMaxError < 3 * PERIOD_US);
+        assertTrue(mTimeline.getRejected() > 0);
+        assertEquals(0, mTimeline.getSteps());
+        assertEquals(0, mTimeline.getRestarts());
+    }
+
+    @Test
+    public void restartGoesOn() {
+        mPpm = 40;
+        run(100);
+        mClock = 300e3;
+        run(100);
+
+        assertEquals(1, mTimeline.getRestarts());
+        assertEquals(0, mTimeline.getSteps());
+    }
+
+    @Test
+    public void lostSamplesAreAStep() {
+        mPpm = 40;
+        run(100);
+        skip(1000);
+        // the jump is taken once the next tick confirms it
+        run(1);
+        resetErrors();
+        run(100);
+
+        assertEquals(1, mTimeline.getSteps());
+        assertTrue("max " + mMaxError, mMaxError < 3 * PERIOD_US);
+    }
+
+    @Test
+    public void gapOfALostConnection() {
+        mPpm = 40;
+        run(50);
+        mTimeline.markGap(2_000_000);
+        skip((int) (2e6 / PERIOD_US));
+        run(1);
+
+        Gap gap = mTimeline.takeGap();
+        assertNotNull(gap);
+        assertEquals(2e6 + PERIOD_US, gap.durationUs, PERIOD_US);
+        assertNull(mTimeline.takeGap());
+        resetErrors();
+        run(50);
+        assertTrue("max " + mMaxError, mMaxError < 3 * PERIOD_US);
+    }
+
+    /**
+     * Time the samples of a few batches: the timestamps never go back.
+     */
+    private void run(int batches) {
+        double[] truth = new double[BATCH_SAMPLES];
+        for (int b = 0; b < batches; b++) {
+            SampleBatch batch = mPool.acquire();
+            for (int k = 0; k < BATCH_SAMPLES; k++) {
+                final long delta = tick();
+                if (mRandom.nextDouble() < mLoss) {
+                    continue;
+                }
+                batch.add((short) 0, delta);
+                truth[batch.length - 1] = mClock;
+                if ((long) (mClock / PERIOD_US) % TICK_SAMPLES == 0) {
+                    final long clock = (long) mClock;
+                    batch.setLastClockTick(mRandom.nextDouble() < mGarble ? clock / 10 : clock);
+                }
+            }
+            mTimeline.apply(batch);
+            for (int i = 0; i < batch.length; i++) {
+                assertTrue(batch.time[i] >= mLastTime);
+                mLastTime = batch.time[i];
+                if (Double.isNaN(mOffset)) {
+                    mOffset = batch.time[i] - truth[i];
+                }
+                final double error = Math.abs(batch.time[i] - truth[i] - mOffset);
+                mSquares += error * error;
+                mMaxError = Math.max(mMaxError, error);
+                mCount++;
+            }
+            batch.release();
+        }
+    }
+
+    /**
+     * Lose samples: the device clock runs on.
+     */
+    private void skip(int samples) {
+        for (int k = 0; k < samples; k++) {
+            tick();
+        }
+    }
+
+    /**
+     * @return the time to the previous sample, as the device measures it
+     */
+    private long tick() {
+        mClock += PERIOD_US;
+        mDeltaClock += PERIOD_US * (1 + mPpm * 1e-6);
+        final long deltaClock = Math.round(mDeltaClock);
+        final long delta = deltaClock - mLastDeltaClock;
+        mLastDeltaClock = deltaClock;
+        return delta;
+    }
+
+    private void resetErrors() {
+        mSquares = 0;
+        mMaxError = 0;
+        mCount = 0;
+    }
+
+    private double rms() {
+        return Math.sqrt(mSquares / mCount);
+    }
+}
@@ -0,0 +1,97 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.IngestStatus;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link BatchPolicy} flushes by age or by size, alone and in an {@link IngestPipeline}.
+ */
+public class BatchPolicyTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void flushByAge() {
+        BatchPolicy policy = new BatchPolicy(100, 2048);
+        assertFalse(policy.shouldFlush(1, 0));
+        assertFalse(policy.shouldFlush(2047, 100 * MS - 1));
+        assertTrue(policy.shouldFlush(1, 100 * MS));
+        assertEquals(60 * MS, policy.remainingNanos(40 * MS));
+        assertEquals(0, policy.remainingNanos(100 * MS));
+        assertEquals(0, policy.remainingNanos(250 * MS));
+    }
+
+    @Test
+    public void flushBySize() {
+        BatchPolicy policy = new BatchPolicy(100, 2048);
+        assertTrue(policy.shouldFlush(2048, 0));
+        assertTrue(policy.shouldFlush(5000, 0));
+    }
+
+    @Test
+    public void presetsAreOrdered() {
+        assertTrue(BatchPolicy.LOW_LATENCY.targetLatencyNanos < BatchPolicy.BALANCED.targetLatencyNanos);
+        assertTrue(BatchPolicy.BALANCED.targetLatencyNanos < BatchPolicy.BULK.targetLatencyNanos);
+        assertTrue(BatchPolicy.LOW_LATENCY.maxSamples < BatchPolicy.BALANCED.maxSamples);
+        assertTrue(BatchPolicy.BALANCED.maxSamples < BatchPolicy.BULK.maxSamples);
+    }
+
+    @Test
+    public void pipelineFlushesAFewSamplesWhenOld() throws InterruptedException {
+        final BlockingQueue<IngestStatus> statuses = new ArrayBlockingQueue<>(16);
+        IngestPipeline pipeline = new IngestPipeline(collection -> {
+            statuses.add(collection.ingestStatus);
+            collection.samples.release();
+        }, new BatchPolicy(50, 1000));
+        pipeline.start();
+        receive(pipeline, 10);
+        IngestStatus status = statuses.poll(10, TimeUnit.SECONDS);
+        pipeline.stop();
+        pipeline.join();
+
+        assertNotNull(status);
+        assertEquals(10, status.batchSamples);
+        assertTrue(status.toString(), status.batchAgeUs >= 50_000);
+    }
+
+    @Test
+    public void pipelineFlushesAFullBatchAtOnce() throws InterruptedException {
+        final BlockingQueue<IngestStatus> statuses = new ArrayBlockingQueue<>(16);
+        // never old enough
+        IngestPipeline pipeline = new IngestPipeline(collection -> {
+            statuses.add(collection.ingestStatus);
+            collection.samples.release();
+        }, new BatchPolicy(TimeUnit.HOURS.toMillis(1), 100));
+        pipeline.start();
+        receive(pipeline, 150);
+        IngestStatus status = statuses.poll(10, TimeUnit.SECONDS);
+        assertNull(statuses.poll(200, TimeUnit.MILLISECONDS));
+        pipeline.stop();
+        pipeline.join();
+
+        // flushed on the size alone, an hour early
+        assertNotNull(status);
+        assertEquals(150, status.batchSamples);
+        assertTrue(status.toString(), status.batchAgeUs < TimeUnit.SECONDS.toMicros(10));
+    }
+
+    private static void receive(IngestPipeline pipeline, int samples) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < samples; i++) {
+            text.append('D').append(i).append("t480\n");
+        }
+        final byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+        assertTrue(pipeline.receive(bytes, bytes.length));
+    }
+}
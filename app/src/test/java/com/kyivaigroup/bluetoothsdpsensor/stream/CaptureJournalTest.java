@@ -0,0 +1,168 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CaptureJournal} to {@link JournalReader} and {@link JournalReplay} round trips.
+ */
+public class CaptureJournalTest {
+    private static final int SAMPLES = 20000;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Random mRandom = new Random(3);
+
+    @Test
+    public void chunksAreReadAndReplayed() throws IOException, InterruptedException {
+        File file = mFolder.newFile("capture" + CaptureJournal.EXTENSION);
+        final long[] expectedSum = new long[1];
+        final byte[] data = randomLines(expectedSum);
+        List<Integer> sizes = record(file, data);
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (JournalReader reader = new JournalReader(file)) {
+            long lastTime = 0;
+            int k = 0;
+            while (reader.next()) {
+                assertEquals((int) sizes.get(k++), reader.getLength());
+                assertTrue(reader.getTimeMicros() >= lastTime);
+                lastTime = reader.getTimeMicros();
+                read.write(reader.getData(), 0, reader.getLength());
+            }
+            assertEquals(sizes.size(), k);
+            assertEquals(0, reader.getLostBytes());
+        }
+        assertArrayEquals(data, read.toByteArray());
+
+        final AtomicLong samples = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        IngestPipeline pipeline = new IngestPipeline(collection -> {
+            for (int i = 0; i < collection.samples.length; i++) {
+                sum.addAndGet(collection.samples.diffPressureRaw[i]);
+            }
+            samples.addAndGet(collection.samples.length);
+            collection.samples.release();
+        }, new BatchPolicy(1, 2048));
+        pipeline.start();
+        assertEquals(data.length, new JournalReplay(file, JournalReplay.MAX_SPEED).replay(pipeline));
+        pipeline.stop();
+        pipeline.join();
+        assertEquals(SAMPLES, samples.get());
+        assertEquals(expectedSum[0], sum.get());
+    }
+
+    @Test
+    public void truncatedRecordIsIgnored() throws IOException, InterruptedException {
+        File file = mFolder.newFile();
+        final byte[] data = randomLines(new long[1]);
+        List<Integer> sizes = record(file, data);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 100);
+        }
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        int k = 0;
+        try (JournalReader reader = new JournalReader(file)) {
+            while (reader.next()) {
+                assertEquals((int) sizes.get(k++), reader.getLength());
+                read.write(reader.getData(), 0, reader.getLength());
+            }
+            assertFalse(reader.next());
+        }
+        assertTrue(k < sizes.size());
+        assertArrayEquals(Arrays.copyOf(data, read.size()), read.toByteArray());
+    }
+
+    @Test
+    public void droppedChunksKeepTheirTime() throws IOException, InterruptedException {
+        File file = mFolder.newFile();
+        // a chunk larger than the ring is always dropped
+        CaptureJournal journal = new CaptureJournal(file, 64);
+        final byte[] small = new byte[10];
+        final byte[] large = new byte[100];
+        final long beforeStart = System.nanoTime();
+        journal.start();
+        final long afterStart = System.nanoTime();
+        journal.record(small, small.length);
+        Thread.sleep(20);
+        journal.record(large, large.length);
+        Thread.sleep(20);
+        journal.record(large, large.length);
+        Thread.sleep(20);
+        final long beforeLast = System.nanoTime();
+        journal.record(small, small.length);
+        final long afterLast = System.nanoTime();
+        journal.stop();
+        journal.awaitTermination();
+        assertNull(journal.getError());
+        assertEquals(2, journal.getChunks());
+        assertEquals(2 * large.length, journal.getLostBytes());
+
+        try (JournalReader reader = new JournalReader(file)) {
+            assertTrue(reader.next());
+            assertTrue(reader.next());
+            assertEquals(2 * large.length, reader.getLostBytes());
+            // the arrival time of the last chunk, measured across the dropped ones
+            assertTrue(reader.getTimeMicros() >= TimeUnit.NANOSECONDS.toMicros(beforeLast - afterStart));
+            assertTrue(reader.getTimeMicros() <= TimeUnit.NANOSECONDS.toMicros(afterLast - beforeStart));
+            assertFalse(reader.next());
+        }
+    }
+
+    /**
+     * @return text samples with the sum of their values
+     */
+    private byte[] randomLines(long[] sum) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SAMPLES; i++) {
+            final int value = mRandom.nextInt(2000) - 1000;
+            sum[0] += value;
+            text.append('D').append(value).append("t480\n");
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the sizes of the recorded chunks
+     */
+    private List<Integer> record(File file, byte[] data) throws InterruptedException {
+        CaptureJournal journal = new CaptureJournal(file);
+        journal.start();
+        List<Integer> sizes = new ArrayList<>();
+        for (int pos = 0; pos < data.length; ) {
+            final int size = Math.min(1 + mRandom.nextInt(2000), data.length - pos);
+            // the chunk is copied by the journal
+            byte[] chunk = Arrays.copyOfRange(data, pos, pos + size);
+            journal.record(chunk, size);
+            Arrays.fill(chunk, (byte) 0);
+            sizes.add(size);
+            pos += size;
+        }
+        journal.stop();
+        journal.awaitTermination();
+        assertNull(journal.getError());
+        assertEquals(0, journal.getLostBytes());
+        return sizes;
+    }
+}
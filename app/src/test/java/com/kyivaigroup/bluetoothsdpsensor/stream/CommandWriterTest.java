@@ -0,0 +1,126 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.WriterStatus;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CommandWriter} ordering, coalescing and dropping behind a stalled link.
+ */
+public class CommandWriterTest {
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int QUEUE_CAPACITY = 32;
+
+    private final CountDownLatch mWriting = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final List<String> mWritten = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Blocks the first write until released, as a full Bluetooth buffer does.
+     */
+    private final OutputStream mStalled = new OutputStream() {
+        @Override
+        public void write(int b) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mWriting.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    };
+
+    @Test
+    public void stalledLink() throws InterruptedException {
+        final int sends = 1 + 1 + 5 + 1 + 1 + 40;
+        final CountDownLatch done = new CountDownLatch(1);
+        CommandWriter writer = new CommandWriter(mStalled, (command, echo) -> {
+            mWritten.add(new String(command, StandardCharsets.US_ASCII) + (echo ? "*" : ""));
+            if (mWritten.size() == QUEUE_CAPACITY + 1) {
+                done.countDown();
+            }
+        });
+        writer.start();
+        assertTrue(writer.send(bytes("first"), CommandWriter.NORMAL, false));
+        assertTrue(mWriting.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final long start = System.nanoTime();
+        assertTrue(writer.send(bytes("n1"), CommandWriter.NORMAL, false));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(writer.send(bytes("clock " + i), CommandWriter.CLOCK_SYNC, false));
+        }
+        assertTrue(writer.send(bytes("n2"), CommandWriter.NORMAL, false));
+        assertTrue(writer.send(bytes("restart"), CommandWriter.URGENT, true));
+        int dropped = 0;
+        for (int i = 0; i < 40; i++) {
+            if (!writer.send(bytes("x" + i), CommandWriter.NORMAL, false)) {
+                dropped++;
+            }
+        }
+        // never blocked by the stalled write
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(sends - 4 - 1 - QUEUE_CAPACITY, dropped);
+        WriterStatus status = writer.getStatus();
+        assertEquals(QUEUE_CAPACITY, status.queued);
+        assertEquals(QUEUE_CAPACITY, status.maxQueued);
+        assertEquals(dropped, status.dropped);
+        assertEquals(4, status.coalesced);
+
+        mRelease.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // the urgent command first, the latest clock in the place of the first one
+        assertEquals(Arrays.asList("first", "restart*", "n1", "clock 4", "n2", "x0"), mWritten.subList(0, 6));
+        status = writer.getStatus();
+        assertEquals(0, status.queued);
+        assertEquals(QUEUE_CAPACITY + 1, status.written);
+        assertNull(status.error);
+
+        writer.stop();
+        assertFalse(writer.send(bytes("late"), CommandWriter.NORMAL, false));
+    }
+
+    @Test
+    public void clockSyncsAreCoalescedByName() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(3);
+        CommandWriter writer = new CommandWriter(mStalled, (command, echo) -> {
+            mWritten.add(new String(command, StandardCharsets.US_ASCII));
+            done.countDown();
+        });
+        writer.start();
+        writer.send(bytes("first"), CommandWriter.NORMAL, false);
+        assertTrue(mWriting.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        writer.send(bytes("clock 1"), CommandWriter.CLOCK_SYNC, false);
+        writer.send(bytes("sync 1\0"), CommandWriter.CLOCK_SYNC, false);
+        writer.send(bytes("clock 2"), CommandWriter.CLOCK_SYNC, false);
+        writer.send(bytes("sync 2\0"), CommandWriter.CLOCK_SYNC, false);
+        mRelease.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "clock 2", "sync 2\0"), mWritten);
+        assertEquals(2, writer.getStatus().coalesced);
+        writer.stop();
+    }
+
+    private static byte[] bytes(String command) {
+        return command.getBytes(StandardCharsets.US_ASCII);
+    }
+}
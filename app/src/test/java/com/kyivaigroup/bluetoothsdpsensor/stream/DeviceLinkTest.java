@@ -0,0 +1,169 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.LinkStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DeviceLink} over {@link MemoryTransport}s: the device side drops
+ * the connection by closing its transport.
+ */
+public class DeviceLinkTest {
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int SAMPLES = 100;
+
+    private final Listener mListener = new Listener();
+    private final DeviceLink mLink = new DeviceLink(mListener, BatchPolicy.LOW_LATENCY);
+
+    @After
+    public void disconnect() {
+        mLink.disconnect();
+    }
+
+    @Test
+    public void reconnectsAfterALoss() throws Exception {
+        // the samples before the loss are still pending in a batch
+        mLink.setBatchPolicy(BatchPolicy.BULK);
+        mLink.connect(new MemoryTransport("device"));
+        MemoryTransport first = mListener.takeConnected(false);
+        send(first, SAMPLES);
+        first.close();
+        assertNotNull(mListener.mDisconnected.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // none is lost with the connection
+        assertEquals(SAMPLES, mListener.mSamples);
+
+        MemoryTransport second = mListener.takeConnected(true);
+        assertTrue(second != first);
+        assertEquals(DeviceLink.STATE_CONNECTED, mLink.getState());
+        send(second, SAMPLES);
+        mListener.awaitSamples(2 * SAMPLES);
+
+        LinkStatus status = mLink.getStatus();
+        assertEquals(1, status.reconnects);
+        assertEquals(1, status.gaps);
+        assertFalse(mListener.mBackwards);
+        mLink.disconnect();
+        assertEquals(DeviceLink.STATE_NONE, mLink.getState());
+        assertNotNull(mListener.mDisconnected.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void disconnectStopsReconnecting() throws Exception {
+        mLink.connect(new MemoryTransport("device"));
+        mListener.takeConnected(false).close();
+        assertNotNull(mListener.mLost.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(DeviceLink.STATE_RECONNECTING, mLink.getState());
+
+        mLink.disconnect();
+        assertEquals(DeviceLink.STATE_NONE, mLink.getState());
+        assertNull(mListener.mConnected.poll(2 * Reconnector.INITIAL_DELAY_MS, TimeUnit.MILLISECONDS));
+        assertEquals(DeviceLink.STATE_NONE, mLink.getState());
+    }
+
+    @Test
+    public void connectFailureEndsTheSession() throws Exception {
+        MemoryTransport transport = new MemoryTransport("device");
+        transport.close();
+        mLink.connect(transport);
+        assertEquals("Unable to connect device", mListener.mErrors.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(DeviceLink.STATE_NONE, mLink.getState());
+        assertTrue(mListener.mConnected.isEmpty());
+    }
+
+    /**
+     * Send text samples from the device side.
+     */
+    private static void send(MemoryTransport transport, int samples) throws IOException {
+        final OutputStream out = transport.getDeviceOutputStream();
+        for (int i = 0; i < samples; i++) {
+            out.write(("D" + i + "t480\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        out.flush();
+    }
+
+    private static class Listener implements DeviceLink.Listener {
+        final BlockingQueue<MemoryTransport> mConnected = new LinkedBlockingQueue<>();
+        final BlockingQueue<Boolean> mResumed = new LinkedBlockingQueue<>();
+        final BlockingQueue<Transport> mDisconnected = new LinkedBlockingQueue<>();
+        final BlockingQueue<Long> mLost = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> mErrors = new LinkedBlockingQueue<>();
+
+        // written by the pipeline threads, one at a time
+        private volatile int mSamples;
+        private volatile boolean mBackwards;
+        private long mLastTime = Long.MIN_VALUE;
+
+        MemoryTransport takeConnected(boolean resumed) throws InterruptedException {
+            MemoryTransport transport = mConnected.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(transport);
+            assertEquals(resumed, mResumed.poll());
+            return transport;
+        }
+
+        void awaitSamples(int samples) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (mSamples < samples && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(samples, mSamples);
+        }
+
+        @Override
+        public void onStateChange() {
+        }
+
+        @Override
+        public void onConnected(Transport transport, boolean resumed) {
+            mResumed.add(resumed);
+            mConnected.add((MemoryTransport) transport);
+        }
+
+        @Override
+        public void onReceived(byte[] buffer, int length) {
+        }
+
+        @Override
+        public void onRecords(RecordCollection collection) {
+            final SampleBatch samples = collection.samples;
+            for (int i = 0; i < samples.length; i++) {
+                if (samples.time[i] < mLastTime) {
+                    mBackwards = true;
+                }
+                mLastTime = samples.time[i];
+            }
+            mSamples += samples.length;
+            samples.release();
+        }
+
+        @Override
+        public void onDisconnected(Transport transport, IOException error) {
+            mDisconnected.add(transport);
+        }
+
+        @Override
+        public void onLost(long delayMs) {
+            mLost.add(delayMs);
+        }
+
+        @Override
+        public void onError(String message) {
+            mErrors.add(message);
+        }
+    }
+}
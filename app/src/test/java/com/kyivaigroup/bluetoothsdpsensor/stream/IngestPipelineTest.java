@@ -0,0 +1,49 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link IngestPipeline} delivers every received sample, up to {@link IngestPipeline#stop()}.
+ */
+public class IngestPipelineTest {
+    private static final int SAMPLES = 10000;  // fewer than a BULK batch
+    private static final int CHUNK_SAMPLES = 100;
+
+    @Test
+    public void stopDispatchesThePendingSamples() throws InterruptedException {
+        final List<Short> values = new ArrayList<>();
+        IngestPipeline pipeline = new IngestPipeline(collection -> {
+            final SampleBatch samples = collection.samples;
+            for (int i = 0; i < samples.length; i++) {
+                values.add(samples.diffPressureRaw[i]);
+            }
+            samples.release();
+        }, BatchPolicy.BULK);
+        pipeline.start();
+        for (int i = 0; i < SAMPLES; i += CHUNK_SAMPLES) {
+            StringBuilder chunk = new StringBuilder();
+            for (int k = i; k < i + CHUNK_SAMPLES; k++) {
+                chunk.append('D').append(k % 1000 - 500).append("t480\n");
+            }
+            final byte[] bytes = chunk.toString().getBytes(StandardCharsets.US_ASCII);
+            assertTrue(pipeline.receive(bytes, bytes.length));
+        }
+        // in the middle of a batch, the last bytes still in the ring
+        pipeline.stop();
+        pipeline.join();
+
+        assertEquals(SAMPLES, values.size());
+        for (int k = 0; k < SAMPLES; k++) {
+            assertEquals(k % 1000 - 500, (int) values.get(k));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.DeviceInfo;
+import com.kyivaigroup.bluetoothsdpsensor.record.LogLine;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecorderStatus;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingReader;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatchPool;
+import com.kyivaigroup.bluetoothsdpsensor.record.SensorInfo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SampleRecorder} segments read back with {@link RecordingReader}.
+ */
+public class SampleRecorderTest {
+    private static final int BATCH_SAMPLES = 208;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final SampleBatchPool mPool = new SampleBatchPool();
+    private long mTime;
+
+    @Test
+    public void acceptedBatchesAreWrittenInOrder() throws IOException, InterruptedException {
+        File folder = new File(mFolder.getRoot(), "Recorder");
+        SampleRecorder recorder = new SampleRecorder(folder, 20_000, TimeUnit.HOURS.toMillis(1));
+        recorder.start();
+        List<Short> expected = new ArrayList<>();
+        long dropped = 0;
+        for (int b = 0; b < 500; b++) {
+            SampleBatch samples = batch(b);
+            if (recorder.offer(collection(samples))) {
+                for (int i = 0; i < samples.length; i++) {
+                    expected.add(samples.diffPressureRaw[i]);
+                }
+            } else {
+                dropped += samples.length;
+            }
+            samples.release();
+        }
+        recorder.stop();
+        recorder.join();
+        SampleBatch late = batch(0);
+        assertFalse(recorder.offer(collection(late)));
+        late.release();
+
+        RecorderStatus status = recorder.getStatus();
+        assertNull(status.error);
+        assertEquals(expected.size(), status.samplesWritten);
+        assertEquals(dropped, status.droppedSamples);
+        assertEquals(0, status.queuedBatches);
+
+        File[] segments = segments(folder);
+        assertEquals(status.segments, segments.length);
+        assertTrue(segments.length > 1);
+        long bytes = 0;
+        long lastTime = Long.MIN_VALUE;
+        int j = 0;
+        RecordingReader.Block block = new RecordingReader.Block();
+        for (File segment : segments) {
+            bytes += segment.length();
+            try (RecordingReader reader = new RecordingReader(new FileInputStream(segment))) {
+                while (reader.read(block)) {
+                    for (int i = 0; i < block.length; i++, j++) {
+                        assertEquals((short) expected.get(j), block.values[i]);
+                        assertTrue(block.ticks[i] > lastTime);
+                        lastTime = block.ticks[i];
+                    }
+                }
+            }
+        }
+        assertEquals(expected.size(), j);
+        assertEquals(bytes, status.bytesWritten);
+    }
+
+    @Test
+    public void batchesOfferedDuringStopAreNotLost() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            final SampleRecorder recorder = new SampleRecorder(new File(mFolder.getRoot(), "round " + round));
+            recorder.start();
+            final long[] accepted = new long[1];
+            Thread offerer = new Thread(() -> {
+                while (true) {
+                    SampleBatch samples = batch(0);
+                    final boolean queued = recorder.offer(collection(samples));
+                    samples.release();
+                    if (queued) {
+                        accepted[0] += BATCH_SAMPLES;
+                    } else if (!recorder.isRunning()) {
+                        return;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            });
+            offerer.start();
+            Thread.sleep(5);
+            recorder.stop();
+            recorder.join();
+            offerer.join();
+
+            RecorderStatus status = recorder.getStatus();
+            assertNull(status.error);
+            assertEquals(accepted[0], status.samplesWritten);
+            assertEquals(0, status.queuedBatches);
+        }
+    }
+
+    @Test
+    public void newScaleStartsASegment() throws IOException, InterruptedException {
+        SampleRecorder recorder = new SampleRecorder(mFolder.getRoot());
+        recorder.start();
+        for (SensorInfo sensorInfo : new SensorInfo[]{new SensorInfo(31, 500, 60), new SensorInfo(32, 125, 240)}) {
+            SampleBatch samples = batch(0);
+            RecordCollection collection = collection(samples);
+            collection.deviceInfo = new DeviceInfo(sensorInfo, 7, 0);
+            assertTrue(recorder.offer(collection));
+            samples.release();
+        }
+        recorder.stop();
+        recorder.join();
+
+        File[] segments = segments(mFolder.getRoot());
+        assertEquals(2, segments.length);
+        try (RecordingReader reader = new RecordingReader(new FileInputStream(segments[0]))) {
+            assertEquals(60, reader.getHeader().sensorInfo.pressureScale);
+            assertEquals(7, reader.getHeader().recordId);
+        }
+        try (RecordingReader reader = new RecordingReader(new FileInputStream(segments[1]))) {
+            assertEquals(240, reader.getHeader().sensorInfo.pressureScale);
+        }
+    }
+
+    private SampleBatch batch(int b) {
+        SampleBatch samples = mPool.acquire();
+        for (int i = 0; i < BATCH_SAMPLES; i++) {
+            mTime += 480;
+            samples.time[samples.length] = mTime;
+            samples.add((short) (b + i), 480);
+        }
+        return samples;
+    }
+
+    private static RecordCollection collection(SampleBatch samples) {
+        return new RecordCollection(samples, Collections.emptyList(), Collections.emptyList(), new LogLine[0]);
+    }
+
+    /**
+     * @return the segments in the order they were written
+     */
+    private static File[] segments(File folder) throws IOException {
+        File[] files = folder.listFiles();
+        final int[] numbers = new int[files.length];
+        for (int i = 0; i < files.length; i++) {
+            try (RecordingReader reader = new RecordingReader(new FileInputStream(files[i]))) {
+                numbers[i] = Integer.parseInt(reader.getHeader().tag.replace("segment ", ""));
+            }
+        }
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(numbers[a], numbers[b]));
+        File[] sorted = new File[files.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = files[order[i]];
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,156 @@
+package com.kyivaigroup.bluetoothsdpsensor.stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The {@link Transport} contract for {@link MemoryTransport} and {@link TcpTransport}.
+ */
+public class TransportTest {
+    private static final int BYTES = 1 << 20;  // several times the pipe capacity
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final byte[] mData = new byte[BYTES];
+
+    public TransportTest() {
+        new Random(4).nextBytes(mData);
+    }
+
+    @After
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void memoryTransport() throws Exception {
+        MemoryTransport transport = new MemoryTransport("memory");
+        assertFalse(transport.isConnected());
+        transport.connect();
+        assertTrue(transport.isConnected());
+        exchange(transport, transport.getDeviceInputStream(), transport.getDeviceOutputStream());
+        closeUnblocksRead(transport);
+        try {
+            transport.connect();
+            fail("A closed transport was connected");
+        } catch (IOException e) {
+            // expected
+        }
+        assertReopened(transport);
+    }
+
+    @Test
+    public void tcpTransport() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            TcpTransport transport = new TcpTransport("127.0.0.1", server.getLocalPort());
+            assertFalse(transport.isConnected());
+            Future<Socket> accepted = mExecutor.submit(server::accept);
+            transport.connect();
+            assertTrue(transport.isConnected());
+            try (Socket device = accepted.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                exchange(transport, device.getInputStream(), device.getOutputStream());
+                closeUnblocksRead(transport);
+            }
+            assertReopened(transport);
+        }
+    }
+
+    @Test
+    public void tcpConnectFails() throws IOException {
+        final int port;
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = server.getLocalPort();
+        }
+        try (TcpTransport transport = new TcpTransport("127.0.0.1", port)) {
+            transport.connect();
+            fail("Connected to a closed port");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Send the data both ways at once, the device echoing the commands.
+     */
+    private void exchange(Transport transport, InputStream deviceInput, OutputStream deviceOutput)
+            throws Exception {
+        Future<byte[]> toDevice = mExecutor.submit(() -> readFully(deviceInput, BYTES));
+        Future<?> fromDevice = mExecutor.submit(() -> {
+            deviceOutput.write(mData, 0, BYTES);
+            deviceOutput.flush();
+            return null;
+        });
+        Future<?> commands = mExecutor.submit(() -> {
+            final OutputStream out = transport.getOutputStream();
+            for (int pos = 0; pos < BYTES; pos += 1000) {
+                out.write(mData, pos, Math.min(1000, BYTES - pos));
+            }
+            out.flush();
+            return null;
+        });
+        assertArrayEquals(mData, readFully(transport.getInputStream(), BYTES));
+        assertArrayEquals(mData, toDevice.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        fromDevice.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        commands.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * {@link Transport#close()} from another thread ends a blocked read.
+     */
+    private void closeUnblocksRead(Transport transport) throws Exception {
+        final InputStream input = transport.getInputStream();
+        Future<Integer> read = mExecutor.submit(() -> {
+            try {
+                return input.read(new byte[16]);
+            } catch (IOException e) {
+                // a closed socket
+                return -1;
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(read.isDone());
+        transport.close();
+        assertEquals(-1, (int) read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(transport.isConnected());
+    }
+
+    private static void assertReopened(Transport transport) {
+        Transport reopened = transport.reopen();
+        assertTrue(reopened != transport);
+        assertEquals(transport.getClass(), reopened.getClass());
+        assertEquals(transport.getName(), reopened.getName());
+        assertFalse(reopened.isConnected());
+    }
+
+    private static byte[] readFully(InputStream input, int size) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+        byte[] buffer = new byte[4096];
+        while (bytes.size() < size) {
+            final int n = input.read(buffer, 0, Math.min(buffer.length, size - bytes.size()));
+            if (n < 0) {
+                break;
+            }
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,78 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.BinaryFrameEncoder;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatchPool;
+import com.kyivaigroup.bluetoothsdpsensor.record.SerialParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of decoding binary frames, comparable to {@link SerialParserBenchmark}:
+ * one operation is one sample of one second of 2080 Hz data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BinaryFrameBenchmark {
+    private static final int SAMPLES = SensorStream.SAMPLE_RATE;
+
+    /**
+     * Samples per frame.
+     */
+    @Param({"16", "208"})
+    public int frameSize;
+
+    @Param({"990", "7"})
+    public int chunkSize;
+
+    private byte[][] mChunks;
+    private SerialParser mParser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(frameSize);
+        SampleBatch samples = new SampleBatchPool(SAMPLES).acquire();
+        for (int i = 0; i < SAMPLES; i++) {
+            samples.add((short) (1200 * Math.sin(i / 100.0) + random.nextGaussian() * 30), 480 + random.nextInt(5) - 2);
+        }
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] frame = new byte[BinaryFrameEncoder.maxFrameSize(frameSize)];
+        long clock = 5_000_000;
+        for (int from = 0; from < SAMPLES; from += frameSize) {
+            final int to = Math.min(from + frameSize, SAMPLES);
+            stream.write(frame, 0, encoder.encode(samples, from, to, clock, frame, 0));
+            clock += 480L * (to - from);
+        }
+        mChunks = SensorStream.split(stream.toByteArray(), chunkSize);
+        mParser = new SerialParser();
+        mParser.setBinaryMode(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void receive(Blackhole blackhole) {
+        for (byte[] chunk : mChunks) {
+            mParser.receive(chunk, chunk.length);
+        }
+        RecordCollection collection = mParser.consumeRecords();
+        blackhole.consume(collection.samples.length);
+        collection.samples.release();
+    }
+}
@@ -0,0 +1,87 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.BlockCodec;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding one block of a synthetic 2 kHz signal with
+ * {@link BlockCodec}. A block is 1024 samples, 6 KB when stored raw;
+ * the compression ratio of each signal is printed once per trial.
+ * <ul>
+ *     <li>SMOOTH: a slow breath-like wave with 0.3 Pa of noise.</li>
+ *     <li>NOISY: 5 Pa of noise, the worst realistic case.</li>
+ *     <li>JITTER: SMOOTH with +-20 us of jitter on the sample times.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlockCodecBenchmark {
+
+    public enum Signal {
+        SMOOTH,
+        NOISY,
+        JITTER
+    }
+
+    @Param({"SMOOTH", "NOISY", "JITTER"})
+    public Signal signal;
+
+    private static final int SAMPLES = RecordingFormat.BLOCK_SAMPLES;
+
+    private final long[] mTicks = new long[SAMPLES];
+    private final short[] mValues = new short[SAMPLES];
+    private final long[] mDecodedTicks = new long[SAMPLES];
+    private final short[] mDecodedValues = new short[SAMPLES];
+    private final byte[] mEncoded = new byte[SAMPLES * BlockCodec.MAX_SAMPLE_SIZE];
+    private ByteBuffer mEncodedBuffer;
+    private int mEncodedSize;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(signal.ordinal());
+        final double noise = signal == Signal.NOISY ? 5 : 0.3;
+        final int jitter = signal == Signal.JITTER ? 20 : 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            long tick = 1_000_000_000L + i * 1_000_000L / SensorStream.SAMPLE_RATE;
+            if (jitter > 0) {
+                tick += random.nextInt(2 * jitter + 1) - jitter;
+            }
+            final double pa = 12 * Math.sin(tick * 5e-6) + random.nextGaussian() * noise;
+            mTicks[i] = tick;
+            mValues[i] = (short) Math.round(pa * SensorStream.PRESSURE_SCALE);
+        }
+        final int size = BlockCodec.encode(mTicks, mValues, SAMPLES, mEncoded, 0);
+        mEncodedBuffer = ByteBuffer.wrap(mEncoded);
+        mEncodedSize = size;
+        System.out.printf(Locale.US, "%n%s: %d bytes per block, %.2f bytes per sample, ratio %.1f%n",
+                signal, size, (double) size / SAMPLES, (double) RecordingFormat.BLOCK_SIZE / size);
+    }
+
+    @Benchmark
+    public int encode() {
+        return BlockCodec.encode(mTicks, mValues, SAMPLES, mEncoded, 0);
+    }
+
+    @Benchmark
+    public long decode() throws IOException {
+        BlockCodec.decode(mEncodedBuffer, 0, mEncodedSize, SAMPLES, mTicks[0], mDecodedTicks, mDecodedValues);
+        return mDecodedTicks[SAMPLES - 1] + mDecodedValues[SAMPLES - 1];
+    }
+}
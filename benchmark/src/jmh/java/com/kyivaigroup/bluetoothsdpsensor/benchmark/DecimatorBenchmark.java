@@ -0,0 +1,65 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.chart.Decimator;
+import com.kyivaigroup.bluetoothsdpsensor.chart.SampleRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of reducing a full chart window to the width of a phone screen
+ * before each refresh. The draw time scales with the number of points handed
+ * to the renderer: the whole window for NONE, at most 4 * columns for M4
+ * (~3700 for 8192 samples) and exactly 2 * columns for LTTB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecimatorBenchmark {
+
+    /**
+     * The number of samples in the chart window.
+     */
+    @Param({"8192", "65536"})
+    public int window;
+
+    @Param({"M4", "LTTB", "NONE"})
+    public Decimator.Mode mode;
+
+    /**
+     * The width of the chart content in pixels.
+     */
+    @Param({"1080"})
+    public int columns;
+
+    private SampleRing mRing;
+    private Decimator mDecimator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(window);
+        mRing = new SampleRing(window);
+        mRing.setScaleY(1f / SensorStream.PRESSURE_SCALE);
+        for (int i = 0; i < window; i++) {
+            final long tick = i * 1_000_000L / SensorStream.SAMPLE_RATE;
+            final double pa = 12 * Math.sin(tick * 5e-6) + random.nextGaussian() * 0.3;
+            mRing.add(tick, (short) Math.round(pa * SensorStream.PRESSURE_SCALE));
+        }
+        mDecimator = new Decimator();
+    }
+
+    @Benchmark
+    public int decimate() {
+        return mDecimator.decimate(mRing, columns, mode);
+    }
+}
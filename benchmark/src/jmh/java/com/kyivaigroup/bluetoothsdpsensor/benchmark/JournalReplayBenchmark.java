@@ -0,0 +1,82 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.stream.BatchPolicy;
+import com.kyivaigroup.bluetoothsdpsensor.stream.CaptureJournal;
+import com.kyivaigroup.bluetoothsdpsensor.stream.IngestPipeline;
+import com.kyivaigroup.bluetoothsdpsensor.stream.JournalReplay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The whole ingest path fed from a {@link CaptureJournal} at max speed:
+ * the journal reader, the ring buffer, the parser thread and the batching,
+ * as the app runs it minus the socket. Each operation replays 10 s of
+ * 2080 Hz data in 990-byte chunks, so 10 s divided by the time per
+ * operation is how many times faster than real time the path is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JournalReplayBenchmark {
+    private static final int SAMPLES = 10 * SensorStream.SAMPLE_RATE;
+    private static final int CHUNK_SIZE = 990;
+    // the batches of BALANCED, but the last one isn't held for 100 ms
+    private static final BatchPolicy BATCH_POLICY = new BatchPolicy(1, BatchPolicy.BALANCED.maxSamples);
+
+    @Param({"DENSE", "LOGS"})
+    public SensorStream stream;
+
+    private File mJournal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        mJournal = File.createTempFile("capture", CaptureJournal.EXTENSION);
+        CaptureJournal journal = new CaptureJournal(mJournal);
+        journal.start();
+        for (byte[] chunk : SensorStream.split(stream.generate(SAMPLES), CHUNK_SIZE)) {
+            journal.record(chunk, chunk.length);
+        }
+        journal.stop();
+        journal.awaitTermination();
+        if (journal.getLostBytes() > 0) {
+            throw new IllegalStateException("Capture lost " + journal.getLostBytes() + " bytes");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mJournal.delete();
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        final AtomicInteger samples = new AtomicInteger();
+        IngestPipeline pipeline = new IngestPipeline(collection -> {
+            samples.addAndGet(collection.samples.length);
+            collection.samples.release();
+        }, BATCH_POLICY);
+        pipeline.start();
+        new JournalReplay(mJournal, JournalReplay.MAX_SPEED).replay(pipeline);
+        // the last batch is flushed by its age
+        while (samples.get() < SAMPLES) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        pipeline.stop();
+        return samples.get();
+    }
+}
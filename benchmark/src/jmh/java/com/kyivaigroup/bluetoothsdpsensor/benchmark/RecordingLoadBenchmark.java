@@ -0,0 +1,119 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingCatalog;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingHeader;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingLoader;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingSummary;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingWriter;
+import com.kyivaigroup.bluetoothsdpsensor.record.SensorInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The time to list a folder of recordings that are not in the catalog yet,
+ * such as the first start after an update or after a long recording session:
+ * every recording is read to compute its summary and preview. The sequential
+ * {@link RecordingCatalog#update()} is compared with the {@link RecordingLoader}
+ * pool, one thread per core. The files are in the page cache after the first
+ * iteration, so this measures the decoding rather than the storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecordingLoadBenchmark {
+
+    @Param({"16"})
+    public int recordings;
+
+    /**
+     * The samples per recording; 2M samples is ~17 minutes at 2080 Hz, 12 MB.
+     */
+    @Param({"2097152"})
+    public int samples;
+
+    private File mFolder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFolder = Files.createTempDirectory("recordings").toFile();
+        SensorInfo sensorInfo = new SensorInfo(31, 500, SensorStream.PRESSURE_SCALE);
+        Random random = new Random(samples);
+        for (int r = 0; r < recordings; r++) {
+            File file = new File(mFolder, String.format(Locale.US, "2022.01.%02d 12:00:00.sdpr", r + 1));
+            RecordingHeader header = new RecordingHeader(sensorInfo, r, System.currentTimeMillis(), "");
+            try (RecordingWriter writer = new RecordingWriter(
+                    new BufferedOutputStream(new FileOutputStream(file), 1 << 16), header)) {
+                for (int i = 0; i < samples; i++) {
+                    final long tick = i * 1_000_000L / SensorStream.SAMPLE_RATE;
+                    final double pa = 12 * Math.sin(tick * 5e-6) + random.nextGaussian() * 0.3;
+                    writer.write(tick, (short) Math.round(pa * SensorStream.PRESSURE_SCALE));
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteCatalog() {
+        new File(mFolder, RecordingCatalog.FILE_NAME).delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = mFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mFolder.delete();
+    }
+
+    @Benchmark
+    public int sequential() throws IOException {
+        RecordingCatalog catalog = new RecordingCatalog(mFolder);
+        catalog.load();
+        catalog.update();
+        return catalog.getSummaries().size();
+    }
+
+    @Benchmark
+    public int parallel() throws InterruptedException {
+        RecordingLoader loader = new RecordingLoader(mFolder);
+        final AtomicInteger loaded = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+        loader.load(new RecordingLoader.Listener() {
+            @Override
+            public void onLoaded(RecordingSummary summary) {
+                loaded.incrementAndGet();
+            }
+
+            @Override
+            public void onFinished() {
+                finished.countDown();
+            }
+        });
+        finished.await();
+        loader.shutdown();
+        return loaded.get();
+    }
+}
@@ -0,0 +1,90 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthetic byte streams in the format sent by the ESP32 firmware.
+ */
+public enum SensorStream {
+    /**
+     * Back-to-back D lines only.
+     */
+    DENSE(0, 0),
+
+    /**
+     * D lines interleaved with clock, status and BMP280 lines.
+     */
+    MIXED(100, 0),
+
+    /**
+     * Mixed lines and an ANSI-colored ESP-IDF log line every 50 samples.
+     */
+    LOGS(100, 50);
+
+    public static final int SAMPLE_RATE = 2080;  // SDP31 max frequency, Hz
+    private static final long SAMPLE_PERIOD_US = 1_000_000 / SAMPLE_RATE;
+    static final int PRESSURE_SCALE = 60;
+
+    private static final String[] LOG_LEVELS = {"\u001B[0;32mI", "\u001B[0;33mW", "\u001B[0;31mE"};
+
+    private final int mClockPeriod;
+    private final int mLogPeriod;
+
+    SensorStream(int clockPeriod, int logPeriod) {
+        mClockPeriod = clockPeriod;
+        mLogPeriod = logPeriod;
+    }
+
+    /**
+     * @param samples the number of D lines to generate
+     * @return the stream bytes
+     */
+    public byte[] generate(int samples) {
+        Random random = new Random(samples);
+        StringBuilder builder = new StringBuilder();
+        long clock = 5_000_000;
+        for (int i = 0; i < samples; i++) {
+            // a breathing-like waveform with sensor noise, in raw units
+            double pa = 20 * Math.sin(2 * Math.PI * 0.3 * i / SAMPLE_RATE) + random.nextGaussian() * 0.5;
+            long delta = SAMPLE_PERIOD_US + random.nextInt(5) - 2;
+            clock += delta;
+            builder.append('D').append(Math.round(pa * PRESSURE_SCALE)).append('t').append(delta).append('\n');
+            if (mClockPeriod > 0 && i % mClockPeriod == 0) {
+                builder.append('C').append(clock).append('\n');
+            }
+            if (mClockPeriod > 0 && i % SAMPLE_RATE == 0) {
+                builder.append("S").append(random.nextInt(10)).append(" m42 r").append(900 + random.nextInt(100)).append('\n');
+                builder.append(String.format(Locale.US, "P%dT%.1fH%.1f\n",
+                        101325 + random.nextInt(100), 23 + random.nextFloat(), 40 + random.nextFloat()));
+            }
+            if (mLogPeriod > 0 && i % mLogPeriod == 0) {
+                builder.append(LOG_LEVELS[random.nextInt(LOG_LEVELS.length)])
+                        .append(" (").append(clock / 1000).append(") sdpsensor: queue ")
+                        .append(random.nextInt(64)).append(" messages").append("\u001B[0m\n");
+            }
+        }
+        return builder.toString().getBytes(Charset.forName("US-ASCII"));
+    }
+
+    /**
+     * Split the stream into chunks the way the socket read() would.
+     *
+     * @param stream    the stream bytes
+     * @param chunkSize the maximal chunk size
+     * @return the chunks
+     */
+    public static byte[][] split(byte[] stream, int chunkSize) {
+        final int count = (stream.length + chunkSize - 1) / chunkSize;
+        byte[][] chunks = new byte[count][];
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(chunkSize);
+        for (int i = 0; i < count; i++) {
+            chunk.reset();
+            chunk.write(stream, i * chunkSize, Math.min(chunkSize, stream.length - i * chunkSize));
+            chunks[i] = chunk.toByteArray();
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,101 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.SerialParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the ingest path: SerialParser.receive() and consumeRecords().
+ * <p>
+ * One operation is one parsed sample, so
+ * <ul>
+ *     <li>avgt is ns/sample;</li>
+ *     <li>thrpt of {@link #maxSampleRate} is samples/s, the max sustainable
+ *     sample rate of a single parser thread;</li>
+ *     <li>gc.alloc.rate.norm of the gc profiler is bytes allocated per sample.</li>
+ * </ul>
+ * Each invocation parses one second of 2080 Hz data delivered in chunks of
+ * {@code chunkSize} bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerialParserBenchmark {
+    private static final int SAMPLES = SensorStream.SAMPLE_RATE;
+
+    @Param({"DENSE", "MIXED", "LOGS"})
+    public SensorStream stream;
+
+    /**
+     * 16284 is the DeviceLink buffer size, 990 is a typical RFCOMM read,
+     * 7 splits almost every line between two reads.
+     */
+    @Param({"16284", "990", "7"})
+    public int chunkSize;
+
+    private byte[][] mChunks;
+    private SerialParser mParser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mChunks = SensorStream.split(stream.generate(SAMPLES), chunkSize);
+        mParser = new SerialParser();
+    }
+
+    /**
+     * Consume the records once per second of data.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void receive(Blackhole blackhole) {
+        for (byte[] chunk : mChunks) {
+            mParser.receive(chunk, chunk.length);
+        }
+        RecordCollection collection = mParser.consumeRecords();
+        blackhole.consume(collection.samples.length);
+        blackhole.consume(collection.logs);
+        collection.samples.release();
+    }
+
+    /**
+     * Consume the records after each chunk, as the app did after each read.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void receiveAndConsumeEachChunk(Blackhole blackhole) {
+        receiveChunks(blackhole);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(SAMPLES)
+    public void maxSampleRate(Blackhole blackhole) {
+        receiveChunks(blackhole);
+    }
+
+    private void receiveChunks(Blackhole blackhole) {
+        for (byte[] chunk : mChunks) {
+            mParser.receive(chunk, chunk.length);
+            if (mParser.hasRecords()) {
+                RecordCollection collection = mParser.consumeRecords();
+                blackhole.consume(collection.samples.length);
+                blackhole.consume(collection.logs);
+                collection.samples.release();
+            }
+        }
+    }
+}
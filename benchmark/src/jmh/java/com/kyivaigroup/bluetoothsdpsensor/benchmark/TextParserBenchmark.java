@@ -0,0 +1,122 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordingReader;
+import com.kyivaigroup.bluetoothsdpsensor.record.TextRecordingParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a legacy text chart of a few hundred MB, in place versus the former
+ * line-by-line {@link String#split(String)} and {@link Double#parseDouble(String)}.
+ * Each operation parses the whole file: the throughput is the file size printed
+ * at the start of the trial divided by the time per operation. The file is in
+ * the page cache after the first operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class TextParserBenchmark {
+
+    @Param({"256"})
+    public int megabytes;
+
+    /**
+     * "en" writes "0.000481,-1.2345", "de" writes "0,000481,-1,2345".
+     */
+    @Param({"en", "de"})
+    public String locale;
+
+    private File mFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("chart", ".txt");
+        Locale format = new Locale(locale);
+        Random random = new Random(megabytes);
+        final long size = (long) megabytes << 20;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(mFile), 1 << 16)) {
+            writer.write("SDP31 500Pa\n");
+            for (int i = 0; mFile.length() < size; i++) {
+                for (int j = 0; j < 100_000; j++, i++) {
+                    final double time = i / (double) SensorStream.SAMPLE_RATE;
+                    final double pa = 12 * Math.sin(time * 5) + random.nextGaussian() * 0.3;
+                    writer.write(String.format(format, "%.6f,%.4f\n", time, pa));
+                }
+                writer.flush();
+            }
+        }
+        System.out.printf(Locale.US, "%n%s: %.1f MB%n", mFile.getName(), mFile.length() / 1e6);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long parser() throws IOException {
+        long checksum = 0;
+        try (TextRecordingParser parser = new TextRecordingParser(new FileInputStream(mFile))) {
+            RecordingReader.Block block = new RecordingReader.Block();
+            while (parser.read(block, SensorStream.PRESSURE_SCALE)) {
+                for (int i = 0; i < block.length; i++) {
+                    checksum += block.ticks[i] + block.values[i];
+                }
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * The text conversion before the parser.
+     */
+    @Benchmark
+    public long split() throws IOException {
+        long checksum = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(mFile))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(",");
+                final String time, pressure;
+                if (fields.length == 2) {
+                    time = fields[0];
+                    pressure = fields[1];
+                } else if (fields.length == 4) {
+                    time = fields[0] + '.' + fields[1];
+                    pressure = fields[2] + '.' + fields[3];
+                } else {
+                    continue;
+                }
+                final long tick = Math.round(Double.parseDouble(time.trim()) * 1e6);
+                final long value = Math.round(Double.parseDouble(pressure.trim()) * SensorStream.PRESSURE_SCALE);
+                checksum += tick + (short) value;
+            }
+        }
+        return checksum;
+    }
+}
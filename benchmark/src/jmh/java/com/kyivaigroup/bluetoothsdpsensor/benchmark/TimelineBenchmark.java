@@ -0,0 +1,76 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatchPool;
+import com.kyivaigroup.bluetoothsdpsensor.record.Timeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of timestamping the parsed samples with a {@link Timeline}, in
+ * ns/sample. Each invocation is one second of 2080 Hz samples with a clock
+ * tick every {@code clockPeriod} samples, a device clock 50 ppm off the
+ * deltas and 0.1% of the samples lost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimelineBenchmark {
+    private static final int SAMPLES = SensorStream.SAMPLE_RATE;
+    private static final double SAMPLE_PERIOD_US = 1e6 / SAMPLES;
+    private static final double DRIFT = 50e-6;
+    private static final double LOSS = 0.001;
+
+    @Param({"100", "1000"})
+    public int clockPeriod;
+
+    private SampleBatch mBatch;
+    private int[] mTicks;  // the samples with a clock tick
+    private long mSpan;    // of the batch on the device clock, us
+    private Timeline mTimeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(1);
+        mBatch = new SampleBatchPool(SAMPLES).acquire();
+        mTicks = new int[SAMPLES / clockPeriod];
+        int ticks = 0;
+        for (int i = 1; i <= SAMPLES; i++) {
+            if (random.nextDouble() < LOSS) {
+                continue;
+            }
+            mBatch.add((short) random.nextInt(), Math.round(SAMPLE_PERIOD_US));
+            if (i % clockPeriod == 0) {
+                mBatch.setLastClockTick(Math.round(i * SAMPLE_PERIOD_US * (1 + DRIFT)));
+                mTicks[ticks++] = mBatch.length - 1;
+            }
+        }
+        mTicks = Arrays.copyOf(mTicks, ticks);
+        mSpan = Math.round(SAMPLES * SAMPLE_PERIOD_US * (1 + DRIFT));
+        mTimeline = new Timeline();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long apply() {
+        mTimeline.apply(mBatch);
+        // the same batch over and over, a second later each time
+        for (int tick : mTicks) {
+            mBatch.clockTick[tick] += mSpan;
+        }
+        return mBatch.time[mBatch.length - 1];
+    }
+}
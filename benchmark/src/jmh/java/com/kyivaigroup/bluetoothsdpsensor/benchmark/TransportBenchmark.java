@@ -0,0 +1,156 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.stream.BatchPolicy;
+import com.kyivaigroup.bluetoothsdpsensor.stream.IngestPipeline;
+import com.kyivaigroup.bluetoothsdpsensor.stream.MemoryTransport;
+import com.kyivaigroup.bluetoothsdpsensor.stream.TcpTransport;
+import com.kyivaigroup.bluetoothsdpsensor.stream.Transport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The connection, parse and dispatch path of the app, with a stand-in device
+ * on the other end of a {@link Transport}: a loopback TCP socket or an
+ * in-memory pipe. The reading thread does what the DeviceLink does.
+ * <p>
+ * {@link #stream()} sends 10 s of 2080 Hz data in 990-byte chunks, the size
+ * of the RFCOMM reads, and waits until all the samples are dispatched.
+ * {@link #burst()} sends one batch of samples: the time from the first byte
+ * written to the batch dispatched.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransportBenchmark {
+    private static final int SAMPLES = 10 * SensorStream.SAMPLE_RATE;
+    private static final int CHUNK_SIZE = 990;
+    private static final int BURST_SAMPLES = 256;
+    // flush by count as LOW_LATENCY does; the tail of a stream isn't held long
+    private static final BatchPolicy BATCH_POLICY = new BatchPolicy(1, BURST_SAMPLES);
+    private static final long POLL_NS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    @Param({"TCP", "MEMORY"})
+    public String transport;
+
+    private final AtomicInteger mDispatched = new AtomicInteger();
+    private byte[][] mChunks;
+    private byte[] mBurst;
+    private ServerSocket mServer;
+    private Socket mDevice;
+    private Transport mTransport;
+    private OutputStream mDeviceOut;
+    private IngestPipeline mPipeline;
+    private Thread mReader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mChunks = SensorStream.split(SensorStream.DENSE.generate(SAMPLES), CHUNK_SIZE);
+        mBurst = SensorStream.DENSE.generate(BURST_SAMPLES);
+
+        if (transport.equals("TCP")) {
+            mServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            mTransport = new TcpTransport(mServer.getInetAddress().getHostAddress(), mServer.getLocalPort());
+            // the connection is completed in the backlog, before the accept
+            mTransport.connect();
+            mDevice = mServer.accept();
+            mDeviceOut = mDevice.getOutputStream();
+        } else {
+            MemoryTransport memory = new MemoryTransport("memory");
+            memory.connect();
+            mTransport = memory;
+            mDeviceOut = memory.getDeviceOutputStream();
+        }
+
+        mPipeline = new IngestPipeline(collection -> {
+            mDispatched.addAndGet(collection.samples.length);
+            collection.samples.release();
+        }, BATCH_POLICY);
+        mPipeline.start();
+        mReader = new Thread(new Reader(mTransport.getInputStream()), "Reader");
+        mReader.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        mTransport.close();
+        if (mDevice != null) {
+            mDevice.close();
+            mServer.close();
+        }
+        mReader.join();
+        mPipeline.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public int stream() throws IOException {
+        final int target = mDispatched.get() + SAMPLES;
+        for (byte[] chunk : mChunks) {
+            mDeviceOut.write(chunk);
+        }
+        return awaitDispatched(target);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public int burst() throws IOException {
+        final int target = mDispatched.get() + BURST_SAMPLES;
+        mDeviceOut.write(mBurst);
+        return awaitDispatched(target);
+    }
+
+    private int awaitDispatched(int target) {
+        int dispatched;
+        while ((dispatched = mDispatched.get()) < target) {
+            LockSupport.parkNanos(POLL_NS);
+        }
+        return dispatched;
+    }
+
+    /**
+     * The read loop of the DeviceLink, except that it waits for room in
+     * the pipeline instead of dropping the chunk: each operation must see
+     * all of its samples.
+     */
+    private class Reader implements Runnable {
+        private final InputStream mInput;
+
+        Reader(InputStream input) {
+            mInput = input;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[16284];
+            try {
+                int nbytes;
+                while ((nbytes = mInput.read(buffer)) >= 0) {
+                    while (!mPipeline.hasRoom(nbytes)) {
+                        LockSupport.parkNanos(POLL_NS);
+                    }
+                    mPipeline.receive(buffer, nbytes);
+                }
+            } catch (IOException e) {
+                // closed by the tear down
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.kyivaigroup.bluetoothsdpsensor.simulator;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.SyncReply;
+import com.kyivaigroup.bluetoothsdpsensor.stream.ClockSync;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures how well {@link ClockSync} maps the device clock to the host clock
+ * over a simulated link, in simulated time:
+ * <pre>
+ *   ./gradlew :benchmark:clockSyncAccuracy --args="--delay 30 --jitter 15 --outliers 0.02"
+ * </pre>
+ * Each leg of a round trip takes half the delay plus an exponential jitter
+ * of the given mean; an outlier adds 100 ms to one leg, as a Bluetooth
+ * retransmission would. The device clock runs off by the given drift.
+ * <p>
+ * The error is the mapped host time of the device clock minus the true host
+ * time, sampled every 100 ms once locked. "One-way" is the error of applying
+ * the device clock of the last reply as received, what a raw clock line
+ * gives.
+ * <p>
+ * Exits with 1 if a link is never locked, if the mapping goes back in time
+ * or if its rms error is not {@value #MIN_GAIN} times below the one-way one:
+ * {@code ./gradlew :benchmark:check} runs the links of the table.
+ */
+public class ClockSyncAccuracy {
+    private static final double[][] LINKS = {
+            // delay ms, jitter ms, outliers
+            {2, 0.5, 0},
+            {10, 5, 0},
+            {30, 15, 0},
+            {30, 15, 0.02},
+    };
+    private static final double OUTLIER_US = 100_000;
+    private static final double PROCESSING_US = 2000;  // the device replies within
+    private static final double BOOT_US = 300_000;
+    private static final long EVALUATE_PERIOD_US = 100_000;
+    private static final int MIN_GAIN = 4;  // one-way rms over the error rms
+
+    private static class Link {
+        double delayMs = 10;
+        double jitterMs = 5;
+        double outliers = 0;
+        double driftPpm = 40;
+        double minutes = 10;
+        double periodSeconds = 1;
+        long seed = 1;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("delay ms  jitter ms  outliers  drift ppm (est)   error rms us    p99 us    max us   one-way rms us  max us");
+        if (args.length == 0) {
+            boolean passed = true;
+            for (double[] config : LINKS) {
+                Link link = new Link();
+                link.delayMs = config[0];
+                link.jitterMs = config[1];
+                link.outliers = config[2];
+                passed &= run(link);
+            }
+            if (!passed) {
+                System.exit(1);
+            }
+            return;
+        }
+        Link link = new Link();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final double value = Double.parseDouble(args[i + 1]);
+            switch (args[i]) {
+                case "--delay":
+                    link.delayMs = value;
+                    break;
+                case "--jitter":
+                    link.jitterMs = value;
+                    break;
+                case "--outliers":
+                    link.outliers = value;
+                    break;
+                case "--drift":
+                    link.driftPpm = value;
+                    break;
+                case "--minutes":
+                    link.minutes = value;
+                    break;
+                case "--period":
+                    link.periodSeconds = value;
+                    break;
+                case "--seed":
+                    link.seed = (long) value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (!run(link)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return false if the mapping is never locked, goes back in time or is not accurate enough
+     */
+    private static boolean run(Link link) {
+        final Random random = new Random(link.seed);
+        final double rate = 1 + link.driftPpm * 1e-6;
+        // the device booted 10 s before the host clock origin
+        final double hostBoot = -10e6;
+        final ClockSync clockSync = new ClockSync();
+        final long durationUs = (long) (link.minutes * 60e6);
+        final long periodUs = (long) (link.periodSeconds * 1e6);
+
+        final double[] errors = new double[(int) (durationUs / EVALUATE_PERIOD_US) + 1];
+        int count = 0;
+        double oneWaySquares = 0;
+        double oneWayMax = 0;
+        int oneWayCount = 0;
+        double oneWayOffset = Double.NaN;  // host minus device of the last reply
+        long lastMapped = Long.MIN_VALUE;
+        int backwards = 0;
+
+        long nextPing = 0;
+        int pings = 0;
+        for (long host = 0; host < durationUs; host += EVALUATE_PERIOD_US) {
+            while (nextPing <= host) {
+                // a round trip, completed at once: the pings don't overlap
+                final double t1 = nextPing;
+                final double arrival = t1 + leg(link, random);
+                final double reply = arrival + random.nextDouble() * PROCESSING_US;
+                final double t4 = reply + leg(link, random);
+                final byte[] ping = clockSync.createPing();
+                clockSync.onWritten(ping, (long) (t1 * 1000));
+                // the pings are numbered from 0
+                clockSync.onReply(new SyncReply(pings++,
+                        (long) device(arrival, hostBoot, rate), (long) device(reply, hostBoot, rate), (long) (t4 * 1000)));
+                oneWayOffset = t4 - device(reply, hostBoot, rate);
+                nextPing += periodUs;
+            }
+            if (!clockSync.isLocked()) {
+                continue;
+            }
+            final double deviceNow = device(host, hostBoot, rate);
+            final long mapped = clockSync.toHostMicros((long) deviceNow);
+            if (mapped < lastMapped) {
+                backwards++;
+            }
+            lastMapped = mapped;
+            errors[count++] = Math.abs(mapped - host);
+            final double oneWay = Math.abs(deviceNow + oneWayOffset - host);
+            oneWaySquares += oneWay * oneWay;
+            oneWayMax = Math.max(oneWayMax, oneWay);
+            oneWayCount++;
+        }
+
+        if (count == 0) {
+            System.out.printf(Locale.US, "%8.1f %10.1f %9.2f %6.0f  NOT LOCKED%n",
+                    link.delayMs, link.jitterMs, link.outliers, link.driftPpm);
+            return false;
+        }
+        double squares = 0;
+        for (int i = 0; i < count; i++) {
+            squares += errors[i] * errors[i];
+        }
+        Arrays.sort(errors, 0, count);
+        final double rms = Math.sqrt(squares / count);
+        final double oneWayRms = Math.sqrt(oneWaySquares / oneWayCount);
+        final boolean accurate = rms * MIN_GAIN < oneWayRms;
+        System.out.printf(Locale.US, "%8.1f %10.1f %9.2f %6.0f (%6.1f) %14.0f %9.0f %9.0f %16.0f %7.0f%s%s%n",
+                link.delayMs, link.jitterMs, link.outliers, link.driftPpm, clockSync.getDriftPpm(),
+                rms, errors[(int) (0.99 * (count - 1))], errors[count - 1],
+                oneWayRms, oneWayMax,
+                backwards > 0 ? "  NOT MONOTONIC: " + backwards : "",
+                accurate ? "" : "  NOT ACCURATE");
+        return backwards == 0 && accurate;
+    }
+
+    /**
+     * @return the time of a leg of a round trip, us
+     */
+    private static double leg(Link link, Random random) {
+        double time = link.delayMs * 500 - Math.log(1 - random.nextDouble()) * link.jitterMs * 1000;
+        if (random.nextDouble() < link.outliers) {
+            time += OUTLIER_US;
+        }
+        return time;
+    }
+
+    private static double device(double host, double hostBoot, double rate) {
+        return BOOT_US + (host - hostBoot) * rate;
+    }
+}
@@ -0,0 +1,396 @@
+package com.kyivaigroup.bluetoothsdpsensor.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Serves a simulated ESP32 with an SDP31 over TCP on localhost, one client
+ * at a time, to run the app or the ingest path without the hardware:
+ * <pre>
+ *   ./gradlew :benchmark:simulate --args="--rate 20000 --signal STEPS --truncate 0.001"
+ * </pre>
+ * The device produces its samples in real time, every tick, and answers the
+ * commands of the app ({@code /info}, {@code /clock <ms>}, {@code /sync <seq>},
+ * {@code /restart}, {@code /binary 0|1}). While nobody is connected, the
+ * samples are dropped. With {@code --drop}, the connection is dropped
+ * periodically and the simulator is out of reach for a while, as a device
+ * walking out of the Bluetooth range.
+ */
+public class DeviceSimulator implements Closeable {
+    public static final int DEFAULT_PORT = 3333;
+
+    /**
+     * The simulated hardware, the stream and the injected faults.
+     */
+    public static class Options {
+        static final String USAGE = "Options:\n"
+                + "  --port <n>          TCP port on localhost, 0 for any (" + DEFAULT_PORT + ")\n"
+                + "  --rate <Hz>         sample rate, 100 to 20000 for an SDP3x (2080)\n"
+                + "  --signal <name>     SINE, NOISE, STEPS or SPIKES (SINE)\n"
+                + "  --amplitude <Pa>    signal amplitude (20)\n"
+                + "  --frequency <Hz>    SINE and STEPS frequency (0.3)\n"
+                + "  --drift <ppm>       device clock drift from the host clock (0)\n"
+                + "  --clock-period <n>  samples between the C lines, 0 for none (100)\n"
+                + "  --log-period <n>    samples between the log messages, 0 for none (0)\n"
+                + "  --truncate <p>      probability to cut a D line (0)\n"
+                + "  --burst <ms>/<ms>   hold the stream for the 2nd ms every 1st ms (0/0)\n"
+                + "  --drop <ms>/<ms>    drop the client after the 1st ms connected, refuse\n"
+                + "                      the connections for the 2nd ms (0/0)\n"
+                + "  --seed <n>          random seed (1)\n"
+                + "  --tick <ms>         how often the samples are sent (5)";
+
+        public int port = DEFAULT_PORT;
+        public int rate = 2080;
+        public Signal signal = Signal.SINE;
+        public double amplitude = 20;
+        public double frequency = 0.3;
+        public double driftPpm = 0;
+        public int clockPeriod = 100;
+        public int logPeriod = 0;
+        public double truncateProbability = 0;
+        public int burstPeriodMs = 0;
+        public int burstHoldMs = 0;
+        public int dropAfterMs = 0;
+        public int dropOutageMs = 0;
+        public long seed = 1;
+        public int tickMs = 5;
+
+        /**
+         * @throws IllegalArgumentException on an unknown option or a bad value
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("No value of " + args[i]);
+                }
+                final String value = args[i + 1];
+                switch (args[i]) {
+                    case "--port":
+                        options.port = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        options.rate = Integer.parseInt(value);
+                        break;
+                    case "--signal":
+                        options.signal = Signal.valueOf(value.toUpperCase(Locale.US));
+                        break;
+                    case "--amplitude":
+                        options.amplitude = Double.parseDouble(value);
+                        break;
+                    case "--frequency":
+                        options.frequency = Double.parseDouble(value);
+                        break;
+                    case "--drift":
+                        options.driftPpm = Double.parseDouble(value);
+                        break;
+                    case "--clock-period":
+                        options.clockPeriod = Integer.parseInt(value);
+                        break;
+                    case "--log-period":
+                        options.logPeriod = Integer.parseInt(value);
+                        break;
+                    case "--truncate":
+                        options.truncateProbability = Double.parseDouble(value);
+                        break;
+                    case "--burst": {
+                        final String[] periods = value.split("/");
+                        if (periods.length != 2) {
+                            throw new IllegalArgumentException("Bad burst: " + value);
+                        }
+                        options.burstPeriodMs = Integer.parseInt(periods[0]);
+                        options.burstHoldMs = Integer.parseInt(periods[1]);
+                        break;
+                    }
+                    case "--drop": {
+                        final String[] periods = value.split("/");
+                        if (periods.length != 2) {
+                            throw new IllegalArgumentException("Bad drop: " + value);
+                        }
+                        options.dropAfterMs = Integer.parseInt(periods[0]);
+                        options.dropOutageMs = Integer.parseInt(periods[1]);
+                        break;
+                    }
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--tick":
+                        options.tickMs = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (options.rate <= 0 || options.tickMs <= 0 || options.burstHoldMs > options.burstPeriodMs
+                    || options.dropAfterMs < 0 || options.dropOutageMs < 0) {
+                throw new IllegalArgumentException("Bad rate, tick, burst or drop");
+            }
+            return options;
+        }
+    }
+
+    private final Options mOptions;
+    private final Queue<String> mCommands = new ConcurrentLinkedQueue<>();
+    private final long mStartNanos = System.nanoTime();
+    private SimulatedDevice mDevice;
+    private volatile ServerSocket mServer;
+    private int mPort;
+    private Thread mServerThread;
+    private volatile Socket mClient;
+    private volatile boolean mRunning;
+
+    private volatile long mSamplesSent;
+    private volatile long mBytesSent;
+    private volatile int mDrops;
+
+    public DeviceSimulator(Options options) {
+        mOptions = options;
+    }
+
+    /**
+     * Start serving in the background.
+     *
+     * @return the port
+     */
+    public int start() throws IOException {
+        mServer = bind(mOptions.port);
+        mPort = mServer.getLocalPort();
+        mDevice = new SimulatedDevice(mOptions, now());
+        mRunning = true;
+        mServerThread = new Thread(this::acceptClients, DeviceSimulator.class.getSimpleName());
+        mServerThread.start();
+        return mPort;
+    }
+
+    private static ServerSocket bind(int port) throws IOException {
+        ServerSocket server = new ServerSocket();
+        // bind again the same port after a drop
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1);
+        return server;
+    }
+
+    /**
+     * @return the number of samples sent since the start, to all the clients
+     */
+    public long getSamplesSent() {
+        return mSamplesSent;
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public boolean isClientConnected() {
+        return mClient != null;
+    }
+
+    /**
+     * @return the number of connections dropped by {@code --drop}
+     */
+    public int getDrops() {
+        return mDrops;
+    }
+
+    /**
+     * Stop sending the samples and disconnect the client. The bytes already
+     * sent are still received; {@link #getSamplesSent()} doesn't change anymore.
+     */
+    public void stop() throws IOException {
+        if (mServerThread == null) {
+            // not started or already stopped
+            return;
+        }
+        mRunning = false;
+        mServer.close();
+        Socket client = mClient;
+        if (client != null) {
+            client.close();
+        }
+        // cut an outage short
+        mServerThread.interrupt();
+        try {
+            mServerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mServerThread = null;
+    }
+
+    /**
+     * Stop serving, if not stopped yet.
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mStartNanos);
+    }
+
+    private void acceptClients() {
+        while (mRunning) {
+            boolean dropped = false;
+            try (Socket client = mServer.accept()) {
+                mClient = client;
+                dropped = serve(client);
+            } catch (SocketException e) {
+                // closed by the client or by close()
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                mClient = null;
+            }
+            if (dropped) {
+                outage();
+            }
+        }
+    }
+
+    /**
+     * Out of reach: refuse the connections for a while.
+     */
+    private void outage() {
+        try {
+            mServer.close();
+            Thread.sleep(mOptions.dropOutageMs);
+            if (mRunning) {
+                mServer = bind(mPort);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            mRunning = false;
+        } catch (InterruptedException e) {
+            mRunning = false;
+        }
+    }
+
+    /**
+     * @return true if the client was dropped by {@code --drop}
+     */
+    private boolean serve(Socket client) throws IOException {
+        client.setTcpNoDelay(true);
+        final OutputStream out = client.getOutputStream();
+        mCommands.clear();
+        Thread reader = new Thread(new CommandReader(client.getInputStream()), "CommandReader");
+        reader.setDaemon(true);
+        reader.start();
+
+        final long tickNanos = TimeUnit.MILLISECONDS.toNanos(mOptions.tickMs);
+        long nextTick = System.nanoTime();
+        final long dropUs = mOptions.dropAfterMs > 0 ? now() + mOptions.dropAfterMs * 1000L : Long.MAX_VALUE;
+        mDevice.skip(now());
+        while (mRunning) {
+            final long hostUs = now();
+            mDevice.advance(hostUs);
+            String command;
+            while ((command = mCommands.poll()) != null) {
+                mDevice.command(command, hostUs);
+            }
+            mBytesSent += mDevice.drainTo(out, hostUs);
+            mSamplesSent = mDevice.getSamplesSent();
+            if (!reader.isAlive()) {
+                // the client closed the connection
+                break;
+            }
+            if (hostUs >= dropUs) {
+                mDrops++;
+                return true;
+            }
+
+            nextTick += tickNanos;
+            long wait = nextTick - System.nanoTime();
+            if (wait < 0) {
+                // behind: don't try to catch up with a burst of ticks
+                nextTick = System.nanoTime();
+            }
+            while (wait > 0) {
+                LockSupport.parkNanos(wait);
+                wait = nextTick - System.nanoTime();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the bytes of the app into commands: lines that start with '/',
+     * ended by '\n' or '\0'. The other lines are ignored.
+     */
+    private class CommandReader implements Runnable {
+        private final InputStream mInput;
+        private final StringBuilder mLine = new StringBuilder();
+
+        CommandReader(InputStream input) {
+            mInput = input;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int item;
+                while ((item = mInput.read()) >= 0) {
+                    if (item == '\n' || item == '\0' || item == '\r') {
+                        if (mLine.length() > 1 && mLine.charAt(0) == '/') {
+                            mCommands.add(mLine.substring(1));
+                        }
+                        mLine.setLength(0);
+                    } else {
+                        mLine.append((char) item);
+                    }
+                }
+            } catch (IOException e) {
+                // disconnected
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        final DeviceSimulator simulator = new DeviceSimulator(options);
+        final int port = simulator.start();
+        System.out.printf(Locale.US, "SDP%d at %d Hz, %s signal, on localhost:%d%n",
+                SimulatedDevice.MODEL_NUMBER, options.rate, options.signal, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                simulator.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+
+        long samples = simulator.getSamplesSent();
+        long bytes = simulator.getBytesSent();
+        while (true) {
+            Thread.sleep(1000);
+            final long samplesNow = simulator.getSamplesSent();
+            final long bytesNow = simulator.getBytesSent();
+            if (simulator.isClientConnected()) {
+                System.out.printf(Locale.US, "%d samples/s, %.1f kB/s%n",
+                        samplesNow - samples, (bytesNow - bytes) / 1000.0);
+            }
+            samples = samplesNow;
+            bytes = bytesNow;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.kyivaigroup.bluetoothsdpsensor.simulator;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.IngestStatus;
+import com.kyivaigroup.bluetoothsdpsensor.stream.BatchPolicy;
+import com.kyivaigroup.bluetoothsdpsensor.stream.IngestPipeline;
+import com.kyivaigroup.bluetoothsdpsensor.stream.TcpTransport;
+import com.kyivaigroup.bluetoothsdpsensor.stream.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the breaking point of the ingest path: runs the {@link DeviceSimulator}
+ * at increasing sample rates, reads it over TCP the way the DeviceLink
+ * does, and stops at the first rate that loses samples:
+ * <pre>
+ *   ./gradlew :benchmark:stressTest --args="--seconds 5 --max-rate 1000000"
+ * </pre>
+ * The other arguments are the options of the simulator, except the rate.
+ * The exit status is 1 if the path breaks at the rate of the real sensor
+ * or below; {@code ./gradlew :benchmark:check} runs it briefly for that.
+ * <p>
+ * Unlike RFCOMM, TCP pushes back on the simulator: a path that can't keep up
+ * shows as samples still queued at the end of a run rather than as dropped
+ * chunks. Both count as lost.
+ */
+public class IngestStressTest {
+    private static final int[] RATES = {100, 500, 1000, 2080, 5000, 10_000, 20_000,
+            50_000, 100_000, 200_000, 500_000, 1_000_000};
+    private static final double MAX_LOSS = 0.001;
+    private static final double SATURATION = 0.9;  // of the rate sent
+    private static final long DRAIN_MS = 500;
+    private static final int DEVICE_RATE = 2080;  // an SDP3x at its default rate
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int seconds = 5;
+        int maxRate = Integer.MAX_VALUE;
+        while (args.length >= 2 && (args[0].equals("--seconds") || args[0].equals("--max-rate"))) {
+            if (args[0].equals("--seconds")) {
+                seconds = Integer.parseInt(args[1]);
+            } else {
+                maxRate = Integer.parseInt(args[1]);
+            }
+            String[] rest = new String[args.length - 2];
+            System.arraycopy(args, 2, rest, 0, rest.length);
+            args = rest;
+        }
+        System.out.println("    rate   sent/s  received/s    loss  dropped chunks  max ring");
+        int lastRate = 0;
+        for (int rate : RATES) {
+            if (rate > maxRate) {
+                break;
+            }
+            DeviceSimulator.Options options = DeviceSimulator.Options.parse(args);
+            options.port = 0;
+            options.rate = rate;
+            if (!run(options, seconds)) {
+                if (rate <= DEVICE_RATE) {
+                    System.exit(1);
+                }
+                return;
+            }
+            lastRate = rate;
+        }
+        System.out.println("No breaking point up to " + lastRate + " Hz");
+    }
+
+    /**
+     * @return false if the samples were lost or the simulator didn't keep up
+     */
+    private static boolean run(DeviceSimulator.Options options, int seconds)
+            throws IOException, InterruptedException {
+        final AtomicLong received = new AtomicLong();
+        IngestPipeline pipeline = new IngestPipeline(collection -> {
+            received.addAndGet(collection.samples.length);
+            collection.samples.release();
+        }, BatchPolicy.BALANCED);
+
+        try (DeviceSimulator simulator = new DeviceSimulator(options)) {
+            Transport transport = new TcpTransport("127.0.0.1", simulator.start());
+            transport.connect();
+            pipeline.start();
+            Thread reader = new Thread(new Reader(transport.getInputStream(), pipeline), "Reader");
+            reader.start();
+
+            Thread.sleep(seconds * 1000L);
+            // stop the device, let the path drain what's in flight
+            simulator.stop();
+            final long sent = simulator.getSamplesSent();
+            reader.join(DRAIN_MS);
+            Thread.sleep(DRAIN_MS);
+            transport.close();
+            reader.join();
+            pipeline.stop();
+
+            final long got = received.get();
+            final double loss = sent == 0 ? 0 : 1 - (double) got / sent;
+            IngestStatus status = pipeline.getStatus();
+            System.out.printf(Locale.US, "%8d %8d %11d %6.2f%% %15d %8.0f%%%n",
+                    options.rate, sent / seconds, got / seconds, 100 * loss,
+                    status.overflowChunks, 100.0 * status.ringMaxOccupancy / status.ringCapacity);
+            if (sent < SATURATION * options.rate * seconds) {
+                System.out.printf(Locale.US, "The simulator can't keep up at %d Hz%n", options.rate);
+                return false;
+            }
+            if (loss > MAX_LOSS) {
+                System.out.printf(Locale.US, "Breaking point: %d Hz%n", options.rate);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The read loop of the DeviceLink: the chunks that don't fit in the
+     * pipeline are dropped.
+     */
+    private static class Reader implements Runnable {
+        private final InputStream mInput;
+        private final IngestPipeline mPipeline;
+
+        Reader(InputStream input, IngestPipeline pipeline) {
+            mInput = input;
+            mPipeline = pipeline;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[16284];
+            try {
+                int nbytes;
+                while ((nbytes = mInput.read(buffer)) >= 0) {
+                    mPipeline.receive(buffer, nbytes);
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.kyivaigroup.bluetoothsdpsensor.simulator;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.Gap;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+import com.kyivaigroup.bluetoothsdpsensor.record.Timeline;
+import com.kyivaigroup.bluetoothsdpsensor.stream.BatchPolicy;
+import com.kyivaigroup.bluetoothsdpsensor.stream.DeviceLink;
+import com.kyivaigroup.bluetoothsdpsensor.stream.TcpTransport;
+import com.kyivaigroup.bluetoothsdpsensor.stream.Transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the reconnect path of the app against a {@link DeviceSimulator} that
+ * drops the connection and stays out of reach for a while:
+ * <pre>
+ *   ./gradlew :benchmark:reconnectTest --args="--seconds 20 --drop 3000/1500"
+ * </pre>
+ * The other arguments are the options of the simulator. The connections are
+ * made by the {@link DeviceLink} of BluetoothChatService: it backs off
+ * between the attempts, and the samples of each connection go on on the
+ * {@link Timeline} of the previous one, after a gap.
+ * <p>
+ * Checks that the timestamps never go back and that every outage leaves one
+ * gap, as long as the time the host received nothing.
+ */
+public class ReconnectTest implements DeviceLink.Listener {
+    private static final double MAX_GAP_ERROR_US = 50_000;  // a few ticks of the simulator, a C line and the scheduler
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+
+    private final DeviceLink mLink = new DeviceLink(this, BatchPolicy.LOW_LATENCY);
+    private final CountDownLatch mError = new CountDownLatch(1);
+    private final AtomicInteger mOpen = new AtomicInteger();  // connections not ended yet
+
+    // written by the pipeline threads, one at a time
+    private final List<Gap> mGaps = new ArrayList<>();
+    private long mSamples;
+    private long mFirstTime = Long.MIN_VALUE;
+    private long mLastTime = Long.MIN_VALUE;
+    private long mBackwards;
+
+    // written by the read threads, one at a time: the host measured gaps,
+    // from the last bytes of a connection to the first ones of the next
+    private final List<Long> mHostGaps = new ArrayList<>();
+    private long mLastReceiveNanos;
+    private volatile boolean mResumed;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int seconds = 20;
+        if (args.length >= 2 && args[0].equals("--seconds")) {
+            seconds = Integer.parseInt(args[1]);
+            String[] rest = new String[args.length - 2];
+            System.arraycopy(args, 2, rest, 0, rest.length);
+            args = rest;
+        }
+        DeviceSimulator.Options options = DeviceSimulator.Options.parse(args);
+        options.port = 0;
+        if (options.dropAfterMs == 0) {
+            options.dropAfterMs = 3000;
+            options.dropOutageMs = 1500;
+        }
+        if (!new ReconnectTest().run(options, seconds)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return false if a check failed
+     */
+    private boolean run(DeviceSimulator.Options options, int seconds) throws IOException, InterruptedException {
+        System.out.printf(Locale.US, "%d Hz, dropped after %d ms connected, out of reach for %d ms, for %d s%n",
+                options.rate, options.dropAfterMs, options.dropOutageMs, seconds);
+        try (DeviceSimulator simulator = new DeviceSimulator(options)) {
+            mLink.connect(new TcpTransport("127.0.0.1", simulator.start()));
+            final boolean failed = mError.await(seconds, TimeUnit.SECONDS);
+            mLink.disconnect();
+            // the records of the last connection are delivered once it ends
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MS);
+            while (mOpen.get() > 0) {
+                if (System.nanoTime() > deadline) {
+                    System.out.println("  the last connection didn't end");
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return !failed && report(simulator);
+        }
+    }
+
+    @Override
+    public void onStateChange() {
+    }
+
+    @Override
+    public void onConnected(Transport transport, boolean resumed) {
+        mOpen.incrementAndGet();
+        if (resumed) {
+            System.out.printf(Locale.US, "  reconnected in %d ms%n", mLink.getStatus().lastReconnectMs);
+        }
+        mResumed = resumed;
+    }
+
+    @Override
+    public void onReceived(byte[] buffer, int length) {
+        final long now = System.nanoTime();
+        if (mResumed) {
+            mHostGaps.add(TimeUnit.NANOSECONDS.toMicros(now - mLastReceiveNanos));
+            mResumed = false;
+        }
+        mLastReceiveNanos = now;
+    }
+
+    @Override
+    public void onRecords(RecordCollection collection) {
+        final SampleBatch samples = collection.samples;
+        if (collection.gap != null) {
+            mGaps.add(collection.gap);
+        }
+        for (int i = 0; i < samples.length; i++) {
+            final long time = samples.time[i];
+            if (time < mLastTime) {
+                mBackwards++;
+            }
+            if (mFirstTime == Long.MIN_VALUE) {
+                mFirstTime = time;
+            }
+            mLastTime = time;
+        }
+        mSamples += samples.length;
+        samples.release();
+    }
+
+    @Override
+    public void onDisconnected(Transport transport, IOException error) {
+        mOpen.decrementAndGet();
+    }
+
+    @Override
+    public void onLost(long delayMs) {
+        System.out.printf(Locale.US, "  connection lost, reconnecting in %d ms%n", delayMs);
+    }
+
+    @Override
+    public void onError(String message) {
+        System.out.println("  " + message + ": " + mLink.getStatus());
+        mError.countDown();
+    }
+
+    private boolean report(DeviceSimulator simulator) {
+        boolean passed = true;
+        System.out.println("  gap ms   host ms");
+        for (int i = 0; i < mGaps.size(); i++) {
+            final Gap gap = mGaps.get(i);
+            final long hostGapUs = i < mHostGaps.size() ? mHostGaps.get(i) : -1;
+            final boolean close = Math.abs(gap.durationUs - hostGapUs) <= MAX_GAP_ERROR_US;
+            System.out.printf(Locale.US, "%8.1f  %8.1f%s%n", gap.durationUs / 1e3, hostGapUs / 1e3,
+                    close ? "" : "  OFF");
+            passed &= close;
+        }
+        System.out.println(mLink.getStatus());
+        System.out.printf(Locale.US, "%d drops, %d samples received, timeline %.3f s, %d times back%n",
+                simulator.getDrops(), mSamples, (mLastTime - mFirstTime) / 1e6, mBackwards);
+        if (mGaps.size() != mHostGaps.size()) {
+            System.out.printf(Locale.US, "%d gaps for %d reconnects%n", mGaps.size(), mHostGaps.size());
+            passed = false;
+        }
+        if (mBackwards > 0) {
+            passed = false;
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        return passed;
+    }
+}
@@ -0,0 +1,64 @@
+package com.kyivaigroup.bluetoothsdpsensor.simulator;
+
+import java.util.Random;
+
+/**
+ * The differential pressure measured by the simulated SDP sensor.
+ */
+public enum Signal {
+    /**
+     * A breathing-like sine wave with sensor noise.
+     */
+    SINE {
+        @Override
+        double pressure(double seconds, double amplitude, double frequency, Random random) {
+            return amplitude * Math.sin(2 * Math.PI * frequency * seconds) + random.nextGaussian() * SENSOR_NOISE_PA;
+        }
+    },
+
+    /**
+     * White noise with the amplitude as the standard deviation.
+     */
+    NOISE {
+        @Override
+        double pressure(double seconds, double amplitude, double frequency, Random random) {
+            return random.nextGaussian() * amplitude;
+        }
+    },
+
+    /**
+     * A square wave between -amplitude and +amplitude with sensor noise.
+     */
+    STEPS {
+        @Override
+        double pressure(double seconds, double amplitude, double frequency, Random random) {
+            final double level = (long) (2 * frequency * seconds) % 2 == 0 ? -amplitude : amplitude;
+            return level + random.nextGaussian() * SENSOR_NOISE_PA;
+        }
+    },
+
+    /**
+     * Sensor noise with rare spikes up to ten times the amplitude.
+     */
+    SPIKES {
+        @Override
+        double pressure(double seconds, double amplitude, double frequency, Random random) {
+            if (random.nextDouble() < SPIKE_PROBABILITY) {
+                return amplitude * (1 + 9 * random.nextDouble());
+            }
+            return random.nextGaussian() * SENSOR_NOISE_PA;
+        }
+    };
+
+    private static final double SENSOR_NOISE_PA = 0.5;
+    private static final double SPIKE_PROBABILITY = 1e-3;
+
+    /**
+     * @param seconds   the time since the device boot
+     * @param amplitude the amplitude, Pa
+     * @param frequency the frequency of the periodic signals, Hz
+     * @param random    the source of the noise
+     * @return the differential pressure, Pa
+     */
+    abstract double pressure(double seconds, double amplitude, double frequency, Random random);
+}
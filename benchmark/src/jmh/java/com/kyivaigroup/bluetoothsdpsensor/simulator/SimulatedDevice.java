@@ -0,0 +1,304 @@
+package com.kyivaigroup.bluetoothsdpsensor.simulator;
+
+import com.kyivaigroup.bluetoothsdpsensor.Constants;
+import com.kyivaigroup.bluetoothsdpsensor.record.BinaryFrameEncoder;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatch;
+import com.kyivaigroup.bluetoothsdpsensor.record.SampleBatchPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The ESP32 firmware with an SDP31 and a BME280, minus the hardware: it
+ * produces the byte stream that SerialParser reads and answers the commands
+ * of the app.
+ * <p>
+ * The device runs on the host clock, given in us to every call, so the
+ * stream doesn't depend on the scheduling of the caller. The device clock
+ * drifts from the host clock by the given ppm. Not thread-safe: the caller
+ * serializes the calls.
+ */
+class SimulatedDevice {
+    static final int MODEL_NUMBER = 31;
+    static final int RANGE_PA = 500;
+    static final int PRESSURE_SCALE = 60;
+
+    private static final long BOOT_TIME_US = 300_000;  // until the sensor is ready
+    private static final long RESTART_DELAY_US = 500_000;
+    private static final long SD_CARD_FREE_BYTES = 7L << 30;
+    private static final int FRAME_SAMPLES = 1000;
+    private static final int JITTER_US = 2;
+    private static final String TAG = "sdpsensor";
+
+    private final DeviceSimulator.Options mOptions;
+    private final Random mRandom;
+    private final double mSamplePeriodUs;
+    private final double mClockRate;  // device us per host us
+
+    private final BinaryFrameEncoder mEncoder = new BinaryFrameEncoder();
+    private final SampleBatch mFrame = new SampleBatchPool(FRAME_SAMPLES).acquire();
+    private final byte[] mFrameBuffer = new byte[BinaryFrameEncoder.maxFrameSize(FRAME_SAMPLES)];
+    private long mFrameClock;
+
+    // the bytes produced and not drained yet
+    private byte[] mBuffer = new byte[1 << 16];
+    private int mLength;
+
+    private long mBootHostUs;      // when the device booted, on the host clock
+    private long mRestartHostUs = -1;  // when the pending restart boots the device
+    private double mNextSampleUs;  // device clock of the next sample
+    private long mLastTick;
+    private long mSampleCount;     // since the boot
+    private long mSamplesSent;     // since the creation
+    private int mRecordId;
+    private boolean mBinary;
+
+    SimulatedDevice(DeviceSimulator.Options options, long hostUs) {
+        mOptions = options;
+        mRandom = new Random(options.seed);
+        mSamplePeriodUs = 1e6 / options.rate;
+        mClockRate = 1 + options.driftPpm * 1e-6;
+        boot(hostUs);
+    }
+
+    /**
+     * @return the device clock, us since boot
+     */
+    long getClock(long hostUs) {
+        return BOOT_TIME_US + (long) ((hostUs - mBootHostUs) * mClockRate);
+    }
+
+    long getSamplesSent() {
+        return mSamplesSent;
+    }
+
+    /**
+     * Read the sensors up to the given time.
+     */
+    void advance(long hostUs) {
+        if (mRestartHostUs >= 0) {
+            if (hostUs < mRestartHostUs) {
+                return;
+            }
+            boot(mRestartHostUs);
+        }
+        final long clock = getClock(hostUs);
+        while (mNextSampleUs <= clock) {
+            sample();
+        }
+        flushFrame();
+    }
+
+    /**
+     * Drop the samples up to the given time, as the firmware does when
+     * nobody is connected.
+     */
+    void skip(long hostUs) {
+        if (mRestartHostUs >= 0 && hostUs >= mRestartHostUs) {
+            boot(mRestartHostUs);
+        }
+        final long clock = getClock(hostUs);
+        if (mNextSampleUs <= clock) {
+            final long skipped = (long) ((clock - mNextSampleUs) / mSamplePeriodUs) + 1;
+            mNextSampleUs += skipped * mSamplePeriodUs;
+            mLastTick = (long) (mNextSampleUs - mSamplePeriodUs);
+            mSampleCount += skipped;
+        }
+        mFrame.length = 0;
+        mLength = 0;
+    }
+
+    /**
+     * Write the produced bytes, unless the injected burst holds them back.
+     *
+     * @return the number of bytes written
+     */
+    int drainTo(OutputStream out, long hostUs) throws IOException {
+        final long burstPeriodUs = mOptions.burstPeriodMs * 1000L;
+        if (burstPeriodUs > 0 && hostUs % burstPeriodUs < mOptions.burstHoldMs * 1000L) {
+            return 0;
+        }
+        final int length = mLength;
+        if (length > 0) {
+            out.write(mBuffer, 0, length);
+            mLength = 0;
+        }
+        return length;
+    }
+
+    /**
+     * Execute a command line of the app, without the leading '/'.
+     */
+    void command(String line, long hostUs) {
+        if (mRestartHostUs >= 0) {
+            // the board is rebooting
+            return;
+        }
+        final String[] args = line.trim().split(" +");
+        final long clock = getClock(hostUs);
+        switch (args[0]) {
+            case Constants.INFO:
+                info();
+                break;
+            case Constants.CLOCK_SYNC:
+                if (args.length == 2) {
+                    log('I', clock, "time set to " + args[1] + " ms");
+                } else {
+                    log('E', clock, "usage: clock <ms>");
+                }
+                break;
+            case Constants.CLOCK_PING:
+                if (args.length == 2) {
+                    // received and replied at once
+                    flushFrame();
+                    append('Y').append(args[1]).append(" r").append(clock).append(" t").append(clock).append('\n');
+                } else {
+                    log('E', clock, "usage: sync <seq>");
+                }
+                break;
+            case Constants.BINARY_MODE:
+                if (args.length == 2 && (args[1].equals("0") || args[1].equals("1"))) {
+                    mBinary = args[1].equals("1");
+                    log('I', clock, "binary mode " + args[1]);
+                } else {
+                    log('E', clock, "usage: binary 0|1");
+                }
+                break;
+            case Constants.FORMAT:
+            case Constants.RESTART:
+                log('W', clock, "restarting");
+                mRestartHostUs = hostUs + RESTART_DELAY_US;
+                break;
+            default:
+                log('W', clock, "unknown command '" + args[0] + "'");
+                break;
+        }
+    }
+
+    private void boot(long hostUs) {
+        mBootHostUs = hostUs;
+        mRestartHostUs = -1;
+        mNextSampleUs = BOOT_TIME_US + mSamplePeriodUs;
+        mLastTick = BOOT_TIME_US;
+        mSampleCount = 0;
+        mBinary = false;
+        mRecordId++;
+        log('I', BOOT_TIME_US, "SDP" + MODEL_NUMBER + " ready, record " + mRecordId);
+        info();
+    }
+
+    private void sample() {
+        final long tick = (long) mNextSampleUs + mRandom.nextInt(2 * JITTER_US + 1) - JITTER_US;
+        final long delta = tick - mLastTick;
+        mLastTick = tick;
+        mNextSampleUs += mSamplePeriodUs;
+        final double seconds = tick * 1e-6;
+        long raw = Math.round(PRESSURE_SCALE * mOptions.signal.pressure(
+                seconds, mOptions.amplitude, mOptions.frequency, mRandom));
+        raw = Math.max(-RANGE_PA * PRESSURE_SCALE, Math.min(RANGE_PA * PRESSURE_SCALE, raw));
+        mSampleCount++;
+        mSamplesSent++;
+
+        if (mBinary) {
+            if (mFrame.length == 0) {
+                mFrameClock = tick;
+            }
+            mFrame.add((short) raw, delta);
+            if (mFrame.length == FRAME_SAMPLES) {
+                flushFrame();
+            }
+        } else {
+            final int start = mLength;
+            append('D').append(raw).append('t').append(delta).append('\n');
+            if (mOptions.truncateProbability > 0 && mRandom.nextDouble() < mOptions.truncateProbability) {
+                // cut the line: it merges with the next one
+                mLength = start + 1 + mRandom.nextInt(mLength - start - 1);
+            }
+            if (mOptions.clockPeriod > 0 && mSampleCount % mOptions.clockPeriod == 0) {
+                append('C').append(tick).append('\n');
+            }
+        }
+
+        if (mSampleCount % mOptions.rate == 0) {
+            // once a second, as the firmware does
+            flushFrame();
+            append('S').append(mRandom.nextInt(10)).append(" m").append(42)
+                    .append(" r").append(900 + mRandom.nextInt(100)).append('\n');
+            append(String.format(Locale.US, "P%dT%.1fH%.1f\n",
+                    101325 + mRandom.nextInt(100), 23 + mRandom.nextFloat(), 40 + mRandom.nextFloat()));
+        }
+        if (mOptions.logPeriod > 0 && mSampleCount % mOptions.logPeriod == 0) {
+            log('I', tick, "queue " + mRandom.nextInt(64) + " messages");
+        }
+    }
+
+    private void info() {
+        flushFrame();
+        append('I').append(MODEL_NUMBER).append(" r").append(RANGE_PA).append(" s").append(PRESSURE_SCALE)
+                .append(" i").append(mRecordId).append(" m").append(SD_CARD_FREE_BYTES).append('\n');
+    }
+
+    /**
+     * Append an ESP-IDF log message.
+     */
+    private void log(char level, long clock, String message) {
+        flushFrame();
+        final String color = level == 'E' ? "31" : level == 'W' ? "33" : "32";
+        append("\u001B[0;" + color + "m" + level + " (" + clock / 1000 + ") " + TAG + ": " + message
+                + Constants.ANSI_RESET + "\n");
+    }
+
+    private void flushFrame() {
+        if (mFrame.length == 0) {
+            return;
+        }
+        final int size = mEncoder.encode(mFrame, 0, mFrame.length, mFrameClock, mFrameBuffer, 0);
+        ensureCapacity(size);
+        System.arraycopy(mFrameBuffer, 0, mBuffer, mLength, size);
+        mLength += size;
+        mFrame.length = 0;
+    }
+
+    private SimulatedDevice append(char c) {
+        ensureCapacity(1);
+        mBuffer[mLength++] = (byte) c;
+        return this;
+    }
+
+    private SimulatedDevice append(String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            mBuffer[mLength++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+
+    private SimulatedDevice append(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            mBuffer[mLength++] = '-';
+            value = -value;
+        }
+        final int start = mLength;
+        do {
+            mBuffer[mLength++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // the digits are reversed
+        for (int i = start, j = mLength - 1; i < j; i++, j--) {
+            final byte digit = mBuffer[i];
+            mBuffer[i] = mBuffer[j];
+            mBuffer[j] = digit;
+        }
+        return this;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mLength + extra > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mLength + extra));
+        }
+    }
+}
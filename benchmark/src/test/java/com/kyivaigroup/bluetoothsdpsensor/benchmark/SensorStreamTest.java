@@ -0,0 +1,112 @@
+package com.kyivaigroup.bluetoothsdpsensor.benchmark;
+
+import com.kyivaigroup.bluetoothsdpsensor.record.LogLine;
+import com.kyivaigroup.bluetoothsdpsensor.record.RecordCollection;
+import com.kyivaigroup.bluetoothsdpsensor.record.SerialParser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SensorStream} generates what {@link SerialParserBenchmark} claims to measure.
+ */
+public class SensorStreamTest {
+    private static final int SAMPLES = SensorStream.SAMPLE_RATE;
+
+    @Test
+    public void denseIsOnlySamples() {
+        final String text = generate(SensorStream.DENSE);
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.matches("D-?\\d+t\\d+"));
+        }
+        RecordCollection collection = parse(SensorStream.DENSE.generate(SAMPLES), 16284);
+        assertEquals(SAMPLES, collection.samples.length);
+        assertNull(collection.recordBMP);
+        assertNull(collection.status);
+        assertEquals(0, collection.logs.length);
+    }
+
+    @Test
+    public void mixedHasClockStatusAndBmpLines() {
+        final String text = generate(SensorStream.MIXED);
+        assertTrue(text.contains("\nC"));
+        assertFalse(text.contains("\u001B"));
+        RecordCollection collection = parse(SensorStream.MIXED.generate(SAMPLES), 16284);
+        assertEquals(SAMPLES, collection.samples.length);
+        assertNotNull(collection.recordBMP);
+        assertNotNull(collection.status);
+        assertEquals(0, collection.logs.length);
+        int ticks = 0;
+        for (int i = 0; i < collection.samples.length; i++) {
+            if (collection.samples.clockTick[i] != 0) {
+                ticks++;
+            }
+        }
+        assertEquals(SAMPLES / 100 + 1, ticks);
+    }
+
+    @Test
+    public void logsAreColoredMessages() {
+        RecordCollection collection = parse(SensorStream.LOGS.generate(SAMPLES), 16284);
+        assertEquals(SAMPLES, collection.samples.length);
+        assertEquals((SAMPLES + 49) / 50, collection.logs.length);
+        for (LogLine line : collection.logs) {
+            assertTrue(line.text, line.level == 'I' || line.level == 'W' || line.level == 'E');
+            assertFalse(line.text, line.text.contains("\u001B"));
+        }
+    }
+
+    @Test
+    public void generateIsRepeatable() {
+        assertArrayEquals(SensorStream.LOGS.generate(SAMPLES), SensorStream.LOGS.generate(SAMPLES));
+    }
+
+    @Test
+    public void splitKeepsTheBytes() {
+        final byte[] stream = SensorStream.LOGS.generate(SAMPLES);
+        for (int chunkSize : new int[]{16284, 990, 7}) {
+            byte[][] chunks = SensorStream.split(stream, chunkSize);
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            for (int i = 0; i < chunks.length; i++) {
+                if (i < chunks.length - 1) {
+                    assertEquals(chunkSize, chunks[i].length);
+                }
+                joined.write(chunks[i], 0, chunks[i].length);
+            }
+            assertArrayEquals(stream, joined.toByteArray());
+        }
+    }
+
+    @Test
+    public void smallChunksParseTheSame() {
+        final byte[] stream = SensorStream.LOGS.generate(SAMPLES);
+        RecordCollection whole = parse(stream, stream.length);
+        RecordCollection split = parse(stream, 7);
+        assertEquals(whole.samples.length, split.samples.length);
+        assertArrayEquals(Arrays.copyOf(whole.samples.diffPressureRaw, whole.samples.length),
+                Arrays.copyOf(split.samples.diffPressureRaw, split.samples.length));
+        assertEquals(whole.logs.length, split.logs.length);
+    }
+
+    private static String generate(SensorStream stream) {
+        return new String(stream.generate(SAMPLES), StandardCharsets.US_ASCII);
+    }
+
+    private static RecordCollection parse(byte[] stream, int chunkSize) {
+        SerialParser parser = new SerialParser();
+        for (byte[] chunk : SensorStream.split(stream, chunkSize)) {
+            parser.receive(chunk, chunk.length);
+        }
+        return parser.consumeRecords();
+    }
+}